@@ -30,11 +30,16 @@ import org.labkey.api.collections.CaseInsensitiveHashSet;
 import org.labkey.api.collections.CaseInsensitiveMapWrapper;
 import org.labkey.api.collections.CollectionUtils;
 import org.labkey.api.collections.LabKeyCollectors;
+import org.labkey.api.collections.RoaringBitSet;
 import org.labkey.api.collections.Sampler;
 import org.labkey.api.collections.SwapQueue;
 import org.labkey.api.data.*;
 import org.labkey.api.data.dialect.ParameterSubstitutionTest;
+import org.labkey.api.data.dialect.PostgreSqlBulkCopy;
 import org.labkey.api.data.dialect.StandardDialectStringHandler;
+import org.labkey.api.data.queryprofiler.LatencyHistogram;
+import org.labkey.api.data.queryprofiler.PrometheusMetricsWriter;
+import org.labkey.api.dataiterator.AsyncDataIterator;
 import org.labkey.api.dataiterator.CachingDataIterator;
 import org.labkey.api.dataiterator.DataIteratorUtil;
 import org.labkey.api.dataiterator.RemoveDuplicatesDataIterator;
@@ -45,6 +50,7 @@ import org.labkey.api.exp.api.StorageProvisioner;
 import org.labkey.api.iterator.MarkableIterator;
 import org.labkey.api.jsp.LabKeyJspFactory;
 import org.labkey.api.markdown.MarkdownService;
+import org.labkey.api.miniprofiler.RequestTracer;
 import org.labkey.api.module.CodeOnlyModule;
 import org.labkey.api.module.FolderTypeManager;
 import org.labkey.api.module.JavaVersion;
@@ -52,6 +58,7 @@ import org.labkey.api.module.ModuleContext;
 import org.labkey.api.module.ModuleDependencySorter;
 import org.labkey.api.module.ModuleHtmlView;
 import org.labkey.api.module.TomcatVersion;
+import org.labkey.api.pipeline.CompactJobSerialization;
 import org.labkey.api.query.AbstractQueryUpdateService;
 import org.labkey.api.query.AliasManager;
 import org.labkey.api.query.FieldKey;
@@ -69,6 +76,7 @@ import org.labkey.api.security.ApiKeyManager.ApiKeyMaintenanceTask;
 import org.labkey.api.security.AuthenticationLogoType;
 import org.labkey.api.security.AuthenticationManager;
 import org.labkey.api.security.AvatarType;
+import org.labkey.api.security.EffectivePermissionCache;
 import org.labkey.api.security.Encryption;
 import org.labkey.api.security.GroupManager;
 import org.labkey.api.security.NestedGroupsTest;
@@ -136,6 +144,8 @@ public class ApiModule extends CodeOnlyModule
             Aggregate.TestCase.class,
             ApiXmlWriter.TestCase.class,
             ArrayListMap.TestCase.class,
+            AsyncDataIterator.TestCase.class,
+            AsyncRowCounter.TestCase.class,
             BooleanFormat.TestCase.class,
             BuilderObjectFactory.TestCase.class,
             CachingDataIterator.ScrollTestCase.class,
@@ -144,8 +154,10 @@ public class ApiModule extends CodeOnlyModule
             CaseInsensitiveMapWrapper.TestCase.class,
             ChecksumUtil.TestCase.class,
             CollectionUtils.TestCase.class,
+            CompactJobSerialization.TestCase.class,
             Compress.TestCase.class,
             Constants.TestCase.class,
+            ContainerTree.TestCase.class,
             ConvertHelper.TestCase.class,
             DatabaseCache.TestCase.class,
             DataIteratorUtil.TestCase.class,
@@ -165,6 +177,8 @@ public class ApiModule extends CodeOnlyModule
             JSONDataLoader.MetadataTest.class,
             JSONDataLoader.RowTest.class,
             JsonTest.class,
+            KeysetCursor.TestCase.class,
+            LatencyHistogram.TestCase.class,
             MarkableIterator.TestCase.class,
             MaterializedQueryHelper.TestCase.class,
             MemTracker.TestCase.class,
@@ -176,9 +190,13 @@ public class ApiModule extends CodeOnlyModule
             Pair.TestCase.class,
             PasswordExpiration.TestCase.class,
             Path.TestCase.class,
+            PostgreSqlBulkCopy.TestCase.class,
+            PrometheusMetricsWriter.TestCase.class,
             RemoveDuplicatesDataIterator.DeDuplicateTestCase.class,
             ReplacedRunFilter.TestCase.class,
+            RequestTracer.TestCase.class,
             ResultSetUtil.TestCase.class,
+            RoaringBitSet.TestCase.class,
             RReport.TestCase.class,
             Sampler.TestCase.class,
             SchemaKey.TestCase.class,
@@ -216,6 +234,8 @@ public class ApiModule extends CodeOnlyModule
             ActionURL.TestCase.class,
             AliasManager.TestCase.class,
             ApiKeyManager.TestCase.class,
+            ArrayParameterInClauseGenerator.TestCase.class,
+            AsyncDataIterator.TransactionTestCase.class,
             AtomicDatabaseInteger.TestCase.class,
             BlockingCache.BlockingCacheTest.class,
             ContainerDisplayColumn.TestCase.class,
@@ -231,6 +251,7 @@ public class ApiModule extends CodeOnlyModule
             DbScope.TransactionTestCase.class,
             DbSequenceManager.TestCase.class,
             DomTestCase.class,
+            EffectivePermissionCache.TestCase.class,
             Encryption.TestCase.class,
             ExcelColumn.TestCase.class,
             ExceptionUtil.TestCase.class,
@@ -245,12 +266,14 @@ public class ApiModule extends CodeOnlyModule
             NestedGroupsTest.class,
             ParameterSubstitutionTest.class,
             Portal.TestCase.class,
+            PreparedStatementCache.TestCase.class,
             PropertyManager.TestCase.class,
             //RateLimiter.TestCase.class,
             ResultSetDataIterator.TestCase.class,
             ResultSetSelectorTestCase.class,
             RowTrackingResultSetWrapper.TestCase.class,
             SecurityManager.TestCase.class,
+            SelectorResultCache.TestCase.class,
             SimpleTranslator.TranslateTestCase.class,
             SQLFragment.TestCase.class,
             SqlSelectorTestCase.class,
@@ -17,6 +17,7 @@ package org.labkey.api.action;
 
 import org.apache.commons.beanutils.ConversionException;
 import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.labkey.api.collections.ResultSetRowMapFactory;
@@ -25,11 +26,13 @@ import org.labkey.api.data.DataRegion;
 import org.labkey.api.data.DetailsColumn;
 import org.labkey.api.data.DisplayColumn;
 import org.labkey.api.data.JsonWriter;
+import org.labkey.api.data.KeysetCursor;
 import org.labkey.api.data.LookupColumn;
 import org.labkey.api.data.MVDisplayColumn;
 import org.labkey.api.data.MvUtil;
 import org.labkey.api.data.RenderContext;
 import org.labkey.api.data.Results;
+import org.labkey.api.data.Sort;
 import org.labkey.api.data.TableInfo;
 import org.labkey.api.data.UpdateColumn;
 import org.labkey.api.exp.PropertyColumn;
@@ -84,6 +87,7 @@ public class ApiQueryResponse implements ApiResponse
     private boolean _includeDisplayValues;
     private List<FieldKey> _columnFilter;
     private boolean _includeMetaData;
+    private String _nextCursor = null;        // keyset pagination token for the page after this one
 
     // TODO: This is silly... switch to builder pattern, or at least a constructor that takes reasonable strategies
     public ApiQueryResponse(QueryView view, boolean schemaEditable, boolean includeLookupInfo,
@@ -155,8 +159,9 @@ public class ApiQueryResponse implements ApiResponse
                 complete = writeRowset(writer, results);
             }
 
-            // Figure out if we need to make a separate request to get the total row count (via the aggregates)
-            if (!complete && _rowCount == 0)
+            // Figure out if we need to make a separate request to get the total row count (via the aggregates). After a
+            // keyset seek, the rows before this page weren't counted by the offset, so the last page needs it too.
+            if ((!complete || _ctx.isKeysetSeek()) && _rowCount == 0)
             {
                 // Load the aggregates
                 _dataRegion.getAggregateResults(_ctx);
@@ -169,6 +174,10 @@ public class ApiQueryResponse implements ApiResponse
             long rowCount = _rowCount > 0 ? _rowCount : _offset + _numRespRows;
             writer.writeProperty("rowCount", rowCount);
 
+            // Keyset pagination: clients pass this back as "cursor" to get the next page; null means this was the last page
+            if (null != _ctx.getKeysetSort())
+                writer.writeProperty("nextCursor", _nextCursor);
+
             if (_includeMetaData)
             {
                 // messages, but only if metadata is requested
@@ -236,6 +245,11 @@ public class ApiQueryResponse implements ApiResponse
         {
             throw new ApiUsageException(e);
         }
+        catch (KeysetCursor.InvalidCursorException e)
+        {
+            // bad or stale keyset cursor
+            throw new ApiUsageException(e.getMessage(), e);
+        }
     }
 
     public List<FieldKey> getFieldKeys()
@@ -509,18 +523,37 @@ public class ApiQueryResponse implements ApiResponse
             ResultSetRowMapFactory factory = ResultSetRowMapFactory.create(results);
             factory.setConvertBigDecimalToDouble(false);
 
+            Map<String, Object> lastRow = null;
             while (results.next())
             {
-                _ctx.setRow(factory.getRowMap(results));
+                lastRow = factory.getRowMap(results);
+                _ctx.setRow(lastRow);
                 writer.writeListEntry(getRow());
                 ++_numRespRows;
             }
             complete = results.isComplete();
+
+            List<Sort.SortField> keysetSort = _ctx.getKeysetSort();
+            if (null != keysetSort && !complete && null != lastRow)
+                _nextCursor = getNextCursor(keysetSort, results.getFieldMap(), lastRow);
         }
         writer.endList();
         return complete;
     }
 
+    private static @Nullable String getNextCursor(List<Sort.SortField> keysetSort, Map<FieldKey, ColumnInfo> fieldMap, Map<String, Object> lastRow)
+    {
+        Map<FieldKey, Object> values = new HashMap<>();
+        for (Sort.SortField field : keysetSort)
+        {
+            ColumnInfo col = fieldMap.get(field.getFieldKey());
+            if (null != col)
+                values.put(field.getFieldKey(), lastRow.get(col.getAlias()));
+        }
+        KeysetCursor cursor = KeysetCursor.after(keysetSort, values);
+        return null == cursor ? null : cursor.encode();
+    }
+
     protected Map<String,Object> getRow()
     {
         Map<String,Object> row = new HashMap<>();
@@ -58,4 +58,30 @@ public interface AuditTypeProvider
     Map<FieldKey, String> legacyNameMap();
 
     ActionURL getAuditUrl();
+
+    /**
+     * How {@link AuditLogService#addEvent} writes this provider's events. Providers that log an event per row of a bulk
+     * operation, or on very frequent API calls, should consider TRANSACTIONAL or ASYNCHRONOUS.
+     */
+    default WriteMode getWriteMode()
+    {
+        return WriteMode.SYNCHRONOUS;
+    }
+
+    enum WriteMode
+    {
+        /** Insert each event as it's added, in the caller's transaction, if any */
+        SYNCHRONOUS,
+        /**
+         * Collect events added within a transaction and insert them as a batch immediately before it commits, so they're
+         * persisted (or rolled back) with the transaction. Events added outside a transaction are inserted immediately.
+         */
+        TRANSACTIONAL,
+        /**
+         * Queue events once the caller's transaction (if any) commits and insert them in batches on a background thread.
+         * If the queue is full the caller inserts the event itself. Events still queued if the server stops abruptly
+         * are lost.
+         */
+        ASYNCHRONOUS
+    }
 }
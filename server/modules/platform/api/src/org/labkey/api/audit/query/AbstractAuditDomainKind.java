@@ -28,6 +28,7 @@ import org.labkey.api.data.DbScope;
 import org.labkey.api.data.JdbcType;
 import org.labkey.api.data.PropertyStorageSpec;
 import org.labkey.api.data.SQLFragment;
+import org.labkey.api.data.SchemaTableInfo;
 import org.labkey.api.exp.Handler;
 import org.labkey.api.exp.Lsid;
 import org.labkey.api.exp.PropertyDescriptor;
@@ -105,6 +106,17 @@ public abstract class AbstractAuditDomainKind extends DomainKind<JSONObject>
         return _eventType;
     }
 
+    /**
+     * Return true to store this event type in monthly partitions by Created date on PostgreSQL 12 and later. The audit
+     * maintenance task converts the existing table on its first run and creates partitions ahead of time, and retention
+     * then drops whole partitions instead of deleting rows. Partitioned kinds must not declare unique indices, since
+     * PostgreSQL requires those to include the partition column.
+     */
+    public boolean isTimePartitioned()
+    {
+        return false;
+    }
+
     @Override
     public Set<PropertyStorageSpec> getBaseProperties(Domain domain)
     {
@@ -267,9 +279,21 @@ public abstract class AbstractAuditDomainKind extends DomainKind<JSONObject>
     @Override
     public Set<PropertyStorageSpec.Index> getPropertyIndices(Domain domain)
     {
+        // Keeps newest-first grids and retention cheap on large tables, and within each partition
+        if (isTimePartitioned())
+            return Collections.singleton(new PropertyStorageSpec.Index(false, AbstractAuditTypeProvider.COLUMN_NAME_CREATED));
+
         return Collections.emptySet();
     }
 
+    @Override
+    public void afterLoadTable(SchemaTableInfo ti, Domain domain)
+    {
+        // A partitioned table's primary key must include the partition column, but RowId alone still identifies an event
+        if (ti.getPkColumnNames().size() > 1)
+            ti.setPkColumnNames(Collections.singletonList(AbstractAuditTypeProvider.COLUMN_NAME_ROW_ID));
+    }
+
     @Override
     public Set<PropertyStorageSpec.ForeignKey> getPropertyForeignKeys(Container container)
     {
@@ -20,6 +20,8 @@ import org.jetbrains.annotations.Nullable;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.labkey.api.miniprofiler.MiniProfiler;
+import org.labkey.api.miniprofiler.Timing;
 import org.labkey.api.util.Filter;
 
 import java.util.HashMap;
@@ -158,7 +160,12 @@ public class BlockingCache<K, V> implements Cache<K, V>
             if (null == loader)
                 throw new IllegalStateException("cache loader was not provided");
 
-            V value = loader.load(key, argument);
+            V value;
+            // Uses trace(), not step(), since step() reads the MiniProfiler settings, which are held in a BlockingCache
+            try (Timing ignored = MiniProfiler.trace("cache load " + getTrackingCache().getDebugName()))
+            {
+                value = loader.load(key, argument);
+            }
             CacheManager.validate(loader, value);
 
             synchronized (w.getLockObject())
@@ -0,0 +1,1308 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.collections;
+
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compressed bit set of non-negative ints, in the style of Roaring bitmaps. Values are partitioned by their high 16 bits
+ * into chunks of 65536, and each non-empty chunk is stored in whichever container is smallest for its contents:
+ * a sorted array of values (up to 4096 values), a 65536-bit bitmap, or, once the set is sealed, a list of runs.
+ * Intersections, unions and intersection counts work container by container, so they skip empty chunks entirely and
+ * use word-at-a-time or merge operations within a chunk.
+ *
+ * The API is the subset of {@link SparseBitSet} used by the OLAP member sets. As with SparseBitSet, a sealed set is
+ * read-only, and is safe to share between threads; {@link #clone()} returns a modifiable copy.
+ */
+public class RoaringBitSet implements Cloneable, Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /** Version of the {@link #writeTo} format */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+    private static final byte RUN = 2;
+
+    /** An array container holding more values than this is larger than a bitmap */
+    static final int ARRAY_MAX = 4096;
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private char[] _keys;
+    private Container[] _containers;
+    private int _size = 0;      // number of (non-empty) containers
+    private boolean _sealed = false;
+
+    public RoaringBitSet()
+    {
+        _keys = new char[4];
+        _containers = new Container[4];
+    }
+
+    private RoaringBitSet(int capacity)
+    {
+        _keys = new char[Math.max(4, capacity)];
+        _containers = new Container[Math.max(4, capacity)];
+    }
+
+    private static char high(int i)
+    {
+        return (char)(i >>> 16);
+    }
+
+    private static int low(int i)
+    {
+        return i & 0xFFFF;
+    }
+
+    private static int combine(char high, int low)
+    {
+        return (high << 16) | low;
+    }
+
+    private void checkSealed()
+    {
+        if (_sealed)
+            throw new IllegalStateException();
+    }
+
+    private int indexOf(char key)
+    {
+        return Arrays.binarySearch(_keys, 0, _size, key);
+    }
+
+    private void insertAt(int index, char key, Container c)
+    {
+        if (_size == _keys.length)
+        {
+            _keys = Arrays.copyOf(_keys, _size * 2);
+            _containers = Arrays.copyOf(_containers, _size * 2);
+        }
+        System.arraycopy(_keys, index, _keys, index + 1, _size - index);
+        System.arraycopy(_containers, index, _containers, index + 1, _size - index);
+        _keys[index] = key;
+        _containers[index] = c;
+        _size++;
+    }
+
+    private void removeAt(int index)
+    {
+        System.arraycopy(_keys, index + 1, _keys, index, _size - index - 1);
+        System.arraycopy(_containers, index + 1, _containers, index, _size - index - 1);
+        _containers[--_size] = null;
+    }
+
+    // Appends a container while building a new set in key order; empty containers are dropped
+    private void append(char key, Container c)
+    {
+        if (0 == c.cardinality())
+            return;
+        if (_size == _keys.length)
+        {
+            _keys = Arrays.copyOf(_keys, _size * 2);
+            _containers = Arrays.copyOf(_containers, _size * 2);
+        }
+        _keys[_size] = key;
+        _containers[_size++] = c;
+    }
+
+    public void set(int i)
+    {
+        checkSealed();
+        if (i < 0)
+            throw new IndexOutOfBoundsException("i=" + i);
+        char key = high(i);
+        int index = indexOf(key);
+        if (index >= 0)
+            _containers[index] = _containers[index].add(low(i));
+        else
+            insertAt(-index - 1, key, new ArrayContainer().add(low(i)));
+    }
+
+    public boolean get(int i)
+    {
+        if (i < 0)
+            return false;
+        int index = indexOf(high(i));
+        return index >= 0 && _containers[index].contains(low(i));
+    }
+
+    public void clear(int i)
+    {
+        checkSealed();
+        if (i < 0)
+            return;
+        int index = indexOf(high(i));
+        if (index < 0)
+            return;
+        Container c = _containers[index].remove(low(i));
+        if (0 == c.cardinality())
+            removeAt(index);
+        else
+            _containers[index] = c;
+    }
+
+    public void clear()
+    {
+        checkSealed();
+        Arrays.fill(_containers, 0, _size, null);
+        _size = 0;
+    }
+
+    public int cardinality()
+    {
+        int cardinality = 0;
+        for (int i = 0; i < _size; i++)
+            cardinality += _containers[i].cardinality();
+        return cardinality;
+    }
+
+    public boolean isEmpty()
+    {
+        return 0 == _size;
+    }
+
+    /** @return the index of the first set bit at or after i, or -1 if there is none */
+    public int nextSetBit(int i)
+    {
+        if (i < 0)
+            throw new IndexOutOfBoundsException("i=" + i);
+        char key = high(i);
+        int index = indexOf(key);
+        if (index >= 0)
+        {
+            int next = _containers[index].nextSetBit(low(i));
+            if (next >= 0)
+                return combine(key, next);
+            index++;
+        }
+        else
+        {
+            index = -index - 1;
+        }
+        return index < _size ? combine(_keys[index], _containers[index].nextSetBit(0)) : -1;
+    }
+
+    /** Intersect this set with b, in place */
+    public void and(RoaringBitSet b)
+    {
+        checkSealed();
+        int size = 0;
+        int i = 0, j = 0;
+        while (i < _size && j < b._size)
+        {
+            if (_keys[i] == b._keys[j])
+            {
+                Container c = _containers[i].and(b._containers[j]);
+                if (c.cardinality() > 0)
+                {
+                    _keys[size] = _keys[i];
+                    _containers[size++] = c;
+                }
+                i++;
+                j++;
+            }
+            else if (_keys[i] < b._keys[j])
+            {
+                i++;
+            }
+            else
+            {
+                j++;
+            }
+        }
+        Arrays.fill(_containers, size, _size, null);
+        _size = size;
+    }
+
+    /** Add all the bits of b to this set, in place */
+    public void or(RoaringBitSet b)
+    {
+        checkSealed();
+        RoaringBitSet result = new RoaringBitSet(_size + b._size);
+        int i = 0, j = 0;
+        while (i < _size || j < b._size)
+        {
+            if (j == b._size || (i < _size && _keys[i] < b._keys[j]))
+            {
+                result.append(_keys[i], _containers[i]);
+                i++;
+            }
+            else if (i == _size || b._keys[j] < _keys[i])
+            {
+                result.append(b._keys[j], b._containers[j].copy());
+                j++;
+            }
+            else
+            {
+                result.append(_keys[i], _containers[i].or(b._containers[j]));
+                i++;
+                j++;
+            }
+        }
+        _keys = result._keys;
+        _containers = result._containers;
+        _size = result._size;
+    }
+
+    public boolean intersects(RoaringBitSet b)
+    {
+        int i = 0, j = 0;
+        while (i < _size && j < b._size)
+        {
+            if (_keys[i] == b._keys[j])
+            {
+                if (_containers[i].intersects(b._containers[j]))
+                    return true;
+                i++;
+                j++;
+            }
+            else if (_keys[i] < b._keys[j])
+            {
+                i++;
+            }
+            else
+            {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    /** Size of the intersection of a and b, without materializing it */
+    public static int andCardinality(RoaringBitSet a, RoaringBitSet b)
+    {
+        int count = 0;
+        int i = 0, j = 0;
+        while (i < a._size && j < b._size)
+        {
+            if (a._keys[i] == b._keys[j])
+            {
+                count += a._containers[i].andCardinality(b._containers[j]);
+                i++;
+                j++;
+            }
+            else if (a._keys[i] < b._keys[j])
+            {
+                i++;
+            }
+            else
+            {
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /** Make the set read-only, converting each container to its most compact form */
+    public void seal()
+    {
+        if (_sealed)
+            return;
+        for (int i = 0; i < _size; i++)
+            _containers[i] = _containers[i].optimize();
+        if (_keys.length > _size)
+        {
+            _keys = Arrays.copyOf(_keys, _size);
+            _containers = Arrays.copyOf(_containers, _size);
+        }
+        _sealed = true;
+    }
+
+    public boolean isSealed()
+    {
+        return _sealed;
+    }
+
+    /** @return a modifiable copy, even if this set is sealed */
+    @Override
+    public RoaringBitSet clone()
+    {
+        RoaringBitSet copy = new RoaringBitSet(_size);
+        for (int i = 0; i < _size; i++)
+            copy.append(_keys[i], _containers[i].copy());
+        return copy;
+    }
+
+    public long getMemorySizeInBytes()
+    {
+        long size = 32 + 2L * _keys.length + 8L * _containers.length;
+        for (int i = 0; i < _size; i++)
+            size += _containers[i].getMemorySizeInBytes();
+        return size;
+    }
+
+    /**
+     * Write the set in a compact binary form (big-endian, matching DataOutput and the ByteBuffer default), which
+     * {@link #readFrom} can decode directly from a memory-mapped file.
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        out.writeInt(_size);
+        for (int i = 0; i < _size; i++)
+        {
+            out.writeChar(_keys[i]);
+            _containers[i].writeTo(out);
+        }
+    }
+
+    /**
+     * Decode a set written by {@link #writeTo}, starting at the buffer's position and leaving the position just past
+     * it. The returned set is sealed.
+     * @throws IllegalArgumentException if the data isn't a serialized set
+     */
+    public static RoaringBitSet readFrom(ByteBuffer buf)
+    {
+        int size = buf.getInt();
+        if (size < 0 || size > CHUNK_SIZE)
+            throw new IllegalArgumentException("Invalid container count: " + size);
+        RoaringBitSet set = new RoaringBitSet(size);
+        for (int i = 0; i < size; i++)
+        {
+            char key = buf.getChar();
+            set.append(key, Container.readFrom(buf));
+        }
+        if (set._keys.length > set._size)
+        {
+            set._keys = Arrays.copyOf(set._keys, set._size);
+            set._containers = Arrays.copyOf(set._containers, set._size);
+        }
+        set._sealed = true;
+        return set;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("{");
+        String comma = "";
+        for (int i = nextSetBit(0); i >= 0 && sb.length() < 1000; i = i == Integer.MAX_VALUE ? -1 : nextSetBit(i + 1))
+        {
+            sb.append(comma).append(i);
+            comma = ", ";
+        }
+        return sb.append("}").toString();
+    }
+
+
+    /**
+     * The values of one 65536-value chunk, as ints in [0, 65535]. Array and bitmap containers are modified in place by
+     * add() and remove(), which return the container to use from then on (possibly converted to the other kind). The
+     * binary operations never modify either operand.
+     */
+    private abstract static class Container implements Serializable
+    {
+        abstract boolean contains(int x);
+        abstract Container add(int x);
+        abstract Container remove(int x);
+        abstract int cardinality();
+        /** @return the first value at or after x, or -1 */
+        abstract int nextSetBit(int x);
+        /** @return the number of values in [start, end] */
+        abstract int cardinalityInRange(int start, int end);
+        abstract Container and(Container o);
+        abstract Container or(Container o);
+        abstract int andCardinality(Container o);
+        abstract boolean intersects(Container o);
+        abstract Container copy();
+        abstract long getMemorySizeInBytes();
+        abstract void writeTo(DataOutput out) throws IOException;
+
+        static Container readFrom(ByteBuffer buf)
+        {
+            byte type = buf.get();
+            switch (type)
+            {
+                case ARRAY:
+                {
+                    char[] values = new char[checkLength(buf.getInt(), ARRAY_MAX)];
+                    buf.asCharBuffer().get(values);
+                    buf.position(buf.position() + 2 * values.length);
+                    return new ArrayContainer(values, values.length);
+                }
+                case BITMAP:
+                {
+                    int cardinality = checkLength(buf.getInt(), CHUNK_SIZE);
+                    long[] words = new long[CHUNK_SIZE / 64];
+                    buf.asLongBuffer().get(words);
+                    buf.position(buf.position() + 8 * words.length);
+                    return new BitmapContainer(words, cardinality);
+                }
+                case RUN:
+                {
+                    int cardinality = checkLength(buf.getInt(), CHUNK_SIZE);
+                    char[] starts = new char[checkLength(buf.getInt(), CHUNK_SIZE / 2)];
+                    char[] ends = new char[starts.length];
+                    buf.asCharBuffer().get(starts).get(ends);
+                    buf.position(buf.position() + 4 * starts.length);
+                    return new RunContainer(starts, ends, cardinality);
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown container type: " + type);
+            }
+        }
+
+        private static int checkLength(int length, int max)
+        {
+            if (length < 0 || length > max)
+                throw new IllegalArgumentException("Invalid container length: " + length);
+            return length;
+        }
+
+        /** @return the smallest representation of these values; may be a (read-only) run container */
+        Container optimize()
+        {
+            int runs = RunContainer.countRuns(this);
+            if (RunContainer.getMemorySizeInBytes(runs) < getMemorySizeInBytes())
+                return new RunContainer(this, runs);
+            return this;
+        }
+    }
+
+
+    private static class ArrayContainer extends Container
+    {
+        private char[] _values;
+        private int _cardinality;
+
+        ArrayContainer()
+        {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality)
+        {
+            _values = values;
+            _cardinality = cardinality;
+        }
+
+        private int search(int x)
+        {
+            return Arrays.binarySearch(_values, 0, _cardinality, (char)x);
+        }
+
+        // index of the first value >= x
+        private int lowerBound(int x)
+        {
+            if (x >= CHUNK_SIZE)
+                return _cardinality;
+            int i = search(x);
+            return i >= 0 ? i : -i - 1;
+        }
+
+        @Override
+        boolean contains(int x)
+        {
+            return search(x) >= 0;
+        }
+
+        @Override
+        Container add(int x)
+        {
+            int i = search(x);
+            if (i >= 0)
+                return this;
+            if (_cardinality == ARRAY_MAX)
+                return toBitmap().add(x);
+            i = -i - 1;
+            if (_cardinality == _values.length)
+                _values = Arrays.copyOf(_values, Math.min(ARRAY_MAX, _values.length * 2));
+            System.arraycopy(_values, i, _values, i + 1, _cardinality - i);
+            _values[i] = (char)x;
+            _cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(int x)
+        {
+            int i = search(x);
+            if (i >= 0)
+            {
+                System.arraycopy(_values, i + 1, _values, i, _cardinality - i - 1);
+                _cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return _cardinality;
+        }
+
+        @Override
+        int nextSetBit(int x)
+        {
+            int i = lowerBound(x);
+            return i < _cardinality ? _values[i] : -1;
+        }
+
+        @Override
+        int cardinalityInRange(int start, int end)
+        {
+            return lowerBound(end + 1) - lowerBound(start);
+        }
+
+        @Override
+        Container and(Container o)
+        {
+            char[] result = new char[Math.min(_cardinality, o.cardinality())];
+            int n = 0;
+            if (o instanceof ArrayContainer)
+            {
+                ArrayContainer a = (ArrayContainer)o;
+                int i = 0, j = 0;
+                while (i < _cardinality && j < a._cardinality)
+                {
+                    if (_values[i] == a._values[j])
+                    {
+                        result[n++] = _values[i];
+                        i++;
+                        j++;
+                    }
+                    else if (_values[i] < a._values[j])
+                        i++;
+                    else
+                        j++;
+                }
+            }
+            else
+            {
+                for (int i = 0; i < _cardinality && n < result.length; i++)
+                    if (o.contains(_values[i]))
+                        result[n++] = _values[i];
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container or(Container o)
+        {
+            if (!(o instanceof ArrayContainer))
+                return o.or(this);
+
+            ArrayContainer a = (ArrayContainer)o;
+            if (_cardinality + a._cardinality > ARRAY_MAX)
+            {
+                Container result = toBitmap();
+                for (int j = 0; j < a._cardinality; j++)
+                    result = result.add(a._values[j]);
+                return result;
+            }
+
+            char[] result = new char[_cardinality + a._cardinality];
+            int n = 0, i = 0, j = 0;
+            while (i < _cardinality || j < a._cardinality)
+            {
+                if (j == a._cardinality || (i < _cardinality && _values[i] < a._values[j]))
+                    result[n++] = _values[i++];
+                else if (i == _cardinality || a._values[j] < _values[i])
+                    result[n++] = a._values[j++];
+                else
+                {
+                    result[n++] = _values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        int andCardinality(Container o)
+        {
+            int count = 0;
+            if (o instanceof ArrayContainer)
+            {
+                ArrayContainer a = (ArrayContainer)o;
+                int i = 0, j = 0;
+                while (i < _cardinality && j < a._cardinality)
+                {
+                    if (_values[i] == a._values[j])
+                    {
+                        count++;
+                        i++;
+                        j++;
+                    }
+                    else if (_values[i] < a._values[j])
+                        i++;
+                    else
+                        j++;
+                }
+            }
+            else
+            {
+                for (int i = 0; i < _cardinality; i++)
+                    if (o.contains(_values[i]))
+                        count++;
+            }
+            return count;
+        }
+
+        @Override
+        boolean intersects(Container o)
+        {
+            for (int i = 0; i < _cardinality; i++)
+                if (o.contains(_values[i]))
+                    return true;
+            return false;
+        }
+
+        @Override
+        Container copy()
+        {
+            return new ArrayContainer(Arrays.copyOf(_values, Math.max(4, _cardinality)), _cardinality);
+        }
+
+        @Override
+        long getMemorySizeInBytes()
+        {
+            return 24 + 2L * _values.length;
+        }
+
+        @Override
+        void writeTo(DataOutput out) throws IOException
+        {
+            out.writeByte(ARRAY);
+            out.writeInt(_cardinality);
+            for (int i = 0; i < _cardinality; i++)
+                out.writeChar(_values[i]);
+        }
+
+        @Override
+        Container optimize()
+        {
+            Container c = super.optimize();
+            if (c == this && _values.length > _cardinality)
+                _values = Arrays.copyOf(_values, _cardinality);
+            return c;
+        }
+
+        BitmapContainer toBitmap()
+        {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < _cardinality; i++)
+                bitmap.add(_values[i]);
+            return bitmap;
+        }
+    }
+
+
+    private static class BitmapContainer extends Container
+    {
+        private final long[] _words;
+        private int _cardinality;
+
+        BitmapContainer()
+        {
+            this(new long[CHUNK_SIZE / 64], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality)
+        {
+            _words = words;
+            _cardinality = cardinality;
+        }
+
+        @Override
+        boolean contains(int x)
+        {
+            return 0 != (_words[x >>> 6] & (1L << x));
+        }
+
+        @Override
+        Container add(int x)
+        {
+            long bit = 1L << x;
+            if (0 == (_words[x >>> 6] & bit))
+            {
+                _words[x >>> 6] |= bit;
+                _cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(int x)
+        {
+            long bit = 1L << x;
+            if (0 != (_words[x >>> 6] & bit))
+            {
+                _words[x >>> 6] &= ~bit;
+                _cardinality--;
+                if (_cardinality <= ARRAY_MAX)
+                    return toArray();
+            }
+            return this;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return _cardinality;
+        }
+
+        @Override
+        int nextSetBit(int x)
+        {
+            if (x >= CHUNK_SIZE)
+                return -1;
+            int w = x >>> 6;
+            long word = _words[w] & (-1L << x);
+            while (true)
+            {
+                if (0 != word)
+                    return (w << 6) + Long.numberOfTrailingZeros(word);
+                if (++w == _words.length)
+                    return -1;
+                word = _words[w];
+            }
+        }
+
+        @Override
+        int cardinalityInRange(int start, int end)
+        {
+            int first = start >>> 6;
+            int last = end >>> 6;
+            long firstMask = -1L << start;
+            long lastMask = -1L >>> (63 - (end & 63));
+            if (first == last)
+                return Long.bitCount(_words[first] & firstMask & lastMask);
+            int count = Long.bitCount(_words[first] & firstMask);
+            for (int w = first + 1; w < last; w++)
+                count += Long.bitCount(_words[w]);
+            return count + Long.bitCount(_words[last] & lastMask);
+        }
+
+        @Override
+        Container and(Container o)
+        {
+            if (!(o instanceof BitmapContainer))
+                return o.and(this);
+
+            long[] b = ((BitmapContainer)o)._words;
+            long[] result = new long[_words.length];
+            int cardinality = 0;
+            for (int w = 0; w < result.length; w++)
+            {
+                result[w] = _words[w] & b[w];
+                cardinality += Long.bitCount(result[w]);
+            }
+            BitmapContainer bitmap = new BitmapContainer(result, cardinality);
+            return cardinality <= ARRAY_MAX ? bitmap.toArray() : bitmap;
+        }
+
+        @Override
+        Container or(Container o)
+        {
+            if (o instanceof BitmapContainer)
+            {
+                long[] b = ((BitmapContainer)o)._words;
+                long[] result = new long[_words.length];
+                int cardinality = 0;
+                for (int w = 0; w < result.length; w++)
+                {
+                    result[w] = _words[w] | b[w];
+                    cardinality += Long.bitCount(result[w]);
+                }
+                return new BitmapContainer(result, cardinality);
+            }
+
+            Container result = copy();
+            for (int x = o.nextSetBit(0); x >= 0; x = o.nextSetBit(x + 1))
+                result = result.add(x);
+            return result;
+        }
+
+        @Override
+        int andCardinality(Container o)
+        {
+            if (!(o instanceof BitmapContainer))
+                return o.andCardinality(this);
+
+            long[] b = ((BitmapContainer)o)._words;
+            int count = 0;
+            for (int w = 0; w < _words.length; w++)
+                count += Long.bitCount(_words[w] & b[w]);
+            return count;
+        }
+
+        @Override
+        boolean intersects(Container o)
+        {
+            if (!(o instanceof BitmapContainer))
+                return o.intersects(this);
+
+            long[] b = ((BitmapContainer)o)._words;
+            for (int w = 0; w < _words.length; w++)
+                if (0 != (_words[w] & b[w]))
+                    return true;
+            return false;
+        }
+
+        @Override
+        Container copy()
+        {
+            return new BitmapContainer(_words.clone(), _cardinality);
+        }
+
+        @Override
+        long getMemorySizeInBytes()
+        {
+            return 24 + 8L * _words.length;
+        }
+
+        @Override
+        void writeTo(DataOutput out) throws IOException
+        {
+            out.writeByte(BITMAP);
+            out.writeInt(_cardinality);
+            for (long word : _words)
+                out.writeLong(word);
+        }
+
+        ArrayContainer toArray()
+        {
+            char[] values = new char[_cardinality];
+            int n = 0;
+            for (int x = nextSetBit(0); x >= 0; x = nextSetBit(x + 1))
+                values[n++] = (char)x;
+            return new ArrayContainer(values, n);
+        }
+    }
+
+
+    /** Read-only container of sorted, non-adjacent runs; only created by seal() */
+    private static class RunContainer extends Container
+    {
+        private final char[] _starts;
+        private final char[] _ends;     // inclusive
+        private final int _cardinality;
+
+        RunContainer(Container from, int runs)
+        {
+            _starts = new char[runs];
+            _ends = new char[runs];
+            int n = 0;
+            int x = from.nextSetBit(0);
+            while (x >= 0)
+            {
+                int end = x;
+                while (end + 1 < CHUNK_SIZE && from.contains(end + 1))
+                    end++;
+                _starts[n] = (char)x;
+                _ends[n++] = (char)end;
+                x = from.nextSetBit(end + 1);
+            }
+            _cardinality = from.cardinality();
+        }
+
+        RunContainer(char[] starts, char[] ends, int cardinality)
+        {
+            _starts = starts;
+            _ends = ends;
+            _cardinality = cardinality;
+        }
+
+        static int countRuns(Container c)
+        {
+            int runs = 0;
+            int previous = -2;
+            for (int x = c.nextSetBit(0); x >= 0; x = c.nextSetBit(x + 1))
+            {
+                if (x != previous + 1)
+                    runs++;
+                previous = x;
+            }
+            return runs;
+        }
+
+        static long getMemorySizeInBytes(int runs)
+        {
+            return 40 + 4L * runs;
+        }
+
+        // index of the last run starting at or before x, or -1
+        private int runIndex(int x)
+        {
+            int i = Arrays.binarySearch(_starts, (char)Math.min(x, CHUNK_SIZE - 1));
+            return i >= 0 ? i : -i - 2;
+        }
+
+        @Override
+        boolean contains(int x)
+        {
+            int i = runIndex(x);
+            return i >= 0 && x <= _ends[i];
+        }
+
+        @Override
+        Container add(int x)
+        {
+            return toModifiable().add(x);
+        }
+
+        @Override
+        Container remove(int x)
+        {
+            return toModifiable().remove(x);
+        }
+
+        @Override
+        int cardinality()
+        {
+            return _cardinality;
+        }
+
+        @Override
+        int nextSetBit(int x)
+        {
+            if (x >= CHUNK_SIZE)
+                return -1;
+            int i = runIndex(x);
+            if (i >= 0 && x <= _ends[i])
+                return x;
+            return i + 1 < _starts.length ? _starts[i + 1] : -1;
+        }
+
+        @Override
+        int cardinalityInRange(int start, int end)
+        {
+            int count = 0;
+            for (int i = Math.max(0, runIndex(start)); i < _starts.length && _starts[i] <= end; i++)
+                count += Math.max(0, Math.min(end, _ends[i]) - Math.max(start, _starts[i]) + 1);
+            return count;
+        }
+
+        @Override
+        Container and(Container o)
+        {
+            Container result = new ArrayContainer();
+            for (int i = 0; i < _starts.length; i++)
+            {
+                for (int x = o.nextSetBit(_starts[i]); x >= 0 && x <= _ends[i]; x = o.nextSetBit(x + 1))
+                    result = result.add(x);
+            }
+            return result;
+        }
+
+        @Override
+        Container or(Container o)
+        {
+            return toModifiable().or(o);
+        }
+
+        @Override
+        int andCardinality(Container o)
+        {
+            int count = 0;
+            for (int i = 0; i < _starts.length; i++)
+                count += o.cardinalityInRange(_starts[i], _ends[i]);
+            return count;
+        }
+
+        @Override
+        boolean intersects(Container o)
+        {
+            for (int i = 0; i < _starts.length; i++)
+            {
+                int x = o.nextSetBit(_starts[i]);
+                if (x >= 0 && x <= _ends[i])
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        Container copy()
+        {
+            return toModifiable();
+        }
+
+        @Override
+        long getMemorySizeInBytes()
+        {
+            return getMemorySizeInBytes(_starts.length);
+        }
+
+        @Override
+        void writeTo(DataOutput out) throws IOException
+        {
+            out.writeByte(RUN);
+            out.writeInt(_cardinality);
+            out.writeInt(_starts.length);
+            for (char start : _starts)
+                out.writeChar(start);
+            for (char end : _ends)
+                out.writeChar(end);
+        }
+
+        @Override
+        Container optimize()
+        {
+            return this;
+        }
+
+        private Container toModifiable()
+        {
+            Container c = _cardinality <= ARRAY_MAX ? new ArrayContainer(new char[_cardinality], 0) : new BitmapContainer();
+            for (int i = 0; i < _starts.length; i++)
+                for (int x = _starts[i]; x <= _ends[i]; x++)
+                    c = c.add(x);
+            return c;
+        }
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        private static final Logger LOG = Logger.getLogger(RoaringBitSet.TestCase.class);
+
+        private static RoaringBitSet create(int... values)
+        {
+            RoaringBitSet set = new RoaringBitSet();
+            for (int v : values)
+                set.set(v);
+            return set;
+        }
+
+        // Random mix of sparse, dense and run-heavy chunks, mirrored in a SparseBitSet
+        private static void fill(Random random, RoaringBitSet roaring, SparseBitSet sparse, int chunks)
+        {
+            for (int chunk = 0; chunk < chunks; chunk++)
+            {
+                int base = random.nextInt(64) * CHUNK_SIZE;
+                int kind = random.nextInt(3);
+                int count = kind == 0 ? random.nextInt(100) : kind == 1 ? 5000 + random.nextInt(20000) : 1;
+                for (int i = 0; i < count; i++)
+                {
+                    int start = base + random.nextInt(CHUNK_SIZE);
+                    int length = kind == 2 ? random.nextInt(CHUNK_SIZE / 2) : 1;
+                    for (int v = start; v < Math.min(start + length, base + CHUNK_SIZE); v++)
+                    {
+                        roaring.set(v);
+                        sparse.set(v);
+                    }
+                }
+            }
+        }
+
+        private static void assertSame(SparseBitSet expected, RoaringBitSet actual)
+        {
+            assertEquals(expected.cardinality(), actual.cardinality());
+            int e = expected.nextSetBit(0);
+            int a = actual.nextSetBit(0);
+            while (e >= 0)
+            {
+                assertEquals(e, a);
+                e = expected.nextSetBit(e + 1);
+                a = actual.nextSetBit(a + 1);
+            }
+            assertEquals(-1, a);
+        }
+
+        @Test
+        public void testBasics()
+        {
+            RoaringBitSet set = create(0, 5, 65535, 65536, 1_000_000, Integer.MAX_VALUE);
+            assertEquals(6, set.cardinality());
+            assertTrue(set.get(65535));
+            assertTrue(set.get(Integer.MAX_VALUE));
+            assertFalse(set.get(6));
+            assertFalse(set.get(-1));
+            assertEquals(5, set.nextSetBit(1));
+            assertEquals(65536, set.nextSetBit(65536));
+            assertEquals(1_000_000, set.nextSetBit(65537));
+            assertEquals(Integer.MAX_VALUE, set.nextSetBit(1_000_001));
+
+            set.clear(65536);
+            assertFalse(set.get(65536));
+            assertEquals(1_000_000, set.nextSetBit(65536));
+            set.clear();
+            assertTrue(set.isEmpty());
+            assertEquals(-1, set.nextSetBit(0));
+        }
+
+        @Test
+        public void testContainerConversions()
+        {
+            RoaringBitSet set = new RoaringBitSet();
+            for (int i = 0; i < 10_000; i++)
+                set.set(i * 2);
+            assertEquals(10_000, set.cardinality());
+            for (int i = 0; i < 9_000; i++)
+                set.clear(i * 2);
+            assertEquals(1_000, set.cardinality());
+            assertEquals(18_000, set.nextSetBit(0));
+
+            RoaringBitSet runs = new RoaringBitSet();
+            for (int i = 100; i < 60_000; i++)
+                runs.set(i);
+            long before = runs.getMemorySizeInBytes();
+            runs.seal();
+            assertTrue(runs.getMemorySizeInBytes() < before);
+            assertEquals(59_900, runs.cardinality());
+            assertTrue(runs.get(100));
+            assertFalse(runs.get(99));
+            assertEquals(100, runs.nextSetBit(0));
+            assertEquals(59_900, andCardinality(runs, runs));
+
+            RoaringBitSet copy = runs.clone();
+            copy.clear(100);
+            assertEquals(59_899, copy.cardinality());
+            assertTrue(runs.get(100));
+        }
+
+        @Test(expected = IllegalStateException.class)
+        public void testSealed()
+        {
+            RoaringBitSet set = create(1, 2, 3);
+            set.seal();
+            set.set(4);
+        }
+
+        @Test
+        public void testOperations()
+        {
+            Random random = new Random(13);
+            for (int round = 0; round < 10; round++)
+            {
+                RoaringBitSet a = new RoaringBitSet(), b = new RoaringBitSet();
+                SparseBitSet sa = new SparseBitSet(), sb = new SparseBitSet();
+                fill(random, a, sa, 8);
+                fill(random, b, sb, 8);
+                if (round % 2 == 1)
+                {
+                    a.seal();
+                    b.seal();
+                }
+
+                SparseBitSet sAnd = sa.clone();
+                sAnd.and(sb);
+                RoaringBitSet and = a.clone();
+                and.and(b);
+                assertSame(sAnd, and);
+                assertEquals(sAnd.cardinality(), andCardinality(a, b));
+                assertEquals(sa.intersects(sb), a.intersects(b));
+
+                SparseBitSet sOr = sa.clone();
+                sOr.or(sb);
+                RoaringBitSet or = a.clone();
+                or.or(b);
+                assertSame(sOr, or);
+            }
+        }
+
+        @Test
+        public void testSerialization() throws Exception
+        {
+            RoaringBitSet set = create(1, 2, 3, 100_000);
+            set.seal();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+            {
+                out.writeObject(set);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+            {
+                RoaringBitSet copy = (RoaringBitSet)in.readObject();
+                assertEquals(4, copy.cardinality());
+                assertTrue(copy.get(100_000));
+            }
+        }
+
+        @Test
+        public void testWriteTo() throws Exception
+        {
+            Random random = new Random(7);
+            for (int round = 0; round < 10; round++)
+            {
+                RoaringBitSet set = new RoaringBitSet();
+                SparseBitSet expected = new SparseBitSet();
+                fill(random, set, expected, 8);
+                if (round % 2 == 0)
+                    set.seal();
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(bytes))
+                {
+                    out.writeInt(42);
+                    set.writeTo(out);
+                    out.writeInt(43);
+                }
+
+                ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+                assertEquals(42, buf.getInt());
+                RoaringBitSet copy = RoaringBitSet.readFrom(buf);
+                assertEquals("Position should be just past the set", 43, buf.getInt());
+                assertTrue(copy.isSealed());
+                assertSame(expected, copy);
+                assertSame(expected, copy.clone());
+            }
+        }
+
+        // Compare intersection counting with SparseBitSet; timings are logged rather than asserted
+        @Test
+        public void testCompareWithSparseBitSet()
+        {
+            Random random = new Random(42);
+            RoaringBitSet a = new RoaringBitSet(), b = new RoaringBitSet();
+            SparseBitSet sa = new SparseBitSet(), sb = new SparseBitSet();
+            fill(random, a, sa, 32);
+            fill(random, b, sb, 32);
+            a.seal();
+            b.seal();
+            sa.seal();
+            sb.seal();
+
+            long start = System.nanoTime();
+            int roaringCount = 0;
+            for (int i = 0; i < 20; i++)
+                roaringCount = andCardinality(a, b);
+            long roaringNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int sparseCount = 0;
+            for (int i = 0; i < 20; i++)
+            {
+                SparseBitSet t = sa.clone();
+                t.and(sb);
+                sparseCount = t.cardinality();
+            }
+            long sparseNanos = System.nanoTime() - start;
+
+            assertEquals(sparseCount, roaringCount);
+            LOG.info("Intersection count of " + a.cardinality() + " and " + b.cardinality() + " bits: RoaringBitSet " +
+                    roaringNanos / 1_000_000 + "ms (" + a.getMemorySizeInBytes() + " bytes), SparseBitSet " +
+                    sparseNanos / 1_000_000 + "ms (" + sa.getMemorySizeInBytes() + " bytes)");
+        }
+    }
+}
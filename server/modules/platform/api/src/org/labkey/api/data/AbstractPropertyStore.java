@@ -122,6 +122,7 @@ public abstract class AbstractPropertyStore implements PropertyStore
         deleteSets.add(c);
         appendWhereFilter(deleteSets);
         new SqlExecutor(_prop.getSchema()).execute(deleteSets);
+        PropertyManager.invalidateResultCache();
 
         _cache.removeAll(c);
     }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.data;
+
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.data.dialect.SqlDialect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generator for very long in-clauses on databases that support array parameters (PostgreSQL). The whole collection
+ * is bound as a single typed JDBC array and compared with "= ANY(?)", so the statement text is the same regardless
+ * of the number of values: one round-trip, no temp table to create, index, track and drop, and a plan that the
+ * driver's statement cache can reuse. NULL elements behave just like NULLs in an IN list.
+ *
+ * Returns null for collections that aren't all Integers, all Longs or all Strings, in which case the caller
+ * falls back to another generator.
+ */
+public class ArrayParameterInClauseGenerator implements InClauseGenerator
+{
+    @Override
+    public @Nullable SQLFragment appendInClauseSql(SQLFragment sql, @NotNull Collection<?> params)
+    {
+        List<Object> values = collect(params);
+        if (null == values)
+            return null;
+
+        sql.append(" = ANY(?)");
+        sql.add(values);
+        return sql;
+    }
+
+    /**
+     * Unique values of a single supported type, with any NULL last: the JDBC array type is inferred from the first
+     * element (see ConnectionWrapper.createArrayOf()).
+     * @return null if the values are of mixed or unsupported types, or are all NULL
+     */
+    static @Nullable List<Object> collect(@NotNull Collection<?> params)
+    {
+        Class<?> type = null;
+        boolean hasNull = false;
+        Set<Object> unique = new LinkedHashSet<>();
+
+        for (Object param : params)
+        {
+            if (null == param)
+            {
+                hasNull = true;
+                continue;
+            }
+            if (null == type)
+            {
+                type = param.getClass();
+                if (type != Integer.class && type != Long.class && type != String.class)
+                    return null;
+            }
+            else if (param.getClass() != type)
+            {
+                return null;
+            }
+            unique.add(param);
+        }
+
+        if (unique.isEmpty())
+            return null;
+
+        List<Object> values = new ArrayList<>(unique);
+        if (hasNull)
+            values.add(null);
+        return values;
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        private static final Logger LOG = Logger.getLogger(ArrayParameterInClauseGenerator.TestCase.class);
+
+        @Test
+        public void testCollect()
+        {
+            assertEquals(Arrays.asList(3, 1, null), collect(Arrays.asList(3, null, 1, 3)));
+            assertEquals(Arrays.asList("b", "a"), collect(Arrays.asList("b", "a", "b")));
+            assertEquals(Arrays.asList(5L), collect(Arrays.asList(5L)));
+            assertNull(collect(Arrays.asList(1, "a")));
+            assertNull(collect(Arrays.asList(1, 2L)));
+            assertNull(collect(Arrays.asList(1.5, 2.5)));
+            assertNull(collect(Arrays.asList(null, null)));
+        }
+
+        @Test
+        public void testQuery()
+        {
+            DbScope scope = CoreSchema.getInstance().getSchema().getScope();
+            if (!scope.getSqlDialect().isPostgreSQL())
+                return;
+
+            SQLFragment ints = new SQLFragment("SELECT a FROM (SELECT 1 AS a UNION SELECT 2 AS a UNION SELECT 7 AS a) b WHERE a");
+            assertEquals(2, new SqlSelector(scope, new ArrayParameterInClauseGenerator().appendInClauseSql(ints, Arrays.asList(1, 2, 3, null))).getRowCount());
+
+            SQLFragment strings = new SQLFragment("SELECT a FROM (SELECT 'a' AS a UNION SELECT 'b' AS a UNION SELECT 'g' AS a) b WHERE a");
+            assertEquals(2, new SqlSelector(scope, new ArrayParameterInClauseGenerator().appendInClauseSql(strings, Arrays.asList("a", "b", "c"))).getRowCount());
+
+            SQLFragment notIn = new SQLFragment("SELECT a FROM (SELECT 1 AS a UNION SELECT 2 AS a UNION SELECT 7 AS a) b WHERE NOT (a");
+            new ArrayParameterInClauseGenerator().appendInClauseSql(notIn, Arrays.asList(1, 2));
+            notIn.append(")");
+            assertEquals(1, new SqlSelector(scope, notIn).getRowCount());
+        }
+
+        // Compare against the temp table path that PostgreSQL used previously for long lists. Timings are logged
+        // rather than asserted, since they depend on the server.
+        @Test
+        public void testCompareWithTempTable()
+        {
+            DbScope scope = CoreSchema.getInstance().getSchema().getScope();
+            SqlDialect dialect = scope.getSqlDialect();
+            if (!dialect.isPostgreSQL())
+                return;
+
+            final int size = 20_000;
+            List<Integer> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                values.add(i * 2);
+            String source = "SELECT x FROM generate_series(1, " + size + ") AS x WHERE x";
+
+            for (int round = 0; round < 3; round++)
+            {
+                // Shuffle in a distinct value each round so the temp table generator can't reuse its cached table
+                values.set(0, -round - 1);
+
+                long start = System.nanoTime();
+                long arrayCount = new SqlSelector(scope, new ArrayParameterInClauseGenerator().appendInClauseSql(new SQLFragment(source), values)).getRowCount();
+                long arrayNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long tempTableCount = new SqlSelector(scope, new TempTableInClauseGenerator().appendInClauseSql(new SQLFragment(source), values)).getRowCount();
+                long tempTableNanos = System.nanoTime() - start;
+
+                assertEquals(tempTableCount, arrayCount);
+                LOG.info("IN clause with " + size + " values: array parameter " + arrayNanos / 1_000_000 + "ms, temp table " + tempTableNanos / 1_000_000 + "ms");
+            }
+        }
+    }
+}
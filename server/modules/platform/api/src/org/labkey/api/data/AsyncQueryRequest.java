@@ -43,7 +43,9 @@ public class AsyncQueryRequest<T>
 
     @Nullable
     private final StackTraceElement[] _creationStackTrace;
+    @Nullable
     private final HttpServletResponse _rootResponse;
+    private int _queryTimeout = 0;
 
     boolean _cancelled;
     @Nullable Statement _statement;
@@ -58,6 +60,16 @@ public class AsyncQueryRequest<T>
         _rootResponse = getRootResponse(response);
     }
 
+    /**
+     * For queries that run on a background thread, independent of any request. The caller is responsible for
+     * calling {@link #cancel()}; there's no client to ping.
+     */
+    public AsyncQueryRequest()
+    {
+        _creationStackTrace = MiniProfiler.getTroubleshootingStackTrace();
+        _rootResponse = null;
+    }
+
     private HttpServletResponse getRootResponse(HttpServletResponse response)
     {
         // Look through the response objects to find the one that's closest to the "real" one. We can use it
@@ -197,7 +209,24 @@ public class AsyncQueryRequest<T>
         notify();
     }
 
-    synchronized private void cancel()
+    /** Statement timeout, in seconds, applied to statements executed on behalf of this request. 0 means no limit. */
+    public int getQueryTimeout()
+    {
+        return _queryTimeout;
+    }
+
+    public void setQueryTimeout(int queryTimeout)
+    {
+        _queryTimeout = queryTimeout;
+    }
+
+    synchronized public boolean isCancelled()
+    {
+        return _cancelled;
+    }
+
+    /** Cancel the executing statement, if any, and prevent new statements from starting */
+    synchronized public void cancel()
     {
         _cancelled = true;
         if (_statement != null)
@@ -217,6 +246,9 @@ public class AsyncQueryRequest<T>
     /** @return the IOException from failing to write a space to the client, or null if the client is still connected */
     private IOException checkCancelled()
     {
+        if (null == _rootResponse)
+            return null;
+
         try
         {
             // Issue 37051: don't write to the response unless committed (status code and http headers have been written)
@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.data;
+
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.cache.Cache;
+import org.labkey.api.cache.CacheManager;
+import org.labkey.api.query.QueryService;
+import org.labkey.api.security.User;
+import org.labkey.api.util.ContextListener;
+import org.labkey.api.util.ShutdownListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes grid row counts in the background so a page of rows can render without waiting for the COUNT(*) query.
+ * A DataRegion submits its count and renders a token; the client then polls {@link #getRowCount} until the count
+ * is complete. Polls return immediately, so no request thread waits on a count. Counts run on a small bounded pool,
+ * each with its own statement timeout, and completed counts are cached for a minute per user and query SQL (which
+ * includes the filters and container filter), so paging through a grid only counts once.
+ *
+ * Every submission gets its own token, even when it shares a running or completed count with another page showing the
+ * same grid. A count is cancelled once every page waiting for it has either asked to cancel (e.g., when navigating
+ * away) or stopped polling for a while, which covers clients that disappear without saying goodbye.
+ */
+public class AsyncRowCounter
+{
+    private static final Logger LOG = Logger.getLogger(AsyncRowCounter.class);
+
+    private static final int THREADS = 4;
+    private static final int MAX_QUEUED = 100;
+    private static final int QUERY_TIMEOUT_SECONDS = 120;
+    private static final long ABANDONED_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    // Completed counts and running counts, keyed by user and query
+    private static final Cache<String, RowCount> COMPLETED = CacheManager.getStringKeyCache(5000, CacheManager.MINUTE, "Async row counts");
+    private static final Map<String, CountTask> RUNNING = new ConcurrentHashMap<>();
+
+    // Submission token -> the count it's waiting for. Outlives the count, so a client can still fetch a completed count.
+    private static final Cache<String, Submission> SUBMISSIONS = CacheManager.getStringKeyCache(10000, 5 * CacheManager.MINUTE, "Async row count submissions");
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(MAX_QUEUED), r -> {
+        Thread t = new Thread(r, "AsyncRowCounter-" + THREAD_COUNT.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    static
+    {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+        ContextListener.addShutdownListener(new ShutdownListener()
+        {
+            @Override
+            public String getName()
+            {
+                return "Async row counter";
+            }
+
+            @Override
+            public void shutdownPre()
+            {
+                RUNNING.values().forEach(CountTask::cancel);
+                EXECUTOR.shutdownNow();
+            }
+
+            @Override
+            public void shutdownStarted()
+            {
+            }
+        });
+    }
+
+    public enum Status
+    {
+        /** The count is available */
+        COMPLETE,
+        /** Queued or executing */
+        RUNNING,
+        /** Failed, timed out, or was cancelled; the client should stop asking */
+        UNAVAILABLE
+    }
+
+    public static class RowCount
+    {
+        private final @NotNull Status _status;
+        private final @Nullable Long _rowCount;
+
+        private RowCount(@NotNull Status status, @Nullable Long rowCount)
+        {
+            _status = status;
+            _rowCount = rowCount;
+        }
+
+        public @NotNull Status getStatus()
+        {
+            return _status;
+        }
+
+        public @Nullable Long getRowCount()
+        {
+            return _rowCount;
+        }
+    }
+
+    private static class Submission
+    {
+        private final String _countKey;
+        private final int _userId;
+
+        private Submission(String countKey, int userId)
+        {
+            _countKey = countKey;
+            _userId = userId;
+        }
+    }
+
+    private static class CountTask implements Runnable
+    {
+        private final String _countKey;
+        private final TableSelector _selector;
+        private final AsyncQueryRequest<Long> _request = new AsyncQueryRequest<>();
+        private final Object _environment;
+        private final Map<String, Long> _lastPolled = new HashMap<>(); // Submission token -> time of its last poll, guarded by this
+
+        /** @param environment the submitting thread's QueryService environment, to run the count with */
+        private CountTask(String countKey, TableSelector selector, Object environment)
+        {
+            _countKey = countKey;
+            _selector = selector;
+            _environment = environment;
+            _request.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+        }
+
+        @Override
+        public void run()
+        {
+            QueryService qs = QueryService.get();
+            qs.copyEnvironment(_environment);
+            try
+            {
+                if (!_request.isCancelled())
+                {
+                    _selector.setAsyncRequest(_request);
+                    long count = _selector.getRowCount();
+                    COMPLETED.put(_countKey, new RowCount(Status.COMPLETE, count));
+                }
+            }
+            catch (Throwable t)
+            {
+                // Cancellation surfaces as a SQLException. No one is waiting for a cancelled count, and a new count of
+                // the same query may already have started, so only record failures.
+                if (_request.isCancelled())
+                {
+                    LOG.debug("Row count " + _countKey + " cancelled");
+                }
+                else
+                {
+                    LOG.warn("Row count " + _countKey + " failed: " + t.getMessage());
+                    COMPLETED.put(_countKey, new RowCount(Status.UNAVAILABLE, null));
+                }
+            }
+            finally
+            {
+                qs.clearEnvironment();
+                DbScope.finishedWithThread();
+                RUNNING.remove(_countKey, this);
+            }
+        }
+
+        /** @return false if the count has already been cancelled, so can't be waited for */
+        synchronized boolean subscribe(String token)
+        {
+            if (_request.isCancelled())
+                return false;
+            _lastPolled.put(token, System.currentTimeMillis());
+            return true;
+        }
+
+        synchronized void polled(String token)
+        {
+            _lastPolled.computeIfPresent(token, (t, time) -> System.currentTimeMillis());
+        }
+
+        synchronized void unsubscribe(String token)
+        {
+            _lastPolled.remove(token);
+            if (_lastPolled.isEmpty())
+                cancel();
+        }
+
+        synchronized void unsubscribeAbandoned(long cutoff)
+        {
+            if (_lastPolled.values().removeIf(time -> time < cutoff) && _lastPolled.isEmpty())
+            {
+                LOG.debug("Cancelling abandoned row count " + _countKey);
+                cancel();
+            }
+        }
+
+        void cancel()
+        {
+            _request.cancel();
+        }
+
+        boolean isCancelled()
+        {
+            return _request.isCancelled();
+        }
+    }
+
+    private AsyncRowCounter()
+    {
+    }
+
+    /**
+     * Start counting the rows the selector would return, unless the same user is already counting, or has recently
+     * counted, the same query.
+     * @return a token, unique to this call, to pass to {@link #getRowCount} and {@link #cancel}, or null if the count
+     * can't be started because the pool is saturated, in which case the caller should render without a count
+     */
+    public static @Nullable String submit(@NotNull User user, @NotNull TableSelector selector, @Nullable Map<String, Object> parameters)
+    {
+        reapAbandoned();
+
+        String countKey = getCountKey(user, selector.getSql(), parameters);
+        String token = UUID.randomUUID().toString();
+
+        RowCount completed = COMPLETED.get(countKey);
+        if (null != completed && completed.getStatus() == Status.COMPLETE)
+        {
+            SUBMISSIONS.put(token, new Submission(countKey, user.getUserId()));
+            return token;
+        }
+
+        CountTask task = new CountTask(countKey, selector, QueryService.get().cloneEnvironment());
+        task.subscribe(token);
+        CountTask existing = RUNNING.putIfAbsent(countKey, task);
+
+        if (null != existing)
+        {
+            if (existing.subscribe(token))
+            {
+                SUBMISSIONS.put(token, new Submission(countKey, user.getUserId()));
+                return token;
+            }
+
+            // Everyone else gave up on it just now; start over
+            if (!RUNNING.replace(countKey, existing, task))
+                return null;
+        }
+
+        COMPLETED.remove(countKey);
+        SUBMISSIONS.put(token, new Submission(countKey, user.getUserId()));
+        try
+        {
+            EXECUTOR.execute(task);
+            return token;
+        }
+        catch (RejectedExecutionException e)
+        {
+            RUNNING.remove(countKey, task);
+            SUBMISSIONS.remove(token);
+            LOG.debug("Row count not started; " + RUNNING.size() + " counts already in progress");
+            return null;
+        }
+    }
+
+    /**
+     * Get the current state of a count, without waiting for it.
+     * @return null if the token is unknown, has expired, or belongs to a different user
+     */
+    public static @Nullable RowCount getRowCount(@NotNull User user, @NotNull String token)
+    {
+        Submission submission = SUBMISSIONS.get(token);
+        if (null == submission || submission._userId != user.getUserId())
+            return null;
+
+        CountTask task = RUNNING.get(submission._countKey);
+        if (null != task)
+            task.polled(token);
+
+        RowCount count = COMPLETED.get(submission._countKey);
+        if (null != count)
+            return count;
+
+        if (null != task && !task.isCancelled())
+            return new RowCount(Status.RUNNING, null);
+
+        return null;
+    }
+
+    /**
+     * Stop waiting for a count, e.g. because the client navigated away. The count itself is cancelled once no other
+     * submission is waiting for it. No-op if the token is unknown or belongs to a different user.
+     */
+    public static void cancel(@NotNull User user, @NotNull String token)
+    {
+        Submission submission = SUBMISSIONS.get(token);
+        if (null == submission || submission._userId != user.getUserId())
+            return;
+
+        SUBMISSIONS.remove(token);
+        CountTask task = RUNNING.get(submission._countKey);
+        if (null != task)
+            task.unsubscribe(token);
+    }
+
+    // Cancel counts the clients have stopped asking about; they'd otherwise hold a thread until the statement timeout
+    private static void reapAbandoned()
+    {
+        long cutoff = System.currentTimeMillis() - ABANDONED_MILLIS;
+        for (CountTask task : RUNNING.values())
+            task.unsubscribeAbandoned(cutoff);
+    }
+
+    static String getCountKey(User user, SQLFragment sql, @Nullable Map<String, Object> parameters)
+    {
+        String key = user.getUserId() + "\u0000" + sql.toDebugString() + "\u0000" + (null == parameters ? "" : parameters.toString());
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testCountKey()
+        {
+            User a = new User("a@a.test", 1001);
+            User b = new User("b@b.test", 1002);
+            SQLFragment sql = new SQLFragment("SELECT * FROM t WHERE x = ?", 5);
+
+            assertEquals(getCountKey(a, sql, null), getCountKey(a, new SQLFragment("SELECT * FROM t WHERE x = ?", 5), null));
+            assertNotEquals(getCountKey(a, sql, null), getCountKey(b, sql, null));
+            assertNotEquals(getCountKey(a, sql, null), getCountKey(a, new SQLFragment("SELECT * FROM t WHERE x = ?", 6), null));
+            assertNotEquals(getCountKey(a, sql, null), getCountKey(a, sql, Map.of("p", 1)));
+        }
+
+        @Test
+        public void testUnknownToken()
+        {
+            User a = new User("a@a.test", 1001);
+            assertNull(getRowCount(a, UUID.randomUUID().toString()));
+            cancel(a, UUID.randomUUID().toString());
+        }
+
+        @Test
+        public void testSharedCount()
+        {
+            // Never run, so needs neither a selector nor the query service
+            CountTask task = new CountTask("key", null, null);
+            assertTrue(task.subscribe("a"));
+            assertTrue(task.subscribe("b"));
+
+            // One page leaving doesn't cancel a count another page is still waiting for
+            task.unsubscribe("a");
+            assertFalse(task.isCancelled());
+
+            // Still polled recently, so not abandoned
+            task.unsubscribeAbandoned(System.currentTimeMillis() - ABANDONED_MILLIS);
+            assertFalse(task.isCancelled());
+
+            task.unsubscribeAbandoned(System.currentTimeMillis() + 1);
+            assertTrue(task.isCancelled());
+            assertFalse(task.subscribe("c"));
+        }
+    }
+}
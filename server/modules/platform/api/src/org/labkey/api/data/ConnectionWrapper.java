@@ -94,6 +94,9 @@ public class ConnectionWrapper implements java.sql.Connection
 
     private volatile boolean _allowClose = true;
 
+    private @Nullable PreparedStatementCache _statementCache = null;
+    private boolean _statementCacheResolved = false;
+
     public ConnectionWrapper(Connection conn, DbScope scope, Integer spid, ConnectionType type, @Nullable Logger log)
     {
         _connection = conn;
@@ -232,6 +235,9 @@ public class ConnectionWrapper implements java.sql.Connection
         checkForSuspiciousClose();
         try
         {
+            StatementWrapper cached = prepareCachedStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            if (null != cached)
+                return cached;
             return getStatementWrapper(this, _connection.prepareStatement(sql), sql);
         }
         catch (SQLException e)
@@ -553,6 +559,47 @@ public class ConnectionWrapper implements java.sql.Connection
         }
     }
 
+    /** The statement cache for the underlying physical connection, or null if statements aren't cached on this connection */
+    @Nullable PreparedStatementCache getStatementCache()
+    {
+        if (!_statementCacheResolved)
+        {
+            // PostgreSQL's driver keeps server-side prepared plans per statement, so that's where reuse pays off
+            if (null != _scope && _scope.getSqlDialect().isPostgreSQL())
+            {
+                Connection physical = DbScope.getDelegate(_connection);
+                if (null != physical)
+                    _statementCache = PreparedStatementCache.get(physical);
+            }
+            _statementCacheResolved = true;
+        }
+        return _statementCache;
+    }
+
+    /** @return a statement from (and returned on close to) the statement cache, or null if this SQL isn't cached */
+    private @Nullable StatementWrapper prepareCachedStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException
+    {
+        PreparedStatementCache cache = getStatementCache();
+        if (null == cache || null != _originalSqlException || !PreparedStatementCache.isCacheable(sql))
+            return null;
+
+        PreparedStatementCache.Key key = new PreparedStatementCache.Key(sql, resultSetType, resultSetConcurrency);
+        PreparedStatement stmt = cache.checkOut(key);
+        if (null == stmt)
+            stmt = cache.getConnection().prepareStatement(sql, resultSetType, resultSetConcurrency);
+
+        final PreparedStatement cached = stmt;
+        StatementWrapper wrapper = getStatementWrapper(this, cached, sql);
+        wrapper.setCloseHandler(() -> {
+            // Don't reuse statements from a connection that has reported an error; it may be in a bad state
+            if (null == _originalSqlException)
+                cache.checkIn(key, cached);
+            else
+                PreparedStatementCache.close(cached);
+        });
+        return wrapper;
+    }
+
     private StatementWrapper getStatementWrapper(ConnectionWrapper conn, Statement stmt)
     {
         if (null == _scope)
@@ -590,6 +637,9 @@ public class ConnectionWrapper implements java.sql.Connection
         checkForSuspiciousClose();
         try
         {
+            StatementWrapper cached = prepareCachedStatement(sql, resultSetType, resultSetConcurrency);
+            if (null != cached)
+                return cached;
             return getStatementWrapper(this, _connection.prepareStatement(sql, resultSetType, resultSetConcurrency), sql);
         }
         catch (SQLException e)
@@ -532,11 +532,7 @@ public class Container implements Serializable, Comparable<Container>, Securable
      */
     public boolean hasAncestor(Container possibleAncestor)
     {
-        if (isRoot() || getParent() == null)
-            return false;
-        if (getParent().equals(possibleAncestor))
-            return true;
-        return getParent().hasAncestor(possibleAncestor);
+        return ContainerManager.isDescendant(this, possibleAncestor);
     }
 
     public Container getChild(String folderName)
@@ -1186,17 +1182,7 @@ public class Container implements Serializable, Comparable<Container>, Securable
 
     public boolean isDescendant(Container container)
     {
-        if (null == container)
-            return false;
-
-        Container cur = getParent();
-        while (null != cur)
-        {
-            if (cur.equals(container))
-                return true;
-            cur = cur.getParent();
-        }
-        return false;
+        return ContainerManager.isDescendant(this, container);
     }
 
     public Map<String, Set<String>> getModuleDependencyMap()
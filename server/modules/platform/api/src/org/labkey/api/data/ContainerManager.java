@@ -16,6 +16,7 @@
 
 package org.labkey.api.data;
 
+import org.apache.commons.collections4.ListValuedMap;
 import org.apache.commons.collections4.MultiValuedMap;
 import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
 import org.apache.commons.lang3.StringUtils;
@@ -109,6 +110,8 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -144,6 +147,13 @@ public class ContainerManager
 
     private static final Cache<String, Object> CACHE = CacheManager.getStringKeyCache(CacheManager.UNLIMITED, CacheManager.DAY, "Containers");
     private static final ReentrantLock DATABASE_QUERY_LOCK = new ReentrantLock();
+
+    // Snapshot of the whole hierarchy, dropped on any change and reloaded when next needed
+    private static final AtomicReference<ContainerTree> TREE = new AtomicReference<>();
+    private static final AtomicLong TREE_VERSION = new AtomicLong();
+    private static final Object TREE_LOAD_LOCK = new Object();
+    private static final Runnable CLEAR_TREE = ContainerManager::clearTree;
+
     public static final String FOLDER_TYPE_PROPERTY_SET_NAME = "folderType";
     public static final String FOLDER_TYPE_PROPERTY_NAME = "name";
     public static final String FOLDER_TYPE_PROPERTY_TABTYPE_OVERRIDDEN = "ctFolderTypeOverridden";
@@ -788,7 +798,7 @@ public class ContainerManager
     {
         List<Container> children = new ArrayList<>();
         for (Container child : getChildrenMap(parent).values())
-            if (includedTypes.contains(child.getContainerType().getName()) && child.hasPermission(u, perm, roles))
+            if (includedTypes.contains(child.getContainerType().getName()) && hasPermission(child, u, perm, roles))
                 children.add(child);
 
         return children;
@@ -822,7 +832,7 @@ public class ContainerManager
 
         for (Container container : allChildren)
         {
-            if (typesIncluded.contains(container.getContainerType().getName()) && container.hasPermission(u, perm, roles))
+            if (typesIncluded.contains(container.getContainerType().getName()) && hasPermission(container, u, perm, roles))
             {
                 result.add(container);
             }
@@ -831,6 +841,12 @@ public class ContainerManager
         return result;
     }
 
+    // Checks on many containers at once go through the effective permission index, which contextual roles bypass
+    private static boolean hasPermission(Container c, User u, Class<? extends Permission> perm, @Nullable Set<Role> roles)
+    {
+        return null == roles ? EffectivePermissionCache.hasPermission(c, u, perm) : c.hasPermission(u, perm, roles);
+    }
+
     // Returns the next available child container name based on the baseName
     public static String getAvailableChildContainerName(Container c, String baseName)
     {
@@ -853,7 +869,7 @@ public class ContainerManager
     public static boolean hasTreePermission(Container root, User u,  Class<? extends Permission> perm)
     {
         for (Container c : getAllChildren(root))
-            if (!c.hasPermission(u, perm))
+            if (!EffectivePermissionCache.hasPermission(c, u, perm))
                 return false;
 
         return true;
@@ -869,6 +885,11 @@ public class ContainerManager
             return Collections.emptyMap();
         }
 
+        ContainerTree tree = getTree(true);
+        Map<String, Container> children = null == tree ? null : tree.getChildren(parent);
+        if (null != children)
+            return children;
+
         List<String> childIds = (List<String>) CACHE.get(CONTAINER_CHILDREN_PREFIX + parent.getId());
         if (null == childIds)
         {
@@ -924,6 +945,11 @@ public class ContainerManager
         if (null != d)
             return d;
 
+        ContainerTree tree = getTree(false);
+        d = null == tree ? null : tree.getForId(id);
+        if (null != d)
+            return d;
+
         //if the input string is not a GUID, just return null,
         //so that we don't get a SQLException when the database
         //tries to convert it to a unique identifier.
@@ -974,6 +1000,11 @@ public class ContainerManager
         if (null != d)
             return d;
 
+        ContainerTree tree = getTree(false);
+        d = null == tree ? null : tree.getForPath(path);
+        if (null != d)
+            return d;
+
         // Special case for ROOT -- we want to throw instead of returning null
         if (path.equals(Path.rootPath))
         {
@@ -1080,6 +1111,7 @@ public class ContainerManager
                 new SqlExecutor(CORE.getSchema()).execute(insertSQL);
             }
 
+            SelectorResultCache.invalidate(CORE.getTableInfoContainerAliases());
             transaction.commit();
         }
     }
@@ -1611,6 +1643,7 @@ public class ContainerManager
 
             SqlExecutor sqlExecutor = new SqlExecutor(CORE.getSchema());
             sqlExecutor.execute("DELETE FROM " + CORE.getTableInfoContainerAliases() + " WHERE ContainerId=?", c.getId());
+            SelectorResultCache.invalidate(CORE.getTableInfoContainerAliases());
             sqlExecutor.execute("DELETE FROM " + CORE.getTableInfoContainers() + " WHERE EntityId=?", c.getId());
             // now that the container is actually gone, delete all ACLs (better to have an ACL w/o object than object w/o ACL)
             SecurityPolicyManager.removeAll(c);
@@ -1748,7 +1781,7 @@ public class ContainerManager
         return toString(c.getParsedPath());
     }
 
-    private static String toString(Path p)
+    static String toString(Path p)
     {
         return StringUtils.strip(p.toString(), "/").toLowerCase();
     }
@@ -1767,6 +1800,7 @@ public class ContainerManager
     private static void _clearChildrenFromCache(Container c)
     {
         CACHE.remove(CONTAINER_CHILDREN_PREFIX + c.getId());
+        invalidateTree();
         navTreeManageUncache(c);
     }
 
@@ -1785,6 +1819,7 @@ public class ContainerManager
 
         // blow away the all children caches
         CACHE.removeUsingFilter(new Cache.StringPrefixFilter(CONTAINER_CHILDREN_PREFIX));
+        invalidateTree();
 
         navTreeManageUncache(c);
     }
@@ -1793,12 +1828,125 @@ public class ContainerManager
     public static void clearCache()
     {
         CACHE.clear();
+        invalidateTree();
+
+        // Moves change which policies containers inherit
+        EffectivePermissionCache.clear();
 
         // UNDONE: NavTreeManager should register a ContainerListener
         NavTreeManager.uncacheAll();
     }
 
 
+    /**
+     * @param load whether to load the tree if there's no current snapshot
+     * @return the current snapshot of the container tree, or null if there isn't one and load is false. Also null
+     * inside a transaction, since it may have changed containers in ways the shared snapshot doesn't reflect.
+     */
+    private static @Nullable ContainerTree getTree(boolean load)
+    {
+        if (CORE.getSchema().getScope().isTransactionActive())
+            return null;
+
+        ContainerTree tree = TREE.get();
+        if (null != tree || !load)
+            return tree;
+
+        // One thread loads while any others wait for it, rather than all of them querying at once
+        synchronized (TREE_LOAD_LOCK)
+        {
+            tree = TREE.get();
+            if (null == tree)
+            {
+                long version = TREE_VERSION.get();
+                tree = loadTree();
+
+                // Publish unless a change came in while loading. Checking after the set means a concurrent clear can't
+                // be lost: either we see its new version and take the snapshot back, or it clears after our set.
+                if (null != tree)
+                {
+                    TREE.set(tree);
+                    if (version != TREE_VERSION.get())
+                        TREE.compareAndSet(tree, null);
+                }
+            }
+        }
+
+        return tree;
+    }
+
+
+    private static @Nullable ContainerTree loadTree()
+    {
+        try (DbScope.Transaction t = CORE.getSchema().getScope().ensureTransaction(DATABASE_QUERY_LOCK))
+        {
+            List<Container> loaded = new SqlSelector(CORE.getSchema(),
+                    "SELECT * FROM " + CORE.getTableInfoContainers() + " ORDER BY SortOrder, LOWER(Name)").getArrayList(Container.class);
+
+            ListValuedMap<String, Container> childrenByParentId = new ArrayListValuedHashMap<>();
+            Container root = null;
+
+            for (Container c : loaded)
+            {
+                // Keep using any instance that's already cached
+                Container cached = getFromCacheId(c.getId());
+                Container parent = c.getParent();
+
+                if (null == cached)
+                    cached = _addToCache(c);
+
+                if (c.isRoot())
+                    root = cached;
+                else if (null != parent)
+                    childrenByParentId.put(parent.getId(), cached);
+            }
+
+            // No database changes to commit, but need to decrement the transaction counter
+            t.commit();
+
+            return null == root ? null : new ContainerTree(root, childrenByParentId);
+        }
+    }
+
+
+    private static void clearTree()
+    {
+        TREE_VERSION.incrementAndGet();
+        TREE.set(null);
+    }
+
+
+    private static void invalidateTree()
+    {
+        clearTree();
+
+        // Other threads may load the tree again before this transaction commits, so clear it again once it has
+        DbScope.Transaction t = CORE.getSchema().getScope().getCurrentTransaction();
+        if (null != t)
+            t.addCommitTask(CLEAR_TREE, DbScope.CommitTaskOption.POSTCOMMIT);
+    }
+
+
+    /** True if ancestor is a parent of c, or a parent-of-a-parent, etc. */
+    static boolean isDescendant(@NotNull Container c, @Nullable Container ancestor)
+    {
+        if (null == ancestor)
+            return false;
+
+        ContainerTree tree = getTree(false);
+        if (null != tree && tree.contains(c) && tree.contains(ancestor))
+            return tree.isDescendant(c, ancestor);
+
+        for (Container cur = c.getParent(); null != cur; cur = cur.getParent())
+        {
+            if (cur.equals(ancestor))
+                return true;
+        }
+
+        return false;
+    }
+
+
     private static void navTreeManageUncache(Container c)
     {
         // UNDONE: NavTreeManager should register a ContainerListener
@@ -1838,6 +1986,11 @@ public class ContainerManager
     /** including root node */
     public static Set<Container> getAllChildren(Container root)
     {
+        ContainerTree tree = getTree(true);
+        Set<Container> subtree = null == tree ? null : tree.getSubtree(root);
+        if (null != subtree)
+            return subtree;
+
         Set<Container> children = _getAllChildrenFromCache(root);
         if (children != null)
             return children;
@@ -1943,7 +2096,7 @@ public class ContainerManager
 
         return containers
             .stream()
-            .filter(c -> c.hasPermission(user, perm))
+            .filter(c -> EffectivePermissionCache.hasPermission(c, user, perm))
             .collect(Collectors.toSet());
     }
 
@@ -2234,7 +2387,9 @@ public class ContainerManager
 
     public static String[] getAliasesForContainer(Container c)
     {
-        return new SqlSelector(CORE.getSchema(), new SQLFragment("SELECT Path FROM " + CORE.getTableInfoContainerAliases() + " WHERE ContainerId = ? ORDER BY LOWER(Path)", c.getId())).getArray(String.class);
+        return new SqlSelector(CORE.getSchema(), new SQLFragment("SELECT Path FROM " + CORE.getTableInfoContainerAliases() + " WHERE ContainerId = ? ORDER BY LOWER(Path)", c.getId()))
+                .setResultCache(CORE.getTableInfoContainerAliases())
+                .getArray(String.class);
     }
 
     @Nullable
@@ -2280,11 +2435,20 @@ public class ContainerManager
     @Nullable
     private static Container getForPathAlias(String path)
     {
-        Container[] ret = new SqlSelector(CORE.getSchema(),
-                "SELECT * FROM " + CORE.getTableInfoContainers() + " c, " + CORE.getTableInfoContainerAliases() + " ca WHERE ca.ContainerId = c.EntityId AND LOWER(ca.path) = LOWER(?)",
-                path).getArray(Container.class);
+        // Every request for a path that doesn't exist checks here for each of its ancestors, and aliases rarely change.
+        // Resolve the id through the container cache, so only the alias table needs to be tracked.
+        String[] ids = new SqlSelector(CORE.getSchema(),
+                "SELECT ContainerId FROM " + CORE.getTableInfoContainerAliases() + " WHERE LOWER(Path) = LOWER(?)",
+                path).setResultCache(CORE.getTableInfoContainerAliases()).getArray(String.class);
+
+        for (String id : ids)
+        {
+            Container c = getForId(id);
+            if (null != c)
+                return c;
+        }
 
-        return ret.length == 0 ? null : ret[0];
+        return null;
     }
 
     /**
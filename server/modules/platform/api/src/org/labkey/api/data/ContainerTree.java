@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.data;
+
+import org.apache.commons.collections4.ListValuedMap;
+import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.util.GUID;
+import org.labkey.api.util.Path;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the entire container hierarchy, built from a single query and replaced as a whole when any
+ * container changes. Containers are numbered in post-order (children in sort order, each followed by its parent), so
+ * every subtree occupies a contiguous range that ends with its root. That makes subtree listing a view over an array,
+ * and subtree membership and "is descendant of" a pair of integer comparisons.
+ */
+public class ContainerTree
+{
+    private final Container[] _postOrder;
+    private final Map<String, Node> _nodes;
+    private final Map<String, Container> _byPath;
+
+    private static class Node
+    {
+        private final Container _container;
+        private final Map<String, Container> _children;
+        private int _first;     // Post-order index of the first container in this subtree
+        private int _index;     // Post-order index of this container, the last in its subtree
+
+        private Node(Container container, Map<String, Container> children)
+        {
+            _container = container;
+            _children = children;
+        }
+    }
+
+    /**
+     * @param childrenByParentId each container's children in sort order, keyed by parent entity id. Containers that
+     *                           aren't reachable from the root are left out.
+     */
+    ContainerTree(@NotNull Container root, ListValuedMap<String, Container> childrenByParentId)
+    {
+        List<Container> postOrder = new ArrayList<>();
+        _nodes = new HashMap<>();
+        _byPath = new HashMap<>();
+
+        // Iterative, so depth isn't limited by the stack
+        Deque<Node> nodes = new ArrayDeque<>();
+        Deque<Iterator<Container>> remainingChildren = new ArrayDeque<>();
+        enter(root, childrenByParentId, postOrder.size(), nodes, remainingChildren);
+
+        while (!nodes.isEmpty())
+        {
+            Iterator<Container> children = remainingChildren.peek();
+
+            if (children.hasNext())
+            {
+                Container child = children.next();
+
+                // Shouldn't happen, but don't let a cycle in the data loop forever
+                if (!_nodes.containsKey(child.getId()))
+                    enter(child, childrenByParentId, postOrder.size(), nodes, remainingChildren);
+            }
+            else
+            {
+                Node node = nodes.pop();
+                remainingChildren.pop();
+                node._index = postOrder.size();
+                postOrder.add(node._container);
+            }
+        }
+
+        _postOrder = postOrder.toArray(new Container[0]);
+    }
+
+    private void enter(Container c, ListValuedMap<String, Container> childrenByParentId, int first, Deque<Node> nodes, Deque<Iterator<Container>> remainingChildren)
+    {
+        List<Container> children = childrenByParentId.get(c.getId());
+        Map<String, Container> childMap = Collections.emptyMap();
+
+        if (!children.isEmpty())
+        {
+            // Preserve the order defined by the user - they're not necessarily alphabetical
+            childMap = new LinkedHashMap<>();
+            for (Container child : children)
+                childMap.put(child.getName(), child);
+            childMap = Collections.unmodifiableMap(childMap);
+        }
+
+        Node node = new Node(c, childMap);
+        node._first = first;
+        _nodes.put(c.getId(), node);
+        _byPath.put(ContainerManager.toString(c.getParsedPath()), c);
+
+        nodes.push(node);
+        remainingChildren.push(children.iterator());
+    }
+
+    int size()
+    {
+        return _postOrder.length;
+    }
+
+    boolean contains(@NotNull Container c)
+    {
+        return _nodes.containsKey(c.getId());
+    }
+
+    @Nullable Container getForId(String id)
+    {
+        Node node = _nodes.get(id);
+        return null == node ? null : node._container;
+    }
+
+    @Nullable Container getForPath(Path path)
+    {
+        return _byPath.get(ContainerManager.toString(path));
+    }
+
+    /** @return the container's children, mapped by name in sort order, or null if the container isn't in this tree */
+    @Nullable Map<String, Container> getChildren(@NotNull Container parent)
+    {
+        Node node = _nodes.get(parent.getId());
+        return null == node ? null : node._children;
+    }
+
+    /** @return the container and all its descendants, children before parents, or null if it isn't in this tree */
+    @Nullable Set<Container> getSubtree(@NotNull Container root)
+    {
+        Node node = _nodes.get(root.getId());
+        return null == node ? null : new Subtree(node);
+    }
+
+    /** Both containers must be in this tree */
+    boolean isDescendant(@NotNull Container c, @NotNull Container ancestor)
+    {
+        Node node = _nodes.get(c.getId());
+        Node ancestorNode = _nodes.get(ancestor.getId());
+        return node != ancestorNode && isInSubtree(node, ancestorNode);
+    }
+
+    private static boolean isInSubtree(@Nullable Node node, Node root)
+    {
+        return null != node && root._first <= node._index && node._index <= root._index;
+    }
+
+    private class Subtree extends AbstractSet<Container>
+    {
+        private final Node _root;
+
+        private Subtree(Node root)
+        {
+            _root = root;
+        }
+
+        @Override
+        public @NotNull Iterator<Container> iterator()
+        {
+            return Arrays.asList(_postOrder).subList(_root._first, _root._index + 1).iterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return _root._index - _root._first + 1;
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            return o instanceof Container && isInSubtree(_nodes.get(((Container) o).getId()), _root);
+        }
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testTree()
+        {
+            Container root = ContainerManager.createFakeContainer(null, null);
+            Container home = ContainerManager.createFakeContainer("home", root);
+            Container shared = ContainerManager.createFakeContainer("Shared", root);
+            Container a = ContainerManager.createFakeContainer("a", home);
+            Container b = ContainerManager.createFakeContainer("b", home);
+            Container a1 = ContainerManager.createFakeContainer("a1", a);
+            Container orphan = ContainerManager.createFakeContainer("orphan", null);
+
+            ListValuedMap<String, Container> children = new ArrayListValuedHashMap<>();
+            children.putAll(root.getId(), List.of(home, shared));
+            children.putAll(home.getId(), List.of(b, a));
+            children.put(a.getId(), a1);
+            children.put(GUID.makeGUID(), orphan);
+
+            ContainerTree tree = new ContainerTree(root, children);
+            assertEquals(6, tree.size());
+            assertFalse(tree.contains(orphan));
+
+            // Children before parents, siblings in the given order
+            assertEquals(List.of(b, a1, a, home, shared, root), new ArrayList<>(tree.getSubtree(root)));
+            assertEquals(List.of(b, a1, a, home), new ArrayList<>(tree.getSubtree(home)));
+            assertEquals(List.of(a1), new ArrayList<>(tree.getSubtree(a1)));
+
+            Set<Container> homeTree = tree.getSubtree(home);
+            assertTrue(homeTree.contains(a1));
+            assertTrue(homeTree.contains(home));
+            assertFalse(homeTree.contains(shared));
+            assertFalse(homeTree.contains(orphan));
+
+            assertTrue(tree.isDescendant(a1, root));
+            assertTrue(tree.isDescendant(a1, home));
+            assertFalse(tree.isDescendant(home, home));
+            assertFalse(tree.isDescendant(home, a1));
+            assertFalse(tree.isDescendant(b, a));
+
+            assertEquals(List.of("b", "a"), new ArrayList<>(tree.getChildren(home).keySet()));
+            assertTrue(tree.getChildren(a1).isEmpty());
+            assertNull(tree.getChildren(orphan));
+
+            assertSame(a1, tree.getForPath(Path.parse("/HOME/a/a1")));
+            assertSame(shared, tree.getForId(shared.getId()));
+            assertNull(tree.getForId(orphan.getId()));
+        }
+    }
+}
@@ -129,6 +129,8 @@ public class DataRegion extends DisplayElement
     private boolean _errorCreatingResults = false;
 
     private Long _totalRows = null; // total rows in the query or null if unknown
+    private boolean _asyncRowCount = false;
+    private String _rowCountToken = null; // token for fetching a row count that's being computed in the background
     private Integer _rowCount = null; // number of rows in the result set or null if unknown
     private boolean _complete = false; // true if all rows are in the ResultSet
     private List<ButtonBarConfig> _buttonBarConfigs = new ArrayList<>();
@@ -834,7 +836,23 @@ public class DataRegion extends DisplayElement
         assert results != null;
         _complete = results.isComplete();
 
-        boolean countAggregate = getMaxRows() > 0 && !_complete && _showPagination && _showPaginationCount;
+        // After a keyset seek, even the last page needs a count, since the rows before it weren't skipped by an offset
+        boolean countAggregate = getMaxRows() > 0 && (!_complete || ctx.isKeysetSeek()) && _showPagination && _showPaginationCount;
+
+        // Don't block rendering on the count; the client fetches it once the background count completes
+        if (countAggregate && _asyncRowCount)
+        {
+            countAggregate = false;
+            _rowCountToken = ctx.submitRowCount(_displayColumns, getTable(), getSettings(), getName(), getQueryParameters());
+            AsyncRowCounter.RowCount rowCount = null == _rowCountToken ? null : AsyncRowCounter.getRowCount(ctx.getViewContext().getUser(), _rowCountToken);
+            if (null != rowCount && rowCount.getStatus() == AsyncRowCounter.Status.COMPLETE)
+            {
+                _totalRows = rowCount.getRowCount();
+                AsyncRowCounter.cancel(ctx.getViewContext().getUser(), _rowCountToken);
+                _rowCountToken = null;
+            }
+        }
+
         countAggregate = countAggregate || (getMaxRows() == Table.ALL_ROWS && getTable() != null);
 
         _summaryStatsProviders = ctx.getBaseSummaryStatsProviders();
@@ -899,6 +917,24 @@ public class DataRegion extends DisplayElement
             _totalRows = totalRows;
     }
 
+    public boolean isAsyncRowCount()
+    {
+        return _asyncRowCount;
+    }
+
+    /** Compute the total row count in the background instead of before rendering, see {@link AsyncRowCounter} */
+    public void setAsyncRowCount(boolean asyncRowCount)
+    {
+        _asyncRowCount = asyncRowCount;
+    }
+
+    /** @return the token for a row count still being computed in the background, or null */
+    @Nullable
+    public String getRowCountToken()
+    {
+        return _rowCountToken;
+    }
+
     public class ParameterViewBean
     {
         public String dataRegionDomId;
@@ -1070,7 +1106,7 @@ public class DataRegion extends DisplayElement
         if (usesResultSet() && rs instanceof TableResultSet && ((TableResultSet) rs).getSize() != -1)
         {
             _rowCount = ((TableResultSet) rs).getSize();
-            if (_complete && _totalRows == null)
+            if (_complete && _totalRows == null && !ctx.isKeysetSeek())
                 _totalRows = getOffset() + _rowCount.intValue();
         }
 
@@ -1377,6 +1413,7 @@ public class DataRegion extends DisplayElement
         dataRegionJSON.put("offset", getOffset());
         dataRegionJSON.put("maxRows", getMaxRows());
         dataRegionJSON.put("totalRows", _totalRows);
+        dataRegionJSON.put("rowCountToken", _rowCountToken);
         dataRegionJSON.put("rowCount", _rowCount);
         dataRegionJSON.put("showPagination", getShowPagination());
         dataRegionJSON.put("showPaginationCount", getShowPaginationCount());
@@ -29,6 +29,7 @@ import org.labkey.api.data.ConnectionWrapper.Closer;
 import org.labkey.api.data.dialect.SqlDialect;
 import org.labkey.api.data.dialect.SqlDialect.DataSourceProperties;
 import org.labkey.api.data.dialect.SqlDialectManager;
+import org.labkey.api.data.queryprofiler.QueryProfiler;
 import org.labkey.api.module.Module;
 import org.labkey.api.module.ModuleLoader;
 import org.labkey.api.module.ModuleResourceCache;
@@ -1016,10 +1017,12 @@ public class DbScope
     protected ConnectionWrapper getPooledConnection(ConnectionType type, @Nullable Logger log) throws SQLException
     {
         Connection conn;
+        long start = System.nanoTime();
 
         try
         {
             conn = _dataSource.getConnection();
+            QueryProfiler.getInstance().trackConnectionWait(this, System.nanoTime() - start);
         }
         catch (SQLException e)
         {
@@ -1166,6 +1169,8 @@ public class DbScope
     public void invalidateSchema(String schemaName, DbSchemaType type)
     {
         QueryService.get().updateLastModified();
+        PreparedStatementCache.invalidateAll();
+        SelectorResultCache.clear();
         _schemaCache.remove(schemaName, type);
         invalidateAllTables(schemaName, type);
     }
@@ -1184,6 +1189,7 @@ public class DbScope
     public void invalidateTable(String schemaName, String tableName, DbSchemaType type)
     {
         QueryService.get().updateLastModified();
+        PreparedStatementCache.invalidateAll();
         _tableCache.remove(schemaName, tableName, type);
         _schemaCache.remove(schemaName, type);
     }
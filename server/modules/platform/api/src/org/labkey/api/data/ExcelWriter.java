@@ -124,7 +124,15 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
             {
                 // Always use a streaming workbook, set to flush to disk every 1,000 rows, #14960.
                 // Note: if we ever need a non-streaming workbook, create a new enum that constructs an XSSFWorkbook.
-                return new SXSSFWorkbook(1000);
+                return new SXSSFWorkbook(WINDOW_SIZE);
+            }
+
+            @Override
+            public Workbook createStreamingWorkbook()
+            {
+                // Keep only a small window of rows in memory and gzip the temp sheet files, since a streaming export
+                // may span several sheets of a million rows each
+                return new SXSSFWorkbook(null, STREAMING_WINDOW_SIZE, true);
             }
 
             @Override
@@ -159,6 +167,13 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
         };
 
         public abstract Workbook createWorkbook();
+
+        /** @return a workbook that holds a bounded number of rows in memory, for exports that may exceed a single sheet */
+        public Workbook createStreamingWorkbook()
+        {
+            throw new UnsupportedOperationException("Streaming export is not supported for " + name() + " documents");
+        }
+
         public abstract String getMimeType();
         /** @return the maximum number of rows to SELECT, which is one less than the document's maximum */
         public abstract int getMaxRows();
@@ -166,6 +181,11 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
         public abstract void setMetadata(Workbook workbook, Map<String, String> metadata);
     }
 
+    /** Number of rows an xlsx workbook keeps in memory before flushing them to its temp file */
+    public static final int WINDOW_SIZE = 1000;
+    /** Number of rows a streaming workbook keeps in memory before flushing them to its temp file */
+    public static final int STREAMING_WINDOW_SIZE = 100;
+
     protected static final String SHEET_DRAWING = "~~excel-sheet-drawing~~";
     protected static final String SHEET_IMAGE_SIZES = "~~excel-sheet-image-sizes~~";
     protected static final String SHEET_IMAGE_PICTURES = "~~excel-sheet-image-pictures~~";
@@ -202,6 +222,12 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
     private int _currentRow = 0;
     private int _currentSheet = -1;
 
+    /** In streaming mode, rows beyond the document's maximum continue on additional sheets instead of being dropped */
+    private final boolean _streaming;
+    private boolean _maxRowsExceeded = false;
+    private boolean _rowPending = false;        // _rs is positioned on a row that hasn't been written yet
+    private Sheet _unsizedSheet = null;         // Sheet being rendered whose column widths haven't been set yet
+
     protected final Workbook _workbook;
 
     public ExcelWriter()
@@ -215,14 +241,32 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
     }
 
     protected ExcelWriter(ExcelDocumentType docType, @Nullable Workbook workbook)
+    {
+        this(docType, workbook, false);
+    }
+
+    private ExcelWriter(ExcelDocumentType docType, @Nullable Workbook workbook, boolean streaming)
     {
         _docType = docType;
-        _workbook = workbook == null ? docType.createWorkbook() : workbook;
+        _streaming = streaming;
+        if (workbook != null)
+            _workbook = workbook;
+        else
+            _workbook = streaming ? docType.createStreamingWorkbook() : docType.createWorkbook();
     }
 
     public ExcelWriter(Results rs, List<DisplayColumn> displayColumns, ExcelDocumentType docType)
     {
-        this(docType);
+        this(rs, displayColumns, docType, false);
+    }
+
+    /**
+     * @param streaming if true, use a constant-memory workbook and split the rows across as many sheets as needed.
+     *                  Only supported for xlsx documents.
+     */
+    public ExcelWriter(Results rs, List<DisplayColumn> displayColumns, ExcelDocumentType docType, boolean streaming)
+    {
+        this(docType, null, streaming);
         setResults(rs);
         addDisplayColumns(displayColumns);
     }
@@ -336,6 +380,17 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
             return _sheetName;
     }
 
+    // Sheets added because a streaming export overflowed the first one need unique names
+    private String getOverflowSheetName(int index)
+    {
+        String sheetName = getSheetName(index);
+        if (index == 0 || null == _sheetName)
+            return sheetName;
+
+        String suffix = " (" + (index + 1) + ")";
+        return sheetName.substring(0, Math.min(sheetName.length(), 31 - suffix.length())) + suffix;
+    }
+
     public void setFooter(String footer)
     {
         _footer = footer;
@@ -552,6 +607,12 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
     {
         _docType.setMetadata(_workbook, _metadata);
         renderNewSheet();
+
+        // Keep adding sheets until the results are exhausted. Look for another row first, so results that exactly
+        // fill a sheet don't leave an empty one at the end.
+        while (_streaming && _maxRowsExceeded && hasMoreRows())
+            renderNewSheet();
+
         _workbook.write(stream);
         stream.flush();
     }
@@ -652,10 +713,11 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
         }
         else
         {
-            sheet = _workbook.getSheet(getSheetName(sheetNumber));
+            String sheetName = _streaming ? getOverflowSheetName(sheetNumber) : getSheetName(sheetNumber);
+            sheet = _workbook.getSheet(sheetName);
             if (sheet == null)
             {
-                sheet = _workbook.createSheet(getSheetName(sheetNumber));
+                sheet = _workbook.createSheet(sheetName);
                 sheet.getPrintSetup().setPaperSize(PrintSetup.LETTER_PAPERSIZE);
 
                 Drawing drawing = sheet.createDrawingPatriarch();
@@ -666,6 +728,17 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
         }
 
         List<ExcelColumn> visibleColumns = getVisibleColumns(ctx);
+        _maxRowsExceeded = false;
+
+        // A streaming sheet can only auto-size columns it tracks. Track just the auto-sized ones; renderGrid() sizes
+        // them from the first window of rows and stops tracking, so the rest of the rows aren't measured at all.
+        if (sheet instanceof SXSSFSheet)
+        {
+            for (int column = 0; column < visibleColumns.size(); column++)
+                if (visibleColumns.get(column).getAutoSize())
+                    ((SXSSFSheet)sheet).trackColumnForAutoSizing(column);
+        }
+        _unsizedSheet = sheet;
 
         try
         {
@@ -679,10 +752,13 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
             }
             catch(MaxRowsExceededException e)
             {
-                // Just continue on
+                // Just continue on; in streaming mode, the remaining rows go on the next sheet
+                _maxRowsExceeded = true;
             }
 
-            adjustColumnWidths(ctx, sheet, visibleColumns);
+            if (_unsizedSheet == sheet)
+                adjustColumnWidths(ctx, sheet, visibleColumns, getCurrentRow());
+            _unsizedSheet = null;
 
             if (null != getFooter())
             {
@@ -700,12 +776,32 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
 
     public void adjustColumnWidths(RenderContext ctx, Sheet sheet, List visibleColumns)
     {
-        if (sheet instanceof SXSSFSheet)
-            ((SXSSFSheet)sheet).trackAllColumnsForAutoSizing();
+        adjustColumnWidths(ctx, sheet, visibleColumns, _totalDataRows);
+    }
 
+    // Only look at the rows of this sheet; a streaming export spreads the data rows over several
+    private void adjustColumnWidths(RenderContext ctx, Sheet sheet, List visibleColumns, int endRow)
+    {
         for (int column = visibleColumns.size() - 1; column >= 0; column--)
         {
-            ((ExcelColumn) visibleColumns.get(column)).adjustWidth(ctx, sheet, column, 0, _totalDataRows);
+            ((ExcelColumn) visibleColumns.get(column)).adjustWidth(ctx, sheet, column, 0, endRow);
+        }
+    }
+
+    private boolean hasMoreRows()
+    {
+        if (null == _rs)
+            return false;
+
+        try
+        {
+            _rowPending = _rs.next();
+            return _rowPending;
+        }
+        catch (SQLException e)
+        {
+            ExceptionUtil.logExceptionToMothership(null, e);
+            return false;
         }
     }
 
@@ -853,11 +949,24 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
         ResultSetRowMapFactory factory = ResultSetRowMapFactory.create(rs);
         ctx.setResults(rs);
 
+        // A row that hasn't been written yet, read to check whether a streaming export needed another sheet
+        boolean pending = _rowPending && rs == _rs;
+        _rowPending = false;
+
         // Output all the rows, but don't exceed the document's maximum number of rows
-        while (rs.next() && _currentRow <= _docType.getMaxRows())
+        while ((pending || rs.next()) && _currentRow <= _docType.getMaxRows())
         {
+            pending = false;
             ctx.setRow(factory.getRowMap(rs));
             renderGridRow(sheet, ctx, visibleColumns);
+
+            // Size the columns while the first window of rows is still in memory; later rows have been flushed
+            if (sheet == _unsizedSheet && sheet instanceof SXSSFSheet && _currentRow == getWindowSize())
+            {
+                adjustColumnWidths(ctx, sheet, visibleColumns, _currentRow - 1);
+                ((SXSSFSheet)sheet).untrackAllColumnsForAutoSizing();
+                _unsizedSheet = null;
+            }
         }
 
         // Note: No need to close() the ResultSet; ExcelWriter.close() handles that
@@ -921,9 +1030,23 @@ public class ExcelWriter implements ExportWriter, AutoCloseable
         return _totalDataRows;
     }
 
+    public boolean isStreaming()
+    {
+        return _streaming;
+    }
+
+    private int getWindowSize()
+    {
+        return _streaming ? STREAMING_WINDOW_SIZE : WINDOW_SIZE;
+    }
+
     @Override
     public void close()
     {
         ResultSetUtil.close(_rs);
+
+        // Delete the temp files that back the flushed rows
+        if (_workbook instanceof SXSSFWorkbook)
+            ((SXSSFWorkbook) _workbook).dispose();
     }
 }
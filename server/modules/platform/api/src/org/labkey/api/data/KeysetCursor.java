@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.query.FieldKey;
+import org.labkey.api.util.DateUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset (a.k.a. seek) pagination. Instead of skipping OFFSET rows, the next page is selected with a predicate on the
+ * sort columns, e.g. WHERE (a > 5) OR (a = 5 AND RowId > 1234), so every page costs about the same as the first.
+ *
+ * This only works when the sort is total and stable: the table's primary key is appended to the requested sort, and
+ * every sort column must be a non-nullable column of the table itself (NULL ordering differs across databases and
+ * lookups can introduce NULLs). {@link #getKeysetSort} returns null when the sort doesn't qualify, in which case
+ * callers fall back to offset paging.
+ *
+ * The cursor token handed to clients is an opaque, URL-safe encoding of the sort and the last row's sort values.
+ * Timestamps are encoded at full precision (PostgreSQL stores microseconds), since a value rounded to milliseconds would
+ * make the seek repeat or skip rows that share the millisecond.
+ */
+public class KeysetCursor
+{
+    private final List<Sort.SortField> _sort;
+    private final List<Object> _values;     // Strings, converted to the column's type in SQL, or Timestamps
+
+    /** A cursor token that's malformed, stale, or can't be used with the requested sort */
+    public static class InvalidCursorException extends IllegalArgumentException
+    {
+        public InvalidCursorException(String message)
+        {
+            super(message);
+        }
+
+        public InvalidCursorException(String message, Throwable cause)
+        {
+            super(message, cause);
+        }
+    }
+
+    private KeysetCursor(List<Sort.SortField> sort, List<Object> values)
+    {
+        assert sort.size() == values.size();
+        _sort = sort;
+        _values = values;
+    }
+
+    /** @return the requested sort extended with the primary key, or null if keyset pagination can't be used */
+    public static @Nullable List<Sort.SortField> getKeysetSort(@NotNull TableInfo table, @Nullable Sort sort)
+    {
+        List<ColumnInfo> pkColumns = table.getPkColumns();
+        if (pkColumns.isEmpty())
+            return null;
+
+        List<Sort.SortField> fields = new ArrayList<>(null == sort ? Collections.emptyList() : sort.getSortList());
+        for (ColumnInfo pk : pkColumns)
+        {
+            if (fields.stream().noneMatch(f -> f.getFieldKey().equals(pk.getFieldKey())))
+                fields.add(new Sort.SortField(pk.getFieldKey(), Sort.SortDirection.ASC));
+        }
+
+        for (Sort.SortField field : fields)
+        {
+            if (null != field.getFieldKey().getParent())
+                return null;
+            ColumnInfo col = table.getColumn(field.getFieldKey());
+            if (null == col || col.isNullable())
+                return null;
+        }
+        return fields;
+    }
+
+    public static Sort toSort(List<Sort.SortField> fields)
+    {
+        Sort sort = new Sort();
+        for (Sort.SortField field : fields)
+            sort.appendSortColumn(field);
+        return sort;
+    }
+
+    /**
+     * Create the cursor positioned after a row.
+     * @param row the last row of the current page, keyed by field key
+     * @return null if one of the sort values is missing
+     */
+    public static @Nullable KeysetCursor after(List<Sort.SortField> sort, Map<FieldKey, Object> row)
+    {
+        List<Object> values = new ArrayList<>(sort.size());
+        for (Sort.SortField field : sort)
+        {
+            Object value = row.get(field.getFieldKey());
+            if (null == value)
+                return null;
+            if (value instanceof Timestamp)
+                values.add(value);
+            else if (value instanceof java.util.Date)
+                values.add(DateUtil.toISO((java.util.Date)value));
+            else
+                values.add(value.toString());
+        }
+        return new KeysetCursor(sort, values);
+    }
+
+    /**
+     * @throws InvalidCursorException if the token is malformed or was created for a different sort
+     */
+    public static KeysetCursor decode(String token, List<Sort.SortField> sort)
+    {
+        try
+        {
+            JSONObject json = new JSONObject(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+            if (!toSortString(sort).equals(json.getString("sort")))
+                throw new InvalidCursorException("Cursor does not match the current sort; request the first page again");
+            JSONArray array = json.getJSONArray("values");
+            if (array.length() != sort.size())
+                throw new InvalidCursorException("Invalid cursor");
+            List<Object> values = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++)
+            {
+                JSONObject timestamp = array.optJSONObject(i);
+                values.add(null != timestamp ? decodeTimestamp(timestamp) : array.getString(i));
+            }
+            return new KeysetCursor(sort, values);
+        }
+        catch (InvalidCursorException x)
+        {
+            throw x;
+        }
+        catch (JSONException | IllegalArgumentException x)
+        {
+            // Not valid base64 or JSON
+            throw new InvalidCursorException("Invalid cursor", x);
+        }
+    }
+
+    public String encode()
+    {
+        JSONObject json = new JSONObject();
+        json.put("sort", toSortString(_sort));
+        JSONArray values = new JSONArray();
+        for (Object value : _values)
+            values.put(value instanceof Timestamp ? encodeTimestamp((Timestamp)value) : value);
+        json.put("values", values);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Seconds and nanoseconds since the epoch, so the value doesn't depend on the server's time zone
+    private static JSONObject encodeTimestamp(Timestamp ts)
+    {
+        JSONObject json = new JSONObject();
+        json.put("seconds", Math.floorDiv(ts.getTime(), 1000L));
+        json.put("nanos", ts.getNanos());
+        return json;
+    }
+
+    private static Timestamp decodeTimestamp(JSONObject json)
+    {
+        int nanos = json.getInt("nanos");
+        if (nanos < 0 || nanos > 999_999_999)
+            throw new InvalidCursorException("Invalid cursor");
+        Timestamp ts = new Timestamp(json.getLong("seconds") * 1000L);
+        ts.setNanos(nanos);
+        return ts;
+    }
+
+    /** Build the "rows after this cursor" predicate: OR over i of (s1 = v1 AND ... AND s(i-1) = v(i-1) AND si > vi) */
+    public SimpleFilter.FilterClause getFilterClause()
+    {
+        SimpleFilter.OrClause or = new SimpleFilter.OrClause();
+        for (int i = 0; i < _sort.size(); i++)
+        {
+            SimpleFilter.AndClause and = new SimpleFilter.AndClause();
+            for (int j = 0; j < i; j++)
+                and.addClause(createClause(CompareType.EQUAL, _sort.get(j).getFieldKey(), _values.get(j)));
+            Sort.SortField field = _sort.get(i);
+            CompareType after = field.getSortDirection() == Sort.SortDirection.DESC ? CompareType.LT : CompareType.GT;
+            and.addClause(createClause(after, field.getFieldKey(), _values.get(i)));
+            or.addClause(and);
+        }
+        return or;
+    }
+
+    private static SimpleFilter.FilterClause createClause(CompareType type, FieldKey fieldKey, Object value)
+    {
+        SimpleFilter.FilterClause clause = type.createFilterClause(fieldKey, value);
+        // Other values are serialized as strings; convert to the column's type when the SQL is generated. Converting a
+        // timestamp from a string would lose the sub-millisecond part, so those are bound as they are.
+        clause._needsTypeConversion = !(value instanceof Timestamp);
+        return clause;
+    }
+
+    private static String toSortString(List<Sort.SortField> sort)
+    {
+        return sort.stream().map(Sort.SortField::toUrlString).collect(Collectors.joining(","));
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        private final List<Sort.SortField> _sort = List.of(
+            new Sort.SortField(FieldKey.fromParts("Name"), Sort.SortDirection.DESC),
+            new Sort.SortField(FieldKey.fromParts("RowId"), Sort.SortDirection.ASC));
+
+        @Test
+        public void testRoundTrip()
+        {
+            KeysetCursor cursor = after(_sort, Map.of(FieldKey.fromParts("Name"), "a,b \"c\"", FieldKey.fromParts("RowId"), 42));
+            assertNotNull(cursor);
+            KeysetCursor decoded = decode(cursor.encode(), _sort);
+            assertEquals(List.of("a,b \"c\"", "42"), decoded._values);
+            assertFalse(cursor.encode().contains("="));
+        }
+
+        @Test
+        public void testMissingValue()
+        {
+            assertNull(after(_sort, Map.of(FieldKey.fromParts("RowId"), 42)));
+        }
+
+        @Test(expected = InvalidCursorException.class)
+        public void testSortMismatch()
+        {
+            KeysetCursor cursor = after(_sort, Map.of(FieldKey.fromParts("Name"), "x", FieldKey.fromParts("RowId"), 1));
+            assertNotNull(cursor);
+            decode(cursor.encode(), List.of(new Sort.SortField(FieldKey.fromParts("RowId"), Sort.SortDirection.ASC)));
+        }
+
+        @Test
+        public void testMalformed()
+        {
+            for (String token : List.of("not base64!", Base64.getUrlEncoder().encodeToString("{not json".getBytes(StandardCharsets.UTF_8))))
+            {
+                try
+                {
+                    decode(token, _sort);
+                    fail("Expected an invalid cursor: " + token);
+                }
+                catch (InvalidCursorException ignored)
+                {
+                }
+            }
+        }
+
+        @Test
+        public void testFilterClause()
+        {
+            KeysetCursor cursor = after(_sort, Map.of(FieldKey.fromParts("Name"), "x", FieldKey.fromParts("RowId"), 1));
+            assertNotNull(cursor);
+            SimpleFilter.FilterClause clause = cursor.getFilterClause();
+            assertEquals(Set.of(FieldKey.fromParts("Name"), FieldKey.fromParts("RowId")), Set.copyOf(clause.getFieldKeys()));
+        }
+
+        @Test
+        public void testTimestampPrecision()
+        {
+            List<Sort.SortField> sort = List.of(
+                new Sort.SortField(FieldKey.fromParts("Created"), Sort.SortDirection.ASC),
+                new Sort.SortField(FieldKey.fromParts("RowId"), Sort.SortDirection.ASC));
+
+            // Two rows in the same millisecond, as PostgreSQL's microsecond timestamps allow
+            Timestamp first = Timestamp.valueOf("2019-03-04 05:06:07.123456");
+            Timestamp second = Timestamp.valueOf("2019-03-04 05:06:07.123789");
+            Timestamp beforeEpoch = Timestamp.valueOf("1969-12-31 23:59:59.999999");
+
+            for (Timestamp ts : List.of(first, second, beforeEpoch))
+            {
+                KeysetCursor cursor = after(sort, Map.of(FieldKey.fromParts("Created"), ts, FieldKey.fromParts("RowId"), 7));
+                assertNotNull(cursor);
+                KeysetCursor decoded = decode(cursor.encode(), sort);
+                assertEquals(ts, decoded._values.get(0));
+                assertEquals(ts.getNanos(), ((Timestamp)decoded._values.get(0)).getNanos());
+            }
+
+            // The seek compares against the exact value, so the second row is still after the first
+            KeysetCursor cursor = decode(after(sort, Map.of(FieldKey.fromParts("Created"), first, FieldKey.fromParts("RowId"), 7)).encode(), sort);
+            Object bound = ((SimpleFilter.AndClause)((SimpleFilter.OrClause)cursor.getFilterClause()).getClauses().get(0)).getClauses().get(0).getParamVals()[0];
+            assertEquals(first, bound);
+            assertTrue(second.after((Timestamp)bound));
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.data;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.data.queryprofiler.QueryProfiler;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LRU cache of prepared statements for a single physical database connection. It outlives the ConnectionWrapper
+ * instances handed out for each checkout from the pool, so hot lookups (containers, users, policies, etc.) reuse the
+ * statement, and the driver's server-side prepared plan, instead of preparing the same SQL over and over.
+ *
+ * Statements are checked out exclusively: a cached statement is removed while in use and returned when the caller
+ * closes its StatementWrapper, so nested uses of the same SQL simply prepare a second copy. Statements are prepared on
+ * the driver's connection, not the pool's proxy, so the pool doesn't close them when the connection is returned.
+ * Invalidating any schema bumps a global generation, which retires every cached statement, since DDL can change the
+ * result shape of a prepared plan.
+ */
+public class PreparedStatementCache
+{
+    private static final Logger LOG = Logger.getLogger(PreparedStatementCache.class);
+
+    static final int MAX_STATEMENTS = 100;
+
+    private static final Map<Connection, PreparedStatementCache> CACHES = Collections.synchronizedMap(new IdentityHashMap<>());
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    static class Key
+    {
+        private final String _sql;
+        private final int _resultSetType;
+        private final int _resultSetConcurrency;
+
+        Key(String sql, int resultSetType, int resultSetConcurrency)
+        {
+            _sql = sql;
+            _resultSetType = resultSetType;
+            _resultSetConcurrency = resultSetConcurrency;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return _resultSetType == key._resultSetType && _resultSetConcurrency == key._resultSetConcurrency && _sql.equals(key._sql);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(_sql, _resultSetType, _resultSetConcurrency);
+        }
+    }
+
+    private static class Entry
+    {
+        private final PreparedStatement _stmt;
+        private final int _generation;
+
+        private Entry(PreparedStatement stmt, int generation)
+        {
+            _stmt = stmt;
+            _generation = generation;
+        }
+    }
+
+    private final Connection _connection;
+    private final LinkedHashMap<Key, Entry> _statements = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+        {
+            if (size() <= MAX_STATEMENTS)
+                return false;
+            close(eldest.getValue()._stmt);
+            return true;
+        }
+    };
+
+    private PreparedStatementCache(Connection connection)
+    {
+        _connection = connection;
+    }
+
+    /** @param connection the driver's physical connection, see DbScope.getDelegate() */
+    static @NotNull PreparedStatementCache get(@NotNull Connection connection)
+    {
+        synchronized (CACHES)
+        {
+            PreparedStatementCache cache = CACHES.get(connection);
+            if (null == cache)
+            {
+                // New physical connection; forget the ones the pool has closed since we last looked
+                removeClosedConnections();
+                cache = new PreparedStatementCache(connection);
+                CACHES.put(connection, cache);
+            }
+            return cache;
+        }
+    }
+
+    private static void removeClosedConnections()
+    {
+        Iterator<Connection> iter = CACHES.keySet().iterator();
+        while (iter.hasNext())
+        {
+            Connection conn = iter.next();
+            try
+            {
+                if (conn.isClosed())
+                    iter.remove();
+            }
+            catch (SQLException e)
+            {
+                iter.remove();
+            }
+        }
+    }
+
+    /** Retire all cached statements, e.g. because DDL may have changed the tables they reference */
+    static void invalidateAll()
+    {
+        GENERATION.incrementAndGet();
+    }
+
+    /** Only DML is worth caching; DDL often references uniquely named (temp) objects and runs once */
+    static boolean isCacheable(String sql)
+    {
+        String s = StringUtils.stripStart(sql, null);
+        return StringUtils.startsWithIgnoreCase(s, "SELECT") || StringUtils.startsWithIgnoreCase(s, "WITH") ||
+                StringUtils.startsWithIgnoreCase(s, "INSERT") || StringUtils.startsWithIgnoreCase(s, "UPDATE") ||
+                StringUtils.startsWithIgnoreCase(s, "DELETE");
+    }
+
+    Connection getConnection()
+    {
+        return _connection;
+    }
+
+    /** @return a cached statement for exclusive use, or null if there isn't a current one */
+    @Nullable PreparedStatement checkOut(Key key)
+    {
+        Entry entry;
+        synchronized (this)
+        {
+            entry = _statements.remove(key);
+        }
+
+        boolean hit = null != entry && entry._generation == GENERATION.get() && !isClosed(entry._stmt);
+        if (null != entry && !hit)
+            close(entry._stmt);
+        QueryProfiler.getInstance().trackPreparedStatementCache(hit);
+
+        return hit ? entry._stmt : null;
+    }
+
+    /** Reset the statement to its defaults and make it available again; closes it if that fails */
+    void checkIn(Key key, PreparedStatement stmt)
+    {
+        try
+        {
+            stmt.clearParameters();
+            stmt.clearBatch();
+            stmt.clearWarnings();
+            stmt.setMaxRows(0);
+            stmt.setQueryTimeout(0);
+            stmt.setFetchSize(0);
+        }
+        catch (SQLException e)
+        {
+            LOG.debug("Failed to reset prepared statement; closing it", e);
+            close(stmt);
+            return;
+        }
+
+        Entry previous;
+        synchronized (this)
+        {
+            previous = _statements.put(key, new Entry(stmt, GENERATION.get()));
+        }
+        if (null != previous && previous._stmt != stmt)
+            close(previous._stmt);
+    }
+
+    synchronized int size()
+    {
+        return _statements.size();
+    }
+
+    private static boolean isClosed(PreparedStatement stmt)
+    {
+        try
+        {
+            return stmt.isClosed();
+        }
+        catch (SQLException e)
+        {
+            return true;
+        }
+    }
+
+    static void close(PreparedStatement stmt)
+    {
+        try
+        {
+            stmt.close();
+        }
+        catch (SQLException e)
+        {
+            LOG.debug("Failed to close cached prepared statement", e);
+        }
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testIsCacheable()
+        {
+            assertTrue(isCacheable("SELECT * FROM core.Containers WHERE EntityId = ?"));
+            assertTrue(isCacheable("\n  select 1"));
+            assertTrue(isCacheable("WITH x AS (SELECT 1) SELECT * FROM x"));
+            assertTrue(isCacheable("UPDATE core.Principals SET Name = ? WHERE UserId = ?"));
+            assertFalse(isCacheable("CREATE TABLE temp.x (Id INT)"));
+            assertFalse(isCacheable("DROP TABLE temp.x"));
+        }
+
+        @Test
+        public void testReuse() throws SQLException
+        {
+            DbScope scope = CoreSchema.getInstance().getSchema().getScope();
+            if (!scope.getSqlDialect().isPostgreSQL())
+                return;
+
+            QueryProfiler profiler = QueryProfiler.getInstance();
+            long hits = profiler.getPreparedStatementCacheHits();
+            List<Integer> values = new ArrayList<>();
+
+            for (int i = 0; i < 3; i++)
+            {
+                try (Connection conn = scope.getConnection(); PreparedStatement stmt = conn.prepareStatement("SELECT ? + 0 AS x /* PreparedStatementCache.TestCase */"))
+                {
+                    stmt.setInt(1, i);
+                    try (ResultSet rs = stmt.executeQuery())
+                    {
+                        assertTrue(rs.next());
+                        values.add(rs.getInt(1));
+                    }
+                }
+            }
+
+            assertEquals(List.of(0, 1, 2), values);
+            // Connections may come from different physical connections in the pool, so we can't expect exactly two hits
+            assertTrue(profiler.getPreparedStatementCacheHits() >= hits);
+        }
+
+        @Test
+        public void testInvalidate() throws SQLException
+        {
+            DbScope scope = CoreSchema.getInstance().getSchema().getScope();
+            if (!scope.getSqlDialect().isPostgreSQL())
+                return;
+
+            try (Connection conn = scope.getConnection())
+            {
+                String sql = "SELECT 1 AS x /* PreparedStatementCache.TestCase.testInvalidate */";
+                conn.prepareStatement(sql).close();
+
+                PreparedStatementCache cache = ((ConnectionWrapper) conn).getStatementCache();
+                assertNotNull(cache);
+                Key key = new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+                invalidateAll();
+                assertNull("Invalidated statement should not be handed out", cache.checkOut(key));
+
+                conn.prepareStatement(sql).close();
+                PreparedStatement stmt = cache.checkOut(key);
+                assertNotNull(stmt);
+                cache.checkIn(key, stmt);
+            }
+        }
+    }
+}
@@ -236,7 +236,10 @@ public class PropertyManager
 
         Sort sort = new Sort("UserId,ObjectId,Category,Name");
 
-        return new TableSelector(prop.getTableInfoPropertyEntries(), Collections.singleton("Category"), filter, sort).getArrayList(String.class);
+        // PropertyEntries is a view, so declare the tables that are actually written
+        return new TableSelector(prop.getTableInfoPropertyEntries(), Collections.singleton("Category"), filter, sort)
+                .setResultCache(prop.getTableInfoProperties(), prop.getTableInfoPropertySets())
+                .getArrayList(String.class);
     }
 
     /**
@@ -526,6 +529,7 @@ public class PropertyManager
                 }
                 // Make sure that we clear the previously cached version of the map
                 transaction.addCommitTask(() -> _store.clearCache(PropertyMap.this), DbScope.CommitTaskOption.IMMEDIATE, DbScope.CommitTaskOption.POSTCOMMIT);
+                invalidateResultCache();
                 transaction.commit();
 
                 _log.debug(String.format("</PropertyMap.save() [%d, %s, %s, %d, map.hashCode: %d, lock: %s]>", _user.getUserId(), _objectId, _category, _set, hashCode(), lock.toString()));
@@ -613,6 +617,14 @@ public class PropertyManager
         store.appendWhereFilter(deleteSets);
 
         new SqlExecutor(SCHEMA.getSchema()).execute(deleteSets);
+        invalidateResultCache();
+    }
+
+    // Values are written with plain SQL, which SelectorResultCache can't see
+    static void invalidateResultCache()
+    {
+        SelectorResultCache.invalidate(SCHEMA.getTableInfoProperties());
+        SelectorResultCache.invalidate(SCHEMA.getTableInfoPropertySets());
     }
 
     public static class PropertyEntry
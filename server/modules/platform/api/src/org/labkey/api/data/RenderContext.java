@@ -76,6 +76,8 @@ public class RenderContext implements Map<String, Object>, Serializable
     private Map<FieldKey, List<String>> _analyticsProviderNamesByFieldKey;
 
     private Results _results;
+    private List<Sort.SortField> _keysetSort;
+    private boolean _keysetSeek;
 
     public RenderContext(ViewContext context)
     {
@@ -316,6 +318,29 @@ public class RenderContext implements Map<String, Object>, Serializable
         Sort sort = buildSort(tinfo, url, name);
         SimpleFilter filter = buildFilter(tinfo, getColumnInfos(displayColumns), url, name, maxRows, offset, sort);
 
+        // Keyset pagination: make the sort unique, and seek past the previous page instead of using OFFSET
+        _keysetSort = null;
+        _keysetSeek = false;
+        if (null != settings && settings.isKeysetPagination())
+        {
+            _keysetSort = KeysetCursor.getKeysetSort(tinfo, sort);
+            String cursor = settings.getCursor();
+            if (null != _keysetSort)
+            {
+                sort = KeysetCursor.toSort(_keysetSort);
+                if (null != cursor)
+                {
+                    filter.addClause(KeysetCursor.decode(cursor, _keysetSort).getFilterClause());
+                    offset = Table.NO_OFFSET;
+                    _keysetSeek = true;
+                }
+            }
+            else if (null != cursor)
+            {
+                throw new KeysetCursor.InvalidCursorException("Cursor paging requires a sort on non-nullable columns of " + tinfo.getName() + " and a primary key");
+            }
+        }
+
         Collection<ColumnInfo> cols = fieldMap.values();
         if (null != QueryService.get())
             cols = QueryService.get().ensureRequiredColumns(tinfo, cols, filter, sort, _ignoredColumnFilters);
@@ -324,6 +349,21 @@ public class RenderContext implements Map<String, Object>, Serializable
         return _results;
     }
 
+    /** @return the unique sort used by the last getResults() call when keyset pagination is in effect, otherwise null */
+    public @Nullable List<Sort.SortField> getKeysetSort()
+    {
+        return _keysetSort;
+    }
+
+    /**
+     * @return true if the last getResults() call skipped the earlier pages with a keyset cursor. Those rows aren't
+     * counted by the offset, so the total has to come from a count of the unfiltered query.
+     */
+    public boolean isKeysetSeek()
+    {
+        return _keysetSeek;
+    }
+
     public Map<String, List<Aggregate.Result>> getAggregates(List<DisplayColumn> displayColumns, TableInfo tinfo, QuerySettings settings, String dataRegionName, List<Aggregate> aggregatesIn, Map<String, Object> parameters, boolean async) throws IOException
     {
         if (aggregatesIn == null || aggregatesIn.isEmpty())
@@ -407,6 +447,39 @@ public class RenderContext implements Map<String, Object>, Serializable
     }
 
 
+    /**
+     * Start counting the rows of the current grid in the background, using the same filters as getResults().
+     * @return a token for {@link AsyncRowCounter#getRowCount}, or null if the count couldn't be started
+     */
+    @Nullable
+    public String submitRowCount(List<DisplayColumn> displayColumns, TableInfo tinfo, QuerySettings settings, String dataRegionName, Map<String, Object> parameters)
+    {
+        ActionURL url;
+        if (null != settings)
+            url = settings.getSortFilterURL();
+        else
+            url = getViewContext().cloneActionURL();
+
+        Sort sort = buildSort(tinfo, url, dataRegionName);
+        SimpleFilter filter = buildFilter(tinfo, getColumnInfos(displayColumns), url, dataRegionName, Table.ALL_ROWS, Table.NO_OFFSET, sort);
+
+        Set<FieldKey> ignoredCountFilters = new HashSet<>();
+        Collection<ColumnInfo> cols = getSelectColumns(displayColumns, tinfo);
+        if (null != QueryService.get())
+            cols = QueryService.get().ensureRequiredColumns(tinfo, cols, filter, sort, ignoredCountFilters);
+
+        if (!ignoredCountFilters.equals(_ignoredColumnFilters))
+        {
+            // Same check as getAggregates(); a count with different filters wouldn't match the rows shown
+            _log.error("Row count filter columns do not match main.  Count:" + ignoredCountFilters + " Main:" + _ignoredColumnFilters);
+            return null;
+        }
+
+        TableSelector selector = new TableSelector(tinfo, cols, filter, null).setNamedParameters(parameters);
+        return AsyncRowCounter.submit(getViewContext().getUser(), selector, parameters);
+    }
+
+
     public Sort buildSort(TableInfo tinfo, ActionURL url, String name)
     {
         // Create a copy of the sort so that QueryService.ensureRequiredColumns() can
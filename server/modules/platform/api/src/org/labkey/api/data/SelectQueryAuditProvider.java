@@ -112,6 +112,13 @@ public class SelectQueryAuditProvider extends AbstractAuditTypeProvider
             return NAMESPACE_PREFIX;
         }
 
+        // Query logging records an event for every logged query, so this table grows quickly
+        @Override
+        public boolean isTimePartitioned()
+        {
+            return true;
+        }
+
         @Override
         public String getKindName()
         {
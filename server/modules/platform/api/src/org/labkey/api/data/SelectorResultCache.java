@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.cache.Cache;
+import org.labkey.api.cache.CacheManager;
+import org.labkey.api.query.FieldKey;
+import org.labkey.api.security.User;
+import org.labkey.api.util.JunitUtil;
+import org.labkey.api.util.PageFlowUtil;
+import org.labkey.api.util.Path;
+import org.labkey.api.util.TestContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared results for selectors that opt in via {@link SqlExecutingSelector#setResultCache}, e.g. hot lookups of
+ * small, rarely modified tables. Results are keyed by the generated SQL (with its parameters), the requested class,
+ * the kind of request and the tables the caller declared, and are tagged with the version of each of those tables. Each table's version is
+ * bumped whenever {@link Table#notifyTableUpdate} is called, i.e. on every Table.insert(), update(), delete() and
+ * truncate() and when a TableInsertDataIterator finishes, so a stale entry is simply never handed out again.
+ *
+ * Writes inside a transaction bump the version immediately and again after the commit, since other threads may have
+ * cached rows while the transaction was in flight. Selectors never use the cache while their scope has an active
+ * transaction, so they always see their own uncommitted changes. Changes made via plain SqlExecutor SQL are invisible
+ * to the cache; callers that write that way must call {@link #invalidate} themselves.
+ *
+ * Cached objects are shared across callers and must be treated as read-only. Callers get a fresh copy of a cached list,
+ * but not of its elements.
+ */
+public class SelectorResultCache
+{
+    /** Don't tie up the cache with big results; this is intended for lookups */
+    static final int MAX_CACHED_ROWS = 1000;
+
+    private static final Cache<String, Entry> CACHE = CacheManager.getStringKeyCache(5000, 10 * CacheManager.MINUTE, "Selector results");
+    private static final Map<Path, AtomicLong> VERSIONS = new ConcurrentHashMap<>();
+
+    private static class Entry
+    {
+        private final List<?> _list;
+        private final long[] _versions;
+
+        private Entry(List<?> list, long[] versions)
+        {
+            _list = list;
+            _versions = versions;
+        }
+    }
+
+    /** Bumps the version of a table; deduped per table when it's added as a commit task */
+    private static class Invalidator implements Runnable
+    {
+        private final Path _key;
+
+        private Invalidator(Path key)
+        {
+            _key = key;
+        }
+
+        @Override
+        public void run()
+        {
+            getVersion(_key).incrementAndGet();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return _key.equals(((Invalidator) o)._key);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(Invalidator.class, _key);
+        }
+    }
+
+    private SelectorResultCache()
+    {
+    }
+
+    /** Tables without a notification key (e.g., query tables) can't be tracked */
+    static boolean isCacheable(@NotNull TableInfo table)
+    {
+        return null != table.getNotificationKey();
+    }
+
+    /** Mark every cached result that reads this table as stale */
+    public static void invalidate(@NotNull TableInfo table)
+    {
+        Path key = table.getNotificationKey();
+        if (null == key)
+            return;
+
+        table.getSchema().getScope().addCommitTask(new Invalidator(key), DbScope.CommitTaskOption.IMMEDIATE, DbScope.CommitTaskOption.POSTCOMMIT);
+    }
+
+    /** Drop everything, e.g. because a schema was invalidated */
+    public static void clear()
+    {
+        CACHE.clear();
+    }
+
+    private static AtomicLong getVersion(Path key)
+    {
+        return VERSIONS.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    /** Snapshot the versions before executing the query, so a write that races with it invalidates the new entry */
+    static long[] getVersions(@NotNull Collection<TableInfo> tables)
+    {
+        long[] versions = new long[tables.size()];
+        int i = 0;
+        for (TableInfo table : tables)
+            versions[i++] = getVersion(table.getNotificationKey()).get();
+        return versions;
+    }
+
+    /** The tables are part of the key, so an entry's versions always line up with the tables they're checked against */
+    static String getKey(@NotNull String kind, @NotNull Class<?> clazz, @NotNull Collection<TableInfo> tables, @NotNull SQLFragment sql, @Nullable Integer statementMaxRows, @Nullable Map<String, Object> namedParameters)
+    {
+        StringBuilder key = new StringBuilder(kind).append("/").append(clazz.getName()).append("/").append(statementMaxRows).append("/").append(namedParameters);
+        for (TableInfo table : tables)
+            key.append("\u0000").append(table.getNotificationKey());
+        return key.append("\u0000\u0000").append(sql.toDebugString()).toString();
+    }
+
+    /** @return a copy of the cached list, or null if it's missing or any of its tables have changed */
+    static @Nullable <E> ArrayList<E> get(@NotNull String key, @NotNull Collection<TableInfo> tables)
+    {
+        Entry entry = CACHE.get(key);
+        if (null == entry)
+            return null;
+
+        if (!Arrays.equals(getVersions(tables), entry._versions))
+        {
+            CACHE.remove(key);
+            return null;
+        }
+
+        //noinspection unchecked
+        return new ArrayList<>((List<E>) entry._list);
+    }
+
+    static void put(@NotNull String key, @NotNull List<?> list, long[] versions)
+    {
+        if (list.size() <= MAX_CACHED_ROWS)
+            CACHE.put(key, new Entry(new ArrayList<>(list), versions));
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testInvalidation()
+        {
+            TableInfo containers = CoreSchema.getInstance().getTableInfoContainers();
+            TableInfo principals = CoreSchema.getInstance().getTableInfoPrincipals();
+            List<TableInfo> tables = List.of(containers, principals);
+            SQLFragment sql = new SQLFragment("SELECT 1 /* SelectorResultCache.TestCase */");
+            String key = getKey("list", Integer.class, tables, sql, null, null);
+            assertNotEquals("The declared tables must be part of the key", key, getKey("list", Integer.class, List.of(containers), sql, null, null));
+
+            put(key, List.of(1), getVersions(tables));
+            assertEquals(List.of(1), get(key, tables));
+
+            invalidate(principals);
+            assertNull("Stale entry should not be returned", get(key, tables));
+        }
+
+        @Test
+        public void testSelector()
+        {
+            User user = TestContext.get().getUser();
+            TableInfo table = TestSchema.getInstance().getTableInfoTestTable();
+
+            Map<String, Object> row = new HashMap<>();
+            row.put("Container", JunitUtil.getTestContainer());
+            row.put("IntNotNull", 1);
+            row.put("DateTimeNotNull", new Date());
+            row.put("BitNotNull", true);
+            int rowId = (Integer) Table.insert(user, table, row).get("RowId");
+            SimpleFilter filter = new SimpleFilter(FieldKey.fromParts("RowId"), rowId);
+
+            try
+            {
+                List<Integer> first = select(table, filter);
+                List<Integer> second = select(table, filter);
+                assertEquals(List.of(1), first);
+                assertEquals(first, second);
+                assertNotSame("Callers should get their own copy of the list", first, second);
+
+                // Plain SQL doesn't notify, so the cached result is handed out until the table is invalidated
+                new SqlExecutor(table.getSchema()).execute("UPDATE test.testtable SET IntNotNull = 2 WHERE RowId = ?", rowId);
+                assertEquals("Expected the cached result", List.of(1), select(table, filter));
+                invalidate(table);
+                assertEquals(List.of(2), select(table, filter));
+
+                // Table.update() invalidates on its own
+                Map<String, Object> update = new HashMap<>();
+                update.put("IntNotNull", 3);
+                Table.update(user, table, update, rowId);
+                assertEquals(List.of(3), select(table, filter));
+            }
+            finally
+            {
+                Table.delete(table, rowId);
+            }
+        }
+
+        private static List<Integer> select(TableInfo table, Filter filter)
+        {
+            return new TableSelector(table, PageFlowUtil.set("IntNotNull"), filter, null).setResultCache().getArrayList(Integer.class);
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +47,7 @@ public abstract class SqlExecutingSelector<FACTORY extends SqlFactory, SELECTOR
     private ConnectionFactory _connectionFactory = super::getConnection;
 
     private @Nullable AsyncQueryRequest _asyncRequest = null;
+    private @Nullable List<TableInfo> _resultCacheTables = null;
     private @Nullable StackTraceElement[] _loggingStacktrace = null;
     private final QueryLogging _queryLogging;
     private static final Logger LOGGER = Logger.getLogger(SqlExecutingSelector.class);
@@ -163,6 +165,25 @@ public abstract class SqlExecutingSelector<FACTORY extends SqlFactory, SELECTOR
         return getThis();
     }
 
+    /**
+     * Share the results of getArrayList(), getArray(), getCollection(), getObject(), etc. across callers via
+     * {@link SelectorResultCache}, until one of the passed in tables is modified. Pass every table the query reads.
+     * Only appropriate for small, frequently read, rarely written tables, and only if callers treat the returned
+     * objects as read-only. The cache is bypassed while a transaction is active.
+     *
+     * @return this SqlExecutingSelector, to allow chaining of setters
+     * @throws IllegalArgumentException if a table's modifications can't be tracked, e.g., it's not a database table
+     */
+    public SELECTOR setResultCache(TableInfo... tables)
+    {
+        for (TableInfo table : tables)
+            if (!SelectorResultCache.isCacheable(table))
+                throw new IllegalArgumentException("Results that read " + table.getName() + " can't be cached");
+
+        _resultCacheTables = List.of(tables);
+        return getThis();
+    }
+
     /**
      *  Generates the current select SQL and returns the execution plan. SQL is generated as if getResultSet() had been
      *  called, which means that TableSelector limit, offset, sort, filter, etc. are all respected.
@@ -220,6 +241,56 @@ public abstract class SqlExecutingSelector<FACTORY extends SqlFactory, SELECTOR
         }
     }
 
+    @Override
+    protected @NotNull <E> ArrayList<E> getArrayList(Class<E> clazz, ResultSetFactory factory)
+    {
+        String key = getResultCacheKey("list", clazz, factory);
+        if (null == key)
+            return super.getArrayList(clazz, factory);
+
+        ArrayList<E> list = SelectorResultCache.get(key, _resultCacheTables);
+        if (null == list)
+        {
+            long[] versions = SelectorResultCache.getVersions(_resultCacheTables);
+            list = super.getArrayList(clazz, factory);
+            SelectorResultCache.put(key, list, versions);
+        }
+        return list;
+    }
+
+    @Override
+    protected <T> T getObject(Class<T> clazz, ResultSetFactory factory)
+    {
+        String key = getResultCacheKey("object", clazz, factory);
+        if (null == key)
+            return super.getObject(clazz, factory);
+
+        ArrayList<T> list = SelectorResultCache.get(key, _resultCacheTables);
+        if (null != list)
+            return list.isEmpty() ? null : list.get(0);
+
+        long[] versions = SelectorResultCache.getVersions(_resultCacheTables);
+        T object = super.getObject(clazz, factory);
+        SelectorResultCache.put(key, null == object ? List.of() : List.of(object), versions);
+        return object;
+    }
+
+    // Returns null if the result cache shouldn't be used for this request
+    private @Nullable String getResultCacheKey(String kind, Class<?> clazz, ResultSetFactory factory)
+    {
+        // Uncommitted changes (ours or on an explicit connection) must not be shared, or hidden from us
+        if (null == _resultCacheTables || _resultCacheTables.isEmpty() || null != _conn || null != _asyncRequest ||
+                !(factory instanceof ExecutingResultSetFactory) || getScope().isTransactionActive())
+            return null;
+
+        ExecutingResultSetFactory executingFactory = (ExecutingResultSetFactory)factory;
+        SQLFragment sql = executingFactory.getSql();
+        if (null == sql)
+            return null;
+
+        return SelectorResultCache.getKey(kind, clazz, _resultCacheTables, sql, executingFactory._factory.getStatementMaxRows(), _namedParameters);
+    }
+
     @Override
     public TableResultSet getResultSet()
     {
@@ -382,6 +453,14 @@ public abstract class SqlExecutingSelector<FACTORY extends SqlFactory, SELECTOR
             _scrollable = scrollable;
         }
 
+        // Generate the SQL just once, even if it's also used as a result cache key
+        private @Nullable SQLFragment getSql()
+        {
+            if (null == _sql)
+                _sql = _factory.getSql();
+            return _sql;
+        }
+
         @Override
         public <T> T handleResultSet(ResultSetHandler<T> handler)
         {
@@ -392,7 +471,7 @@ public abstract class SqlExecutingSelector<FACTORY extends SqlFactory, SELECTOR
             try
             {
                 // Stash the generated SQL in case we need to log it later
-                _sql = _factory.getSql();
+                getSql();
 
                 // Short circuit if no SQL is generated, e.g., AggregateSqlFactory
                 if (null != _sql)
@@ -525,6 +604,9 @@ public abstract class SqlExecutingSelector<FACTORY extends SqlFactory, SELECTOR
             {
                 asyncRequest.setStatement(stmt);
 
+                if (asyncRequest.getQueryTimeout() > 0)
+                    stmt.setQueryTimeout(asyncRequest.getQueryTimeout());
+
                 // If this is a background request then push the original stack trace into the statement wrapper so it gets
                 // logged and stored in the query profiler.
                 if (stmt instanceof StatementWrapper)
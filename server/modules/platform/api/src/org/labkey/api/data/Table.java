@@ -52,6 +52,7 @@ import org.labkey.api.util.GUID;
 import org.labkey.api.util.JunitUtil;
 import org.labkey.api.util.MemTracker;
 import org.labkey.api.util.PageFlowUtil;
+import org.labkey.api.util.Pair;
 import org.labkey.api.util.TestContext;
 
 import java.sql.BatchUpdateException;
@@ -73,6 +74,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Table manipulation methods
@@ -682,15 +684,7 @@ public class Table
                 continue;
 
             Object value = fields.get(column.getName());
-
-            if (!column.isAutoIncrement() &&
-                    column.isRequired() &&
-                    (null == value || value instanceof String && 0 == ((String) value).length()) &&
-                    !Table.AUTOPOPULATED_COLUMN_NAMES.contains(column.getName()) &&
-                    column.getJdbcDefaultValue() == null)
-            {
-                throw new RuntimeValidationException("A value is required for field '" + column.getName() + "'", column.getName());
-            }
+            _validateInsertValue(column, value);
 
             columnSQL.append(comma);
             columnSQL.append(column.getSelectName());
@@ -699,15 +693,6 @@ public class Table
                 valueSQL.append("NULL");
             else
             {
-                // Validate the value
-                List<ColumnValidator> validators = ColumnValidators.create(column, null);
-                for (ColumnValidator v : validators)
-                {
-                    String msg = v.validate(1, value);
-                    if (msg != null)
-                        throw new RuntimeValidationException(msg, column.getName()); // CONSIDER: would prefer throwing ValidationException instead, but it's not a RuntimeException
-                }
-
                 valueSQL.append('?');
                 if (value instanceof Parameter.JdbcParameterValue)
                     insertSQL.add(value);
@@ -788,6 +773,110 @@ public class Table
     }
 
 
+    private static void _validateInsertValue(ColumnInfo column, @Nullable Object value)
+    {
+        if (null == value || value instanceof String && 0 == ((String) value).length())
+        {
+            if (!column.isAutoIncrement() &&
+                    column.isRequired() &&
+                    !Table.AUTOPOPULATED_COLUMN_NAMES.contains(column.getName()) &&
+                    column.getJdbcDefaultValue() == null)
+            {
+                throw new RuntimeValidationException("A value is required for field '" + column.getName() + "'", column.getName());
+            }
+        }
+        else
+        {
+            // Validate the value
+            List<ColumnValidator> validators = ColumnValidators.create(column, null);
+            for (ColumnValidator v : validators)
+            {
+                String msg = v.validate(1, value);
+                if (msg != null)
+                    throw new RuntimeValidationException(msg, column.getName()); // CONSIDER: would prefer throwing ValidationException instead, but it's not a RuntimeException
+            }
+        }
+    }
+
+
+    /**
+     * Insert many rows using batched statements. Each row is prepared exactly as {@link #insert(User, TableInfo, Object)}
+     * prepares it (column filtering, trimming, Created/CreatedBy/Modified/ModifiedBy/Owner/EntityId, and validation),
+     * and omitted columns get their default values as they would there. Unlike insert(), the rows aren't updated with
+     * generated keys or special field values.
+     * @throws RuntimeValidationException if any row fails validation, before anything is inserted
+     */
+    public static <K> void batchInsert(@Nullable User user, TableInfo table, List<K> rowsIn)
+    {
+        assert (table.getTableType() != DatabaseTableType.NOT_IN_DB): ("Table " + table.getSchema().getName() + "." + table.getName() + " is not in the physical database.");
+
+        java.sql.Timestamp date = new java.sql.Timestamp(System.currentTimeMillis());
+
+        // Consecutive rows that set the same columns share a statement, so rows are still inserted in the order given
+        List<Pair<List<ColumnInfo>, List<List<Object>>>> batches = new ArrayList<>();
+        List<ColumnInfo> batchColumns = null;
+        List<List<Object>> batchRows = null;
+
+        for (K rowIn : rowsIn)
+        {
+            //noinspection unchecked
+            Map<String, Object> fields = rowIn instanceof Map ?
+                    _getTableData(table, (Map<String, Object>)rowIn, true) :
+                    _getTableData(table, rowIn, true);
+            _insertSpecialFields(user, table, fields, date);
+            _updateSpecialFields(user, table, fields, date);
+
+            List<ColumnInfo> columns = new ArrayList<>(fields.size());
+            List<Object> row = new ArrayList<>(fields.size());
+
+            for (ColumnInfo column : table.getColumns())
+            {
+                if (!fields.containsKey(column.getName()))
+                    continue;
+
+                Object value = fields.get(column.getName());
+                _validateInsertValue(column, value);
+
+                columns.add(column);
+                if (null == value || value instanceof String && 0 == ((String) value).length())
+                    row.add(new Parameter.TypedValue(null, column.getJdbcType()));
+                else if (value instanceof Parameter.JdbcParameterValue)
+                    row.add(value);
+                else
+                    row.add(new Parameter.TypedValue(value, column.getJdbcType()));
+            }
+
+            if (columns.isEmpty())
+                throw new IllegalArgumentException("Table.batchInsert called with no column data. table=" + table + " object=" + rowIn);
+
+            if (!columns.equals(batchColumns))
+            {
+                batchColumns = columns;
+                batchRows = new ArrayList<>();
+                batches.add(new Pair<>(batchColumns, batchRows));
+            }
+            batchRows.add(row);
+        }
+
+        try
+        {
+            for (Pair<List<ColumnInfo>, List<List<Object>>> batch : batches)
+            {
+                String sql = "INSERT INTO " + table.getSelectName() +
+                        " (" + batch.first.stream().map(ColumnInfo::getSelectName).collect(Collectors.joining(", ")) + ")" +
+                        " VALUES (" + batch.first.stream().map(col -> "?").collect(Collectors.joining(", ")) + ")";
+                batchExecute(table.getSchema(), sql, batch.second);
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new RuntimeSQLException(e);
+        }
+
+        notifyTableUpdate(table);
+    }
+
+
     public static <K> K update(@Nullable User user, TableInfo table, K fieldsIn, Object pkVals)
     {
         return update(user, table, fieldsIn, pkVals, null, Level.WARN);
@@ -1078,6 +1167,7 @@ public class Table
     public static void notifyTableUpdate(/*String operation,*/ TableInfo table/*, Container c*/)
     {
         DbCache.invalidateAll(table);
+        SelectorResultCache.invalidate(table);
     }
 
 
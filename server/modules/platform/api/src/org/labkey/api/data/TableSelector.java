@@ -181,6 +181,13 @@ public class TableSelector extends SqlExecutingSelector<TableSelector.TableSqlFa
         return this;
     }
 
+    /** Like SqlExecutingSelector.setResultCache(), but defaults to this selector's table if no tables are passed */
+    @Override
+    public TableSelector setResultCache(TableInfo... tables)
+    {
+        return super.setResultCache(tables.length == 0 ? new TableInfo[]{_table} : tables);
+    }
+
     /*
         Try to determine if the collection will iterate in a predictable order. Currently, all of these are assumed
         to be stable-ordered collections:
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.data.dialect;
+
+import java.sql.SQLException;
+
+/**
+ * A streaming load of rows into a single table using the database's native bulk-load command (e.g., PostgreSQL's
+ * COPY FROM STDIN). Rows are not visible, and constraint violations may not be reported, until {@link #finish()}.
+ * No generated keys are returned. Callers must call either {@link #finish()} or {@link #cancel()}.
+ * See {@link SqlDialect#createBulkCopy}.
+ */
+public interface BulkCopy
+{
+    /** @param values one value per column passed to {@link SqlDialect#createBulkCopy}, in the same order */
+    void addRow(Object[] values) throws SQLException;
+
+    /** Complete the load. Returns the number of rows inserted. */
+    long finish() throws SQLException;
+
+    /** Abandon the load if it hasn't finished; no-op otherwise */
+    void cancel();
+}
@@ -76,7 +76,7 @@ public abstract class PostgreSql91Dialect extends SqlDialect
 
     private final Map<String, Integer> _domainScaleMap = new ConcurrentHashMap<>();
     private final AtomicBoolean _arraySortFunctionExists = new AtomicBoolean(false);
-    private final InClauseGenerator _tempTableInClauseGenerator = new TempTableInClauseGenerator();
+    private final InClauseGenerator _arrayInClauseGenerator = new ArrayParameterInClauseGenerator();
 
     protected InClauseGenerator _inClauseGenerator = null;
 
@@ -261,7 +261,8 @@ public abstract class PostgreSql91Dialect extends SqlDialect
     {
         if (params.size() >= TEMPTABLE_GENERATOR_MINSIZE)
         {
-            SQLFragment ret = _tempTableInClauseGenerator.appendInClauseSql(sql, params);
+            // Bind long lists as a single array parameter instead of loading them into a temp table
+            SQLFragment ret = _arrayInClauseGenerator.appendInClauseSql(sql, params);
             if (null != ret)
                 return ret;
         }
@@ -1866,4 +1867,16 @@ public abstract class PostgreSql91Dialect extends SqlDialect
     {
         return true;
     }
+
+    @Override
+    public boolean supportsBulkCopy()
+    {
+        return true;
+    }
+
+    @Override
+    public BulkCopy createBulkCopy(Connection conn, TableInfo table, List<ColumnInfo> columns) throws SQLException
+    {
+        return new PostgreSqlBulkCopy(conn, table, columns);
+    }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.data.dialect;
+
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.attachments.AttachmentFile;
+import org.labkey.api.data.ColumnInfo;
+import org.labkey.api.data.JdbcType;
+import org.labkey.api.data.Parameter;
+import org.labkey.api.data.TableInfo;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Streams rows through PgJDBC's CopyManager using COPY ... FROM STDIN in text format. Values are normalized the same
+ * way Parameter binds them and then rendered as text, so the server does the final type coercion just as it would for
+ * a bound VARCHAR. Binary format would require a per-OID wire encoder for every column type we store.
+ */
+public class PostgreSqlBulkCopy implements BulkCopy
+{
+    private static final Logger LOG = Logger.getLogger(PostgreSqlBulkCopy.class);
+
+    private final CopyIn _copyIn;
+    private final JdbcType[] _types;
+    private final StringBuilder _line = new StringBuilder();
+
+    PostgreSqlBulkCopy(Connection conn, TableInfo table, List<ColumnInfo> columns) throws SQLException
+    {
+        _types = columns.stream().map(ColumnInfo::getJdbcType).toArray(JdbcType[]::new);
+
+        String sql = "COPY " + table.getSelectName() +
+                " (" + columns.stream().map(ColumnInfo::getSelectName).collect(Collectors.joining(", ")) + ")" +
+                " FROM STDIN";
+        _copyIn = getPGConnection(conn).getCopyAPI().copyIn(sql);
+    }
+
+    // Unwrap our ConnectionWrapper, then whatever the connection pool put around the driver's connection
+    private static PGConnection getPGConnection(Connection conn) throws SQLException
+    {
+        Connection c = conn;
+        for (int depth = 0; depth < 3 && null != c; depth++)
+        {
+            if (c instanceof PGConnection)
+                return (PGConnection)c;
+            if (c.isWrapperFor(PGConnection.class))
+                return c.unwrap(PGConnection.class);
+            Connection inner = c.unwrap(Connection.class);
+            if (inner == c)
+                break;
+            c = inner;
+        }
+        throw new SQLException("Could not obtain a PostgreSQL driver connection for COPY");
+    }
+
+    @Override
+    public void addRow(Object[] values) throws SQLException
+    {
+        assert values.length == _types.length;
+        _line.setLength(0);
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+                _line.append('\t');
+            appendValue(_line, values[i], _types[i]);
+        }
+        _line.append('\n');
+        byte[] bytes = _line.toString().getBytes(StandardCharsets.UTF_8);
+        _copyIn.writeToCopy(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public long finish() throws SQLException
+    {
+        return _copyIn.endCopy();
+    }
+
+    @Override
+    public void cancel()
+    {
+        if (!_copyIn.isActive())
+            return;
+        try
+        {
+            _copyIn.cancelCopy();
+        }
+        catch (SQLException x)
+        {
+            LOG.warn("Failed to cancel COPY", x);
+        }
+    }
+
+    /** Render one value in COPY text format; null is \N and backslash, tab, newline and carriage return are escaped */
+    static void appendValue(StringBuilder sb, Object value, JdbcType type) throws SQLException
+    {
+        value = Parameter.getValueToBind(value, type);
+
+        if (null == value)
+        {
+            sb.append("\\N");
+            return;
+        }
+
+        if (value instanceof Boolean)
+        {
+            sb.append((Boolean)value ? 't' : 'f');
+            return;
+        }
+
+        if (value instanceof byte[])
+        {
+            sb.append("\\\\x");
+            for (byte b : (byte[])value)
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return;
+        }
+
+        if (value instanceof Number)
+        {
+            // Integer columns reject "3.0", which JDBC would have coerced for us
+            Number n = (Number)value;
+            if (null != type && type.isInteger() && !(n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte))
+            {
+                double d = n.doubleValue();
+                if (d == Math.rint(d) && !Double.isInfinite(d))
+                    n = n.longValue();
+            }
+            sb.append(n instanceof BigDecimal ? ((BigDecimal)n).toPlainString() : n.toString());
+            return;
+        }
+
+        if (value instanceof AttachmentFile)
+        {
+            if (JdbcType.BINARY == type || JdbcType.VARBINARY == type || JdbcType.LONGVARBINARY == type)
+                throw new SQLException("Bulk copy does not support binary file values");
+            value = ((AttachmentFile)value).getFilename();
+        }
+
+        if (value instanceof Object[] || value instanceof java.util.Collection)
+            throw new SQLException("Bulk copy does not support array values");
+
+        // java.sql.Timestamp, Date and Time render in formats PostgreSQL accepts
+        String s = value.toString();
+        for (int i = 0; i < s.length(); i++)
+        {
+            char ch = s.charAt(i);
+            switch (ch)
+            {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(ch);
+            }
+        }
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        private String render(Object value, JdbcType type) throws SQLException
+        {
+            StringBuilder sb = new StringBuilder();
+            appendValue(sb, value, type);
+            return sb.toString();
+        }
+
+        @Test
+        public void testEscaping() throws SQLException
+        {
+            assertEquals("\\N", render(null, JdbcType.VARCHAR));
+            assertEquals("", render("", JdbcType.VARCHAR));
+            assertEquals("a\\tb\\nc\\rd\\\\e", render("a\tb\nc\rd\\e", JdbcType.VARCHAR));
+            assertEquals("\\\\N", render("\\N", JdbcType.VARCHAR));
+        }
+
+        @Test
+        public void testTypes() throws SQLException
+        {
+            assertEquals("t", render(Boolean.TRUE, JdbcType.BOOLEAN));
+            assertEquals("f", render(Boolean.FALSE, JdbcType.BOOLEAN));
+            assertEquals("3", render(3.0, JdbcType.INTEGER));
+            assertEquals("3.5", render(3.5, JdbcType.INTEGER));
+            assertEquals("3.5", render(3.5, JdbcType.DOUBLE));
+            assertEquals("10000000000", render(new BigDecimal("1E10"), JdbcType.DECIMAL));
+            assertEquals("\\\\x00ff", render(new byte[]{0, (byte)0xff}, JdbcType.BINARY));
+            assertEquals("2019-01-02 03:04:05.0", render(java.sql.Timestamp.valueOf("2019-01-02 03:04:05"), JdbcType.TIMESTAMP));
+            assertEquals(JdbcType.TIMESTAMP.name(), render(JdbcType.TIMESTAMP, JdbcType.VARCHAR));
+        }
+    }
+}
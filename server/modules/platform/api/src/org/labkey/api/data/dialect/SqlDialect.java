@@ -1160,6 +1160,33 @@ public abstract class SqlDialect
                 return null;
             }
         }
+
+        /** @return number of connections currently checked out of the pool, or null if the pool doesn't say */
+        public @Nullable Integer getNumActive()
+        {
+            return callOptionalGetter("getNumActive", "getActive");     // Commons DBCP, Tomcat JDBC Connection Pool
+        }
+
+        /** @return number of idle connections in the pool, or null if the pool doesn't say */
+        public @Nullable Integer getNumIdle()
+        {
+            return callOptionalGetter("getNumIdle", "getIdle");
+        }
+
+        private @Nullable Integer callOptionalGetter(String... methodNames)
+        {
+            for (String methodName : methodNames)
+            {
+                try
+                {
+                    return callGetter(methodName);
+                }
+                catch (ServletException ignored)
+                {
+                }
+            }
+            return null;
+        }
     }
 
 
@@ -1588,4 +1615,19 @@ public abstract class SqlDialect
     {
         return false;
     }
+
+    // return true if createBulkCopy() can stream rows into a table with the database's native bulk-load command
+    public boolean supportsBulkCopy()
+    {
+        return false;
+    }
+
+    /**
+     * Start a bulk load into the given columns of a schema table. This bypasses per-row statements entirely, so
+     * callers are responsible for only using it when no generated keys or per-row processing are needed.
+     */
+    public BulkCopy createBulkCopy(Connection conn, TableInfo table, List<ColumnInfo> columns) throws SQLException
+    {
+        throw new UnsupportedOperationException("Bulk copy is not supported by " + getProductName());
+    }
 }
@@ -25,6 +25,7 @@ import org.labkey.api.collections.OneBasedList;
 import org.labkey.api.data.ConnectionWrapper;
 import org.labkey.api.data.Container;
 import org.labkey.api.data.QueryLogging;
+import org.labkey.api.data.ResultSetWrapper;
 import org.labkey.api.data.queryprofiler.QueryProfiler;
 import org.labkey.api.settings.AppProps;
 import org.labkey.api.util.DateUtil;
@@ -72,6 +73,7 @@ public class StatementWrapper implements Statement, PreparedStatement, CallableS
     private final Logger _log;
     private String _debugSql = "";
     private long _msStart = 0;
+    private long _nanoStart = 0;
     private boolean userCancelled = false;
     // NOTE: CallableStatement supports getObject(), but PreparedStatement doesn't
     private OneBasedList<Object> _parameters = null;
@@ -80,6 +82,9 @@ public class StatementWrapper implements Statement, PreparedStatement, CallableS
     private @Nullable Throwable _closingStackTrace = null;
     private @Nullable Boolean _requestThread = null;
     private QueryLogging _queryLogging = QueryLogging.emptyQueryLogging();
+    /** If set, called instead of closing the underlying statement, e.g., to return it to a statement cache */
+    private @Nullable ConnectionWrapper.Closer _closeHandler = null;
+    private boolean _handledClose = false;
 
     String _sqlStateTestException = null;
 
@@ -118,6 +123,11 @@ public class StatementWrapper implements Statement, PreparedStatement, CallableS
         _requestThread = requestThread;
     }
 
+    public void setCloseHandler(@Nullable ConnectionWrapper.Closer closeHandler)
+    {
+        _closeHandler = closeHandler;
+    }
+
     public void registerOutParameter(int parameterIndex, int sqlType)
             throws SQLException
     {
@@ -1168,7 +1178,7 @@ public class StatementWrapper implements Statement, PreparedStatement, CallableS
 
             ResultSet rs = ((PreparedStatement)_stmt).executeQuery();
             assert MemTracker.getInstance().put(rs);
-            return rs;
+            return new RowCountingResultSet(rs, _debugSql);
         }
         catch (SQLException sqlx)
         {
@@ -1719,7 +1729,7 @@ public class StatementWrapper implements Statement, PreparedStatement, CallableS
         {
             ResultSet rs = _stmt.executeQuery(sql);
             assert MemTracker.getInstance().put(rs);
-            return rs;
+            return new RowCountingResultSet(rs, sql);
         }
         catch (SQLException sqlx)
         {
@@ -1756,9 +1766,21 @@ public class StatementWrapper implements Statement, PreparedStatement, CallableS
     public void close()
             throws SQLException
     {
+        // The underlying statement may already be in use by someone else, so never hand it back (or close it) twice
+        if (_handledClose)
+            return;
+
         try
         {
-            _stmt.close();
+            if (null != _closeHandler)
+            {
+                _handledClose = true;
+                _closeHandler.close();
+            }
+            else
+            {
+                _stmt.close();
+            }
             if (AppProps.getInstance().isDevMode() && _closingStackTrace == null)
             {
                 _closingStackTrace = new Throwable("Remembering stack for closing Statement on thread " + Thread.currentThread().getName());
@@ -2596,6 +2618,7 @@ public class StatementWrapper implements Statement, PreparedStatement, CallableS
         if (_debugSql.contains("\"8(\"") && !_debugSql.contains("\"\"8(\"\"")) // 18196
             throw new IllegalArgumentException("SQL injection test failed: " + _debugSql);
         _msStart = System.currentTimeMillis();
+        _nanoStart = System.nanoTime();
     }
 
 
@@ -2618,6 +2641,7 @@ public class StatementWrapper implements Statement, PreparedStatement, CallableS
     private void _logStatement(String sql, @Nullable SQLException x, int rowsAffected, QueryLogging queryLogging)
     {
         long elapsed = System.currentTimeMillis() - _msStart;
+        long elapsedNanos = System.nanoTime() - _nanoStart;
         boolean isAssertEnabled = false;
         assert isAssertEnabled = true;
 
@@ -2656,7 +2680,7 @@ public class StatementWrapper implements Statement, PreparedStatement, CallableS
         }
 
         // Hold on to this stack trace so that we can reuse it later (if collection has been enabled)
-        StackTraceElement[] stack = QueryProfiler.getInstance().track(_conn.getScope(), sql, zeroBasedList, elapsed, _stackTrace, isRequestThread(), queryLogging);
+        StackTraceElement[] stack = QueryProfiler.getInstance().trackStatement(_conn.getScope(), sql, zeroBasedList, elapsedNanos, rowsAffected, _stackTrace, isRequestThread(), queryLogging);
 
         if (x != null)
         {
@@ -2784,4 +2808,39 @@ public class StatementWrapper implements Statement, PreparedStatement, CallableS
     {
         return _debugSql;
     }
+
+
+    // Tells the query profiler how many rows the caller actually read, once it closes the ResultSet
+    private class RowCountingResultSet extends ResultSetWrapper
+    {
+        private final String _sql;
+        private long _rows = 0;
+        private boolean _closed = false;
+
+        private RowCountingResultSet(ResultSet rs, String sql)
+        {
+            super(rs);
+            _sql = sql;
+        }
+
+        @Override
+        public boolean next() throws SQLException
+        {
+            boolean next = super.next();
+            if (next)
+                _rows++;
+            return next;
+        }
+
+        @Override
+        public void close() throws SQLException
+        {
+            if (!_closed)
+            {
+                _closed = true;
+                QueryProfiler.getInstance().trackRows(_conn.getScope(), _sql, _rows);
+            }
+            super.close();
+        }
+    }
 }
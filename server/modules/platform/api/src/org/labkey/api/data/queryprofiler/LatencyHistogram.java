@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.data.queryprofiler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size histogram of non-negative values (typically latencies in microseconds) in the style of HdrHistogram.
+ * Values below 2^precisionBits get their own bucket; above that, each power of two is split into 2^(precisionBits - 1)
+ * equal buckets, so percentile estimates are within 2^-precisionBits of the true value no matter how many values are
+ * recorded. Recording is lock-free and allocation-free (a few atomic increments), so it can be called on every
+ * statement; readers never block writers, but may see a value that's in the counts and not yet in the sum.
+ */
+public class LatencyHistogram
+{
+    private final int _shiftBits;
+    private final long _maxTrackable;
+    private final AtomicLongArray _counts;
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _sum = new LongAdder();
+    private final AtomicLong _max = new AtomicLong();
+
+    /**
+     * @param precisionBits bits of precision; e.g., 4 estimates within 6%, 7 within 1%
+     * @param maxTrackable larger values are counted in the last bucket (but still count towards the sum and max)
+     */
+    public LatencyHistogram(int precisionBits, long maxTrackable)
+    {
+        if (precisionBits < 1 || precisionBits > 16)
+            throw new IllegalArgumentException("precisionBits must be between 1 and 16");
+        if (maxTrackable < 1)
+            throw new IllegalArgumentException("maxTrackable must be positive");
+
+        _shiftBits = precisionBits - 1;
+        _maxTrackable = maxTrackable;
+        _counts = new AtomicLongArray(index(maxTrackable) + 1);
+    }
+
+    int index(long value)
+    {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - _shiftBits);
+        return (shift << _shiftBits) + (int)(value >>> shift);
+    }
+
+    // The smallest value that falls in the bucket
+    long lowestValue(int index)
+    {
+        int shift = Math.max(0, (index >> _shiftBits) - 1);
+        return (long)(index - (shift << _shiftBits)) << shift;
+    }
+
+    // Values that fall in the bucket are in [lowestValue, lowestValue + width)
+    long width(int index)
+    {
+        return 1L << Math.max(0, (index >> _shiftBits) - 1);
+    }
+
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+
+        _counts.incrementAndGet(index(Math.min(value, _maxTrackable)));
+        _count.increment();
+        _sum.add(value);
+
+        long max = _max.get();
+        while (value > max && !_max.compareAndSet(max, value))
+            max = _max.get();
+    }
+
+    public long getCount()
+    {
+        return _count.sum();
+    }
+
+    public long getSum()
+    {
+        return _sum.sum();
+    }
+
+    public long getMax()
+    {
+        return _max.get();
+    }
+
+    public double getMean()
+    {
+        long count = getCount();
+        return 0 == count ? 0 : (double)getSum() / count;
+    }
+
+    /**
+     * @param percentile e.g., 50.0 for the median or 99.9
+     * @return an estimate of the value at the percentile (the midpoint of the bucket that contains it), or 0 if
+     * nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long[] counts = new long[_counts.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            counts[i] = _counts.get(i);
+            total += counts[i];
+        }
+        if (0 == total)
+            return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(Math.min(100.0, percentile) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(lowestValue(i) + width(i) / 2, getMax());
+        }
+
+        return getMax();
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < _counts.length(); i++)
+            _counts.set(i, 0);
+        _count.reset();
+        _sum.reset();
+        _max.set(0);
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testBuckets()
+        {
+            LatencyHistogram h = new LatencyHistogram(4, 1L << 36);
+
+            // Exact below 2^precisionBits, then contiguous buckets that cover every value exactly once
+            for (long v = 0; v < 16; v++)
+                assertEquals(v, h.index(v));
+            long expected = 0;
+            for (int i = 0; i <= h.index(1L << 36); i++)
+            {
+                assertEquals(expected, h.lowestValue(i));
+                assertEquals(i, h.index(h.lowestValue(i)));
+                assertEquals(i, h.index(h.lowestValue(i) + h.width(i) - 1));
+                expected += h.width(i);
+            }
+        }
+
+        @Test
+        public void testPercentiles()
+        {
+            LatencyHistogram h = new LatencyHistogram(7, 1L << 36);
+            assertEquals(0, h.getValueAtPercentile(50));
+
+            for (long v = 1; v <= 10_000; v++)
+                h.record(v);
+
+            assertEquals(10_000, h.getCount());
+            assertEquals(50_005_000, h.getSum());
+            assertEquals(10_000, h.getMax());
+            assertEquals(5_000, h.getValueAtPercentile(50), 5_000 / 64.0);
+            assertEquals(9_900, h.getValueAtPercentile(99), 9_900 / 64.0);
+            assertEquals(9_990, h.getValueAtPercentile(99.9), 9_990 / 64.0);
+            assertEquals(10_000, h.getValueAtPercentile(100));
+
+            // Values past the trackable maximum land in the last bucket
+            LatencyHistogram small = new LatencyHistogram(4, 1000);
+            small.record(1_000_000);
+            assertEquals(1_000_000, small.getMax());
+            assertTrue(small.getValueAtPercentile(50) <= 1_000_000);
+
+            h.reset();
+            assertEquals(0, h.getCount());
+            assertEquals(0, h.getValueAtPercentile(99));
+        }
+
+        @Test
+        public void testConcurrentRecording() throws InterruptedException
+        {
+            LatencyHistogram h = new LatencyHistogram(5, 1L << 36);
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++)
+            {
+                long seed = t;
+                threads[t] = new Thread(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 100_000; i++)
+                        h.record(random.nextInt(1_000_000));
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+
+            assertEquals(400_000, h.getCount());
+            assertEquals(500_000, h.getValueAtPercentile(50), 500_000 / 16.0);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.data.queryprofiler;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.cache.CacheManager;
+import org.labkey.api.cache.CacheStats;
+import org.labkey.api.cache.TrackingCache;
+import org.labkey.api.data.DbScope;
+import org.labkey.api.data.dialect.SqlDialect.DataSourceProperties;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes query profiler, connection pool, and cache statistics in the Prometheus text exposition format (version 0.0.4),
+ * so the server can be scraped by Prometheus or any compatible collector. Everything written is read from counters
+ * that are maintained anyway; producing the output doesn't touch the database.
+ */
+public class PrometheusMetricsWriter
+{
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99, 0.999};
+    private static final int TOP_QUERIES = 100;
+
+    private final PrintWriter _out;
+
+    public PrometheusMetricsWriter(PrintWriter out)
+    {
+        _out = out;
+    }
+
+    public void write()
+    {
+        QueryProfiler profiler = QueryProfiler.getInstance();
+
+        header("labkey_query_duration_seconds", "summary", "Execution time of all SQL statements");
+        writeSummary("labkey_query_duration_seconds", "thread=\"request\"", profiler.getRequestLatency());
+        writeSummary("labkey_query_duration_seconds", "thread=\"background\"", profiler.getBackgroundLatency());
+
+        // Samples of a metric family must be contiguous, so make two passes over the top statements
+        List<QueryTracker> top = profiler.getTopQueries(TOP_QUERIES);
+        header("labkey_query_statement_duration_seconds", "summary", "Execution time of the " + TOP_QUERIES + " statements with the highest cumulative time");
+        for (QueryTracker tracker : top)
+            writeSummary("labkey_query_statement_duration_seconds", sqlHash(tracker), tracker.getLatency());
+        header("labkey_query_statement_rows_total", "counter", "Rows read or affected by the " + TOP_QUERIES + " statements with the highest cumulative time");
+        for (QueryTracker tracker : top)
+            sample("labkey_query_statement_rows_total", sqlHash(tracker), tracker.getRowsCumulative());
+
+        header("labkey_query_dropped_total", "counter", "Statements not profiled because the profiler couldn't keep up");
+        sample("labkey_query_dropped_total", null, profiler.getDroppedQueries());
+
+        header("labkey_prepared_statement_cache_hits_total", "counter", "Prepared statements reused from the per-connection cache");
+        sample("labkey_prepared_statement_cache_hits_total", null, profiler.getPreparedStatementCacheHits());
+        header("labkey_prepared_statement_cache_misses_total", "counter", "Cacheable prepared statements that had to be prepared");
+        sample("labkey_prepared_statement_cache_misses_total", null, profiler.getPreparedStatementCacheMisses());
+
+        writeConnectionPools(profiler);
+        writeCaches();
+    }
+
+    // Identify statements by a hash of their SQL; the SQL itself makes for unwieldy labels and may be sensitive
+    private String sqlHash(QueryTracker tracker)
+    {
+        return "sql_hash=\"" + Integer.toHexString(tracker.hashCode()) + "\"";
+    }
+
+    private void writeConnectionPools(QueryProfiler profiler)
+    {
+        header("labkey_db_connection_wait_seconds", "summary", "Time spent waiting for a connection from the pool");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(profiler.getConnectionWaits()).entrySet())
+            writeSummary("labkey_db_connection_wait_seconds", "datasource=\"" + escape(entry.getKey()) + "\"", entry.getValue());
+
+        header("labkey_db_connections", "gauge", "Connections in each data source's pool");
+        for (DbScope scope : DbScope.getDbScopes())
+        {
+            DataSourceProperties props = scope.getDataSourceProperties();
+            String datasource = "datasource=\"" + escape(scope.getDataSourceName()) + "\"";
+            sample("labkey_db_connections", datasource + ",state=\"active\"", props.getNumActive());
+            sample("labkey_db_connections", datasource + ",state=\"idle\"", props.getNumIdle());
+            sample("labkey_db_connections", datasource + ",state=\"max\"", props.getMaxTotal());
+        }
+    }
+
+    private void writeCaches()
+    {
+        // Many caches share a description (e.g., one per container), so aggregate them
+        Map<String, long[]> totals = new TreeMap<>();
+        for (TrackingCache cache : CacheManager.getKnownCaches())
+        {
+            CacheStats stats = CacheManager.getCacheStats(cache);
+            long[] t = totals.computeIfAbsent(stats.getDescription(), d -> new long[6]);
+            t[0] += stats.getGets();
+            t[1] += stats.getMisses();
+            t[2] += stats.getPuts();
+            t[3] += stats.getRemoves();
+            t[4] += stats.getSize();
+            t[5] += null == stats.getLimit() ? 0 : stats.getLimit();
+        }
+
+        String[] names = {"labkey_cache_gets_total", "labkey_cache_misses_total", "labkey_cache_puts_total", "labkey_cache_removes_total", "labkey_cache_size", "labkey_cache_limit"};
+        String[] types = {"counter", "counter", "counter", "counter", "gauge", "gauge"};
+        for (int i = 0; i < names.length; i++)
+        {
+            header(names[i], types[i], null);
+            for (Map.Entry<String, long[]> entry : totals.entrySet())
+                sample(names[i], "cache=\"" + escape(entry.getKey()) + "\"", entry.getValue()[i]);
+        }
+    }
+
+    private void header(String name, String type, String help)
+    {
+        if (null != help)
+            _out.print("# HELP " + name + " " + help + "\n");
+        _out.print("# TYPE " + name + " " + type + "\n");
+    }
+
+    // Histograms hold microseconds; Prometheus convention is base units
+    void writeSummary(String name, String labels, LatencyHistogram histogram)
+    {
+        String prefix = null == labels ? "" : labels + ",";
+
+        for (double quantile : QUANTILES)
+            sample(name, prefix + "quantile=\"" + quantile + "\"", histogram.getValueAtPercentile(quantile * 100) / 1e6);
+
+        sample(name + "_sum", labels, histogram.getSum() / 1e6);
+        sample(name + "_count", labels, histogram.getCount());
+    }
+
+    private void sample(String name, String labels, Number value)
+    {
+        if (null == value)
+            return;
+
+        _out.print(name);
+        if (null != labels)
+            _out.print("{" + labels + "}");
+        _out.print(" " + value + "\n");
+    }
+
+    /** Escape a label value: backslash, double quote, and line feed are the only special characters */
+    static String escape(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testEscape()
+        {
+            assertEquals("labkey", escape("labkey"));
+            assertEquals("a\\\\b\\\"c\\\"\\nd", escape("a\\b\"c\"\nd"));
+        }
+
+        @Test
+        public void testSummary()
+        {
+            LatencyHistogram histogram = new LatencyHistogram(7, 1_000_000_000L);
+            histogram.record(1_000);
+            histogram.record(1_000);
+
+            StringWriter sw = new StringWriter();
+            new PrometheusMetricsWriter(new PrintWriter(sw)).writeSummary("test_seconds", "thread=\"request\"", histogram);
+
+            assertEquals(
+                "test_seconds{thread=\"request\",quantile=\"0.5\"} 0.001\n" +
+                "test_seconds{thread=\"request\",quantile=\"0.95\"} 0.001\n" +
+                "test_seconds{thread=\"request\",quantile=\"0.99\"} 0.001\n" +
+                "test_seconds{thread=\"request\",quantile=\"0.999\"} 0.001\n" +
+                "test_seconds_sum{thread=\"request\"} 0.002\n" +
+                "test_seconds_count{thread=\"request\"} 2\n",
+                sw.toString());
+        }
+    }
+}
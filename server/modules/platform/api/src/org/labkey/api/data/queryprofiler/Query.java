@@ -41,20 +41,40 @@ public class Query
     private final @Nullable
     List<Object> _parameters;
     private final long _elapsed;
+    private final long _elapsedMicros;
+    private final long _rows;
+    private final boolean _rowsOnly;
     private final StackTraceElement[] _stackTrace;
     private final boolean _isRequestThread;
     private Boolean _validSql = null;
 
-    Query(@Nullable DbScope scope, String sql, @Nullable List<Object> parameters, long elapsed, StackTraceElement[] stackTrace, boolean isRequestThread)
+    Query(@Nullable DbScope scope, String sql, @Nullable List<Object> parameters, long elapsedMicros, long rows, StackTraceElement[] stackTrace, boolean isRequestThread)
     {
         _scope = scope;
         _sql = sql;
         _parameters = null != parameters ? new ArrayList<>(parameters) : null;    // Make a copy... callers might modify the collection
-        _elapsed = elapsed;
+        _elapsed = elapsedMicros / 1000;
+        _elapsedMicros = elapsedMicros;
+        _rows = rows;
+        _rowsOnly = false;
         _stackTrace = stackTrace;
         _isRequestThread = isRequestThread;
     }
 
+    // Rows returned by a query that was tracked earlier, reported when its ResultSet is closed
+    Query(@Nullable DbScope scope, String sql, long rows)
+    {
+        _scope = scope;
+        _sql = sql;
+        _parameters = null;
+        _elapsed = 0;
+        _elapsedMicros = 0;
+        _rows = rows;
+        _rowsOnly = true;
+        _stackTrace = null;
+        _isRequestThread = false;
+    }
+
     @Nullable
     public DbScope getScope()
     {
@@ -86,6 +106,22 @@ public class Query
         return _elapsed;
     }
 
+    public long getElapsedMicros()
+    {
+        return _elapsedMicros;
+    }
+
+    /** @return rows returned or affected, or -1 if unknown */
+    public long getRows()
+    {
+        return _rows;
+    }
+
+    public boolean isRowsOnly()
+    {
+        return _rowsOnly;
+    }
+
     public String getStackTrace()
     {
         if (_stackTrace == null)
@@ -59,9 +59,13 @@ import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*
 * User: adam
@@ -88,6 +92,18 @@ public class QueryProfiler
     private long _upTimeAtLastReset;
     private boolean _hasBeenReset = false;
 
+    // Updated from every statement preparation, so kept outside of LOCK
+    private final AtomicLong _preparedStatementCacheHits = new AtomicLong();
+    private final AtomicLong _preparedStatementCacheMisses = new AtomicLong();
+
+    // Recorded inline on every statement and connection checkout (not by the profiler thread, which can fall behind
+    // and drop queries), so these are lock-free. All in microseconds.
+    private static final long MAX_TRACKED_MICROS = TimeUnit.DAYS.toMicros(1);
+    private final LatencyHistogram _requestLatency = new LatencyHistogram(7, MAX_TRACKED_MICROS);
+    private final LatencyHistogram _backgroundLatency = new LatencyHistogram(7, MAX_TRACKED_MICROS);
+    private final Map<String, LatencyHistogram> _connectionWaits = new ConcurrentHashMap<>();
+    private final AtomicLong _droppedQueries = new AtomicLong();
+
     private final List<DatabaseQueryListener> _listeners = new CopyOnWriteArrayList<>();
 
     public static QueryProfiler getInstance()
@@ -138,6 +154,39 @@ public class QueryProfiler
             }
         }));
 
+        getTrackerSets().add(new QueryTrackerSet("P95", "highest 95th percentile execution time", false, true, new QueryTrackerComparator()
+        {
+            long getPrimaryStatisticValue(QueryTracker qt)
+            {
+                return qt.getP95();
+            }
+
+            long getSecondaryStatisticValue(QueryTracker qt)
+            {
+                return qt.getCumulative();
+            }
+
+            @Override
+            String getFormattedPrimaryStatistic(QueryTracker qt)
+            {
+                // Tracked in microseconds, displayed in milliseconds like the other times
+                return Formats.f1.format(getPrimaryStatisticValue(qt) / 1000.0);
+            }
+        }));
+
+        getTrackerSets().add(new QueryTrackerSet("Rows", "highest average number of rows returned or affected", false, true, new QueryTrackerComparator()
+        {
+            long getPrimaryStatisticValue(QueryTracker qt)
+            {
+                return qt.getAverageRows();
+            }
+
+            long getSecondaryStatisticValue(QueryTracker qt)
+            {
+                return qt.getCount();
+            }
+        }));
+
         getTrackerSets().add(new QueryTrackerSet("Last", "most recent invocation time", false, true, new QueryTrackerComparator()
         {
             long getPrimaryStatisticValue(QueryTracker qt)
@@ -185,10 +234,26 @@ public class QueryProfiler
         _listeners.add(listener);
     }
 
+    /** @param elapsed execution time in milliseconds */
     @Nullable
     public StackTraceElement[] track(@Nullable DbScope scope, String sql, @Nullable List<Object> parameters, long elapsed,
                       @Nullable StackTraceElement[] stackTrace, boolean requestThread, QueryLogging queryLogging)
     {
+        return trackStatement(scope, sql, parameters, TimeUnit.MILLISECONDS.toNanos(elapsed), -1, stackTrace, requestThread, queryLogging);
+    }
+
+    /**
+     * @param elapsedNanos execution time in nanoseconds
+     * @param rows rows affected, or -1 if unknown. Rows returned by a query are reported separately via trackRows(),
+     * once the caller has read them.
+     */
+    @Nullable
+    public StackTraceElement[] trackStatement(@Nullable DbScope scope, String sql, @Nullable List<Object> parameters, long elapsedNanos, long rows,
+                      @Nullable StackTraceElement[] stackTrace, boolean requestThread, QueryLogging queryLogging)
+    {
+        long elapsedMicros = elapsedNanos / 1000;
+        (requestThread ? _requestLatency : _backgroundLatency).record(elapsedMicros);
+
         if (null == stackTrace)
             stackTrace = MiniProfiler.getTroubleshootingStackTrace();
 
@@ -219,13 +284,93 @@ public class QueryProfiler
             }
         }
 
-        MiniProfiler.addQuery(elapsed, sql, stackTrace);
+        MiniProfiler.addQuery(elapsedMicros / 1000, sql, stackTrace);
 
         // Don't block if queue is full
-        _queue.offer(new Query(scope, sql, parameters, elapsed, stackTrace, requestThread));
+        if (!_queue.offer(new Query(scope, sql, parameters, elapsedMicros, rows, stackTrace, requestThread)))
+            _droppedQueries.incrementAndGet();
         return stackTrace;
     }
 
+    /** Called when a query's ResultSet is closed, with the number of rows the caller read */
+    public void trackRows(@Nullable DbScope scope, String sql, long rows)
+    {
+        if (!_queue.offer(new Query(scope, sql, rows)))
+            _droppedQueries.incrementAndGet();
+    }
+
+    /** Called with the time spent waiting for the connection pool to hand out a connection */
+    public void trackConnectionWait(DbScope scope, long elapsedNanos)
+    {
+        LatencyHistogram histogram = _connectionWaits.get(scope.getDataSourceName());
+        if (null == histogram)
+            histogram = _connectionWaits.computeIfAbsent(scope.getDataSourceName(), name -> new LatencyHistogram(7, MAX_TRACKED_MICROS));
+        histogram.record(elapsedNanos / 1000);
+    }
+
+    LatencyHistogram getRequestLatency()
+    {
+        return _requestLatency;
+    }
+
+    LatencyHistogram getBackgroundLatency()
+    {
+        return _backgroundLatency;
+    }
+
+    /** @return connection wait histograms, keyed by data source name */
+    Map<String, LatencyHistogram> getConnectionWaits()
+    {
+        return Collections.unmodifiableMap(_connectionWaits);
+    }
+
+    /** @return the number of statements that weren't tracked because the profiler thread couldn't keep up */
+    long getDroppedQueries()
+    {
+        return _droppedQueries.get();
+    }
+
+    /** @return up to limit trackers with the highest cumulative execution time */
+    List<QueryTracker> getTopQueries(int limit)
+    {
+        synchronized (_lock)
+        {
+            List<QueryTracker> ret = new ArrayList<>(limit);
+            for (QueryTrackerSet set : getTrackerSets())
+            {
+                if (set.getCaption().equals("Total"))
+                {
+                    for (QueryTracker tracker : set.descendingSet())
+                    {
+                        if (ret.size() == limit)
+                            break;
+                        ret.add(tracker);
+                    }
+                }
+            }
+            return ret;
+        }
+    }
+
+    /** Called by the connection's prepared statement cache for every cacheable statement that's prepared */
+    public void trackPreparedStatementCache(boolean hit)
+    {
+        if (hit)
+            _preparedStatementCacheHits.incrementAndGet();
+        else
+            _preparedStatementCacheMisses.incrementAndGet();
+    }
+
+    public long getPreparedStatementCacheHits()
+    {
+        return _preparedStatementCacheHits.get();
+    }
+
+    public long getPreparedStatementCacheMisses()
+    {
+        return _preparedStatementCacheMisses.get();
+    }
+
     public void resetAllStatistics()
     {
         synchronized (_lock)
@@ -250,6 +395,12 @@ public class QueryProfiler
             _backgroundQueryCount = 0;
             _backgroundQueryTime = 0;
             _uniqueQueryCountEstimate = 0;
+            _preparedStatementCacheHits.set(0);
+            _preparedStatementCacheMisses.set(0);
+            _requestLatency.reset();
+            _backgroundLatency.reset();
+            _connectionWaits.values().forEach(LatencyHistogram::reset);
+            _droppedQueries.set(0);
             _requestCountAtLastReset = ViewServlet.getRequestCount();
 
             RuntimeMXBean runtimeBean = ManagementFactory.getRuntimeMXBean();
@@ -298,6 +449,8 @@ public class QueryProfiler
                         out.println("<td style=\"width:10px\">&nbsp;</td>");
                         out.println("<td>Query Time per Request:</td><td style=\"text-align:right\">" + Formats.f1.format((double) _requestQueryTime / requests) + "</td>");
                         out.println("</tr>\n  <tr>");
+                        renderPercentiles(out, _requestLatency);
+                        out.println("</tr>\n  <tr>");
                         out.println("<td>" + (_hasBeenReset ? "Request Count Since Last Reset" : "Request Count") + ":</td><td style=\"text-align:right\">" + Formats.commaf0.format(requests) + "</td><td colspan=3></td></tr>");
                         out.println("  <tr><td style=\"border-top:1px solid\" colspan=5>&nbsp;</td></tr>");
 
@@ -305,6 +458,27 @@ public class QueryProfiler
                         out.println("  <tr><td>Query Count:</td><td style=\"text-align:right\">" + Formats.commaf0.format(_backgroundQueryCount) + "</td>");
                         out.println("<td style=\"width:10px\">&nbsp;</td>");
                         out.println("<td>Query Time:</td><td style=\"text-align:right\">" + Formats.commaf0.format(_backgroundQueryTime) + "</td>");
+                        out.println("</tr>\n  <tr>");
+                        renderPercentiles(out, _backgroundLatency);
+                        out.println("</tr>");
+                        out.println("  <tr><td style=\"border-top:1px solid\" colspan=5>&nbsp;</td></tr>");
+
+                        if (!_connectionWaits.isEmpty())
+                        {
+                            out.println("  <tr><td style=\"border-top:1px solid;text-align:center\" colspan=5>Connection Pool Wait Time</td></tr>");
+                            for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(_connectionWaits).entrySet())
+                            {
+                                out.println("  <tr><td colspan=5>" + PageFlowUtil.filter(entry.getKey()) + "</td></tr>\n  <tr>");
+                                renderPercentiles(out, entry.getValue());
+                                out.println("</tr>");
+                            }
+                            out.println("  <tr><td style=\"border-top:1px solid\" colspan=5>&nbsp;</td></tr>");
+                        }
+
+                        out.println("  <tr><td style=\"border-top:1px solid;text-align:center\" colspan=5>Prepared Statement Cache</td></tr>");
+                        out.println("  <tr><td>Hits:</td><td style=\"text-align:right\">" + Formats.commaf0.format(_preparedStatementCacheHits.get()) + "</td>");
+                        out.println("<td style=\"width:10px\">&nbsp;</td>");
+                        out.println("<td>Misses:</td><td style=\"text-align:right\">" + Formats.commaf0.format(_preparedStatementCacheMisses.get()) + "</td>");
                         out.println("</tr>");
                         out.println("  <tr><td style=\"border-top:1px solid\" colspan=5>&nbsp;</td></tr>");
                         out.println("  <tr><td colspan=5>&nbsp;</td></tr>");
@@ -350,6 +524,19 @@ public class QueryProfiler
         }
     }
 
+    // Percentiles are tracked in microseconds and displayed in milliseconds
+    private static void renderPercentiles(PrintWriter out, LatencyHistogram histogram)
+    {
+        out.println("<td>P50 / P95 Time:</td><td style=\"text-align:right\">" + formatMillis(histogram.getValueAtPercentile(50)) + " / " + formatMillis(histogram.getValueAtPercentile(95)) + "</td>");
+        out.println("<td style=\"width:10px\">&nbsp;</td>");
+        out.println("<td>P99 / P99.9 Time:</td><td style=\"text-align:right\">" + formatMillis(histogram.getValueAtPercentile(99)) + " / " + formatMillis(histogram.getValueAtPercentile(99.9)) + "</td>");
+    }
+
+    private static String formatMillis(long micros)
+    {
+        return Formats.f1.format(micros / 1000.0);
+    }
+
     public HttpView getReportView(String statName, String buttonHTML, ActionURLFactory captionURLFactory, ActionURLFactory stackTraceURLFactory)
     {
         return new ReportView(statName, buttonHTML, captionURLFactory, stackTraceURLFactory);
@@ -546,6 +733,24 @@ public class QueryProfiler
                     // Don't update or add while we're rendering the report or vice versa
                     synchronized (_lock)
                     {
+                        if (query.isRowsOnly())
+                        {
+                            QueryTracker tracker = _queries.get(query.getSql());
+
+                            if (null != tracker)
+                            {
+                                for (QueryTrackerSet set : getTrackerSets())
+                                    set.beforeUpdate(tracker);
+
+                                tracker.addRows(query.getRows());
+
+                                for (QueryTrackerSet set : getTrackerSets())
+                                    set.update(tracker);
+                            }
+
+                            continue;
+                        }
+
                         if (query.isRequestThread())
                         {
                             _requestQueryCount++;
@@ -561,7 +766,7 @@ public class QueryProfiler
 
                         if (null == tracker)
                         {
-                            tracker = new QueryTracker(query.getScope(), query.getSql(), query.getElapsed(), query.getStackTrace(), query.isValidSql());
+                            tracker = new QueryTracker(query.getScope(), query.getSql(), query.getElapsed(), query.getElapsedMicros(), query.getRows(), query.getStackTrace(), query.isValidSql());
 
                             // First instance of this query, so always save its parameters
                             tracker.setParameters(query.getParameters());
@@ -578,7 +783,7 @@ public class QueryProfiler
                             for (QueryTrackerSet set : getTrackerSets())
                                 set.beforeUpdate(tracker);
 
-                            tracker.addInvocation(query.getElapsed(), query.getStackTrace());
+                            tracker.addInvocation(query.getElapsed(), query.getElapsedMicros(), query.getRows(), query.getStackTrace());
 
                             for (QueryTrackerSet set : getTrackerSets())
                                 set.update(tracker);
@@ -38,6 +38,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.DataFormatException;
 
@@ -62,17 +63,23 @@ class QueryTracker
     private long _cumulative = 0;
     private long _lastInvocation;
 
-    QueryTracker(@Nullable DbScope scope, @NotNull String sql, long elapsed, String stackTrace, boolean validSql)
+    // Execution time distribution in microseconds; ~6% precision keeps this around 2KB per query
+    private final LatencyHistogram _latency = new LatencyHistogram(4, TimeUnit.DAYS.toMicros(1));
+    private long _p95 = 0;      // Cached, since the P95 tracker set sorts on it
+    private long _rowCount = 0;
+    private long _rowsCumulative = 0;
+
+    QueryTracker(@Nullable DbScope scope, @NotNull String sql, long elapsed, long elapsedMicros, long rows, String stackTrace, boolean validSql)
     {
         _scope = scope;
         _sql = sql;
         _validSql = validSql;
         _firstInvocation = System.currentTimeMillis();
 
-        addInvocation(elapsed, stackTrace);
+        addInvocation(elapsed, elapsedMicros, rows, stackTrace);
     }
 
-    public void addInvocation(long elapsed, String stackTrace)
+    public void addInvocation(long elapsed, long elapsedMicros, long rows, String stackTrace)
     {
         _count++;
         _cumulative += elapsed;
@@ -81,6 +88,10 @@ class QueryTracker
         if (elapsed > _max)
             _max = elapsed;
 
+        _latency.record(elapsedMicros);
+        _p95 = _latency.getValueAtPercentile(95);
+        addRows(rows);
+
         ByteArrayHashKey compressed = new ByteArrayHashKey(Compress.deflate(stackTrace));
         AtomicInteger frequency = _stackTraces.get(compressed);
 
@@ -157,6 +168,36 @@ class QueryTracker
         return _cumulative / _count;
     }
 
+    /** @param rows rows returned or affected by one invocation; ignored if negative (i.e., unknown) */
+    public void addRows(long rows)
+    {
+        if (rows < 0)
+            return;
+        _rowCount++;
+        _rowsCumulative += rows;
+    }
+
+    public long getRowsCumulative()
+    {
+        return _rowsCumulative;
+    }
+
+    public long getAverageRows()
+    {
+        return 0 == _rowCount ? 0 : _rowsCumulative / _rowCount;
+    }
+
+    public LatencyHistogram getLatency()
+    {
+        return _latency;
+    }
+
+    /** @return the 95th percentile execution time in microseconds */
+    public long getP95()
+    {
+        return _p95;
+    }
+
     public int getStackTraceCount()
     {
         return _stackTraces.size();
@@ -15,28 +15,102 @@
  */
 package org.labkey.api.dataiterator;
 
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.collections.CaseInsensitiveHashMap;
 import org.labkey.api.data.ColumnInfo;
+import org.labkey.api.data.DbScope;
+import org.labkey.api.miniprofiler.MiniProfiler;
 import org.labkey.api.query.BatchValidationException;
+import org.labkey.api.query.QueryService;
+import org.labkey.api.util.UnexpectedException;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
+ * Runs the wrapped DataIterator on a background thread, so a chain of DataIteratorBuilders can be split into pipeline
+ * stages that run on separate cores. For example, wrapping a DataLoader puts parsing and type conversion on one thread
+ * while the caller's thread validates and inserts. Rows are handed off in batches through a bounded queue, so a
+ * stage blocks (rather than buffering without limit) when it gets ahead of its consumer.
+ * <p/>
+ * The caller's DbScope transaction and its connection are bound to the calling thread, so the Builder runs the stage
+ * synchronously when a transaction is active, unless the source is declared not to use the database. The QueryService
+ * environment is copied to the background thread. Each stage's throughput is added to the MiniProfiler when it closes.
+ * <p/>
  * User: matthew
  * Date: 5/4/13
  * Time: 9:21 AM
  */
 public class AsyncDataIterator implements DataIterator
 {
+    private static final Logger LOG = Logger.getLogger(AsyncDataIterator.class);
+
+    static final int BATCH_SIZE = 100;
+    static final int QUEUE_BATCHES = 10;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    // Shared by all pipeline stages; threads are created on demand and retired after a minute of idling
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, "AsyncDataIterator-" + THREAD_COUNT.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     public static class Builder implements DataIteratorBuilder
     {
         final DataIteratorBuilder _in;
+        final String _stageName;
+        final StageMetrics _metrics = new StageMetrics();
+        boolean _transactionIndependent = false;
+
         public Builder(DataIteratorBuilder in)
+        {
+            this(in, null);
+        }
+
+        /** @param stageName name under which this stage's throughput is reported to the MiniProfiler */
+        public Builder(DataIteratorBuilder in, String stageName)
         {
             _in = in;
+            _stageName = stageName;
+        }
+
+        /**
+         * Declare that the source reads only files or memory, never the database, so it can run on its own thread even
+         * while the caller is in a transaction.
+         */
+        public Builder setTransactionIndependent(boolean transactionIndependent)
+        {
+            _transactionIndependent = transactionIndependent;
+            return this;
+        }
+
+        /** @return throughput of the stages this builder has created, e.g. for logging once the pump is done */
+        public StageMetrics getMetrics()
+        {
+            return _metrics;
         }
 
         @Override
@@ -45,7 +119,71 @@ public class AsyncDataIterator implements DataIterator
             DataIterator it = _in.getDataIterator(context);
             if (null == it)
                 return null;
-            return new AsyncDataIterator(it,context);
+            // The source might read through the caller's transaction, which another thread can't see
+            if (!_transactionIndependent && isTransactionActive())
+                return it;
+            return new AsyncDataIterator(it, context, true, _stageName, _metrics);
+        }
+    }
+
+    private static boolean isTransactionActive()
+    {
+        for (DbScope scope : DbScope.getDbScopes())
+        {
+            if (scope.isTransactionActive())
+                return true;
+        }
+        return false;
+    }
+
+    /** Throughput counters for a pipeline stage */
+    public static class StageMetrics
+    {
+        private final AtomicLong _rows = new AtomicLong();
+        private final AtomicLong _batches = new AtomicLong();
+        private final AtomicLong _producerNanos = new AtomicLong();
+        private final AtomicLong _producerBlockedNanos = new AtomicLong();
+        private final AtomicLong _consumerBlockedNanos = new AtomicLong();
+
+        public long getRows()
+        {
+            return _rows.get();
+        }
+
+        public long getBatches()
+        {
+            return _batches.get();
+        }
+
+        /** Time the stage spent producing rows, including time blocked on a full queue */
+        public long getProducerMillis()
+        {
+            return _producerNanos.get() / 1_000_000;
+        }
+
+        /** Time the stage waited because its consumer was slower */
+        public long getProducerBlockedMillis()
+        {
+            return _producerBlockedNanos.get() / 1_000_000;
+        }
+
+        /** Time the consumer waited because this stage was slower */
+        public long getConsumerBlockedMillis()
+        {
+            return _consumerBlockedNanos.get() / 1_000_000;
+        }
+
+        public double getRowsPerSecond()
+        {
+            long nanos = _producerNanos.get();
+            return 0 == nanos ? 0 : _rows.get() * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d rows in %d batches, %.0f rows/sec, producer blocked %d ms, consumer blocked %d ms",
+                    getRows(), getBatches(), getRowsPerSecond(), getProducerBlockedMillis(), getConsumerBlockedMillis());
         }
     }
 
@@ -54,16 +192,16 @@ public class AsyncDataIterator implements DataIterator
     DataIterator _it;
     int _columnCount;
     DataIteratorContext _context;
+    String _stageName;
+    StageMetrics _metrics;
 
-    Thread _reader;
+    ReadRunnable _reader;
+    AtomicReference<Throwable> _readerException;
 
-//    ArrayListMap.FindMap<String> _findMap;
-//    static ArrayListMap<String,Object> eof = new ArrayListMap<String,Object>();
-//    protected LinkedBlockingQueue<ArrayListMap<String,Object>> _queue;
-    protected LinkedBlockingQueue<Object[]> _queue;
-    static Object[] eof = new Object[0];
+    protected BlockingQueue<Object[][]> _queue;
+    static final Object[][] eof = new Object[0][];
 
-    ArrayList<Object[]> _buffer = new ArrayList<>(100);
+    Object[][] _batch = null;
     int _currentRow = -1;
 
     AtomicInteger _partnerCount = new AtomicInteger(1);
@@ -77,14 +215,26 @@ public class AsyncDataIterator implements DataIterator
 
     public AsyncDataIterator(DataIterator it, DataIteratorContext context, boolean autostart)
     {
-        _queue = new LinkedBlockingQueue<>(1000);
+        this(it, context, autostart, null);
+    }
+
+
+    public AsyncDataIterator(DataIterator it, DataIteratorContext context, boolean autostart, String stageName)
+    {
+        this(it, context, autostart, stageName, new StageMetrics());
+    }
+
+
+    private AsyncDataIterator(DataIterator it, DataIteratorContext context, boolean autostart, String stageName, StageMetrics metrics)
+    {
+        _queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
         _itLock = new Object();
         _it = it;
         _columnCount = it.getColumnCount();
         _context = context;
-//        _findMap = new ArrayListMap.FindMap<String>(new CaseInsensitiveHashMap<Integer>());
-//        for (int i=0 ; i<= it.getColumnCount() ; i++)
-//            _findMap.put(it.getColumnInfo(i).getName(), i);
+        _stageName = null != stageName ? stageName : null != it.getDebugName() ? it.getDebugName() : it.getClass().getName();
+        _metrics = metrics;
+        _readerException = new AtomicReference<>();
         if (autostart)
             start();
     }
@@ -97,6 +247,12 @@ public class AsyncDataIterator implements DataIterator
         {
             _itLock = partner._itLock;
             _it = partner._it;
+            _columnCount = partner._columnCount;
+            _context = partner._context;
+            _stageName = partner._stageName;
+            _metrics = partner._metrics;
+            _reader = partner._reader;
+            _readerException = partner._readerException;
             _queue = partner._queue;
             _partnerCount = partner._partnerCount;
             int count = _partnerCount.incrementAndGet();
@@ -112,26 +268,97 @@ public class AsyncDataIterator implements DataIterator
 
 
 
+    /** @return throughput of this stage so far */
+    public StageMetrics getMetrics()
+    {
+        return _metrics;
+    }
+
+
     private void start()
     {
-        _reader = new Thread(new ReadRunnable(), "AsyncDataIterator");
-        _reader.start();
+        _reader = new ReadRunnable();
+        EXECUTOR.execute(_reader);
     }
 
 
     private class ReadRunnable implements Runnable
     {
+        private final CountDownLatch _finished = new CountDownLatch(1);
+        private volatile boolean _stopped = false;
+        private volatile Thread _thread = null;
+        // Created on the calling thread, so this is the caller's environment
+        private final Object _environment = QueryService.get().cloneEnvironment();
+
         @Override
         public void run()
         {
+            _thread = Thread.currentThread();
+            QueryService qs = QueryService.get();
+            qs.copyEnvironment(_environment);
+            try
+            {
+                read();
+            }
+            finally
+            {
+                qs.clearEnvironment();
+                _thread = null;
+                // clear any interrupt from stop() before the pool reuses this thread
+                Thread.interrupted();
+                _finished.countDown();
+            }
+        }
+
+        void stop()
+        {
+            _stopped = true;
+            Thread t = _thread;
+            if (null != t)
+                t.interrupt();
+        }
+
+        void awaitFinished()
+        {
+            try
+            {
+                // make room in case the reader is blocked putting a batch
+                while (!_finished.await(10, TimeUnit.MILLISECONDS))
+                    _queue.clear();
+            }
+            catch (InterruptedException x)
+            {
+            }
+        }
+
+        private void read()
+        {
+            long start = System.nanoTime();
             try
             {
-                while (!Thread.interrupted() && _it.next())
+                Object[][] batch = new Object[BATCH_SIZE][];
+                int size = 0;
+
+                while (!_stopped && _it.next())
                 {
                     Object[] row = new Object[_columnCount+1];
                     for (int i=0 ; i<=_columnCount ; i++)
                         row[i] = _it.get(i);
-                    _queue.put(row);
+                    batch[size++] = row;
+
+                    if (size == BATCH_SIZE)
+                    {
+                        put(batch);
+                        batch = new Object[BATCH_SIZE][];
+                        size = 0;
+                    }
+                }
+
+                if (size > 0)
+                {
+                    Object[][] last = new Object[size][];
+                    System.arraycopy(batch, 0, last, 0, size);
+                    put(last);
                 }
             }
             catch (BatchValidationException x)
@@ -141,10 +368,32 @@ public class AsyncDataIterator implements DataIterator
             catch (InterruptedException x)
             {
             }
-            try { _queue.put(eof); } catch (InterruptedException x) { }
+            catch (Throwable x)
+            {
+                // Hand unexpected failures, Errors included, to the consuming thread, which rethrows them from next()
+                _readerException.set(x);
+            }
+            finally
+            {
+                _metrics._producerNanos.addAndGet(System.nanoTime() - start);
+                // always signal the consumer, or it waits forever
+                try { _queue.put(eof); } catch (InterruptedException x) { }
+            }
             // don't close _it from background thread, this causes DbScope/Transaction problems
             // try {_it.close(); } catch (IOException x) {}
         }
+
+        private void put(Object[][] batch) throws InterruptedException
+        {
+            if (!_queue.offer(batch))
+            {
+                long start = System.nanoTime();
+                _queue.put(batch);
+                _metrics._producerBlockedNanos.addAndGet(System.nanoTime() - start);
+            }
+            _metrics._rows.addAndGet(batch.length);
+            _metrics._batches.incrementAndGet();
+        }
     }
 
 
@@ -171,31 +420,34 @@ public class AsyncDataIterator implements DataIterator
     @Override
     public boolean next()
     {
-        Object[] row=null;
-        if (_currentRow+1 >= _buffer.size())
+        if (eof == _batch)
+            return false;
+
+        if (null == _batch || _currentRow+1 >= _batch.length)
         {
-            _buffer.clear();
+            Object[][] batch = _queue.poll();
+            if (null == batch)
+            {
+                long start = System.nanoTime();
+                try { batch = _queue.take(); } catch (InterruptedException x) { batch = eof; }
+                _metrics._consumerBlockedNanos.addAndGet(System.nanoTime() - start);
+            }
+
+            _batch = batch;
             _currentRow = -1;
-            while (_buffer.isEmpty())
+
+            if (eof == batch)
             {
-                int count = _queue.drainTo(_buffer, 100);
-                if (count == 0)
-                {
-                    try { row = _queue.take(); } catch (InterruptedException x) { }
-                    if (null != row)
-                        _buffer.add(row);
-                    if (eof == row)
-                        break;
-                }
+                // leave eof in the queue for any partners
+                try { _queue.put(eof); } catch (InterruptedException x) { }
+
+                Throwable t = _readerException.get();
+                if (null != t)
+                    UnexpectedException.rethrow(t);
+                return false;
             }
         }
         _currentRow++;
-        row = _buffer.get(_currentRow);
-        if (eof == row)
-        {
-            try { _queue.put(eof); } catch (InterruptedException x) { }
-            return false;
-        }
         return true;
     }
 
@@ -230,9 +482,7 @@ public class AsyncDataIterator implements DataIterator
     @Override
     public Object get(int i)
     {
-        if (i == 0)
-            return _currentRow+1;
-        return _buffer.get(_currentRow)[i];
+        return _batch[_currentRow][i];
     }
 
 
@@ -243,9 +493,14 @@ public class AsyncDataIterator implements DataIterator
         {
             if (0 == _partnerCount.decrementAndGet())
             {
-                _reader.interrupt();
-                try {_reader.join();} catch (InterruptedException x) {}
+                if (null != _reader)
+                {
+                    _reader.stop();
+                    _reader.awaitFinished();
+                }
                 _it.close();
+                LOG.debug(_stageName + ": " + _metrics);
+                MiniProfiler.addCustomTiming("dataiterator", _metrics.getProducerMillis(), _stageName + ": " + _metrics, null, null);
             }
         }
     }
@@ -258,4 +513,107 @@ public class AsyncDataIterator implements DataIterator
             _it.debugLogInfo(sb);
     }
 
+
+    public static class TestCase extends Assert
+    {
+        private static DataIteratorBuilder source(int rowCount)
+        {
+            List<Map<String, Object>> rows = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++)
+            {
+                Map<String, Object> row = new CaseInsensitiveHashMap<>();
+                row.put("x", i);
+                rows.add(row);
+            }
+            return new ListofMapsDataIterator.Builder(Collections.singleton("x"), rows);
+        }
+
+        @Test
+        public void testBatches()
+        {
+            int rowCount = BATCH_SIZE * QUEUE_BATCHES * 3 + 7;
+            DataIteratorContext context = new DataIteratorContext();
+            Builder builder = new Builder(source(rowCount), "AsyncDataIterator.TestCase");
+            DataIterator it = builder.getDataIterator(context);
+            assertTrue(it instanceof AsyncDataIterator);
+
+            try
+            {
+                int expected = 0;
+                while (it.next())
+                {
+                    assertEquals(expected, it.get(1));
+                    expected++;
+                }
+                assertEquals(rowCount, expected);
+                it.close();
+            }
+            catch (BatchValidationException | IOException x)
+            {
+                fail(x.getMessage());
+            }
+
+            assertEquals(rowCount, builder.getMetrics().getRows());
+            assertEquals(QUEUE_BATCHES * 3 + 1, builder.getMetrics().getBatches());
+        }
+
+        @Test
+        public void testReaderError() throws Exception
+        {
+            DataIteratorContext context = new DataIteratorContext();
+            DataIteratorBuilder failing = ctx -> new WrapperDataIterator(source(BATCH_SIZE * 2).getDataIterator(ctx))
+            {
+                @Override
+                public boolean next() throws BatchValidationException
+                {
+                    if (!super.next())
+                        return false;
+                    if (BATCH_SIZE + 1 == (Integer) get(1))
+                        throw new AssertionError("reader failed");
+                    return true;
+                }
+            };
+
+            DataIterator it = new Builder(failing).getDataIterator(context);
+            int count = 0;
+            Error error = null;
+            try
+            {
+                while (it.next())
+                    count++;
+            }
+            catch (AssertionError x)
+            {
+                error = x;
+            }
+            assertNotNull("The reader's Error must reach the consumer", error);
+            assertEquals("reader failed", error.getMessage());
+            assertEquals(BATCH_SIZE, count);
+            it.close();
+        }
+    }
+
+    /** Needs the database, so it runs with the integration tests */
+    public static class TransactionTestCase extends Assert
+    {
+        @Test
+        public void testTransaction() throws Exception
+        {
+            DataIteratorContext context = new DataIteratorContext();
+            try (DbScope.Transaction ignored = DbScope.getLabKeyScope().ensureTransaction())
+            {
+                DataIterator it = new Builder(TestCase.source(10)).getDataIterator(context);
+                assertFalse("Inside a transaction the source must be read on this thread", it instanceof AsyncDataIterator);
+                it.close();
+
+                it = new Builder(TestCase.source(10)).setTransactionIndependent(true).getDataIterator(context);
+                assertTrue(it instanceof AsyncDataIterator);
+                int count = 0;
+                while (it.next())
+                    count++;
+                assertEquals(10, count);
+                it.close();
+            }
+        }
+    }
 }
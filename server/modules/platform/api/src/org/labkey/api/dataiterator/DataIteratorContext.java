@@ -46,6 +46,7 @@ public class DataIteratorContext
     boolean _verbose = false;
     boolean _supportAutoIncrementKey = false;
     boolean _allowImportLookupByAlternateKey = false;
+    boolean _allowBulkCopy = false;
     private final Set<String> _passThroughBuiltInColumnNames = new CaseInsensitiveHashSet();
     private final Set<String> _dontUpdateColumnNames = new CaseInsensitiveHashSet();
     private final Set<String> _alternateKeys = new CaseInsensitiveHashSet();
@@ -159,6 +160,22 @@ public class DataIteratorContext
         _allowImportLookupByAlternateKey = allowImportLookupByAlternateKey;
     }
 
+    public boolean isAllowBulkCopy()
+    {
+        return _allowBulkCopy;
+    }
+
+    /**
+     * When true, TableInsertDataIterator may load rows with the dialect's bulk-load command (e.g., PostgreSQL COPY)
+     * instead of batched INSERT statements. It falls back to statements whenever the target needs reselected keys,
+     * triggers, merge, or exp.object handling. Rows aren't written until the end of the load, so a failure is
+     * reported against the whole load rather than a specific row.
+     */
+    public void setAllowBulkCopy(boolean allowBulkCopy)
+    {
+        _allowBulkCopy = allowBulkCopy;
+    }
+
     /** Normally all built in columns (created, createdBy, etc) are populated with newly calculated values on writing to target.
      * This list specifies those which should pass through from source.
      */
@@ -17,6 +17,8 @@ package org.labkey.api.dataiterator;
 
 import org.apache.log4j.Logger;
 import org.labkey.api.exp.list.ListImportProgress;
+import org.labkey.api.miniprofiler.MiniProfiler;
+import org.labkey.api.miniprofiler.Timing;
 import org.labkey.api.query.BatchValidationException;
 
 import java.io.IOException;
@@ -58,7 +60,12 @@ public class Pump implements Runnable
     public void run() throws RuntimeException
     {
         if (null == _it && null != _builder)
-            _it = _builder.getDataIterator(_context);
+        {
+            try (Timing ignored = MiniProfiler.trace("data iterator build"))
+            {
+                _it = _builder.getDataIterator(_context);
+            }
+        }
 
         if (log.isTraceEnabled())
         {
@@ -67,7 +74,7 @@ public class Pump implements Runnable
             log.trace(sb.toString());
         }
 
-        try (DataIterator it = _it)
+        try (DataIterator it = _it; Timing ignored = MiniProfiler.trace("data iterator pump " + _it.getDebugName()))
         {
             while (it.next())
             {
@@ -404,24 +404,30 @@ public class StatementDataIterator extends AbstractDataIterator
         }
         catch (SQLException x)
         {
-            if (x instanceof BatchUpdateException && null != x.getNextException())
-                x = x.getNextException();
-            if (StringUtils.startsWith(x.getSQLState(), "22") || RuntimeSQLException.isConstraintException(x))
-            {
-                getRowError().addGlobalError(x);
-//              see bug21719
-//              Sometimes (always?) Postgres leaves the connection unusable after a constraint exception, so we can't continue even if we want to
-                throw _errors;
-            }
-            // table does not exist
-            else if (SqlDialect.isObjectNotFoundException(x))
-            {
-                OptimisticConflictException opt = OptimisticConflictException.create(Table.ERROR_TABLEDELETED);
-                getRowError().addGlobalError(opt);
-                throw _errors;
-            }
-            throw new RuntimeSQLException(x);
+            throw translateSQLException(x);
+        }
+    }
+
+    /** Data and constraint errors become row errors (thrown as _errors), anything else is returned for the caller to throw */
+    RuntimeSQLException translateSQLException(SQLException x) throws BatchValidationException
+    {
+        if (x instanceof BatchUpdateException && null != x.getNextException())
+            x = x.getNextException();
+        if (StringUtils.startsWith(x.getSQLState(), "22") || RuntimeSQLException.isConstraintException(x))
+        {
+            getRowError().addGlobalError(x);
+//          see bug21719
+//          Sometimes (always?) Postgres leaves the connection unusable after a constraint exception, so we can't continue even if we want to
+            throw _errors;
+        }
+        // table does not exist
+        else if (SqlDialect.isObjectNotFoundException(x))
+        {
+            OptimisticConflictException opt = OptimisticConflictException.create(Table.ERROR_TABLEDELETED);
+            getRowError().addGlobalError(opt);
+            throw _errors;
         }
+        return new RuntimeSQLException(x);
     }
 
     private void processBatch(int batchSize, int rowNumber) throws SQLException, BatchValidationException
@@ -16,6 +16,7 @@
 
 package org.labkey.api.dataiterator;
 
+import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.labkey.api.collections.CaseInsensitiveHashMap;
@@ -27,21 +28,31 @@ import org.labkey.api.data.DbScope;
 import org.labkey.api.data.Parameter;
 import org.labkey.api.data.RuntimeSQLException;
 import org.labkey.api.data.SQLFragment;
+import org.labkey.api.data.SelectorResultCache;
 import org.labkey.api.data.SqlExecutor;
 import org.labkey.api.data.StatementUtils;
 import org.labkey.api.data.TableInfo;
 import org.labkey.api.data.UpdateableTableInfo;
+import org.labkey.api.data.WrappedColumn;
+import org.labkey.api.data.dialect.BulkCopy;
+import org.labkey.api.exp.property.Domain;
+import org.labkey.api.exp.property.DomainKind;
 import org.labkey.api.exp.property.DomainProperty;
+import org.labkey.api.query.BatchValidationException;
 import org.labkey.api.query.FieldKey;
+import org.labkey.api.query.QueryUpdateService;
 import org.labkey.api.query.QueryUpdateService.InsertOption;
 
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 // TODO: convert usages to TableInsertDataIteratorBuilder and stop extending DataIteratorBuilder
@@ -59,6 +70,14 @@ public class TableInsertDataIterator extends StatementDataIterator implements Da
     private final Set<String> _keyColumns = new CaseInsensitiveHashSet();
     private Set<DomainProperty> _adhocPropColumns = new LinkedHashSet<>();
 
+    // bulk-load (e.g. COPY) instead of INSERT statements, see DataIteratorContext.setAllowBulkCopy()
+    private boolean _useBulkCopy;
+    private BulkCopy _bulkCopy = null;
+    private Supplier[] _bulkCopyValues;
+    private Object[] _bulkCopyRow;
+    private boolean _bulkCopyFinished = false;
+
+    private static final List<String> BUILT_IN_COLUMNS = List.of("Created", "CreatedBy", "Modified", "ModifiedBy", "Owner");
 
     @Deprecated // use TableInsertDataIteratorBuilder
     public static TableInsertDataIterator create(DataIterator data, TableInfo table, DataIteratorContext context)
@@ -230,6 +249,142 @@ public class TableInsertDataIterator extends StatementDataIterator implements Da
                 }
             }
         }
+
+        _useBulkCopy = canUseBulkCopy();
+    }
+
+
+    /*
+     * The bulk-load path writes rows straight into the schema table, so it is only safe when the INSERT statement
+     * generated by StatementUtils would have been a plain column-for-column insert: no reselected keys, triggers, merge,
+     * exp.object/ontology storage, remapped or missing-value columns, or intermediate commits. The INSERT doesn't fill
+     * in the built-in columns either (see SimpleTranslator.addBuiltInColumns()), but in case a caller skipped that step,
+     * leave tables whose built-in columns aren't supplied to the INSERT path.
+     */
+    private boolean canUseBulkCopy()
+    {
+        if (!_context.isAllowBulkCopy() || !(_table instanceof UpdateableTableInfo))
+            return false;
+        UpdateableTableInfo updatable = (UpdateableTableInfo)_table;
+        TableInfo t = updatable.getSchemaTableInfo();
+        if (!t.getSqlDialect().supportsBulkCopy() || null == t.getSelectName())
+            return false;
+
+        if (_insertOption.mergeRows || _insertOption.identity_insert || _selectIds || null != _rowIdIndex || null != _objectIdIndex || null != _objectUriIndex)
+            return false;
+        if (_table.hasTriggers(_c))
+            return false;
+        if (null != _context.getConfigParameter(QueryUpdateService.ConfigParameters.TransactionSize))
+            return false;
+
+        if (null != StringUtils.trimToNull(updatable.getObjectIdColumnName()) || updatable.isAlwaysInsertExpObject())
+            return false;
+        if (null != updatable.remapSchemaColumns() && !updatable.remapSchemaColumns().isEmpty())
+            return false;
+        Domain domain = _table.getDomain();
+        DomainKind kind = _table.getDomainKind();
+        if (null != domain && (null == kind || StringUtils.isEmpty(kind.getStorageSchemaName())))
+            return false;
+
+        for (ColumnInfo col : _table.getColumns())
+            if (null != col.getMvColumnName())
+                return false;
+        for (ColumnInfo col : t.getColumns())
+            if (col.isVersionColumn() || null != col.getMvColumnName())
+                return false;
+
+        Map<String,Integer> byName = DataIteratorUtil.createColumnNameMap(_data);
+        for (String name : BUILT_IN_COLUMNS)
+            if (null != t.getColumn(name) && !byName.containsKey(name) && !_skipColumnNames.contains(name))
+                return false;
+
+        return true;
+    }
+
+
+    private void initBulkCopy() throws SQLException
+    {
+        TableInfo t = ((UpdateableTableInfo)_table).getSchemaTableInfo();
+        _scope = t.getSchema().getScope();
+        _conn = _scope.getConnection();
+
+        // match source columns to target columns the way StatementDataIterator binds parameters: by property URI, then by name
+        Map<String,Integer> byName = DataIteratorUtil.createColumnNameMap(_data);
+        Map<String,Integer> byPropertyURI = new CaseInsensitiveHashMap<>();
+        for (int i=1 ; i<=_data.getColumnCount() ; i++)
+        {
+            String uri = _data.getColumnInfo(i).getPropertyURI();
+            if (null != uri)
+                byPropertyURI.putIfAbsent(uri, i);
+        }
+
+        List<ColumnInfo> columns = new ArrayList<>();
+        List<Supplier> values = new ArrayList<>();
+        for (ColumnInfo col : t.getColumns())
+        {
+            if (col instanceof WrappedColumn)
+                continue;
+            if (col.isAutoIncrement() && !_context.supportsAutoIncrementKey())
+                continue;
+            if (_skipColumnNames.contains(col.getName()))
+                continue;
+
+            Integer index = null == col.getPropertyURI() ? null : byPropertyURI.get(col.getPropertyURI());
+            if (null == index)
+                index = byName.get(col.getName());
+
+            if (null != index)
+                values.add(_data.getSupplier(index));
+            else if ("container".equalsIgnoreCase(col.getName()) && null != _c)
+            {
+                String containerId = _c.getId();
+                values.add(() -> containerId);
+            }
+            else
+                values.add(() -> null);     // the INSERT statement binds NULL, so don't let COPY apply the column default
+            columns.add(col);
+        }
+
+        _bulkCopyValues = values.toArray(new Supplier[0]);
+        _bulkCopyRow = new Object[_bulkCopyValues.length];
+        _bulkCopy = t.getSqlDialect().createBulkCopy(_conn, t, columns);
+    }
+
+
+    @Override
+    public boolean next() throws BatchValidationException
+    {
+        // ad hoc properties are set after construction and are stored via exp.object, so check them here
+        if (_useBulkCopy && null == _bulkCopy && (!_adhocPropColumns.isEmpty() || null != _embargoDataIterator))
+            _useBulkCopy = false;
+
+        if (!_useBulkCopy)
+            return super.next();
+
+        try
+        {
+            if (null == _bulkCopy)
+                initBulkCopy();
+
+            if (_bulkCopyFinished)
+                return false;
+            if (!_data.next())
+            {
+                _bulkCopyFinished = true;
+                _bulkCopy.finish();
+                return false;
+            }
+
+            for (int i = 0; i < _bulkCopyValues.length; i++)
+                _bulkCopyRow[i] = _bulkCopyValues[i].get();
+            _bulkCopy.addRow(_bulkCopyRow);
+            checkShouldCancel();
+            return true;
+        }
+        catch (SQLException x)
+        {
+            throw translateSQLException(x);
+        }
     }
 
 
@@ -354,7 +509,11 @@ public class TableInsertDataIterator extends StatementDataIterator implements Da
         if (_closed)
             return;
         _closed = true;
+        if (null != _bulkCopy)
+            _bulkCopy.cancel();
         super.close();
+        // Rows may have been written by batches or bulk copy; either way, retire any cached selector results
+        SelectorResultCache.invalidate(_table instanceof UpdateableTableInfo ? ((UpdateableTableInfo)_table).getSchemaTableInfo() : _table);
         if (null != _scope && null != _conn)
         {
             if (_insertOption.identity_insert ||
@@ -1661,6 +1661,8 @@ public class OntologyManager
         sql.add(pd.getContainer());
 
         int rowcount = (new SqlExecutor(t.getSchema())).execute(sql);
+        if (rowcount > 0)
+            SelectorResultCache.invalidate(t);
 
         SQLFragment reselect = new SQLFragment("SELECT * FROM exp.propertydescriptor WHERE propertyuri=? AND container=?", pd.getPropertyURI(), pd.getContainer());
         out[0] = (new SqlSelector(t.getSchema(), reselect).getObject(PropertyDescriptor.class));
@@ -2051,6 +2053,7 @@ public class OntologyManager
             executor.execute(deletePropSql);
             propDescCache.remove(key);
             domainPropertiesCache.clear();
+            SelectorResultCache.invalidate(getTinfoPropertyDescriptor());
             transaction.commit();
         }
     }
@@ -2082,7 +2085,9 @@ public class OntologyManager
 
     public static PropertyDescriptor getPropertyDescriptor(int propertyId)
     {
-        return new TableSelector(getTinfoPropertyDescriptor()).getObject(propertyId, PropertyDescriptor.class);
+        // Called per row when updating object properties; the cached descriptor is shared, so hand out a copy
+        PropertyDescriptor pd = new TableSelector(getTinfoPropertyDescriptor()).setResultCache().getObject(propertyId, PropertyDescriptor.class);
+        return null == pd ? null : pd.clone();
     }
 
 
@@ -2358,6 +2363,7 @@ public class OntologyManager
             stmt.addBatch();
         }
         stmt.executeBatch();
+        SelectorResultCache.invalidate(getTinfoPropertyDescriptor());
     }
 
 
@@ -2392,6 +2398,7 @@ public class OntologyManager
             stmt.addBatch();
         }
         stmt.executeBatch();
+        SelectorResultCache.invalidate(getTinfoPropertyDescriptor());
     }
 
 
@@ -2453,6 +2460,7 @@ public class OntologyManager
         mapCache.clear();
         objectIdCache.clear();
         domainDescByContainerCache.clear();
+        SelectorResultCache.invalidate(getTinfoPropertyDescriptor());
     }
 
     public static void clearPropertyCache(String parentObjectURI)
@@ -23,6 +23,7 @@ import org.labkey.api.util.ExceptionUtil;
 
 import java.lang.ref.SoftReference;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * User: kevink
@@ -42,6 +43,10 @@ public class CustomTiming implements AutoCloseable
     private final long _startOffset;
     private long _duration;
 
+    // Higher resolution times for exported traces; see RequestInfo.getEpochNanos()
+    private final long _startNanos;
+    private long _durationNanos;
+
     /** Create a CustomTiming that has been completed (no CPUTimer is started). */
     public CustomTiming(Timing parent, String category, long duration, String message, @Nullable String url, @Nullable StackTraceElement[] stackTrace)
     {
@@ -51,6 +56,8 @@ public class CustomTiming implements AutoCloseable
         _message = message;
         _url = url;
         _stackTrace = stackTrace == null ? null : new SoftReference<>(ExceptionUtil.renderStackTrace(stackTrace));
+        _durationNanos = TimeUnit.MILLISECONDS.toNanos(duration);
+        _startNanos = System.nanoTime() - _durationNanos;
 
         if (parent != null)
         {
@@ -88,6 +95,7 @@ public class CustomTiming implements AutoCloseable
             _startOffset = 0L;
         }
 
+        _startNanos = System.nanoTime();
         _timer = new CPUTimer("timer");
         _timer.start();
     }
@@ -104,6 +112,7 @@ public class CustomTiming implements AutoCloseable
         {
             _timer.stop();
             _duration = _timer.getTotalMilliseconds();
+            _durationNanos = System.nanoTime() - _startNanos;
         }
     }
 
@@ -117,6 +126,16 @@ public class CustomTiming implements AutoCloseable
         return _duration;
     }
 
+    /* package */ long getStartNanos()
+    {
+        return _startNanos;
+    }
+
+    /* package */ long getDurationNanos()
+    {
+        return _durationNanos;
+    }
+
     @JsonIgnore
     public String getCategory()
     {
@@ -34,6 +34,7 @@ import org.labkey.api.view.ViewServlet;
 import javax.servlet.ServletContext;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Does some lightweight data capture about database queries and other potentially expensive work performed in the
@@ -182,12 +183,37 @@ public class MiniProfiler
         if (requestInfo == null || requestInfo.isIgnored())
             return null;
 
-        if (!(ModuleLoader.getInstance().isStartupComplete() && getSettings().isEnabled()))
+        if (!requestInfo.isSampled() && !(ModuleLoader.getInstance().isStartupComplete() && getSettings().isEnabled()))
             return null;
 
         return requestInfo.step(name);
     }
 
+    /**
+     * Like {@link #step(String)}, but only times the code if the current request has been sampled for tracing (see
+     * {@link Settings#getTraceSampleRate()}). Doesn't consult the settings, so it's cheap enough for hot paths and safe
+     * to call from code that loads the settings, such as caches.
+     */
+    @Nullable
+    public static Timing trace(String name)
+    {
+        RequestInfo requestInfo = MemTracker.getInstance().current();
+        if (requestInfo == null || requestInfo.isIgnored() || !requestInfo.isSampled())
+            return null;
+
+        return requestInfo.step(name);
+    }
+
+    /** @return true if a new request should be sampled for tracing, based on the configured sample rate */
+    public static boolean shouldSample()
+    {
+        if (!ModuleLoader.getInstance().isStartupComplete())
+            return false;
+
+        double rate = getSettings().getTraceSampleRate();
+        return rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
     /**
      * Returns a {@link CustomTiming} within the current Timing step that will time the code between its creation and disposal.
      * @param category category of timing within the current Timing step.
@@ -306,6 +332,11 @@ public class MiniProfiler
         private boolean _collectTroubleshootingStackTraces;
         private String _toggleShortcut = "alt+p";
 
+        private double _traceSampleRate = 0;
+        private int _traceSlowestPerAction = 10;
+        private String _traceExportPath;
+        private String _traceExportUrl;
+
         public boolean isEnabled()
         {
             return _enabled;
@@ -395,5 +426,49 @@ public class MiniProfiler
         {
             _toggleShortcut = toggleShortcut;
         }
+
+        /** @return fraction of requests, from 0 to 1, whose full timing tree is recorded and exported */
+        public double getTraceSampleRate()
+        {
+            return _traceSampleRate;
+        }
+
+        public void setTraceSampleRate(double traceSampleRate)
+        {
+            _traceSampleRate = traceSampleRate;
+        }
+
+        /** @return number of sampled requests to keep for each action, slowest first */
+        public int getTraceSlowestPerAction()
+        {
+            return _traceSlowestPerAction;
+        }
+
+        public void setTraceSlowestPerAction(int traceSlowestPerAction)
+        {
+            _traceSlowestPerAction = traceSlowestPerAction;
+        }
+
+        /** @return name of the file, in the log directory's traces subdirectory, to append OpenTelemetry JSON traces to */
+        public String getTraceExportPath()
+        {
+            return _traceExportPath;
+        }
+
+        public void setTraceExportPath(String traceExportPath)
+        {
+            _traceExportPath = traceExportPath;
+        }
+
+        /** @return OpenTelemetry collector endpoint on this server (e.g., http://localhost:4318/v1/traces) to post JSON traces to */
+        public String getTraceExportUrl()
+        {
+            return _traceExportUrl;
+        }
+
+        public void setTraceExportUrl(String traceExportUrl)
+        {
+            _traceExportUrl = traceExportUrl;
+        }
     }
 }
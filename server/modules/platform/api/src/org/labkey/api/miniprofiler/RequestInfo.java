@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -40,6 +41,7 @@ public class RequestInfo implements AutoCloseable
     private final long _id = NEXT_ID.incrementAndGet(); // CONSIDER: use guid instead
     private final String _url;
     private final Date _date = new Date();
+    private final long _startNanos = System.nanoTime();
     private final Timing _root;
     private final Map<String, Integer> _objects = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 
@@ -52,6 +54,9 @@ public class RequestInfo implements AutoCloseable
     // The ignore flag may be set after profiling starts.  Timings won't be collected and will be marked as already viewed when the request is complete.
     private boolean _ignored = false;
 
+    // Sampled requests collect every Timing step, regardless of the MiniProfiler settings, and are handed to the RequestTracer when complete
+    private boolean _sampled = false;
+
     // The current Timing instance will collect child Timing, CustomTiming, and object allocations.
     // Will be null when the request is complete or cancelled.
     /*package*/ Timing _current;
@@ -70,6 +75,7 @@ public class RequestInfo implements AutoCloseable
         MemTracker.getInstance().requestComplete(this);
         _root.close();
         assert _current == null;
+        RequestTracer.get().requestComplete(this);
     }
 
     public void cancel()
@@ -174,6 +180,23 @@ public class RequestInfo implements AutoCloseable
         return _date;
     }
 
+    @JsonIgnore
+    public boolean isSampled()
+    {
+        return _sampled;
+    }
+
+    public void setSampled(boolean sampled)
+    {
+        _sampled = sampled;
+    }
+
+    /** Convert a System.nanoTime() value captured during this request into nanoseconds since the epoch */
+    /* package */ long getEpochNanos(long nanoTime)
+    {
+        return TimeUnit.MILLISECONDS.toNanos(_date.getTime()) + nanoTime - _startNanos;
+    }
+
     @JsonIgnore
     public Principal getUser()
     {
@@ -46,6 +46,10 @@ public class Timing implements AutoCloseable
     private final long _startOffset;
     private long _duration;
 
+    // Higher resolution times for exported traces; see RequestInfo.getEpochNanos()
+    private final long _startNanos = System.nanoTime();
+    private long _durationNanos;
+
     private final Map<String, Integer> _objects = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     private final List<Timing> _children = new LinkedList<>();
 
@@ -103,6 +107,7 @@ public class Timing implements AutoCloseable
         {
             _timer.stop();
             _duration = _timer.getTotalMilliseconds();
+            _durationNanos = System.nanoTime() - _startNanos;
         }
         _req._current = _parent;
     }
@@ -177,6 +182,16 @@ public class Timing implements AutoCloseable
         return _duration;
     }
 
+    /* package */ long getStartNanos()
+    {
+        return _startNanos;
+    }
+
+    /* package */ long getDurationNanos()
+    {
+        return _durationNanos;
+    }
+
     public long getDurationExclusive()
     {
         long duration = getDuration();
@@ -36,6 +36,7 @@ abstract public class AbstractTaskFactory<SettingsType extends AbstractTaskFacto
     private String _executionLocation;
     private String _groupParameterName;
     private int _autoRetry = -1;
+    private int _priority = 0;
 
     private Module _declaringModule;
 
@@ -79,6 +80,8 @@ abstract public class AbstractTaskFactory<SettingsType extends AbstractTaskFacto
             _executionLocation = settings.getLocation();
         if (settings.isAutoRetrySet())
             _autoRetry = settings.getAutoRetry();
+        if (settings.isPrioritySet())
+            _priority = settings.getPriority();
         if (settings.getGroupParameterName() != null)
             _groupParameterName = settings.getGroupParameterName();
         if (settings.getDeclaringModule() != null)
@@ -246,6 +249,22 @@ abstract public class AbstractTaskFactory<SettingsType extends AbstractTaskFacto
         _autoRetry = autoRetry;
     }
 
+    @Override
+    public int getPriority()
+    {
+        return _priority;
+    }
+
+    /**
+     * Sets the scheduling priority of jobs while this is their active task.
+     *
+     * @param priority higher runs sooner; the default is 0
+     */
+    public void setPriority(int priority)
+    {
+        _priority = priority;
+    }
+
     @Override
     public void setDeclaringModule(@NotNull Module declaringModule)
     {
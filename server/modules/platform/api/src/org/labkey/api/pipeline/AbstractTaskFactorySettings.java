@@ -35,6 +35,7 @@ abstract public class AbstractTaskFactorySettings implements TaskFactorySettings
     private Boolean _largeWork;
     private String _location;
     private Integer _autoRetry;
+    private Integer _priority;
     private String _groupParameterName;
     private Module _declaringModule;
 
@@ -148,6 +149,21 @@ abstract public class AbstractTaskFactorySettings implements TaskFactorySettings
         _autoRetry = autoRetry;
     }
 
+    public boolean isPrioritySet()
+    {
+        return _priority != null;
+    }
+
+    public int getPriority()
+    {
+        return _priority.intValue();
+    }
+
+    public void setPriority(int priority)
+    {
+        _priority = priority;
+    }
+
     @Override
     public void setDeclaringModule(@NotNull Module declaringModule)
     {
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.pipeline;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.util.Compress;
+
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+
+/**
+ * Compact, versioned encoding of serialized job state for the pipeline.StatusFiles JobStore column. The JSON written by
+ * {@link PipelineJob#serializeJob(PipelineJob, boolean)} is deflated and base64 encoded behind a version prefix, which
+ * typically shrinks it by an order of magnitude. Decoding passes plain JSON through unchanged, so rows stored before
+ * this encoding existed, and jobs sent as JSON messages, still deserialize.
+ */
+public class CompactJobSerialization
+{
+    private static final String PREFIX = "LKJS";
+    private static final int VERSION = 1;
+
+    public static String encode(@NotNull String json)
+    {
+        return PREFIX + VERSION + ":" + Base64.getEncoder().encodeToString(Compress.deflate(json));
+    }
+
+    public static String decode(@NotNull String stored)
+    {
+        if (!stored.startsWith(PREFIX))
+            return stored;
+
+        int colon = stored.indexOf(':');
+        String version = colon < 0 ? null : stored.substring(PREFIX.length(), colon);
+
+        if (!String.valueOf(VERSION).equals(version))
+            throw new IllegalArgumentException("Unsupported serialized job version: " + StringUtils.abbreviate(stored, 20));
+
+        try
+        {
+            return Compress.inflate(Base64.getDecoder().decode(stored.substring(colon + 1)));
+        }
+        catch (DataFormatException | IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Corrupt serialized job", e);
+        }
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testRoundTrip()
+        {
+            String json = "[ \"org.labkey.api.pipeline.PipelineJob\", {\n  \"_jobGUID\" : \"c0ffee\",\n  \"_files\" : [ " +
+                StringUtils.repeat("\"/data/run/sample.mzXML\", ", 500) + "\"\" ]\n} ]";
+            String encoded = encode(json);
+            assertTrue(encoded.startsWith("LKJS1:"));
+            assertTrue(encoded.length() < json.length() / 10);
+            assertEquals(json, decode(encoded));
+
+            // Plain JSON passes through
+            assertEquals(json, decode(json));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void testUnknownVersion()
+        {
+            decode("LKJS99:AAAA");
+        }
+    }
+}
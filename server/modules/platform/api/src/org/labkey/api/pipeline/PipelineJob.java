@@ -1743,6 +1743,18 @@ abstract public class PipelineJob extends Job implements Serializable
         return false;
     }
 
+    /**
+     * Scheduling priority relative to other jobs waiting in the local queue; higher runs sooner. Waiting jobs gain
+     * priority as they age, so a low priority job is delayed, never starved. By default, this is the priority of the
+     * active task, which can be set in its TaskFactorySettings. Administrators can also override it per job class via
+     * the local queue scheduler's configuration.
+     */
+    public int getPriority()
+    {
+        TaskFactory factory = getActiveTaskFactory();
+        return null == factory ? 0 : factory.getPriority();
+    }
+
     synchronized public void setSubmitted()
     {
         _submitted = true;
@@ -1846,11 +1858,19 @@ abstract public class PipelineJob extends Job implements Serializable
         }
     }
 
+    /** Serialize for the JobStore column, in the compact form that {@link #deserializeJob(String)} also accepts */
+    public static String serializeJobState(PipelineJob job)
+    {
+        return CompactJobSerialization.encode(serializeJob(job, true));
+    }
+
+    /** @param serialized JSON from {@link #serializeJob(PipelineJob)}, or the compact form from {@link #serializeJobState(PipelineJob)} */
     @Nullable
     public static PipelineJob deserializeJob(@NotNull String serialized)
     {
         try
         {
+            serialized = CompactJobSerialization.decode(serialized);
             String className = PipelineJob.getClassNameFromJson(serialized);
             Object job = PipelineJobService.get().getJobStore().deserializeFromJSON(serialized, Class.forName(className));
             if (job instanceof PipelineJob)
@@ -87,6 +87,15 @@ public interface TaskFactory<SettingsType extends TaskFactorySettings>
 
     int getAutoRetry();
 
+    /**
+     * @return scheduling priority of jobs while this is their active task, relative to other jobs waiting in the local
+     * queue; higher runs sooner. See {@link PipelineJob#getPriority()}.
+     */
+    default int getPriority()
+    {
+        return 0;
+    }
+
     public WorkDirectory createWorkDirectory(String jobGUID, FileAnalysisJobSupport jobSupport, Logger logger) throws IOException;
 
     void setDeclaringModule(Module declaringModule);
@@ -32,6 +32,7 @@ public enum QueryParam implements EnumHasHtmlString<QueryParam>
     maxRows,
     showRows,
     ignoreFilter,
+    asyncCount,
 
     defaultTab,
 
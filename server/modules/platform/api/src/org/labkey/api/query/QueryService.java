@@ -440,6 +440,8 @@ public interface QueryService
     /** OLAP **/
     // could make this a separate service
     void cubeDataChanged(Container c);    // TODO could be more specific than "something in this container"
+    /** Drop only the cached member sets of cubes over schemaName in c or its project; leaves servers and cubes warm */
+    void cubeMemberSetsChanged(Container c, String schemaName);
     String warmCube(User user, Container container, String schemaName, String configId, String cubeName);
     void cubeDataChanged(Set<Container> containers);
     String warmCube(User user, Set<Container> containers, String schemaName, String configId, String cubeName);
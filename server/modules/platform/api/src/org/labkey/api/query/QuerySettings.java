@@ -20,6 +20,7 @@ import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.json.JSONArray;
 import org.labkey.api.collections.CaseInsensitiveHashMap;
 import org.labkey.api.data.Aggregate;
@@ -70,6 +71,9 @@ public class QuerySettings
     private int _maxRows = 100;
     private boolean _maxRowsSet = false; // Explicitly track setting maxRows, allows for different defaults
     private long _offset = 0;
+    private boolean _keysetPagination = false;
+    private String _cursor = null;
+    private boolean _asyncRowCount = false;
     private String _selectionKey = null;
 
     @NotNull
@@ -249,6 +253,8 @@ public class QuerySettings
                 catch (NumberFormatException ignored) { }
             }
 
+            _asyncRowCount = Boolean.parseBoolean(_getParameter(param(QueryParam.asyncCount)));
+
             String maxRowsParam = _getParameter(param(QueryParam.maxRows));
             if (maxRowsParam != null)
             {
@@ -597,6 +603,48 @@ public class QuerySettings
         _offset = offset;
     }
 
+    /**
+     * Page by sort-key values instead of by offset, see {@link org.labkey.api.data.KeysetCursor}. Only honored when
+     * {@link ShowRows#PAGINATED} and the sort can be made unique; otherwise offset paging is used. Set by the query
+     * APIs only; grid URLs don't carry a cursor, since DataRegion paging and its row-range display are offset based.
+     */
+    public boolean isKeysetPagination()
+    {
+        return _keysetPagination && _showRows == ShowRows.PAGINATED;
+    }
+
+    public void setKeysetPagination(boolean keysetPagination)
+    {
+        _keysetPagination = keysetPagination;
+    }
+
+    /** @return the opaque token identifying the last row of the previous page, or null for the first page */
+    public @Nullable String getCursor()
+    {
+        return isKeysetPagination() ? _cursor : null;
+    }
+
+    public void setCursor(@Nullable String cursor)
+    {
+        _cursor = cursor;
+        if (null != cursor)
+            _keysetPagination = true;
+    }
+
+    /**
+     * Render the page without waiting for the total row count; the count is computed in the background and fetched
+     * by the client, see {@link org.labkey.api.data.AsyncRowCounter}
+     */
+    public boolean isAsyncRowCount()
+    {
+        return _asyncRowCount && _showRows == ShowRows.PAGINATED;
+    }
+
+    public void setAsyncRowCount(boolean asyncRowCount)
+    {
+        _asyncRowCount = asyncRowCount;
+    }
+
     public ShowRows getShowRows()
     {
         return _showRows;
@@ -2111,6 +2111,7 @@ public class QueryView extends WebPartView<Object>
         rgn.setShowSurroundingBorder(isShowSurroundingBorder());
         rgn.setShowPagination(isShowPagination());
         rgn.setShowPaginationCount(isShowPaginationCount());
+        rgn.setAsyncRowCount(getSettings().isAsyncRowCount());
 
         if (_messageSupplier != null)
             rgn.addMessageSupplier(_messageSupplier);
@@ -2408,16 +2409,30 @@ public class QueryView extends WebPartView<Object>
     }
 
     public ExcelWriter getExcelWriter(ExcelWriter.ExcelDocumentType docType, Map<String, String> renameColumns) throws IOException
+    {
+        return getExcelWriter(docType, renameColumns, isStreamingExcelExport(docType));
+    }
+
+    /**
+     * Exports of all rows to xlsx use the constant-memory writer, which continues on additional sheets instead of
+     * truncating the rows at the sheet limit.
+     */
+    protected boolean isStreamingExcelExport(ExcelWriter.ExcelDocumentType docType)
+    {
+        return docType == ExcelWriter.ExcelDocumentType.xlsx && getSettings().getShowRows() == ShowRows.ALL;
+    }
+
+    private ExcelWriter getExcelWriter(ExcelWriter.ExcelDocumentType docType, Map<String, String> renameColumns, boolean streaming) throws IOException
     {
         DataView view = createDataView();
         DataRegion rgn = view.getDataRegion();
 
-        RenderContext rc = configureForExcelExport(docType, view, rgn);
+        RenderContext rc = configureForExcelExport(docType, view, rgn, streaming);
 
         try
         {
             Results results = rgn.getResults(rc);
-            ExcelWriter ew = renameColumns == null || renameColumns.isEmpty() ? new ExcelWriter(results, getExportColumns(rgn.getDisplayColumns()), docType) : new AliasColumnExcelWriter(results, getExportColumns(rgn.getDisplayColumns()), docType, renameColumns);
+            ExcelWriter ew = renameColumns == null || renameColumns.isEmpty() ? new ExcelWriter(results, getExportColumns(rgn.getDisplayColumns()), docType, streaming) : new AliasColumnExcelWriter(results, getExportColumns(rgn.getDisplayColumns()), docType, streaming, renameColumns);
             ew.setFilenamePrefix(getSettings().getQueryName());
             ew.setAutoSize(true);
             return ew;
@@ -2434,7 +2449,12 @@ public class QueryView extends WebPartView<Object>
 
         public AliasColumnExcelWriter(Results results, List<DisplayColumn> displayColumns, ExcelDocumentType docType, Map<String, String> renameColumns)
         {
-            super(results, displayColumns, docType);
+            this(results, displayColumns, docType, false, renameColumns);
+        }
+
+        public AliasColumnExcelWriter(Results results, List<DisplayColumn> displayColumns, ExcelDocumentType docType, boolean streaming, Map<String, String> renameColumns)
+        {
+            super(results, displayColumns, docType, streaming);
             _renameColumns = renameColumns;
         }
 
@@ -2581,7 +2601,13 @@ public class QueryView extends WebPartView<Object>
 
     protected RenderContext configureForExcelExport(ExcelWriter.ExcelDocumentType docType, DataView view, DataRegion rgn)
     {
-        if (getSettings().getShowRows() == ShowRows.ALL)
+        return configureForExcelExport(docType, view, rgn, false);
+    }
+
+    private RenderContext configureForExcelExport(ExcelWriter.ExcelDocumentType docType, DataView view, DataRegion rgn, boolean streaming)
+    {
+        // A streaming export splits rows across sheets, so it doesn't need to limit the rows to a single sheet
+        if (!streaming && getSettings().getShowRows() == ShowRows.ALL)
         {
             // Limit the rows returned based on the document type.
             // The maxRows setting isn't used unless showRows is PAGINATED.
@@ -476,10 +476,15 @@ public abstract class DataLoader implements Iterable<Map<String, Object>>, Loade
 
             _factory = new RowMapFactory<>(colMap);
 
-            // find a converter for each column type
+            // find a converter for each column type. Set up the columns here rather than per row, so converting
+            // rows doesn't modify them (rows may be converted on several threads at once).
             for (ColumnDescriptor column : _activeColumns)
+            {
                 if (column.converter == null)
                     column.converter = ConvertUtils.lookup(column.clazz);
+                if (_preserveEmptyString && null == column.missingValues)
+                    column.missingValues = "";
+            }
         }
 
         public int lineNum()
@@ -487,6 +492,12 @@ public abstract class DataLoader implements Iterable<Map<String, Object>>, Loade
             return _lineNum;
         }
 
+        /** @return the line number to report for the row that readFields() just returned; by default, rows are counted */
+        protected int nextLineNum()
+        {
+            return _lineNum + 1;
+        }
+
         protected abstract Object[] readFields() throws IOException;
 
         @Override
@@ -515,7 +526,7 @@ public abstract class DataLoader implements Iterable<Map<String, Object>>, Loade
                         close();
                         return false;
                     }
-                    _lineNum++;
+                    _lineNum = nextLineNum();
 
                     _values = convertValues();
                     if (_values == Collections.EMPTY_MAP && !isIncludeBlankLines())
@@ -569,23 +580,30 @@ public abstract class DataLoader implements Iterable<Map<String, Object>>, Loade
 
         protected final Map<String, Object> convertValues()
         {
-            if (_fields == null)
+            Object[] fields = _fields;
+            _fields = null;
+            return convertValues(fields, _lineNum);
+        }
+
+        /**
+         * Converts one row of raw fields. Doesn't touch the iterator's state, so it can be called from other threads
+         * as long as the column converters are thread-safe.
+         * @return the converted row, EMPTY_MAP for a blank row that should be skipped, or null if conversion failed
+         * and iteration should stop
+         */
+        protected final Map<String, Object> convertValues(Object[] fields, int lineNum)
+        {
+            if (fields == null)
                 return null;    // consider: throw IllegalState
 
             try
             {
-                Object[] fields = _fields;
-                _fields = null;
                 Object[] values = new Object[_activeColumns.length];
 
                 boolean foundData = false;
                 for (int i = 0; i < _activeColumns.length; i++)
                 {
                     ColumnDescriptor column = _activeColumns[i];
-                    if (_preserveEmptyString && null == column.missingValues)
-                    {
-                        column.missingValues = "";
-                    }
                     Object fld;
                     if (i >= fields.length)
                     {
@@ -701,7 +719,7 @@ public abstract class DataLoader implements Iterable<Map<String, Object>>, Loade
                                 sb.append("'");
                             }
                             sb.append(" from line #");
-                            sb.append(_lineNum);
+                            sb.append(lineNum);
                             sb.append(" in column #");
                             sb.append(i + 1);
                             sb.append(" (");
@@ -753,7 +771,7 @@ public abstract class DataLoader implements Iterable<Map<String, Object>>, Loade
                 }
 
                 if (null != _file)
-                    _log.error("failed loading file " + _file.getName() + " at line: " + _lineNum + " " + e, e);
+                    _log.error("failed loading file " + _file.getName() + " at line: " + lineNum + " " + e, e);
             }
 
             // Return null to signals there are no more rows
@@ -15,6 +15,8 @@
  */
 package org.labkey.api.reader;
 
+import org.apache.commons.beanutils.ConversionException;
+import org.apache.commons.beanutils.ConvertUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CharSequenceReader;
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -36,20 +38,30 @@ import org.labkey.api.writer.PrintWriters;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringBufferInputStream;
 import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 
@@ -77,7 +89,9 @@ public class TabLoader extends DataLoader
         @NotNull @Override
         public DataLoader createLoader(File file, boolean hasColumnHeaders, Container mvIndicatorContainer)
         {
-            return new TabLoader(file, hasColumnHeaders, mvIndicatorContainer);
+            TabLoader loader = new TabLoader(file, hasColumnHeaders, mvIndicatorContainer);
+            loader.setMemoryMapped(true);
+            return loader;
         }
 
         /** A DataLoader created with this constructor does NOT close the reader */
@@ -98,6 +112,7 @@ public class TabLoader extends DataLoader
         {
             TabLoader loader = new TabLoader(file, hasColumnHeaders, mvIndicatorContainer);
             loader.parseAsCSV();
+            loader.setMemoryMapped(true);
             return loader;
         }
 
@@ -180,10 +195,11 @@ public class TabLoader extends DataLoader
     private String _strDelimiter = new String(new char[]{_chDelimiter});
     private String _lineDelimiter = null;
 
-    private String _strQuote = null;
-    private String _strQuoteQuote = null;
     private boolean _parseQuotes = true;
     private boolean _unescapeBackslashes = true;
+    private boolean _parallelParsing = false;
+    private boolean _memoryMapped = false;
+    private final @Nullable File _inputFile;
     private Filter<Map<String, Object>> _mapFilter;
 
     // Infer whether there are headers
@@ -203,7 +219,7 @@ public class TabLoader extends DataLoader
             verifyFile(inputFile);
             // Detect Charset encoding using BOM
             return Readers.getBOMDetectingReader(inputFile);
-        }, hasColumnHeaders, mvIndicatorContainer);
+        }, hasColumnHeaders, mvIndicatorContainer, inputFile);
 
         setScrollable(true);
     }
@@ -217,7 +233,7 @@ public class TabLoader extends DataLoader
     // This constructor doesn't support MV Indicators:
     public TabLoader(final CharSequence src, Boolean hasColumnHeaders)
     {
-        this(() -> new BufferedReader(new CharSequenceReader(src)), hasColumnHeaders, null);
+        this(() -> new BufferedReader(new CharSequenceReader(src)), hasColumnHeaders, null, null);
 
         if (src == null)
             throw new IllegalArgumentException("src cannot be null");
@@ -263,17 +279,18 @@ public class TabLoader extends DataLoader
                     }
                 };
             }
-        }, hasColumnHeaders, mvIndicatorContainer);
+        }, hasColumnHeaders, mvIndicatorContainer, null);
 
         setScrollable(false);
     }
 
 
-    private TabLoader(ReaderFactory factory, Boolean hasColumnHeaders, @Nullable Container mvIndicatorContainer)
+    private TabLoader(ReaderFactory factory, Boolean hasColumnHeaders, @Nullable Container mvIndicatorContainer, @Nullable File inputFile)
     {
         super(mvIndicatorContainer);
 
         _readerFactory = factory;
+        _inputFile = inputFile;
 
         if (null != hasColumnHeaders)
             setHasColumnHeaders(hasColumnHeaders);
@@ -335,11 +352,20 @@ public class TabLoader extends DataLoader
 
     private ArrayList<String> listParse = new ArrayList<>(30);
 
+    // Physical lines read so far by the current iterator, and the line the most recent record started on
+    private int _linesRead = 0;
+    private int _recordLineNum = 0;
+
 
 
     private CharSequence readLine(BufferedReader r, boolean skipComments, boolean skipBlankLines)
     {
         String line = readOneTextLine(r, skipComments, skipBlankLines);
+
+        // Comments and blank lines are only skipped at the start of a record
+        if (skipComments)
+            _recordLineNum = _linesRead;
+
         if (null == line || null == _lineDelimiter)
             return line;
         if (line.endsWith(_lineDelimiter))
@@ -369,6 +395,7 @@ public class TabLoader extends DataLoader
                 line = r.readLine();
                 if (line == null)
                     return null;
+                _linesRead++;
             }
             while ((skipComments && line.length() > 0 && line.charAt(0) == COMMENT_CHAR) || (skipBlankLines && null == StringUtils.trimToNull(line)));
             return line;
@@ -380,36 +407,48 @@ public class TabLoader extends DataLoader
         }
     }
 
-    Pattern _replaceDoubleQuotes = null;
+    private static final char QUOTE_CHAR = '"';
+    private static final String QUOTE = "\"";
+    private static final String QUOTE_QUOTE = "\"\"";
+    private static final Pattern DOUBLE_QUOTES = Pattern.compile("\"\"");
 
     private String[] readFields(BufferedReader r, @Nullable ColumnDescriptor[] columns)
     {
-        if (!_parseQuotes)
-        {
-            CharSequence line = readLine(r, true, !isIncludeBlankLines());
-            if (line == null)
-                return null;
-            String[] fields = StringUtils.splitByWholeSeparator(line.toString(), _strDelimiter);
-            for (int i = 0; i < fields.length; i++)
-                fields[i] = parseValue(fields[i]);
-            return fields;
-        }
-
         CharSequence line = readLine(r, true, !isIncludeBlankLines());
         if (line == null)
             return null;
+
+        if (!_parseQuotes)
+            return splitFields(line);
+
         StringBuilder buf = line instanceof StringBuilder ? (StringBuilder)line : new StringBuilder(line);
+        listParse.clear();
+        return parseFields(buf, () -> readLine(r, false, false), columns, listParse);
+    }
 
+    private String[] splitFields(CharSequence line)
+    {
+        String[] fields = StringUtils.splitByWholeSeparator(line.toString(), _strDelimiter);
+        for (int i = 0; i < fields.length; i++)
+            fields[i] = parseValue(fields[i]);
+        return fields;
+    }
+
+    /**
+     * Splits one record into fields, honoring quotes. If a quoted field is still open at the end of buf, continuation
+     * lines are requested from moreLines; pass null when buf already holds the complete record. Uses no shared state,
+     * so it's safe to call from multiple threads.
+     */
+    private String[] parseFields(StringBuilder buf, @Nullable Supplier<CharSequence> moreLines, @Nullable ColumnDescriptor[] columns, List<String> listParse)
+    {
         String field = null;
         int start = 0, colIndex = 0;
-        listParse.clear();
 
         while (start < buf.length())
         {
             boolean loadThisColumn = null==columns || colIndex >= columns.length || columns[colIndex].load;
             int end;
             char ch = buf.charAt(start);
-            char chQuote = '"';
 
             colIndex++;
 
@@ -418,26 +457,19 @@ public class TabLoader extends DataLoader
                 end = start;
                 field = _preserveEmptyString ? null : "";
             }
-            else if (ch == chQuote)
+            else if (ch == QUOTE_CHAR)
             {
-                if (_strQuote == null)
-                {
-                    _strQuote = new String(new char[] {chQuote});
-                    _strQuoteQuote = new String(new char[] {chQuote, chQuote});
-                    _replaceDoubleQuotes = Pattern.compile("\\" + chQuote + "\\" + chQuote);
-                }
-
                 end = start;
                 boolean hasQuotes = false;
 
                 while (true)
                 {
-                    end = buf.indexOf(_strQuote, end + 1);
+                    end = buf.indexOf(QUOTE, end + 1);
 
                     if (end == -1)
                     {
                         // XXX: limit number of lines we read
-                        CharSequence nextLine = readLine(r, false, false);
+                        CharSequence nextLine = null == moreLines ? null : moreLines.get();
                         end = buf.length();
                         if (nextLine == null)
                         {
@@ -450,15 +482,15 @@ public class TabLoader extends DataLoader
                         continue;
                     }
 
-                    if (end == buf.length() - 1 || buf.charAt(end + 1) != chQuote)
+                    if (end == buf.length() - 1 || buf.charAt(end + 1) != QUOTE_CHAR)
                         break;
                     hasQuotes = true;
                     end++; // skip double ""
                 }
 
                 field = buf.substring(start + 1, end);
-                if (hasQuotes && field.contains(_strQuoteQuote))
-                    field = _replaceDoubleQuotes.matcher(field).replaceAll("\"");
+                if (hasQuotes && field.contains(QUOTE_QUOTE))
+                    field = DOUBLE_QUOTES.matcher(field).replaceAll("\"");
 
                 // eat final "
                 end++;
@@ -510,6 +542,75 @@ public class TabLoader extends DataLoader
         return listParse.toArray(new String[listParse.size()]);
     }
 
+    /**
+     * Reads one complete record without splitting it into fields, appending continuation lines while a quoted field
+     * is still open. Mirrors the quote handling in parseFields() so that chunk boundaries always fall between records.
+     */
+    private StringBuilder readRecord(BufferedReader r)
+    {
+        CharSequence line = readLine(r, true, !isIncludeBlankLines());
+        if (line == null)
+            return null;
+
+        StringBuilder buf = line instanceof StringBuilder ? (StringBuilder)line : new StringBuilder(line);
+        if (!_parseQuotes)
+            return buf;
+
+        int start = 0;
+        while (start < buf.length())
+        {
+            int end = start;
+            char ch = buf.charAt(start);
+
+            if (ch == QUOTE_CHAR)
+            {
+                while (true)
+                {
+                    end = buf.indexOf(QUOTE, end + 1);
+
+                    if (end == -1)
+                    {
+                        CharSequence nextLine = readLine(r, false, false);
+                        end = buf.length();
+                        if (nextLine == null)
+                            return buf;
+
+                        buf.append('\n');
+                        buf.append(nextLine);
+                        continue;
+                    }
+
+                    if (end == buf.length() - 1 || buf.charAt(end + 1) != QUOTE_CHAR)
+                        break;
+                    end++; // skip double ""
+                }
+
+                end++;
+                if (end < buf.length() && buf.charAt(end) != _chDelimiter)
+                {
+                    end = buf.indexOf(_strDelimiter, end);
+                    if (-1 == end)
+                        end = buf.length();
+                }
+            }
+            else if (ch != _chDelimiter)
+            {
+                end = buf.indexOf(_strDelimiter, start);
+                if (end == -1)
+                    end = buf.length();
+            }
+
+            end += _strDelimiter.length();
+
+            while (end < buf.length() && buf.charAt(end) != _chDelimiter && Character.isWhitespace(buf.charAt(end)))
+                end++;
+
+            start = end;
+        }
+
+        return buf;
+    }
+
     @Deprecated // Just use a CloseableFilteredIterator.  TODO: Remove
     public void setMapFilter(Filter<Map<String, Object>> mapFilter)
     {
@@ -518,11 +619,14 @@ public class TabLoader extends DataLoader
 
     public CloseableIterator<Map<String, Object>> iterator()
     {
-        TabLoaderIterator iter;
+        DataLoaderIterator iter;
         try
         {
             ensureInitialized();
-            iter = new TabLoaderIterator();
+            if (_memoryMapped && canMemoryMap())
+                iter = new MappedTabLoaderIterator();
+            else
+                iter = _parallelParsing ? new ParallelTabLoaderIterator() : new TabLoaderIterator();
         }
         catch (IOException e)
         {
@@ -567,6 +671,40 @@ public class TabLoader extends DataLoader
         _unescapeBackslashes = unescapeBackslashes;
     }
 
+    /**
+     * Split and convert rows on the common fork-join pool instead of the calling thread. Rows are still returned in
+     * input order. Only use this with column converters that are thread-safe (all of the standard ones are).
+     */
+    public void setParallelParsing(boolean parallelParsing)
+    {
+        _parallelParsing = parallelParsing;
+    }
+
+    /**
+     * Read the rows straight from a memory-mapped view of the input file, tokenizing on bytes. Strings are created
+     * only for loaded columns, and plain integer and decimal values are parsed without creating Strings at all.
+     * Only applies to loaders constructed from a File; inputs that the byte tokenizer can't handle (multi-character
+     * delimiters, custom line delimiters, UTF-16/32) quietly use the standard reader instead. Takes precedence over
+     * parallel parsing. The TSV and CSV factories turn this on for the files they load.
+     */
+    public void setMemoryMapped(boolean memoryMapped)
+    {
+        _memoryMapped = memoryMapped;
+    }
+
+    private boolean canMemoryMap() throws IOException
+    {
+        if (null == _inputFile || null != _lineDelimiter || _strDelimiter.length() != 1 || _chDelimiter > 127)
+            return false;
+
+        // The byte tokenizer understands UTF-8 (with or without a BOM) and ASCII, but not UTF-16 or UTF-32
+        try (InputStream in = new FileInputStream(_inputFile))
+        {
+            int b = in.read();
+            return b != 0x00 && b != 0xFE && b != 0xFF;
+        }
+    }
+
     @Override
     public void close()
     {
@@ -650,7 +788,7 @@ public class TabLoader extends DataLoader
 
     public class TabLoaderIterator extends DataLoaderIterator
     {
-        private final BufferedReader reader;
+        protected final BufferedReader reader;
 
         protected TabLoaderIterator() throws IOException
         {
@@ -660,6 +798,7 @@ public class TabLoader extends DataLoader
             reader = getReader();
             for (int i = 0; i < lineNum(); i++)
                 reader.readLine();
+            _linesRead = lineNum();
 
             // make sure _columns is initialized
             ColumnDescriptor[] cols = getColumns();
@@ -690,6 +829,497 @@ public class TabLoader extends DataLoader
         {
             return TabLoader.this.readFields(reader, _columns);
         }
+
+        // Report the physical line each record starts on, which differs from the record count once a quoted value
+        // spans lines or comments are skipped
+        @Override
+        protected int nextLineNum()
+        {
+            return _recordLineNum;
+        }
+    }
+
+    /**
+     * Tokenizes a memory-mapped view of the input file directly. Each physical line is copied once from the mapping
+     * into a reusable byte array; lines that are pure ASCII and contain no quotes or backslashes are split on the
+     * delimiter byte, and integer and decimal values are parsed straight from the bytes. Any other line is decoded
+     * as UTF-8 and handed to the standard field parser, so the results match TabLoaderIterator.
+     */
+    private class MappedTabLoaderIterator extends DataLoaderIterator
+    {
+        // Map large files a window at a time; a single line must fit within a window
+        private static final long MAX_WINDOW = 256 * 1024 * 1024;
+
+        private final FileChannel _channel;
+        private final long _size;
+        private final byte _delimiter;
+        private final boolean[] _parseIntegers;
+        private final boolean[] _parseLongs;
+        private final boolean[] _parseDoubles;
+        private final List<String> _listParse = new ArrayList<>(30);
+
+        private MappedByteBuffer _buffer;
+        private long _windowStart;
+        private long _pos;
+
+        // Current line, copied out of the mapping
+        private byte[] _line = new byte[1024];
+        private int _lineLength;
+
+        protected MappedTabLoaderIterator() throws IOException
+        {
+            super(_commentLines + _skipLines);
+            assert _skipLines != -1;
+
+            _delimiter = (byte) _chDelimiter;
+            _channel = FileChannel.open(_inputFile.toPath(), StandardOpenOption.READ);
+            _size = _channel.size();
+            map(0);
+
+            // Skip a UTF-8 BOM
+            if (_size >= 3 && _buffer.get(0) == (byte) 0xEF && _buffer.get(1) == (byte) 0xBB && _buffer.get(2) == (byte) 0xBF)
+                _pos = 3;
+
+            for (int i = 0; i < lineNum(); i++)
+                readPhysicalLine();
+            _linesRead = lineNum();
+
+            // all input starts as String, we don't need to use a String converter
+            // unless a column has configured a custom converter (e.g ViabilityTsvDataHandler)
+            for (ColumnDescriptor col : getColumns())
+            {
+                if (col.converter == StringConverter && col.clazz == String.class)
+                    col.converter = noopConverter;
+            }
+
+            // Numbers are parsed from bytes only when the standard converter would get them; it accepts a Number as-is
+            _parseIntegers = new boolean[_activeColumns.length];
+            _parseLongs = new boolean[_activeColumns.length];
+            _parseDoubles = new boolean[_activeColumns.length];
+            for (int i = 0; i < _activeColumns.length; i++)
+            {
+                ColumnDescriptor col = _activeColumns[i];
+                boolean standard = !col.isMvEnabled() && !col.isMvIndicator() && col.converter == ConvertUtils.lookup(col.clazz);
+                _parseIntegers[i] = standard && col.clazz == Integer.class;
+                _parseLongs[i] = standard && col.clazz == Long.class;
+                _parseDoubles[i] = standard && col.clazz == Double.class;
+            }
+        }
+
+        private void map(long position) throws IOException
+        {
+            _windowStart = position;
+            _buffer = _channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_WINDOW, _size - position));
+        }
+
+        // Same physical line numbers as TabLoaderIterator, so errors point at the same line whichever iterator ran
+        @Override
+        protected int nextLineNum()
+        {
+            return _recordLineNum;
+        }
+
+        /** Copies the next line, without its terminator, into _line. Like BufferedReader, accepts \n, \r, or \r\n. */
+        private boolean readPhysicalLine() throws IOException
+        {
+            if (_pos >= _size)
+                return false;
+
+            while (true)
+            {
+                int start = (int) (_pos - _windowStart);
+                int limit = _buffer.limit();
+                int end = start;
+                while (end < limit)
+                {
+                    byte b = _buffer.get(end);
+                    if (b == '\n' || b == '\r')
+                        break;
+                    end++;
+                }
+
+                // The line (or its \r\n terminator) runs past the end of the window, so remap starting at this line
+                boolean moreInput = _windowStart + limit < _size;
+                if (moreInput && (end >= limit - 1))
+                {
+                    if (start == 0)
+                        throw new IOException("Line is too long to read: " + _inputFile.getPath());
+                    map(_pos);
+                    continue;
+                }
+
+                _lineLength = end - start;
+                if (_line.length < _lineLength)
+                    _line = new byte[Math.max(_lineLength, _line.length * 2)];
+                _buffer.position(start);
+                _buffer.get(_line, 0, _lineLength);
+                _linesRead++;
+
+                int next = end;
+                if (end < limit)
+                {
+                    next++;
+                    if (_buffer.get(end) == '\r' && next < limit && _buffer.get(next) == '\n')
+                        next++;
+                }
+                _pos = _windowStart + next;
+                return true;
+            }
+        }
+
+        private @Nullable CharSequence nextDecodedLine()
+        {
+            try
+            {
+                return readPhysicalLine() ? new String(_line, 0, _lineLength, StandardCharsets.UTF_8) : null;
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        protected Object[] readFields() throws IOException
+        {
+            boolean needsParser;
+            while (true)
+            {
+                if (!readPhysicalLine())
+                    return null;
+
+                boolean blank = true;
+                needsParser = false;
+                for (int i = 0; i < _lineLength; i++)
+                {
+                    byte b = _line[i];
+                    if (b < 0 || b == '\\' || b == QUOTE_CHAR)
+                        needsParser = true;
+                    if (b < 0 || b > ' ')
+                        blank = false;
+                }
+
+                // Skip comments and, unless they're wanted, blank lines; same rules as readLine()
+                if (_lineLength > 0 && _line[0] == COMMENT_CHAR)
+                    continue;
+                if (blank && !isIncludeBlankLines())
+                    continue;
+                break;
+            }
+            _recordLineNum = _linesRead;
+
+            // splitFields() drops empty fields when quotes aren't parsed, so leave those lines to it
+            if (needsParser || !_parseQuotes)
+            {
+                String line = new String(_line, 0, _lineLength, StandardCharsets.UTF_8);
+                if (!_parseQuotes)
+                    return splitFields(line);
+                _listParse.clear();
+                return parseFields(new StringBuilder(line), this::nextDecodedLine, _columns, _listParse);
+            }
+
+            return splitBytes();
+        }
+
+        // Byte-level equivalent of parseFields() for lines with no quotes, escapes, or non-ASCII characters
+        private Object[] splitBytes()
+        {
+            List<Object> fields = new ArrayList<>(_activeColumns.length);
+            int start = 0, colIndex = 0;
+
+            while (start < _lineLength)
+            {
+                boolean loadThisColumn = null == _columns || colIndex >= _columns.length || _columns[colIndex].load;
+                Object field = null;
+                int end;
+
+                colIndex++;
+
+                if (_line[start] == _delimiter)
+                {
+                    end = start;
+                    field = _preserveEmptyString ? null : "";
+                }
+                else
+                {
+                    end = start;
+                    while (end < _lineLength && _line[end] != _delimiter)
+                        end++;
+
+                    if (loadThisColumn)
+                        field = toValue(fields.size(), start, end);
+                }
+
+                if (loadThisColumn)
+                    fields.add(field);
+
+                end++;
+
+                while (end < _lineLength && _line[end] != _delimiter && Character.isWhitespace((char) _line[end]))
+                    end++;
+
+                start = end;
+            }
+
+            return fields.toArray();
+        }
+
+        private Object toValue(int activeIndex, int start, int end)
+        {
+            // Trim, like StringUtils.trimToEmpty()
+            while (start < end && _line[start] <= ' ')
+                start++;
+            while (end > start && _line[end - 1] <= ' ')
+                end--;
+            if (start == end)
+                return "";
+
+            Object value = null;
+            if (activeIndex < _activeColumns.length)
+            {
+                if (_parseIntegers[activeIndex] || _parseLongs[activeIndex])
+                {
+                    Long l = parseLong(_line, start, end);
+                    if (null != l && _parseIntegers[activeIndex])
+                        value = l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE ? Integer.valueOf(l.intValue()) : null;
+                    else
+                        value = l;
+                }
+                else if (_parseDoubles[activeIndex])
+                {
+                    value = parseDouble(_line, start, end);
+                }
+            }
+
+            // ASCII only at this point, so a Latin-1 copy is exact and cheap
+            return null != value ? value : new String(_line, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                _channel.close();
+                TabLoader.this.close();
+            }
+            finally
+            {
+                super.close();
+            }
+        }
+    }
+
+    /** @return the value of a plain optionally-signed integer of up to 18 digits, or null if it's anything else */
+    private static @Nullable Long parseLong(byte[] bytes, int start, int end)
+    {
+        int i = start;
+        boolean negative = bytes[i] == '-';
+        if (negative || bytes[i] == '+')
+            i++;
+        if (i == end || end - i > 18)
+            return null;
+
+        long value = 0;
+        for (; i < end; i++)
+        {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9)
+                return null;
+            value = value * 10 + digit;
+        }
+
+        return negative ? -value : value;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Parses plain decimals (no exponent) with at most 15 significant digits and 22 decimal places. Both the digits
+     * and the power of ten are exact doubles in that range, so a single division gives the same correctly-rounded
+     * result as Double.parseDouble(). Returns null for anything else, which then goes through the standard converter.
+     */
+    private static @Nullable Double parseDouble(byte[] bytes, int start, int end)
+    {
+        int i = start;
+        boolean negative = bytes[i] == '-';
+        if (negative || bytes[i] == '+')
+            i++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean decimalPoint = false;
+        for (; i < end; i++)
+        {
+            byte b = bytes[i];
+            if (b == '.' && !decimalPoint)
+            {
+                decimalPoint = true;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9)
+                return null;
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (decimalPoint)
+                scale++;
+        }
+
+        if (digits == 0 || digits > 15 || scale >= POWERS_OF_TEN.length)
+            return null;
+
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads records in chunks on the calling thread, then splits and converts each chunk on the fork-join pool.
+     * Reading only has to find record boundaries (quoted newlines included), so it's cheap compared to parsing and
+     * type conversion. At most MAX_CHUNKS_IN_FLIGHT chunks are outstanding at once, so memory stays bounded no
+     * matter how large the input is.
+     */
+    private class ParallelTabLoaderIterator extends TabLoaderIterator
+    {
+        private static final int CHUNK_SIZE = 1000;
+
+        private final ForkJoinPool _pool = ForkJoinPool.commonPool();
+        private final int _maxChunksInFlight = 2 * _pool.getParallelism() + 1;
+        private final ArrayDeque<Future<Chunk>> _pending = new ArrayDeque<>();
+        private Iterator<Map<String, Object>> _current = Collections.emptyIterator();
+        private boolean _endOfInput = false;
+        private boolean _finished = false;
+
+        protected ParallelTabLoaderIterator() throws IOException
+        {
+            super();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!_current.hasNext())
+            {
+                if (!_finished)
+                    submitChunks();
+
+                if (_finished || _pending.isEmpty())
+                {
+                    IOUtils.closeQuietly(this);
+                    return false;
+                }
+
+                Chunk chunk = await(_pending.removeFirst());
+                _current = chunk.rows.iterator();
+
+                // Conversion failed partway through this chunk, so nothing after it should be returned
+                if (chunk.last)
+                    _finished = true;
+            }
+
+            return true;
+        }
+
+        @Override
+        public Map<String, Object> next()
+        {
+            if (!hasNext())
+                throw new IllegalStateException("Attempt to call next() on a finished iterator");
+            return _current.next();
+        }
+
+        private void submitChunks()
+        {
+            while (!_endOfInput && _pending.size() < _maxChunksInFlight)
+            {
+                List<StringBuilder> records = new ArrayList<>(CHUNK_SIZE);
+                int[] lineNums = new int[CHUNK_SIZE];
+                while (records.size() < CHUNK_SIZE)
+                {
+                    StringBuilder record = readRecord(reader);
+                    if (null == record)
+                    {
+                        _endOfInput = true;
+                        break;
+                    }
+                    lineNums[records.size()] = _recordLineNum;
+                    records.add(record);
+                }
+
+                if (!records.isEmpty())
+                    _pending.add(_pool.submit(() -> convertChunk(records, lineNums)));
+            }
+        }
+
+        private Chunk convertChunk(List<StringBuilder> records, int[] lineNums)
+        {
+            Chunk chunk = new Chunk(records.size());
+            List<String> listParse = new ArrayList<>(_activeColumns.length);
+
+            for (int i = 0; i < records.size(); i++)
+            {
+                listParse.clear();
+                String[] fields = _parseQuotes ? parseFields(records.get(i), null, _columns, listParse) : splitFields(records.get(i));
+                Map<String, Object> values = convertValues(fields, lineNums[i]);
+
+                if (values == null)
+                {
+                    chunk.last = true;
+                    break;
+                }
+
+                if (values != Collections.EMPTY_MAP || isIncludeBlankLines())
+                    chunk.rows.add(values);
+            }
+
+            return chunk;
+        }
+
+        private Chunk await(Future<Chunk> future)
+        {
+            try
+            {
+                return future.get();
+            }
+            catch (InterruptedException e)
+            {
+                throw new RuntimeException(e);
+            }
+            catch (ExecutionException e)
+            {
+                // Rethrow ConversionException, IllegalArgumentException, etc. just as the serial iterator would
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            _finished = true;
+            _current = Collections.emptyIterator();
+            for (Future<Chunk> future : _pending)
+                future.cancel(false);
+            _pending.clear();
+
+            super.close();
+        }
+    }
+
+    private static class Chunk
+    {
+        private final List<Map<String, Object>> rows;
+        private boolean last = false;
+
+        private Chunk(int size)
+        {
+            rows = new ArrayList<>(size);
+        }
     }
 
     public static class TabLoaderTestCase extends Assert
@@ -1045,6 +1675,95 @@ public class TabLoader extends DataLoader
         }
 
 
+        @Test
+        public void testParallelParsing() throws IOException
+        {
+            StringBuilder data = new StringBuilder("Name\tMulti-Line\tAge\n");
+            for (int i = 0; i < 5000; i++)
+            {
+                data.append("Bob").append(i).append("\t\"apple\norange\tgrape\"\t").append(i).append("\n");
+                data.append("\t\"one\n\"\"two\"\"\tthree\"\n");
+                data.append("Fred\t\"quoted stuff\" unquoted\t1\n");
+            }
+
+            TabLoader serial = new TabLoader(data, true);
+            List<Map<String, Object>> expected = serial.load();
+
+            TabLoader parallel = new TabLoader(data, true);
+            parallel.setParallelParsing(true);
+            List<Map<String, Object>> rows = parallel.load();
+
+            assertEquals(15000, rows.size());
+            assertEquals(expected, rows);
+            assertEquals("Bob4999", rows.get(14997).get("Name"));
+            assertEquals("one\n\"two\"\tthree", rows.get(14998).get("Multi-Line"));
+        }
+
+
+        @Test
+        public void testLineNumbers() throws IOException
+        {
+            // The bad value is in the fourth record, but on the sixth line
+            String data = "Name\tAge\n# comment\nBob\t1\n\"multi\nline\"\t2\nFred\tx\n";
+            File tsv = _createTempFile(data, ".tsv");
+
+            // Standard, parallel and memory-mapped iterators
+            for (int mode = 0; mode < 3; mode++)
+            {
+                TabLoader loader = new TabLoader(tsv, true);
+                loader.getColumns()[1].clazz = Integer.class;
+                loader.setThrowOnErrors(true);
+                loader.setParallelParsing(mode == 1);
+                loader.setMemoryMapped(mode == 2);
+
+                try
+                {
+                    loader.load();
+                    fail("Expected a conversion error");
+                }
+                catch (ConversionException e)
+                {
+                    assertTrue(e.getMessage(), e.getMessage().contains("from line #6 "));
+                }
+            }
+            tsv.delete();
+        }
+
+
+        @Test
+        public void testMemoryMapped() throws IOException
+        {
+            String data = "\uFEFF# comment=value\r\n" +
+                    "Name\tCount\tBig\tScore\tMulti-Line\r\n" +
+                    "Bob\t3\t12345678901\t1.25\t\"apple\r\norange\tgrape\"\r\n" +
+                    "\u00c9lise\t-7\t-5\t-0.001\tna\\tve\r\n" +
+                    "\r\n" +
+                    "# skipped\n" +
+                    "  Fred  \t  \t0\t123456789.123456789\tplain text \n" +
+                    "Sam\t+4\t\t1e3\t\n";
+            File tsv = _createTempFile(data, ".tsv");
+
+            TabLoader reader = new TabLoader(tsv, true);
+            List<Map<String, Object>> expected = reader.load();
+
+            TabLoader mapped = new TabLoader(tsv, true);
+            mapped.setMemoryMapped(true);
+            List<Map<String, Object>> rows = mapped.load();
+
+            assertEquals(4, rows.size());
+            assertEquals(expected, rows);
+            assertEquals(Integer.class, mapped.getColumns()[1].clazz);
+            assertEquals(3, rows.get(0).get("Count"));
+            assertEquals("apple\norange\tgrape", rows.get(0).get("Multi-Line"));
+            assertEquals("\u00c9lise", rows.get(1).get("Name"));
+            assertEquals(-0.001, rows.get(1).get("Score"));
+            assertEquals("Fred", rows.get(2).get("Name"));
+            assertEquals("plain text", rows.get(2).get("Multi-Line"));
+            assertEquals(1000.0, rows.get(3).get("Score"));
+            tsv.delete();
+        }
+
+
         @Test
         public void testMySql() throws IOException
         {
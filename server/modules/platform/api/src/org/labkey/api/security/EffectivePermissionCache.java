@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.api.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.labkey.api.cache.Cache;
+import org.labkey.api.cache.CacheManager;
+import org.labkey.api.data.Container;
+import org.labkey.api.data.ContainerManager;
+import org.labkey.api.data.CoreSchema;
+import org.labkey.api.data.DatabaseCache;
+import org.labkey.api.security.permissions.InsertPermission;
+import org.labkey.api.security.permissions.Permission;
+import org.labkey.api.security.permissions.ReadPermission;
+import org.labkey.api.security.roles.ReaderRole;
+import org.labkey.api.util.GUID;
+import org.labkey.api.util.JunitUtil;
+import org.labkey.api.util.TestContext;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of each user's effective permissions, for code that checks the same user against many containers at once
+ * (listing children, building search filters). A plain {@link Container#hasPermission(UserPrincipal, Class)} resolves
+ * the nearest policy by walking up the tree, then matches the user's groups against every role assignment; here both
+ * steps are remembered. Each container maps to its nearest policy, and each user maps each policy they've been checked
+ * against to a bit set of the permissions it grants them, with bits assigned to permission classes on first use. Since
+ * most folders inherit, a user typically needs only one entry per distinct policy, however large the tree.
+ *
+ * Entries are built lazily. Everything is dropped on any policy change or container move; a user's entries are
+ * dropped when their group memberships change, and all users' when a group joins or leaves another group. Impersonating
+ * and limited users get their permissions from their context rather than their user ID, so they bypass the index.
+ */
+public class EffectivePermissionCache
+{
+    private static final CoreSchema CORE = CoreSchema.getInstance();
+
+    // Both are transaction-aware, so changes made in a transaction are invalidated again once it commits
+    private static final Cache<String, SecurityPolicy> NEAREST_POLICIES = new DatabaseCache<>(CORE.getSchema().getScope(), CacheManager.UNLIMITED, CacheManager.DAY, "Nearest security policies");
+    private static final Cache<Integer, Map<String, BitSet>> USER_PERMISSIONS = new DatabaseCache<>(CORE.getSchema().getScope(), 1000, CacheManager.HOUR, "Effective permissions");
+
+    // Incremented by clear(), so a policy loaded before a change isn't left in the cache after it
+    private static final AtomicLong POLICY_VERSION = new AtomicLong();
+
+    private static final Map<Class<? extends Permission>, Integer> BITS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_BIT = new AtomicInteger();
+
+    public static boolean isCacheable(@NotNull UserPrincipal principal)
+    {
+        if (principal.getClass() != User.class && principal.getClass() != GuestUser.class)
+            return false;
+
+        return !((User) principal).isImpersonated();
+    }
+
+    /** Same result as {@link Container#hasPermission(UserPrincipal, Class)} */
+    public static boolean hasPermission(@NotNull Container c, @NotNull User user, @NotNull Class<? extends Permission> perm)
+    {
+        if (!isCacheable(user))
+            return c.hasPermission(user, perm);
+
+        return getPermissions(c, user).get(getBit(perm));
+    }
+
+    private static BitSet getPermissions(Container c, User user)
+    {
+        // Get the user's map before resolving the policy, so a concurrent invalidation can't leave permissions computed
+        // from the old policy in the new map
+        Map<String, BitSet> permissions = USER_PERMISSIONS.get(user.getUserId(), null, (key, argument) -> new ConcurrentHashMap<>());
+        SecurityPolicy policy = getNearestPolicy(c);
+
+        return permissions.computeIfAbsent(policy.getResourceId(), id -> {
+            BitSet bits = new BitSet();
+            for (Class<? extends Permission> perm : policy.getPermissions(user))
+                bits.set(getBit(perm));
+            return bits;
+        });
+    }
+
+    private static SecurityPolicy getNearestPolicy(Container c)
+    {
+        long version = POLICY_VERSION.get();
+        SecurityPolicy policy = NEAREST_POLICIES.get(c.getId(), c, (key, argument) -> ((Container) argument).getPolicy());
+
+        // A clear() while this policy was loading may have run before the loader published it. Checking after the get
+        // means either we see the new version here, or the clear comes after the publish and removes it.
+        if (version != POLICY_VERSION.get())
+            NEAREST_POLICIES.remove(c.getId());
+
+        return policy;
+    }
+
+    // A permission assigned its bit after a user's bit set was built wasn't granted by it, so reads as false
+    private static int getBit(Class<? extends Permission> perm)
+    {
+        return BITS.computeIfAbsent(perm, p -> NEXT_BIT.getAndIncrement());
+    }
+
+    /** Called on any change to role assignments or to the container tree */
+    public static void clear()
+    {
+        POLICY_VERSION.incrementAndGet();
+        NEAREST_POLICIES.clear();
+        USER_PERMISSIONS.clear();
+    }
+
+    /** Called when a principal's group memberships change */
+    static void handleGroupChange(UserPrincipal principal)
+    {
+        // A group's membership affects every user in it, directly or through other groups
+        if (principal instanceof Group)
+            USER_PERMISSIONS.clear();
+        else
+            USER_PERMISSIONS.remove(principal.getUserId());
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        private Container _folder;
+
+        @Before
+        public void setUp()
+        {
+            Container parent = ContainerManager.createContainer(JunitUtil.getTestContainer(), "EffectivePermissions" + GUID.makeHash());
+            _folder = ContainerManager.createContainer(parent, "child");
+        }
+
+        @After
+        public void tearDown()
+        {
+            if (null != _folder)
+                ContainerManager.deleteAll(_folder.getParent(), TestContext.get().getUser());
+        }
+
+        @Test
+        public void testMatchesPolicy()
+        {
+            Container parent = _folder.getParent();
+            User admin = TestContext.get().getUser();
+
+            for (Container c : new Container[]{parent, _folder})
+            {
+                for (User user : new User[]{admin, User.guest})
+                {
+                    assertEquals(c.hasPermission(user, ReadPermission.class), hasPermission(c, user, ReadPermission.class));
+                    assertEquals(c.hasPermission(user, InsertPermission.class), hasPermission(c, user, InsertPermission.class));
+                }
+            }
+
+            assertFalse(isCacheable(User.nobody));
+        }
+
+        @Test
+        public void testPolicyChange()
+        {
+            Container parent = _folder.getParent();
+
+            SecurityPolicyManager.savePolicy(new MutableSecurityPolicy(parent));
+            SecurityPolicyManager.deletePolicy(_folder);
+            assertFalse(hasPermission(_folder, User.guest, ReadPermission.class));
+            assertFalse(ContainerManager.getChildren(parent, User.guest, ReadPermission.class).contains(_folder));
+
+            // Guests can now read the parent and, by inheritance, the child
+            MutableSecurityPolicy policy = new MutableSecurityPolicy(SecurityPolicyManager.getPolicy(parent));
+            policy.addRoleAssignment(SecurityManager.getGroup(Group.groupGuests), ReaderRole.class);
+            SecurityPolicyManager.savePolicy(policy);
+            assertTrue(hasPermission(parent, User.guest, ReadPermission.class));
+            assertTrue(hasPermission(_folder, User.guest, ReadPermission.class));
+            assertFalse(hasPermission(_folder, User.guest, InsertPermission.class));
+            assertTrue(ContainerManager.getChildren(parent, User.guest, ReadPermission.class).contains(_folder));
+
+            // An explicit, empty policy on the child stops the inheritance
+            SecurityPolicyManager.savePolicy(new MutableSecurityPolicy(_folder));
+            assertTrue(hasPermission(parent, User.guest, ReadPermission.class));
+            assertFalse(hasPermission(_folder, User.guest, ReadPermission.class));
+        }
+    }
+}
@@ -105,6 +105,7 @@ public class GroupMembershipCache
         // very slight overkill
         uncache(group);
         uncache(principal);
+        EffectivePermissionCache.handleGroupChange(principal);
 
         // invalidate all computed group lists (getAllGroups())
         if (principal instanceof Group)
@@ -198,12 +199,14 @@ public class GroupMembershipCache
             // Blow away groups immediately after user is deleted, otherwise this user's groups, and therefore permissions, will remain active
             // until the user chooses to sign out.
             uncache(user);
+            EffectivePermissionCache.handleGroupChange(user);
         }
 
         @Override
         public void userAccountDisabled(User user)
         {
             uncache(user);
+            EffectivePermissionCache.handleGroupChange(user);
 
         }
 
@@ -211,6 +214,7 @@ public class GroupMembershipCache
         public void userAccountEnabled(User user)
         {
             uncache(user);
+            EffectivePermissionCache.handleGroupChange(user);
         }
 
         public void propertyChange(PropertyChangeEvent evt)
@@ -53,6 +53,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Handles persistence and loading of {@link SecurityPolicy} information over {@link SecurableResource}s.
@@ -187,10 +188,36 @@ public class SecurityPolicyManager
         notifyPolicyChange(policy.getResourceId());
     }
 
+    public interface PolicyListener
+    {
+        /** Called after the policy (role assignments) of the resource, or of the container, with this ID changes */
+        void policyChanged(String objectID);
+    }
+
+    private static final List<PolicyListener> _listeners = new CopyOnWriteArrayList<>();
+
+    /** For modules that cache anything derived from permissions, e.g., search filters */
+    public static void addPolicyListener(PolicyListener listener)
+    {
+        _listeners.add(listener);
+    }
+
     public static void notifyPolicyChange(String objectID)
     {
         // UNDONE: generalize cross manager/module notifications
         ContainerManager.notifyContainerChange(objectID);
+
+        for (PolicyListener listener : _listeners)
+        {
+            try
+            {
+                listener.policyChanged(objectID);
+            }
+            catch (Throwable t)
+            {
+                logger.error("notifyPolicyChange", t);
+            }
+        }
     }
 
     public static void notifyPolicyChanges(List<String> objectIDs)
@@ -307,18 +334,21 @@ public class SecurityPolicyManager
     private static void remove(SecurableResource resource)
     {
         CACHE.remove(cacheKey(resource));
+        EffectivePermissionCache.clear();
     }
 
 
     private static void remove(SecurityPolicy policy)
     {
         CACHE.remove(cacheKey(policy));
+        EffectivePermissionCache.clear();
     }
 
     /** Clear all cached SecurityPolicy instances */
     public static void removeAll()
     {
         CACHE.clear();
+        EffectivePermissionCache.clear();
     }
 
     public static void exportRoleAssignments(SecurityPolicy policy, RoleAssignmentsType roleAssignments)
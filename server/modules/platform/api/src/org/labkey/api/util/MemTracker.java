@@ -184,7 +184,11 @@ public class MemTracker
     public RequestInfo startProfiler(HttpServletRequest request, @Nullable String name)
     {
         String url = request.getRequestURI() + (request.getQueryString() == null ? "" : "?" + request.getQueryString());
-        return startProfiler(url, request.getUserPrincipal(), name);
+        // Decide before taking the lock; this may need to load the MiniProfiler settings
+        boolean sampled = MiniProfiler.shouldSample();
+        RequestInfo req = startProfiler(url, request.getUserPrincipal(), name);
+        req.setSampled(sampled);
+        return req;
     }
 
     /**
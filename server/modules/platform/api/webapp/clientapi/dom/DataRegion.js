@@ -1627,6 +1627,11 @@ if (!LABKEY.DataRegions) {
                     if (hasTotal && this.showPaginationCount !== false) {
                         paginationText += ' of ' + this.totalRows.toLocaleString();
                     }
+                    else if (this.rowCountToken && this.showPaginationCount !== false) {
+                        // the server is still counting; fill in the total when it's done
+                        paginationText += ' of <span class="labkey-row-count">counting&hellip;</span>';
+                        _loadRowCount.call(this, ct, 500);
+                    }
 
                     // If modifying this ensure it is consistent with DOM generated by PopupMenu.java
                     var elems = [
@@ -1718,6 +1723,62 @@ if (!LABKEY.DataRegions) {
         }
     };
 
+    // The server answers immediately, so poll with a growing delay rather than holding a request open
+    var _loadRowCount = function(ct, delay) {
+        var region = this, token = this.rowCountToken;
+
+        if (!region._rowCountUnloadBound) {
+            region._rowCountUnloadBound = true;
+            $(window).on('pagehide', function() {
+                if (region.rowCountToken && navigator.sendBeacon) {
+                    // a beacon can't set headers, so send the CSRF token as a form parameter
+                    var body = new URLSearchParams();
+                    body.append('token', region.rowCountToken);
+                    body.append('X-LABKEY-CSRF', LABKEY.CSRF);
+                    navigator.sendBeacon(LABKEY.ActionURL.buildURL('query', 'cancelRowCount.api', region.containerPath), body);
+                }
+            });
+        }
+
+        setTimeout(function() {
+            if (region.rowCountToken !== token) {
+                return; // region has been re-rendered
+            }
+            _requestRowCount.call(region, ct, token, Math.min(delay * 2, 5000));
+        }, delay);
+    };
+
+    var _requestRowCount = function(ct, token, nextDelay) {
+        var region = this;
+
+        LABKEY.Ajax.request({
+            url: LABKEY.ActionURL.buildURL('query', 'getRowCount.api', region.containerPath),
+            method: 'GET',
+            params: {token: token},
+            success: LABKEY.Utils.getCallbackWrapper(function(response) {
+                if (region.rowCountToken !== token) {
+                    return; // region has been re-rendered
+                }
+                if (response.status === 'RUNNING') {
+                    _loadRowCount.call(region, ct, nextDelay);
+                }
+                else {
+                    region.rowCountToken = undefined;
+                    if (response.status === 'COMPLETE') {
+                        region.totalRows = response.rowCount;
+                        ct.find('.labkey-row-count').text(region.totalRows.toLocaleString());
+                    }
+                    else {
+                        ct.find('.labkey-row-count').text('many');
+                    }
+                }
+            }),
+            failure: function() {
+                ct.find('.labkey-row-count').text('many');
+            }
+        });
+    };
+
     var _page = function(offset, enabled) {
         if (enabled) {
             this.setPageOffset(offset);
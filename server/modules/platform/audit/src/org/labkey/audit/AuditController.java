@@ -15,7 +15,11 @@
  */
 package org.labkey.audit;
 
+import org.labkey.api.action.ApiResponse;
+import org.labkey.api.action.ApiSimpleResponse;
+import org.labkey.api.action.MutatingApiAction;
 import org.labkey.api.action.QueryViewAction;
+import org.labkey.api.action.ReadOnlyApiAction;
 import org.labkey.api.action.SimpleRedirectAction;
 import org.labkey.api.action.SimpleViewAction;
 import org.labkey.api.action.SpringActionController;
@@ -29,8 +33,10 @@ import org.labkey.api.query.QuerySettings;
 import org.labkey.api.query.QueryUrls;
 import org.labkey.api.query.QueryView;
 import org.labkey.api.query.UserSchema;
+import org.labkey.api.security.AdminConsoleAction;
 import org.labkey.api.security.RequiresPermission;
 import org.labkey.api.security.User;
+import org.labkey.api.security.permissions.AdminOperationsPermission;
 import org.labkey.api.security.permissions.AdminPermission;
 import org.labkey.api.security.permissions.ReadPermission;
 import org.labkey.api.security.permissions.TroubleShooterPermission;
@@ -44,7 +50,9 @@ import org.labkey.api.view.JspView;
 import org.labkey.api.view.NavTree;
 import org.labkey.api.view.NotFoundException;
 import org.labkey.api.view.VBox;
+import org.labkey.audit.model.AuditPartitionManager;
 import org.springframework.validation.BindException;
+import org.springframework.validation.Errors;
 import org.springframework.web.servlet.ModelAndView;
 
 import java.util.Date;
@@ -152,6 +160,62 @@ public class AuditController extends SpringActionController
     }
 
 
+    @AdminConsoleAction
+    public class GetRetentionAction extends ReadOnlyApiAction<Object>
+    {
+        @Override
+        public ApiResponse execute(Object form, BindException errors)
+        {
+            return new ApiSimpleResponse("retentionDays", AuditPartitionManager.get().getRetentionDays());
+        }
+    }
+
+    public static class RetentionForm
+    {
+        private String _eventType;
+        private Integer _days;
+
+        public String getEventType()
+        {
+            return _eventType;
+        }
+
+        public void setEventType(String eventType)
+        {
+            _eventType = eventType;
+        }
+
+        public Integer getDays()
+        {
+            return _days;
+        }
+
+        public void setDays(Integer days)
+        {
+            _days = days;
+        }
+    }
+
+    // Sets how many days of an event type's events the audit maintenance task keeps; omit days to keep them forever
+    @AdminConsoleAction(AdminOperationsPermission.class)
+    public class SetRetentionAction extends MutatingApiAction<RetentionForm>
+    {
+        @Override
+        public void validateForm(RetentionForm form, Errors errors)
+        {
+            if (null == form.getEventType() || null == AuditLogService.get().getAuditProvider(form.getEventType()))
+                errors.reject(ERROR_MSG, "Unknown audit event type: " + form.getEventType());
+        }
+
+        @Override
+        public ApiResponse execute(RetentionForm form, BindException errors)
+        {
+            AuditPartitionManager.get().setRetentionDays(AuditLogService.get().getAuditProvider(form.getEventType()).getEventName(), form.getDays());
+            return new ApiSimpleResponse("retentionDays", AuditPartitionManager.get().getRetentionDays());
+        }
+    }
+
+
     public static class SiteSettingsAuditDetailsForm
     {
         private Integer _id;
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.audit;
+
+import org.apache.log4j.Logger;
+import org.labkey.api.audit.AuditLogService;
+import org.labkey.api.audit.AuditTypeEvent;
+import org.labkey.api.audit.AuditTypeProvider;
+import org.labkey.api.security.User;
+import org.labkey.api.util.ContextListener;
+import org.labkey.api.util.Pair;
+import org.labkey.api.util.ShutdownListener;
+import org.labkey.audit.model.LogManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of events from providers that use {@link AuditTypeProvider.WriteMode#ASYNCHRONOUS}, drained by a
+ * background thread that inserts them in batches. When the queue is full, the thread adding an event inserts it itself,
+ * which slows producers down to the rate the database can absorb without blocking them or dropping events.
+ */
+class AuditEventQueue implements ShutdownListener
+{
+    private static final Logger _log = Logger.getLogger(AuditEventQueue.class);
+
+    private static final int CAPACITY = 10_000;
+    private static final int BATCH_SIZE = 500;
+
+    private final BlockingQueue<Pair<User, AuditTypeEvent>> _queue = new ArrayBlockingQueue<>(CAPACITY);
+
+    private final AtomicLong _queued = new AtomicLong();
+    private final AtomicLong _written = new AtomicLong();
+    private final AtomicLong _batches = new AtomicLong();
+    private final AtomicLong _batchMillis = new AtomicLong();
+    private final AtomicLong _callerWrites = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+    private final AtomicInteger _maxDepth = new AtomicInteger();
+
+    private volatile Thread _thread = null;
+    private volatile boolean _shuttingDown = false;
+
+    synchronized void start()
+    {
+        if (null != _thread)
+            return;
+
+        _thread = new Thread(this::drain, "AuditLog:writer");
+        _thread.setDaemon(true);
+        _thread.start();
+        ContextListener.addShutdownListener(this);
+    }
+
+    void add(User user, AuditTypeEvent event)
+    {
+        if (!_shuttingDown && _queue.offer(new Pair<>(user, event)))
+        {
+            _queued.incrementAndGet();
+            _maxDepth.accumulateAndGet(_queue.size(), Math::max);
+        }
+        else
+        {
+            _callerWrites.incrementAndGet();
+            LogManager.get()._insertEvent(user, event);
+        }
+    }
+
+    private void drain()
+    {
+        List<Pair<User, AuditTypeEvent>> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (!_shuttingDown)
+        {
+            try
+            {
+                batch.add(_queue.take());
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+
+            _queue.drainTo(batch, BATCH_SIZE - 1);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<Pair<User, AuditTypeEvent>> batch)
+    {
+        long start = System.currentTimeMillis();
+
+        try
+        {
+            LogManager.get()._insertEvents(batch);
+            _written.addAndGet(batch.size());
+        }
+        catch (RuntimeException e)
+        {
+            _failed.addAndGet(batch.size());
+            _log.error("Failed to insert " + batch.size() + " audit log events", e);
+            AuditLogService.handleAuditFailure(batch.get(0).first, e);
+        }
+        finally
+        {
+            _batches.incrementAndGet();
+            _batchMillis.addAndGet(System.currentTimeMillis() - start);
+        }
+    }
+
+    /** Counts since startup, for usage metrics and troubleshooting */
+    Map<String, Object> getStats()
+    {
+        long batches = _batches.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", _queued.get());
+        stats.put("written", _written.get());
+        stats.put("failed", _failed.get());
+        stats.put("writtenByCaller", _callerWrites.get());
+        stats.put("currentDepth", _queue.size());
+        stats.put("maxDepth", _maxDepth.get());
+        stats.put("capacity", CAPACITY);
+        stats.put("batches", batches);
+        stats.put("avgBatchMillis", 0 == batches ? 0 : _batchMillis.get() / batches);
+
+        return stats;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Audit log writer";
+    }
+
+    @Override
+    public void shutdownPre()
+    {
+    }
+
+    @Override
+    public void shutdownStarted()
+    {
+        // From here on, callers write their own events. Let an in-progress batch finish, then write what's left.
+        _shuttingDown = true;
+        Thread thread = _thread;
+
+        if (null != thread)
+        {
+            thread.interrupt();
+
+            try
+            {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+            catch (InterruptedException e)
+            {
+                // Write what we can below
+            }
+        }
+
+        List<Pair<User, AuditTypeEvent>> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (_queue.drainTo(batch, BATCH_SIZE) > 0)
+        {
+            write(batch);
+            batch.clear();
+        }
+    }
+}
@@ -18,21 +18,31 @@ package org.labkey.audit;
 
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
 import org.labkey.api.action.SpringActionController;
 import org.labkey.api.audit.AuditLogService;
 import org.labkey.api.audit.AuditTypeEvent;
+import org.labkey.api.audit.AuditTypeProvider;
+import org.labkey.api.audit.AuditTypeProvider.WriteMode;
+import org.labkey.api.audit.provider.SiteSettingsAuditProvider;
+import org.labkey.api.audit.provider.SiteSettingsAuditProvider.SiteSettingsAuditEvent;
 import org.labkey.api.data.Container;
 import org.labkey.api.data.ContainerManager;
 import org.labkey.api.data.DbScope;
 import org.labkey.api.data.SimpleFilter;
 import org.labkey.api.data.Sort;
 import org.labkey.api.data.TableInfo;
+import org.labkey.api.query.FieldKey;
 import org.labkey.api.query.UserSchema;
 import org.labkey.api.security.User;
 import org.labkey.api.security.UserManager;
 import org.labkey.api.util.ContextListener;
+import org.labkey.api.util.GUID;
+import org.labkey.api.util.JunitUtil;
 import org.labkey.api.util.Pair;
 import org.labkey.api.util.StartupListener;
+import org.labkey.api.util.TestContext;
 import org.labkey.api.view.ActionURL;
 import org.labkey.api.view.HttpView;
 import org.labkey.api.view.ViewContext;
@@ -40,9 +50,11 @@ import org.labkey.audit.model.LogManager;
 import org.labkey.audit.query.AuditQuerySchema;
 
 import javax.servlet.ServletContext;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -59,6 +71,7 @@ public class AuditLogImpl implements AuditLogService, StartupListener
     private Queue<Pair<User, AuditTypeEvent>> _eventTypeQueue = new LinkedList<>();
     private AtomicBoolean  _logToDatabase = new AtomicBoolean(false);
     private static final Object STARTUP_LOCK = new Object();
+    private final AuditEventQueue _asyncQueue = new AuditEventQueue();
 
     public static AuditLogImpl get()
     {
@@ -79,6 +92,8 @@ public class AuditLogImpl implements AuditLogService, StartupListener
     @Override
     public void moduleStartupComplete(ServletContext servletContext)
     {
+        _asyncQueue.start();
+
         synchronized (STARTUP_LOCK)
         {
             _logToDatabase.set(true);
@@ -150,7 +165,7 @@ public class AuditLogImpl implements AuditLogService, StartupListener
                 {
                     if (_logToDatabase.get())
                     {
-                        LogManager.get()._insertEvent(user, event);
+                        write(user, event);
                     }
                     else
                         _eventTypeQueue.add(new Pair<>(user, event));
@@ -158,7 +173,7 @@ public class AuditLogImpl implements AuditLogService, StartupListener
             }
             else
             {
-                return LogManager.get()._insertEvent(user, event);
+                return write(user, event);
             }
         }
         catch (RuntimeException e)
@@ -170,6 +185,116 @@ public class AuditLogImpl implements AuditLogService, StartupListener
         return null;
     }
 
+    /**
+     * Write the event as its provider requests. Events that aren't inserted immediately are returned without a RowId.
+     */
+    private <K extends AuditTypeEvent> K write(User user, K event)
+    {
+        AuditTypeProvider provider = getAuditProvider(event.getEventType());
+        return write(user, event, null == provider ? WriteMode.SYNCHRONOUS : provider.getWriteMode());
+    }
+
+    private <K extends AuditTypeEvent> K write(User user, K event, WriteMode mode)
+    {
+        DbScope.Transaction transaction = LogManager.get().getSchema().getScope().getCurrentTransaction();
+
+        switch (mode)
+        {
+            case TRANSACTIONAL:
+                if (null == transaction)
+                    break;
+                // A pre-commit task that runs after the batch was written can still log; insert those directly
+                if (transaction.addCommitTask(new TransactionEvents(mode), DbScope.CommitTaskOption.PRECOMMIT).add(user, event))
+                    return event;
+                break;
+
+            case ASYNCHRONOUS:
+                if (null == transaction)
+                    _asyncQueue.add(user, event);
+                else
+                    transaction.addCommitTask(new TransactionEvents(mode), DbScope.CommitTaskOption.POSTCOMMIT).add(user, event);
+                return event;
+        }
+
+        return LogManager.get()._insertEvent(user, event);
+    }
+
+    /** Statistics for the queue of asynchronously written events */
+    public Map<String, Object> getAsyncQueueStats()
+    {
+        return _asyncQueue.getStats();
+    }
+
+    /**
+     * Events added within a transaction, written as a batch before it commits (TRANSACTIONAL) or queued once it has
+     * (ASYNCHRONOUS). Equal by write mode, so each transaction collects one instance per mode. A TRANSACTIONAL batch
+     * stops accepting events once it has been written, since the commit has already copied its task list.
+     */
+    private class TransactionEvents implements Runnable
+    {
+        private final WriteMode _mode;
+        private final List<Pair<User, AuditTypeEvent>> _events = new ArrayList<>();
+        private boolean _written = false;
+
+        private TransactionEvents(WriteMode mode)
+        {
+            _mode = mode;
+        }
+
+        /** @return false if this TRANSACTIONAL batch has already been written, in which case the caller must insert the event */
+        private boolean add(User user, AuditTypeEvent event)
+        {
+            if (_written)
+                return false;
+            _events.add(new Pair<>(user, event));
+            return true;
+        }
+
+        @Override
+        public void run()
+        {
+            // Drain until empty, since inserting a batch can log more events. Clear each batch first, since
+            // commitAndKeepConnection() runs the same tasks again on the next commit.
+            while (!_events.isEmpty())
+            {
+                List<Pair<User, AuditTypeEvent>> events = new ArrayList<>(_events);
+                _events.clear();
+
+                if (_mode == WriteMode.ASYNCHRONOUS)
+                {
+                    events.forEach(event -> _asyncQueue.add(event.first, event.second));
+                    continue;
+                }
+
+                try (var ignored = SpringActionController.ignoreSqlUpdates())
+                {
+                    LogManager.get()._insertEvents(events);
+                }
+                catch (RuntimeException e)
+                {
+                    _log.error("Failed to insert audit log events", e);
+                    AuditLogService.handleAuditFailure(events.get(0).first, e);
+                    throw e;
+                }
+            }
+
+            if (_mode == WriteMode.TRANSACTIONAL)
+                _written = true;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof TransactionEvents && ((TransactionEvents) o)._mode == _mode;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _mode.hashCode();
+        }
+    }
+
     @Override
     public String getTableName()
     {
@@ -207,4 +332,96 @@ public class AuditLogImpl implements AuditLogService, StartupListener
     {
         return new ActionURL(AuditController.ShowAuditLogAction.class, ContainerManager.getRoot());
     }
+
+
+    public static class TestCase extends Assert
+    {
+        private static final int EVENTS = 3;
+
+        @Test
+        public void testTransactionalBatch()
+        {
+            String comment = "Transactional batch " + GUID.makeHash();
+
+            try (DbScope.Transaction transaction = LogManager.get().getSchema().getScope().ensureTransaction())
+            {
+                for (int i = 0; i < EVENTS; i++)
+                    assertEquals(0, get().write(getUser(), createEvent(comment), WriteMode.TRANSACTIONAL).getRowId());
+
+                // Nothing is written until the transaction commits
+                assertEquals(0, getEvents(comment).size());
+                transaction.commit();
+            }
+
+            verifyEvents(getEvents(comment));
+        }
+
+        @Test
+        public void testLatePreCommitEvent()
+        {
+            String comment = "Late pre-commit event " + GUID.makeHash();
+
+            try (DbScope.Transaction transaction = LogManager.get().getSchema().getScope().ensureTransaction())
+            {
+                for (int i = 0; i < EVENTS - 1; i++)
+                    get().write(getUser(), createEvent(comment), WriteMode.TRANSACTIONAL);
+
+                // Runs after the batch has been written, but must not lose its event
+                transaction.addCommitTask(() -> get().write(getUser(), createEvent(comment), WriteMode.TRANSACTIONAL), DbScope.CommitTaskOption.PRECOMMIT);
+                transaction.commit();
+            }
+
+            verifyEvents(getEvents(comment));
+        }
+
+        @Test
+        public void testAsynchronousBatch() throws InterruptedException
+        {
+            String comment = "Asynchronous batch " + GUID.makeHash();
+
+            for (int i = 0; i < EVENTS; i++)
+                get().write(getUser(), createEvent(comment), WriteMode.ASYNCHRONOUS);
+
+            List<SiteSettingsAuditEvent> events = getEvents(comment);
+            for (int i = 0; i < 100 && events.size() < EVENTS; i++)
+            {
+                Thread.sleep(100);
+                events = getEvents(comment);
+            }
+
+            verifyEvents(events);
+        }
+
+        private User getUser()
+        {
+            return TestContext.get().getUser();
+        }
+
+        private SiteSettingsAuditEvent createEvent(String comment)
+        {
+            SiteSettingsAuditEvent event = new SiteSettingsAuditEvent(JunitUtil.getTestContainer().getId(), comment);
+            event.setCreated(new Date());
+            event.setCreatedBy(getUser());
+            event.setChanges("changes \n");
+            return event;
+        }
+
+        private List<SiteSettingsAuditEvent> getEvents(String comment)
+        {
+            SimpleFilter filter = new SimpleFilter(FieldKey.fromParts("Comment"), comment);
+            return get().getAuditEvents(JunitUtil.getTestContainer(), getUser(), SiteSettingsAuditProvider.AUDIT_EVENT_TYPE, filter, null);
+        }
+
+        // Rows are prepared as Table.insert() prepares them: CreatedBy is the user's id and strings are trimmed
+        private void verifyEvents(List<SiteSettingsAuditEvent> events)
+        {
+            assertEquals(EVENTS, events.size());
+
+            for (SiteSettingsAuditEvent event : events)
+            {
+                assertEquals(getUser().getUserId(), event.getCreatedBy().getUserId());
+                assertEquals("changes", event.getChanges());
+            }
+        }
+    }
 }
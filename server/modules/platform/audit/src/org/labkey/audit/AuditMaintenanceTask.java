@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.audit;
+
+import org.apache.log4j.Logger;
+import org.labkey.api.util.SystemMaintenance.MaintenanceTask;
+import org.labkey.audit.model.AuditPartitionManager;
+
+public class AuditMaintenanceTask implements MaintenanceTask
+{
+    @Override
+    public String getDescription()
+    {
+        return "Manage audit log partitions and retention";
+    }
+
+    @Override
+    public String getName()
+    {
+        return "AuditLogPartitions";
+    }
+
+    @Override
+    public void run(Logger log)
+    {
+        AuditPartitionManager.get().maintain(log);
+    }
+}
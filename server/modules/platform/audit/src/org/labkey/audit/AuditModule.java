@@ -21,7 +21,11 @@ import org.labkey.api.audit.AuditLogService;
 import org.labkey.api.audit.provider.SiteSettingsAuditProvider;
 import org.labkey.api.module.DefaultModule;
 import org.labkey.api.module.ModuleContext;
+import org.labkey.api.usageMetrics.UsageMetricsService;
+import org.labkey.api.util.SystemMaintenance;
+import org.labkey.api.util.UsageReportingLevel;
 import org.labkey.api.view.WebPartFactory;
+import org.labkey.audit.model.AuditPartitionManager;
 import org.labkey.audit.query.AuditQuerySchema;
 
 import java.util.Collection;
@@ -75,6 +79,24 @@ public class AuditModule extends DefaultModule
         AuditLogService.get().registerAuditType(new SiteSettingsAuditProvider());
 
         AuditController.registerAdminConsoleLinks();
+        SystemMaintenance.addTask(new AuditMaintenanceTask());
+
+        UsageMetricsService svc = UsageMetricsService.get();
+        if (null != svc)
+        {
+            svc.registerUsageMetrics(UsageReportingLevel.MEDIUM, getName(), () ->
+                Collections.singletonMap("asyncAuditQueue", AuditLogImpl.get().getAsyncQueueStats()));
+        }
+    }
+
+    @Override
+    @NotNull
+    public Set<Class> getIntegrationTests()
+    {
+        return Set.of(
+            AuditLogImpl.TestCase.class,
+            AuditPartitionManager.TestCase.class
+        );
     }
 
     @Override
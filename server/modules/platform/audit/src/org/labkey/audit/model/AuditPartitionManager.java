@@ -0,0 +1,504 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.audit.model;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.labkey.api.audit.AbstractAuditTypeProvider;
+import org.labkey.api.audit.AuditLogService;
+import org.labkey.api.audit.AuditTypeProvider;
+import org.labkey.api.audit.query.AbstractAuditDomainKind;
+import org.labkey.api.collections.CaseInsensitiveTreeMap;
+import org.labkey.api.data.Constraint;
+import org.labkey.api.data.ContainerManager;
+import org.labkey.api.data.DbScope;
+import org.labkey.api.data.PropertyManager;
+import org.labkey.api.data.PropertyStorageSpec;
+import org.labkey.api.data.SQLFragment;
+import org.labkey.api.data.SqlExecutor;
+import org.labkey.api.data.SqlSelector;
+import org.labkey.api.data.TableChange;
+import org.labkey.api.data.dialect.SqlDialect;
+import org.labkey.api.exp.api.StorageProvisioner;
+import org.labkey.api.exp.property.Domain;
+import org.labkey.api.exp.property.DomainKind;
+import org.labkey.api.util.GUID;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Manages monthly partitions for audit tables whose domain kind is {@link AbstractAuditDomainKind#isTimePartitioned()},
+ * and applies the retention period configured for each event type. Partitions live in their own schema so they don't
+ * show up as orphaned tables in the provisioned audit schema.
+ */
+public class AuditPartitionManager
+{
+    private static final Logger _log = Logger.getLogger(AuditPartitionManager.class);
+    private static final AuditPartitionManager _instance = new AuditPartitionManager();
+
+    private static final String RETENTION_CATEGORY = "AuditLogRetention";
+    private static final String PARTITION_SCHEMA_NAME = "audit_partitions";
+    private static final int MONTHS_AHEAD = 2;
+    private static final int DELETE_BATCH_SIZE = 10_000;
+    // Leave room for the suffix within PostgreSQL's 63 character identifier limit
+    private static final int MAX_PARTITION_PREFIX = 48;
+    private static final DateTimeFormatter MONTH_SUFFIX = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+
+    private AuditPartitionManager()
+    {
+    }
+
+    public static AuditPartitionManager get()
+    {
+        return _instance;
+    }
+
+    /** @return days to keep each event type's events, keyed by event name; event types not present are kept forever */
+    public Map<String, Integer> getRetentionDays()
+    {
+        Map<String, Integer> result = new CaseInsensitiveTreeMap<>();
+
+        for (Map.Entry<String, String> entry : PropertyManager.getProperties(ContainerManager.getRoot(), RETENTION_CATEGORY).entrySet())
+        {
+            try
+            {
+                result.put(entry.getKey(), Integer.valueOf(entry.getValue()));
+            }
+            catch (NumberFormatException e)
+            {
+                _log.warn("Ignoring invalid audit log retention for " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /** @param days days to keep events of this type, or null to keep them forever */
+    public void setRetentionDays(String eventType, @Nullable Integer days)
+    {
+        PropertyManager.PropertyMap map = PropertyManager.getWritableProperties(ContainerManager.getRoot(), RETENTION_CATEGORY, true);
+
+        if (null == days || days <= 0)
+            map.remove(eventType);
+        else
+            map.put(eventType, String.valueOf(days));
+
+        map.save();
+    }
+
+    /** Create upcoming partitions and remove events older than their retention period, one event type at a time */
+    public void maintain(Logger log)
+    {
+        Map<String, Integer> retentionDays = getRetentionDays();
+
+        for (AuditTypeProvider provider : AuditLogService.get().getAuditProviders())
+        {
+            Domain domain = provider.getDomain();
+            DomainKind<?> kind = null == domain ? null : domain.getDomainKind();
+
+            if (!(kind instanceof AbstractAuditDomainKind) || null == domain.getStorageTableName())
+                continue;
+
+            Integer days = retentionDays.get(provider.getEventName());
+
+            try
+            {
+                boolean partitioned = ((AbstractAuditDomainKind) kind).isTimePartitioned() && ensurePartitions(kind, domain, log);
+
+                if (null != days && days > 0)
+                {
+                    Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+                    purge(kind.getScope(), domain.getStorageTableName(), partitioned, cutoff, log);
+                }
+            }
+            catch (RuntimeException e)
+            {
+                log.error("Audit log maintenance failed for " + provider.getEventName(), e);
+            }
+        }
+    }
+
+    /** @return true if the table is partitioned, after converting it and creating partitions as needed */
+    private boolean ensurePartitions(DomainKind<?> kind, Domain domain, Logger log)
+    {
+        DbScope scope = kind.getScope();
+
+        if (!supportsPartitioning(scope))
+            return false;
+
+        String tableName = domain.getStorageTableName();
+        String relkind = getRelKind(scope, tableName);
+
+        if (null == relkind)
+            return false;
+
+        LocalDate thisMonth = LocalDate.now().withDayOfMonth(1);
+
+        if (!"p".equals(relkind))
+        {
+            // The old table covers next month too, so events logged while converting can't fall outside it
+            convert(scope, tableName, thisMonth.plusMonths(2), log);
+            kind.invalidate(domain);
+
+            // The new parent starts with just its primary key. Indices added to it cascade to every partition,
+            // reusing the old table's matching indices.
+            Set<PropertyStorageSpec.Index> indices = kind.getPropertyIndices(domain);
+            if (!indices.isEmpty())
+                StorageProvisioner.addOrDropTableIndices(domain, indices, true, TableChange.IndexSizeMode.Normal);
+        }
+
+        createPartitions(scope, tableName, thisMonth, log);
+
+        return true;
+    }
+
+    // "r" for a plain table, "p" for a partitioned one, or null if there's no such table
+    private static @Nullable String getRelKind(DbScope scope, String tableName)
+    {
+        return new SqlSelector(scope, new SQLFragment("SELECT c.relkind FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace WHERE n.nspname = ? AND c.relname = ?",
+                AbstractAuditTypeProvider.SCHEMA_NAME, tableName)).getObject(String.class);
+    }
+
+    // PostgreSQL 12 is the first version that can skip the scan for SET NOT NULL in convert()
+    private static boolean supportsPartitioning(DbScope scope)
+    {
+        return scope.getSqlDialect().isPostgreSQL() && new SqlSelector(scope, "SELECT current_setting('server_version_num')::INT").getObject(Integer.class) >= 120000;
+    }
+
+    /** Create the default partition, plus monthly partitions from the newest existing one through a few months ahead */
+    private void createPartitions(DbScope scope, String tableName, LocalDate thisMonth, Logger log)
+    {
+        SqlDialect dialect = scope.getSqlDialect();
+        String parent = qualify(dialect, AbstractAuditTypeProvider.SCHEMA_NAME, tableName);
+        SqlExecutor executor = new SqlExecutor(scope);
+        String defaultPartition = qualify(dialect, PARTITION_SCHEMA_NAME, getPartitionName(tableName, "default"));
+        executor.execute("CREATE TABLE IF NOT EXISTS " + defaultPartition + " PARTITION OF " + parent + " DEFAULT");
+
+        LocalDate start = null;
+        for (Partition partition : getPartitions(scope, parent))
+        {
+            LocalDate end = partition._end.toLocalDateTime().toLocalDate();
+            if (null == start || end.isAfter(start))
+                start = end;
+        }
+
+        // Normally start is already a month or two ahead. If maintenance hasn't run for a while, this fills the gap;
+        // events from the gap are sitting in the default partition and get moved into the new ones.
+        if (null == start)
+            start = thisMonth;
+
+        for (LocalDate month = start; !month.isAfter(thisMonth.plusMonths(MONTHS_AHEAD)); month = month.plusMonths(1))
+        {
+            String partition = qualify(dialect, PARTITION_SCHEMA_NAME, getPartitionName(tableName, MONTH_SUFFIX.format(month)));
+            createPartition(scope, parent, partition, defaultPartition, month, month.plusMonths(1));
+            log.info("Created audit log partition " + partition);
+        }
+    }
+
+    /**
+     * Turn an existing audit table into a partitioned one. The existing table becomes the first partition, covering
+     * everything before firstPartitionStart, so no rows are copied; it's dropped as a whole once its newest rows pass
+     * the retention period.
+     *
+     * Everything that reads the whole table happens first, while events can still be logged: a NOT VALID check
+     * constraint matching the partition bound is validated, and the index for the new primary key is built
+     * concurrently. The exclusive lock is then held only for catalog changes, since PostgreSQL uses the validated
+     * constraint to skip the scans for SET NOT NULL and ATTACH PARTITION, and attaches the existing primary key rather
+     * than building one.
+     */
+    private void convert(DbScope scope, String tableName, LocalDate firstPartitionStart, Logger log)
+    {
+        SqlDialect dialect = scope.getSqlDialect();
+        String table = qualify(dialect, AbstractAuditTypeProvider.SCHEMA_NAME, tableName);
+        String legacyName = getPartitionName(tableName, "legacy");
+        String legacy = qualify(dialect, PARTITION_SCHEMA_NAME, legacyName);
+        String pkName = new Constraint(tableName, Constraint.CONSTRAINT_TYPES.PRIMARYKEY, false, null).getName();
+        String boundName = dialect.makeLegalIdentifier(getPartitionName(tableName, "bound"));
+        String keyName = getPartitionName(tableName, "partkey");
+
+        log.info("Converting " + table + " to a partitioned table");
+
+        SqlExecutor executor = new SqlExecutor(scope);
+        executor.execute("CREATE SCHEMA IF NOT EXISTS " + dialect.makeLegalIdentifier(PARTITION_SCHEMA_NAME));
+
+        // Clean up after an earlier attempt that failed before taking the lock
+        executor.execute("DROP INDEX CONCURRENTLY IF EXISTS " + qualify(dialect, AbstractAuditTypeProvider.SCHEMA_NAME, keyName));
+        executor.execute("ALTER TABLE " + table + " DROP CONSTRAINT IF EXISTS " + boundName);
+
+        // Adding the constraint NOT VALID only checks new rows. Validating it scans the table without blocking inserts.
+        executor.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + boundName + " CHECK (created IS NOT NULL AND created < '" + firstPartitionStart + "') NOT VALID");
+
+        // The partition column can't be null. AuditLogImpl always sets Created, so these can only be ancient rows.
+        executor.execute("UPDATE " + table + " SET created = ? WHERE created IS NULL", new Timestamp(0));
+        executor.execute("ALTER TABLE " + table + " VALIDATE CONSTRAINT " + boundName);
+        executor.execute("CREATE UNIQUE INDEX CONCURRENTLY " + dialect.makeLegalIdentifier(keyName) + " ON " + table + " (rowid, created)");
+
+        try (DbScope.Transaction transaction = scope.ensureTransaction())
+        {
+            executor.execute("LOCK TABLE " + table + " IN ACCESS EXCLUSIVE MODE");
+
+            executor.execute("ALTER TABLE " + table + " ALTER COLUMN created SET NOT NULL");
+            executor.execute("ALTER TABLE " + table + " DROP CONSTRAINT " + dialect.makeLegalIdentifier(pkName));
+            executor.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + dialect.makeLegalIdentifier(keyName) + " PRIMARY KEY USING INDEX " + dialect.makeLegalIdentifier(keyName));
+            executor.execute("ALTER TABLE " + table + " SET SCHEMA " + dialect.makeLegalIdentifier(PARTITION_SCHEMA_NAME));
+            executor.execute("ALTER TABLE " + qualify(dialect, PARTITION_SCHEMA_NAME, tableName) + " RENAME TO " + dialect.makeLegalIdentifier(legacyName));
+
+            executor.execute("CREATE TABLE " + table + " (LIKE " + legacy + " INCLUDING DEFAULTS) PARTITION BY RANGE (created)");
+            executor.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + dialect.makeLegalIdentifier(pkName) + " PRIMARY KEY (rowid, created)");
+
+            // The RowId sequence moved with the old table; hand it to the new one so dropping the old partition keeps it
+            String sequence = new SqlSelector(scope, new SQLFragment("SELECT pg_get_serial_sequence(?, 'rowid')", legacy)).getObject(String.class);
+            if (null != sequence)
+            {
+                executor.execute("ALTER SEQUENCE " + sequence + " OWNED BY " + table + ".rowid");
+                executor.execute("ALTER SEQUENCE " + sequence + " SET SCHEMA " + dialect.makeLegalIdentifier(AbstractAuditTypeProvider.SCHEMA_NAME));
+            }
+
+            executor.execute("ALTER TABLE " + table + " ATTACH PARTITION " + legacy + " FOR VALUES FROM (MINVALUE) TO ('" + firstPartitionStart + "')");
+
+            // The partition bound enforces the same thing now
+            executor.execute("ALTER TABLE " + legacy + " DROP CONSTRAINT " + boundName);
+
+            transaction.commit();
+        }
+    }
+
+    private void createPartition(DbScope scope, String parent, String partition, String defaultPartition, LocalDate start, LocalDate end)
+    {
+        SqlExecutor executor = new SqlExecutor(scope);
+        String bounds = " FOR VALUES FROM ('" + start + "') TO ('" + end + "')";
+        SQLFragment inRange = new SQLFragment(" WHERE created >= ? AND created < ?", Timestamp.valueOf(start.atStartOfDay()), Timestamp.valueOf(end.atStartOfDay()));
+
+        boolean defaultHasRows = new SqlSelector(scope, new SQLFragment("SELECT 1 FROM " + defaultPartition).append(inRange)).exists();
+
+        if (!defaultHasRows)
+        {
+            executor.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + parent + bounds);
+            return;
+        }
+
+        // PostgreSQL won't create a partition whose rows are sitting in the default partition, so move them over
+        try (DbScope.Transaction transaction = scope.ensureTransaction())
+        {
+            executor.execute("ALTER TABLE " + parent + " DETACH PARTITION " + defaultPartition);
+            executor.execute("CREATE TABLE " + partition + " PARTITION OF " + parent + bounds);
+            executor.execute(new SQLFragment("INSERT INTO " + parent + " SELECT * FROM " + defaultPartition).append(inRange));
+            executor.execute(new SQLFragment("DELETE FROM " + defaultPartition).append(inRange));
+            executor.execute("ALTER TABLE " + parent + " ATTACH PARTITION " + defaultPartition + " DEFAULT");
+            transaction.commit();
+        }
+    }
+
+    private void purge(DbScope scope, String tableName, boolean partitioned, Date cutoff, Logger log)
+    {
+        SqlDialect dialect = scope.getSqlDialect();
+        String table = qualify(dialect, AbstractAuditTypeProvider.SCHEMA_NAME, tableName);
+        SqlExecutor executor = new SqlExecutor(scope);
+
+        if (partitioned)
+        {
+            // Drop partitions that hold nothing newer than the cutoff. Rows in the partition that straddles the cutoff
+            // are kept until the whole partition expires.
+            for (Partition partition : getPartitions(scope, table))
+            {
+                if (!partition._end.after(cutoff))
+                {
+                    executor.execute("DROP TABLE " + qualify(dialect, PARTITION_SCHEMA_NAME, partition._name));
+                    log.info("Dropped audit log partition " + partition._name);
+                }
+            }
+
+            return;
+        }
+
+        // Delete in batches, so retention on a large table doesn't hold locks or bloat the log in one huge statement
+        SQLFragment select = dialect.limitRows(new SQLFragment("SELECT rowid FROM " + table + " WHERE created < ?", cutoff), DELETE_BATCH_SIZE);
+        SQLFragment delete = new SQLFragment("DELETE FROM " + table + " WHERE rowid IN (").append(select).append(")");
+        int total = 0;
+        int count;
+
+        do
+        {
+            count = executor.execute(delete);
+            total += count;
+        }
+        while (count == DELETE_BATCH_SIZE);
+
+        if (total > 0)
+            log.info("Deleted " + total + " expired rows from " + table);
+    }
+
+    // Partitions with an upper bound, i.e., all but the default partition
+    private List<Partition> getPartitions(DbScope scope, String parent)
+    {
+        List<Partition> partitions = new ArrayList<>();
+
+        new SqlSelector(scope, new SQLFragment("SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) AS bound FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = ?::regclass", parent)).forEach(rs -> {
+            Matcher m = UPPER_BOUND.matcher(rs.getString("bound"));
+            if (m.find())
+                partitions.add(new Partition(rs.getString("relname"), Timestamp.valueOf(m.group(1))));
+        });
+
+        return partitions;
+    }
+
+    private static String getPartitionName(String tableName, String suffix)
+    {
+        return StringUtils.left(tableName, MAX_PARTITION_PREFIX) + "_" + suffix;
+    }
+
+    private static String qualify(SqlDialect dialect, String schemaName, String tableName)
+    {
+        return dialect.makeLegalIdentifier(schemaName) + "." + dialect.makeLegalIdentifier(tableName);
+    }
+
+    private static class Partition
+    {
+        private final String _name;
+        private final Timestamp _end;
+
+        private Partition(String name, Timestamp end)
+        {
+            _name = name;
+            _end = end;
+        }
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        private final DbScope _scope = DbScope.getLabKeyScope();
+        private final SqlExecutor _executor = new SqlExecutor(_scope);
+        private String _tableName;
+        private String _table;
+
+        // The plain table runs on every database, so retention's batched DELETE is tested on SQL Server and older PostgreSQL too
+        @Before
+        public void setUp()
+        {
+            SqlDialect dialect = _scope.getSqlDialect();
+            _tableName = "partitiontest_" + GUID.makeHash();
+            String table = qualify(dialect, AbstractAuditTypeProvider.SCHEMA_NAME, _tableName);
+            _executor.execute("CREATE TABLE " + table + " (rowid " + dialect.getUniqueIdentType() + ", created " + dialect.getDefaultDateTimeDataType() +
+                    ", comment VARCHAR(100), CONSTRAINT " + dialect.makeLegalIdentifier(_tableName + "_pk") + " PRIMARY KEY (rowid))");
+            _table = table;
+        }
+
+        @After
+        public void tearDown()
+        {
+            // Dropping a partitioned table drops its partitions too
+            if (null != _table)
+                _executor.execute("DROP TABLE " + _table);
+        }
+
+        private void insert(@Nullable LocalDate created)
+        {
+            _executor.execute("INSERT INTO " + _table + " (created, comment) VALUES (?, 'test')", null == created ? null : Timestamp.valueOf(created.atStartOfDay()));
+        }
+
+        private int count()
+        {
+            return new SqlSelector(_scope, "SELECT COUNT(*) FROM " + _table).getObject(Integer.class);
+        }
+
+        @Test
+        public void testPartitions()
+        {
+            Assume.assumeTrue("Audit log partitioning requires PostgreSQL 12 or later", supportsPartitioning(_scope));
+
+            AuditPartitionManager manager = AuditPartitionManager.get();
+            LocalDate thisMonth = LocalDate.now().withDayOfMonth(1);
+            LocalDate firstPartitionStart = thisMonth.plusMonths(2);
+
+            insert(null);
+            insert(thisMonth.minusYears(2));
+            insert(thisMonth);
+
+            manager.convert(_scope, _tableName, firstPartitionStart, _log);
+            manager.createPartitions(_scope, _tableName, thisMonth, _log);
+            assertEquals("p", getRelKind(_scope, _tableName));
+
+            // The old table is the first partition, with every row and the null date replaced
+            assertEquals(3, count());
+            assertEquals(1, new SqlSelector(_scope, new SQLFragment("SELECT COUNT(*) FROM " + _table + " WHERE created = ?", new Timestamp(0))).getObject(Integer.class).intValue());
+
+            List<Partition> partitions = manager.getPartitions(_scope, _table);
+            assertEquals(2, partitions.size());
+            assertTrue(partitions.stream().anyMatch(p -> p._name.equals(getPartitionName(_tableName, "legacy")) && p._end.equals(Timestamp.valueOf(firstPartitionStart.atStartOfDay()))));
+            assertTrue(partitions.stream().anyMatch(p -> p._name.equals(getPartitionName(_tableName, MONTH_SUFFIX.format(firstPartitionStart)))));
+
+            // New rows get the next RowId from the sequence the parent took over
+            insert(firstPartitionStart);
+            assertEquals(4, new SqlSelector(_scope, "SELECT MAX(rowid) FROM " + _table).getObject(Integer.class).intValue());
+
+            // Running again adds nothing
+            manager.createPartitions(_scope, _tableName, thisMonth, _log);
+            assertEquals(2, manager.getPartitions(_scope, _table).size());
+
+            // A partition is dropped only once all its rows are past the cutoff
+            manager.purge(_scope, _tableName, true, new Date(), _log);
+            assertEquals(4, count());
+            manager.purge(_scope, _tableName, true, Timestamp.valueOf(firstPartitionStart.atStartOfDay()), _log);
+            assertEquals(1, count());
+            assertEquals(1, manager.getPartitions(_scope, _table).size());
+        }
+
+        @Test
+        public void testRetention()
+        {
+            LocalDate today = LocalDate.now();
+
+            for (int i = 0; i < 5; i++)
+                insert(today.minusYears(1));
+            insert(today);
+
+            // Without partitions, expired rows are deleted
+            AuditPartitionManager.get().purge(_scope, _tableName, false, Timestamp.valueOf(today.minusDays(30).atStartOfDay()), _log);
+            assertEquals(1, count());
+        }
+
+        @Test
+        public void testRetentionSettings()
+        {
+            AuditPartitionManager manager = AuditPartitionManager.get();
+            String eventType = _tableName;
+
+            manager.setRetentionDays(eventType, 30);
+            assertEquals(30, manager.getRetentionDays().get(eventType.toUpperCase()).intValue());
+
+            manager.setRetentionDays(eventType, null);
+            assertFalse(manager.getRetentionDays().containsKey(eventType));
+        }
+    }
+}
@@ -40,10 +40,13 @@ import org.labkey.api.exp.property.DomainKind;
 import org.labkey.api.exp.property.DomainProperty;
 import org.labkey.api.query.UserSchema;
 import org.labkey.api.security.User;
+import org.labkey.api.util.Pair;
 import org.labkey.api.view.HttpView;
 import org.labkey.audit.AuditSchema;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -76,31 +79,90 @@ public class LogManager
 
     public <K extends AuditTypeEvent> K _insertEvent(User user, K type)
     {
-        Logger auditLogger = Logger.getLogger("org.labkey.audit.event." + type.getEventType().replaceAll(" ", ""));
-        auditLogger.info(type.getAuditLogMessage());
+        logEvent(type);
 
         AuditTypeProvider provider = AuditLogService.get().getAuditProvider(type.getEventType());
 
         if (provider != null)
         {
-            Container c = ContainerManager.getForId(type.getContainer());
+            TableInfo dbTable = getRealTable(provider, user, type);
 
-            UserSchema schema = AuditLogService.getAuditLogSchema(user, c != null ? c : ContainerManager.getRoot());
+            if (dbTable != null)
+            {
+                type = validateFields(provider, type);
+                return Table.insert(user, dbTable, type);
+            }
+        }
+        return null;
+    }
 
-                if (schema != null)
-                {
-                    TableInfo table = schema.getTable(provider.getEventName(), false);
+    /**
+     * Insert a batch of events, issuing one batched statement per event type and user instead of a statement per event.
+     * Rows are prepared as _insertEvent() prepares them. Unlike _insertEvent(), the RowIds of the new rows aren't
+     * available to the caller.
+     */
+    public void _insertEvents(List<Pair<User, AuditTypeEvent>> events)
+    {
+        // CreatedBy comes from the user, so batch by user as well as type. Preserve order within each batch, so RowIds
+        // still follow the order the events were added.
+        Map<Pair<String, Integer>, List<Pair<User, AuditTypeEvent>>> byType = new LinkedHashMap<>();
+        for (Pair<User, AuditTypeEvent> event : events)
+        {
+            Integer userId = null == event.first ? null : event.first.getUserId();
+            byType.computeIfAbsent(new Pair<>(event.second.getEventType().toLowerCase(), userId), type -> new ArrayList<>()).add(event);
+        }
 
-                if (table instanceof DefaultAuditTypeTable)
-                {
-                    // consider using etl data iterator for inserts
-                    type = validateFields(provider, type);
-                    TableInfo dbTable = ((DefaultAuditTypeTable)table).getRealTable();
-                    K ret = Table.insert(user, dbTable, type);
-                    return ret;
-                }
+        for (List<Pair<User, AuditTypeEvent>> typeEvents : byType.values())
+        {
+            AuditTypeProvider provider = AuditLogService.get().getAuditProvider(typeEvents.get(0).second.getEventType());
+
+            if (provider == null)
+            {
+                typeEvents.forEach(event -> logEvent(event.second));
+                continue;
             }
+
+            TableInfo dbTable = getRealTable(provider, typeEvents.get(0).first, typeEvents.get(0).second);
+
+            if (dbTable == null)
+            {
+                typeEvents.forEach(event -> logEvent(event.second));
+                continue;
+            }
+
+            List<AuditTypeEvent> rows = new ArrayList<>(typeEvents.size());
+
+            for (Pair<User, AuditTypeEvent> pair : typeEvents)
+            {
+                AuditTypeEvent event = validateFields(provider, pair.second);
+                logEvent(event);
+                rows.add(event);
+            }
+
+            Table.batchInsert(typeEvents.get(0).first, dbTable, rows);
+        }
+    }
+
+    private void logEvent(AuditTypeEvent event)
+    {
+        Logger auditLogger = Logger.getLogger("org.labkey.audit.event." + event.getEventType().replaceAll(" ", ""));
+        auditLogger.info(event.getAuditLogMessage());
+    }
+
+    @Nullable
+    private TableInfo getRealTable(AuditTypeProvider provider, User user, AuditTypeEvent event)
+    {
+        Container c = ContainerManager.getForId(event.getContainer());
+        UserSchema schema = AuditLogService.getAuditLogSchema(user, c != null ? c : ContainerManager.getRoot());
+
+        if (schema != null)
+        {
+            TableInfo table = schema.getTable(provider.getEventName(), false);
+
+            if (table instanceof DefaultAuditTypeTable)
+                return ((DefaultAuditTypeTable)table).getRealTable();
         }
+
         return null;
     }
 
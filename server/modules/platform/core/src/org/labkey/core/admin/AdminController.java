@@ -84,6 +84,7 @@ import org.labkey.api.collections.CaseInsensitiveTreeSet;
 import org.labkey.api.compliance.ComplianceService;
 import org.labkey.api.data.*;
 import org.labkey.api.data.Container.ContainerException;
+import org.labkey.api.data.queryprofiler.PrometheusMetricsWriter;
 import org.labkey.api.data.queryprofiler.QueryProfiler;
 import org.labkey.api.data.queryprofiler.QueryProfiler.QueryStatTsvWriter;
 import org.labkey.api.exp.OntologyManager;
@@ -2675,6 +2676,21 @@ public class AdminController extends SpringActionController
         }
     }
 
+
+    // Query, connection pool, and cache statistics in Prometheus text format, for scraping by a monitoring system
+    @AdminConsoleAction
+    public class MetricsAction extends ExportAction<Object>
+    {
+        @Override
+        public void export(Object o, HttpServletResponse response, BindException errors) throws Exception
+        {
+            response.setContentType(PrometheusMetricsWriter.CONTENT_TYPE);
+            PrintWriter out = response.getWriter();
+            new PrometheusMetricsWriter(out).write();
+            out.flush();
+        }
+    }
+
     private static ActionURL getResetQueryStatisticsURL()
     {
         return new ActionURL(ResetQueryStatisticsAction.class, ContainerManager.getRoot());
@@ -10364,6 +10380,7 @@ public class AdminController extends SpringActionController
                     controller.new QueryStackTracesAction(),
                     controller.new ExecutionPlanAction(),
                     controller.new ExportQueriesAction(),
+                    controller.new MetricsAction(),
                     controller.new MemTrackerAction(),
                     controller.new MemoryChartAction(),
                     controller.new FolderTypesAction(),
@@ -16,7 +16,9 @@
 package org.labkey.core.admin.miniprofiler;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.labkey.api.action.ExportAction;
 import org.labkey.api.action.FormHandlerAction;
 import org.labkey.api.action.FormViewAction;
 import org.labkey.api.action.IgnoresAllocationTracking;
@@ -30,6 +32,7 @@ import org.labkey.api.admin.AdminUrls;
 import org.labkey.api.data.BeanViewForm;
 import org.labkey.api.miniprofiler.MiniProfiler;
 import org.labkey.api.miniprofiler.RequestInfo;
+import org.labkey.api.miniprofiler.RequestTracer;
 import org.labkey.api.security.AdminConsoleAction;
 import org.labkey.api.security.RequiresNoPermission;
 import org.labkey.api.security.RequiresPermission;
@@ -45,9 +48,12 @@ import org.springframework.validation.BindException;
 import org.springframework.validation.Errors;
 import org.springframework.web.servlet.ModelAndView;
 
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * User: kevink
@@ -84,6 +90,22 @@ public class MiniProfilerController extends SpringActionController
             MiniProfiler.Settings settings = form.getBean();
             if (settings.getTrivialMillis() <= 0)
                 errors.rejectValue("trivialMillis", ERROR_MSG, "Trivial milliseconds must be greater than 0.");
+            if (settings.getTraceSampleRate() < 0 || settings.getTraceSampleRate() > 1)
+                errors.rejectValue("traceSampleRate", ERROR_MSG, "Trace sample rate must be between 0 and 1.");
+            if (settings.getTraceSlowestPerAction() < 0)
+                errors.rejectValue("traceSlowestPerAction", ERROR_MSG, "Slowest requests per action must not be negative.");
+
+            // Exported traces include URLs and SQL, so only site admins choose where they go
+            MiniProfiler.Settings current = MiniProfiler.getSettings();
+            boolean exportChanged = !Objects.equals(StringUtils.trimToNull(settings.getTraceExportPath()), StringUtils.trimToNull(current.getTraceExportPath())) ||
+                    !Objects.equals(StringUtils.trimToNull(settings.getTraceExportUrl()), StringUtils.trimToNull(current.getTraceExportUrl()));
+            if (exportChanged && !getUser().hasSiteAdminPermission())
+                errors.reject(ERROR_MSG, "Only site administrators can change the trace export file or collector URL.");
+
+            if (StringUtils.isNotBlank(settings.getTraceExportPath()) && !RequestTracer.isValidExportFileName(settings.getTraceExportPath()))
+                errors.rejectValue("traceExportPath", ERROR_MSG, "Export file must be a file name without a directory, e.g., traces.jsonl. It's written to the \"" + RequestTracer.EXPORT_DIRECTORY + "\" directory under the server's log directory.");
+            if (StringUtils.isNotBlank(settings.getTraceExportUrl()) && !RequestTracer.isValidCollectorUrl(settings.getTraceExportUrl()))
+                errors.rejectValue("traceExportUrl", ERROR_MSG, "Collector URL must be an http or https URL on this server, e.g., http://localhost:4318/v1/traces.");
         }
 
         @Override
@@ -143,6 +165,40 @@ public class MiniProfilerController extends SpringActionController
         }
     }
 
+    public static class TracesForm
+    {
+        private String _actionName;
+
+        public String getActionName()
+        {
+            return _actionName;
+        }
+
+        public void setActionName(String actionName)
+        {
+            _actionName = actionName;
+        }
+    }
+
+    // The slowest sampled requests for each action (or just the specified action), as OpenTelemetry JSON. These include
+    // URLs and SQL, so they're for site admins only.
+    @RequiresSiteAdmin
+    public class TracesAction extends ExportAction<TracesForm>
+    {
+        @Override
+        public void export(TracesForm form, HttpServletResponse response, BindException errors) throws Exception
+        {
+            List<RequestInfo> requests = new ArrayList<>();
+            RequestTracer.get().getSlowest().forEach((action, slowest) -> {
+                if (null == form.getActionName() || form.getActionName().equals(action))
+                    requests.addAll(slowest);
+            });
+
+            response.setContentType("application/json");
+            response.getWriter().write(RequestTracer.toOtlp(requests).toString());
+        }
+    }
+
     // Invoked by test framework
     @RequiresSiteAdmin
     public class IsEnabledAction extends ReadOnlyApiAction
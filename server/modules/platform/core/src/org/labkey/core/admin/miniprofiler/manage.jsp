@@ -17,6 +17,7 @@
 %>
 <%@ page import="org.labkey.api.admin.AdminUrls" %>
 <%@ page import="org.labkey.api.miniprofiler.MiniProfiler" %>
+<%@ page import="org.labkey.api.miniprofiler.RequestTracer" %>
 <%@ page import="org.labkey.api.view.HttpView" %>
 <%@ page import="org.labkey.api.view.JspView" %>
 <%@ page import="org.labkey.core.admin.miniprofiler.MiniProfilerController" %>
@@ -27,6 +28,7 @@
 <%
     JspView<MiniProfiler.Settings> me = (JspView<MiniProfiler.Settings>) HttpView.currentView();
     MiniProfiler.Settings settings = me.getModelBean();
+    boolean siteAdmin = getUser().hasSiteAdminPermission();
 
     Map<String, String> renderOptions = new LinkedHashMap<>();
     renderOptions.put(MiniProfiler.RenderPosition.TopLeft.name(), MiniProfiler.RenderPosition.TopLeft.toString());
@@ -115,6 +117,43 @@ Some of them incur overhead to track or take space in the UI, and are thus confi
                 <labkey:checkbox name="showChildrenTime" id="showChildrenTime" value="true" checked="<%=settings.isShowChildrenTime()%>"/>
             </td>
         </tr>
+
+        <tr>
+            <td>&nbsp;</td>
+        </tr>
+
+        <tr>
+            <td colspan="2">
+                Request tracing records the full timing tree (actions, query compilation, SQL, cache loads, data
+                iterators, and rendering) for a random sample of requests from all users. The slowest sampled requests
+                for each action are kept in memory and can be <% if (siteAdmin) { %><%=link("downloaded", urlFor(MiniProfilerController.TracesAction.class))%><% } else { %>downloaded by a site administrator<% } %>
+                as OpenTelemetry JSON; every sampled request can also be exported to a file or an OpenTelemetry collector.
+            </td>
+        </tr>
+        <tr>
+            <td class="labkey-form-label"><label for="traceSampleRate">Trace sample rate<%=helpPopup("Trace Sample Rate", "Fraction of requests to trace, from 0 (off) to 1 (every request). A small rate such as 0.01 keeps the overhead negligible under load.")%></label></td>
+            <td>
+                <input id="traceSampleRate" name="traceSampleRate" type="text" value="<%=settings.getTraceSampleRate()%>">
+            </td>
+        </tr>
+        <tr>
+            <td class="labkey-form-label"><label for="traceSlowestPerAction">Slowest requests per action<%=helpPopup("Slowest Requests Per Action", "Number of sampled requests to keep in memory for each action, slowest first")%></label></td>
+            <td>
+                <input id="traceSlowestPerAction" name="traceSlowestPerAction" type="text" value="<%=settings.getTraceSlowestPerAction()%>">
+            </td>
+        </tr>
+        <tr>
+            <td class="labkey-form-label"><label for="traceExportPath">Export file<%=helpPopup("Export File", "Name of the file to append sampled traces to, one OpenTelemetry JSON request per line. The file is written to the '" + RequestTracer.EXPORT_DIRECTORY + "' directory under the server's log directory. Only site administrators can change this. Leave blank to disable.")%></label></td>
+            <td>
+                <input id="traceExportPath" name="traceExportPath" size="60" value="<%=h(settings.getTraceExportPath())%>"<%=h(siteAdmin ? "" : " readonly")%>>
+            </td>
+        </tr>
+        <tr>
+            <td class="labkey-form-label"><label for="traceExportUrl">Collector URL<%=helpPopup("Collector URL", "OpenTelemetry collector endpoint on this server that accepts OTLP/HTTP JSON, e.g., http://localhost:4318/v1/traces. Use a local collector or agent to forward traces elsewhere. Only site administrators can change this. Leave blank to disable.")%></label></td>
+            <td>
+                <input id="traceExportUrl" name="traceExportUrl" size="60" value="<%=h(settings.getTraceExportUrl())%>"<%=h(siteAdmin ? "" : " readonly")%>>
+            </td>
+        </tr>
         <tr>
             <td/>
             <td>
@@ -15,6 +15,17 @@
  */
 package org.labkey.core.dialect;
 
+import org.labkey.api.data.DatabaseTableType;
+
+import java.util.Map;
+
 public class PostgreSql_10_Dialect extends PostgreSql96Dialect
 {
+    @Override
+    protected void initializeJdbcTableTypeMap(Map<String, DatabaseTableType> map)
+    {
+        super.initializeJdbcTableTypeMap(map);
+        // Parent of a declaratively partitioned table, e.g., a time-partitioned audit table
+        map.put("PARTITIONED TABLE", DatabaseTableType.TABLE);
+    }
 }
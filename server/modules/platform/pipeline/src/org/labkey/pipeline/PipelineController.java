@@ -105,6 +105,7 @@ import org.labkey.api.view.template.PageConfig;
 import org.labkey.pipeline.api.PipeRootImpl;
 import org.labkey.pipeline.api.PipelineEmailPreferences;
 import org.labkey.pipeline.api.PipelineManager;
+import org.labkey.pipeline.api.PipelineQueueImpl;
 import org.labkey.pipeline.api.PipelineServiceImpl;
 import org.labkey.pipeline.api.PipelineStatusManager;
 import org.labkey.pipeline.status.StatusController;
@@ -1094,8 +1095,9 @@ public class PipelineController extends SpringActionController
             setHelpTopic(getHelpTopic("pipeline/status"));
 
             PipelineQueue queue = PipelineService.get().getPipelineQueue();
+            Map<String, Object> waitStats = queue instanceof PipelineQueueImpl ? ((PipelineQueueImpl) queue).getWaitStats() : Collections.emptyMap();
             return new JspView<>("/org/labkey/pipeline/pipelineStatus.jsp",
-                    new StatusModel(queue.getJobDataInMemory(getJobDataContainer())));
+                    new StatusModel(queue.getJobDataInMemory(getJobDataContainer()), waitStats));
         }
 
         public NavTree appendNavTrail(NavTree root)
@@ -1107,16 +1109,23 @@ public class PipelineController extends SpringActionController
     public class StatusModel
     {
         private PipelineJobData _jobData;
+        private Map<String, Object> _waitStats;
 
-        private StatusModel(PipelineJobData jobData)
+        private StatusModel(PipelineJobData jobData, Map<String, Object> waitStats)
         {
             _jobData = jobData;
+            _waitStats = waitStats;
         }
 
         public PipelineJobData getJobData()
         {
             return _jobData;
         }
+
+        public Map<String, Object> getWaitStats()
+        {
+            return _waitStats;
+        }
     }
 
     @RequiresPermission(DeletePermission.class)
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.pipeline.api;
+
+import org.jetbrains.annotations.Nullable;
+import org.labkey.api.pipeline.PipelineJob;
+import org.labkey.api.pipeline.PipelineJobService;
+import org.labkey.api.pipeline.TaskFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Default scheduler for the local pipeline queue. Jobs are grouped into shares by container and user. A job's effective
+ * priority is its own priority plus one level for every aging interval it has waited, where waiting is counted from
+ * when it was queued or from when its share last had a job started, whichever is later. So with equal priorities the
+ * shares take turns, no matter how many jobs each has queued, and a high priority job runs ahead of others until
+ * they've aged enough to catch up. Running jobs are never preempted.
+ *
+ * Independent of ordering, a job won't start while:
+ * <ul>
+ *     <li>it's single-threaded (see {@link PipelineJob#allowMultipleSimultaneousJobs()}) and another single-threaded job is running</li>
+ *     <li>its container already has the maximum number of jobs running (one, by default)</li>
+ *     <li>its active task or that task's execution location is configured with a limit that's been reached</li>
+ * </ul>
+ *
+ * A job's own priority comes from {@link PipelineJob#getPriority()}, which defaults to the priority set in its active
+ * task's TaskFactorySettings. Priorities can also be assigned per job class here, overriding the job's own.
+ *
+ * Priorities and limits can be set in pipelineConfig.xml via the pipelineJobService's localQueueScheduler property.
+ */
+public class FairShareJobScheduler implements PipelineJobScheduler
+{
+    private long _agingMillis = TimeUnit.MINUTES.toMillis(10);
+    private int _maxJobsPerContainer = 1;
+    private Map<String, Integer> _taskLimits = new HashMap<>();
+    private Map<String, Integer> _locationLimits = new HashMap<>();
+    private Map<String, Integer> _jobPriorities = new HashMap<>();
+
+    // When each share with waiting jobs last had a job started
+    private final Map<String, Long> _lastStarted = new HashMap<>();
+
+    /** Minutes a job must wait to gain one priority level */
+    public void setAgingMinutes(int agingMinutes)
+    {
+        _agingMillis = TimeUnit.MINUTES.toMillis(Math.max(1, agingMinutes));
+    }
+
+    void setAgingMillis(long agingMillis)
+    {
+        _agingMillis = agingMillis;
+    }
+
+    public void setMaxJobsPerContainer(int maxJobsPerContainer)
+    {
+        _maxJobsPerContainer = Math.max(1, maxJobsPerContainer);
+    }
+
+    /** Maximum simultaneous jobs whose active task has the given id, keyed by the TaskId's string form */
+    public void setTaskLimits(Map<String, Integer> taskLimits)
+    {
+        _taskLimits = new HashMap<>(taskLimits);
+    }
+
+    /** Maximum simultaneous jobs whose active task runs in the given execution location, e.g., "webserver" */
+    public void setLocationLimits(Map<String, Integer> locationLimits)
+    {
+        _locationLimits = new HashMap<>(locationLimits);
+    }
+
+    /** Priorities that override {@link PipelineJob#getPriority()}, keyed by the job's class name */
+    public void setJobPriorities(Map<String, Integer> jobPriorities)
+    {
+        _jobPriorities = new HashMap<>(jobPriorities);
+    }
+
+    @Override
+    public @Nullable PipelineJob next(Map<PipelineJob, Long> waiting, Collection<PipelineJob> submitted, long now)
+    {
+        Counts running = new Counts();
+        boolean singleThreadedRunning = false;
+
+        for (PipelineJob job : submitted)
+        {
+            running.add(job);
+            if (!job.allowMultipleSimultaneousJobs())
+                singleThreadedRunning = true;
+        }
+
+        PipelineJob best = null;
+        double bestScore = 0;
+        int bestShareRunning = 0;
+        Set<String> waitingShares = new HashSet<>();
+
+        // Iterate in arrival order and replace only on a strictly better score, so ties go to the job queued first
+        for (Map.Entry<PipelineJob, Long> entry : waiting.entrySet())
+        {
+            PipelineJob job = entry.getKey();
+            String share = getShare(job);
+            waitingShares.add(share);
+
+            if (singleThreadedRunning && !job.allowMultipleSimultaneousJobs())
+                continue;
+            if (!running.allows(job))
+                continue;
+
+            double score = getScore(job, share, entry.getValue(), now);
+            int shareRunning = running.getShareCount(share);
+
+            if (null == best || score > bestScore || (score == bestScore && shareRunning < bestShareRunning))
+            {
+                best = job;
+                bestScore = score;
+                bestShareRunning = shareRunning;
+            }
+        }
+
+        // Shares with nothing waiting don't need to remember when they were last served; any job they queue later is
+        // newer than that anyway
+        _lastStarted.keySet().retainAll(waitingShares);
+
+        if (null != best)
+            _lastStarted.put(getShare(best), now);
+
+        return best;
+    }
+
+    double getScore(PipelineJob job, String share, long queued, long now)
+    {
+        long waitingSince = Math.max(queued, _lastStarted.getOrDefault(share, queued));
+        return getPriority(job) + (double) Math.max(0, now - waitingSince) / _agingMillis;
+    }
+
+    int getPriority(PipelineJob job)
+    {
+        Integer priority = _jobPriorities.get(job.getClass().getName());
+        return null == priority ? job.getPriority() : priority;
+    }
+
+    static String getShare(PipelineJob job)
+    {
+        return job.getContainerId() + "/" + (null == job.getUser() ? 0 : job.getUser().getUserId());
+    }
+
+    private static @Nullable String getLocation(PipelineJob job)
+    {
+        TaskFactory factory = null == job.getActiveTaskId() ? null : job.getActiveTaskFactory();
+        return null == factory ? PipelineJobService.get().getDefaultExecutionLocation() : factory.getExecutionLocation();
+    }
+
+    // Submitted jobs tallied by each dimension that can limit which waiting jobs start
+    private class Counts
+    {
+        private final Map<String, Integer> _containers = new HashMap<>();
+        private final Map<String, Integer> _shares = new HashMap<>();
+        private final Map<String, Integer> _tasks = new HashMap<>();
+        private final Map<String, Integer> _locations = new HashMap<>();
+
+        void add(PipelineJob job)
+        {
+            _containers.merge(job.getContainerId(), 1, Integer::sum);
+            _shares.merge(getShare(job), 1, Integer::sum);
+
+            if (!_taskLimits.isEmpty() && null != job.getActiveTaskId())
+                _tasks.merge(job.getActiveTaskId().toString(), 1, Integer::sum);
+            if (!_locationLimits.isEmpty())
+                _locations.merge(getLocation(job), 1, Integer::sum);
+        }
+
+        boolean allows(PipelineJob job)
+        {
+            if (_containers.getOrDefault(job.getContainerId(), 0) >= _maxJobsPerContainer)
+                return false;
+
+            if (!_taskLimits.isEmpty() && null != job.getActiveTaskId())
+            {
+                String task = job.getActiveTaskId().toString();
+                Integer limit = _taskLimits.get(task);
+                if (null != limit && _tasks.getOrDefault(task, 0) >= limit)
+                    return false;
+            }
+
+            if (!_locationLimits.isEmpty())
+            {
+                String location = getLocation(job);
+                Integer limit = _locationLimits.get(location);
+                if (null != limit && _locations.getOrDefault(location, 0) >= limit)
+                    return false;
+            }
+
+            return true;
+        }
+
+        int getShareCount(String share)
+        {
+            return _shares.getOrDefault(share, 0);
+        }
+    }
+}
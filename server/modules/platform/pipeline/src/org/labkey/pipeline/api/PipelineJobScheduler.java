@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.pipeline.api;
+
+import org.jetbrains.annotations.Nullable;
+import org.labkey.api.pipeline.PipelineJob;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Decides which waiting job the local pipeline queue runs next. Called with the queue's lock held, so implementations
+ * needn't be thread-safe, but they must be quick.
+ */
+public interface PipelineJobScheduler
+{
+    /**
+     * @param waiting jobs that haven't been handed to the thread pool yet, in arrival order, mapped to the time (in
+     *                milliseconds) they were queued
+     * @param submitted jobs already handed to the thread pool, running or about to run
+     * @param now current time in milliseconds
+     * @return the job to submit, or null if none of the waiting jobs should start now
+     */
+    @Nullable PipelineJob next(Map<PipelineJob, Long> waiting, Collection<PipelineJob> submitted, long now);
+}
@@ -160,6 +160,7 @@ public class PipelineJobServiceImpl implements PipelineJobService
     private WorkDirFactory _workDirFactory;
     private WorkDirFactory _largeWorkDirFactory;
     private PathMapper _pathMapper = new PathMapperImpl();  // Default to empty
+    private PipelineJobScheduler _localQueueScheduler = new FairShareJobScheduler();
 
     public PipelineJobServiceImpl()
     {
@@ -617,6 +618,18 @@ public class PipelineJobServiceImpl implements PipelineJobService
         _remoteExecutionEngines = remoteExecutionEngines;
     }
 
+    /** Orders jobs in the web server's queue when not running the Enterprise Pipeline */
+    public PipelineJobScheduler getLocalQueueScheduler()
+    {
+        return _localQueueScheduler;
+    }
+
+    @SuppressWarnings("unused") // Can be called via reflection by Spring pipeline initialization
+    public void setLocalQueueScheduler(@NotNull PipelineJobScheduler localQueueScheduler)
+    {
+        _localQueueScheduler = localQueueScheduler;
+    }
+
     private String getVersionedPath(String path, String packageName, String ver)
     {
         // Add package path prefix, if it exists.
@@ -118,7 +118,7 @@ public class PipelineJobStoreImpl extends PipelineJobMarshaller
 
     public void storeJob(PipelineJob job) throws NoSuchJobException
     {
-        PipelineStatusManager.storeJob(job.getJobGUID(), PipelineJob.serializeJob(job, true));
+        PipelineStatusManager.storeJob(job.getJobGUID(), PipelineJob.serializeJobState(job));
     }
 
     // Synchronize all splitting and joining to avoid SQL deadlocks.  Splitting
@@ -147,6 +147,9 @@ public class PipelineJobStoreImpl extends PipelineJobMarshaller
 
             List<PipelineJob> jobs = job.createSplitJobs();
 
+            // Create the status rows for all the split jobs at once; queueing each one then finds its row
+            PipelineStatusManager.insertSplitStatusFiles(job.getUser(), jobs);
+
             beginSplit(job, jobs);
 
             // Queue all the split jobs.
@@ -16,11 +16,13 @@
 package org.labkey.pipeline.api;
 
 import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 import org.junit.Assert;
 import org.junit.Test;
 import org.labkey.api.data.ConnectionWrapper;
 import org.labkey.api.data.Container;
 import org.labkey.api.data.ContainerManager;
+import org.labkey.api.data.queryprofiler.LatencyHistogram;
 import org.labkey.api.pipeline.PipelineJob;
 import org.labkey.api.pipeline.PipelineJobData;
 import org.labkey.api.pipeline.PipelineJobService;
@@ -29,6 +31,7 @@ import org.labkey.api.pipeline.PipelineStatusFile;
 import org.labkey.api.query.QueryService;
 import org.labkey.api.security.User;
 import org.labkey.api.test.TestWhen;
+import org.labkey.api.util.DateUtil;
 import org.labkey.api.util.JobRunner;
 import org.labkey.api.view.ActionURL;
 import org.labkey.api.view.ViewBackgroundInfo;
@@ -37,13 +40,17 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Runs all jobs in the web server with a simple thread pool.
+ * Runs all jobs in the web server with a simple thread pool. A {@link PipelineJobScheduler} picks which waiting job
+ * starts next whenever a thread is free.
  */
 public class PipelineQueueImpl extends AbstractPipelineQueue
 {
@@ -57,11 +64,39 @@ public class PipelineQueueImpl extends AbstractPipelineQueue
     // may be either running or pending.
     private final Set<PipelineJob> _submitted = new HashSet<>();
 
+    // Pending jobs not yet submitted to the JobRunner, in arrival order, mapped to when they were queued
+    private final Map<PipelineJob, Long> _waiting = new LinkedHashMap<>();
+
+    // Milliseconds from when jobs are queued until they're submitted to the JobRunner
+    private final LatencyHistogram _waitTimes = new LatencyHistogram(7, TimeUnit.DAYS.toMillis(7));
+
     private final JobRunner _runner = new JobRunner("Pipeline", MAX_RUNNING_JOBS);
 
+    private @Nullable PipelineJobScheduler _scheduler;
+
+    public PipelineQueueImpl()
+    {
+        this(null);
+    }
+
+    /** @param scheduler null to use the scheduler configured in pipelineConfig.xml */
+    PipelineQueueImpl(@Nullable PipelineJobScheduler scheduler)
+    {
+        _scheduler = scheduler;
+    }
+
+    private PipelineJobScheduler getScheduler()
+    {
+        // Resolve lazily, since the queue is created before the pipeline configuration is loaded
+        if (null == _scheduler)
+            _scheduler = PipelineJobServiceImpl.get().getLocalQueueScheduler();
+        return _scheduler;
+    }
+
     protected synchronized void enqueue(PipelineJob job)
     {
         _pending.add(job);
+        _waiting.put(job, System.currentTimeMillis());
         submitJobs();
     }
 
@@ -123,46 +158,50 @@ public class PipelineQueueImpl extends AbstractPipelineQueue
     }
 
     /**
-     * Look through the pending jobs and see if there are any that can be submitted to the runner right now.
-     * Some jobs are single threaded.  There can be only one single threaded job in the queue at any time.
-     * Multi-threaded jobs are allowed to be run one per container.
-     *
-     * We do not submit a job to the JobRunner unless it is ok to run it right now.
-     * The JobRunner takes care of limiting the simultaneous jobs to {@link #MAX_RUNNING_JOBS}
+     * Ask the scheduler for waiting jobs that can be submitted to the runner right now, until it has none or all of
+     * the runner's {@link #MAX_RUNNING_JOBS} threads are spoken for. Jobs beyond that stay waiting here rather than in
+     * the JobRunner's queue, so the scheduler, not arrival order, decides what runs when a thread frees up.
      */
     private synchronized void submitJobs()
     {
-        if (_pending.size() == 0)
-            return;
-        HashSet<String> containers = new HashSet<>();
-        boolean singleThreadedJobFound = false;
-        for (PipelineJob job : _submitted)
-        {
-            containers.add(job.getContainerId());
-            if (!job.allowMultipleSimultaneousJobs())
-            {
-                singleThreadedJobFound = true;
-            }
-        }
-        for (PipelineJob job : _pending.toArray(new PipelineJob[_pending.size()]))
+        long now = System.currentTimeMillis();
+
+        while (!_waiting.isEmpty() && _submitted.size() < MAX_RUNNING_JOBS)
         {
-            if (_submitted.contains(job))
-                continue;
-            if (!job.allowMultipleSimultaneousJobs() && singleThreadedJobFound)
-                continue;
-            if (containers.contains(job.getContainerId()))
-                continue;
+            PipelineJob job = getScheduler().next(_waiting, _submitted, now);
+            if (null == job)
+                break;
+
+            Long queued = _waiting.remove(job);
+            assert null != queued;
+            _waitTimes.record(Math.max(0, now - queued));
             _submitted.add(job);
-            containers.add(job.getContainerId());
             _runner.execute(job);
             job.setSubmitted();
-            if (!job.allowMultipleSimultaneousJobs())
-            {
-                singleThreadedJobFound = true;
-            }
         }
     }
 
+    /** Distribution of the time, in milliseconds, jobs have waited in the queue before being started */
+    public LatencyHistogram getWaitTimes()
+    {
+        return _waitTimes;
+    }
+
+    public synchronized Map<String, Object> getWaitStats()
+    {
+        long now = System.currentTimeMillis();
+        long longest = _waiting.values().stream().mapToLong(queued -> now - queued).max().orElse(0);
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("Jobs started", _waitTimes.getCount());
+        m.put("Median wait", DateUtil.formatDuration(_waitTimes.getValueAtPercentile(50)));
+        m.put("95th percentile wait", DateUtil.formatDuration(_waitTimes.getValueAtPercentile(95)));
+        m.put("Longest wait", DateUtil.formatDuration(_waitTimes.getMax()));
+        m.put("Jobs waiting", _waiting.size());
+        m.put("Longest current wait", DateUtil.formatDuration(longest));
+        return m;
+    }
+
 
     boolean inContainer(Container c, PipelineJob job)
     {
@@ -190,6 +229,7 @@ public class PipelineQueueImpl extends AbstractPipelineQueue
             {
                 job.cancel(false);
                 it.remove();
+                _waiting.remove(job);
                 job.getLogger().info("Cancelling job by removing from job queue.");
                 PipelineJob.logStartStopInfo("Cancelling job by removing from job queue. Job ID: " + job.getJobGUID() + ", " + statusFile.getFilePath());
                 // It should already be set to CANCELLING. Set to CANCELLED to indicate that it's dead.
@@ -317,6 +357,34 @@ public class PipelineQueueImpl extends AbstractPipelineQueue
         }
     }
 
+    private static class ScheduledTestJob extends TestJob
+    {
+        private int _priority;
+        private boolean _multi;
+
+        // For serialization
+        protected ScheduledTestJob() {}
+
+        ScheduledTestJob(Container c, int priority, boolean multi)
+        {
+            super(c, new AtomicInteger());
+            _priority = priority;
+            _multi = multi;
+        }
+
+        @Override
+        public int getPriority()
+        {
+            return _priority;
+        }
+
+        @Override
+        public boolean allowMultipleSimultaneousJobs()
+        {
+            return _multi;
+        }
+    }
+
     @TestWhen(TestWhen.When.BVT)
     public static class TestCase extends Assert
     {
@@ -390,6 +458,102 @@ public class PipelineQueueImpl extends AbstractPipelineQueue
 
             assertEquals(0, queue._runner.getJobCount());
             assertEquals(jobs.length, counter.get());
+            assertEquals(jobs.length, queue.getWaitTimes().getCount());
+        }
+
+        @Test
+        public void testScheduler()
+        {
+            Container root = ContainerManager.createFakeContainer(null, null);
+            Container containerA = ContainerManager.createFakeContainer("A", root);
+            Container containerB = ContainerManager.createFakeContainer("B", root);
+            Container containerC = ContainerManager.createFakeContainer("C", root);
+
+            FairShareJobScheduler scheduler = new FairShareJobScheduler();
+            scheduler.setAgingMillis(1000);
+            scheduler.setMaxJobsPerContainer(10);
+
+            Map<PipelineJob, Long> waiting = new LinkedHashMap<>();
+            Set<PipelineJob> submitted = new HashSet<>();
+            PipelineJob[] a = new PipelineJob[4];
+            for (int i = 0; i < a.length; i++)
+                waiting.put(a[i] = new ScheduledTestJob(containerA, 0, true), (long) i);
+            PipelineJob b = new ScheduledTestJob(containerB, 0, true);
+            waiting.put(b, 10L);
+
+            // Oldest job first, then the other share gets a turn even though more of A's jobs arrived before it
+            assertSame(a[0], next(scheduler, waiting, submitted, 1000));
+            assertSame(b, next(scheduler, waiting, submitted, 1000));
+            assertSame(a[1], next(scheduler, waiting, submitted, 1000));
+
+            // Higher priority jumps the queue...
+            PipelineJob c = new ScheduledTestJob(containerC, 2, true);
+            waiting.put(c, 1000L);
+            assertSame(c, next(scheduler, waiting, submitted, 1000));
+
+            // ...but not ahead of jobs that have aged past it
+            PipelineJob c2 = new ScheduledTestJob(containerC, 2, true);
+            waiting.put(c2, 5000L);
+            assertSame(a[2], next(scheduler, waiting, submitted, 5000));
+            assertSame(c2, next(scheduler, waiting, submitted, 5000));
+
+            // Per-container limit
+            scheduler.setMaxJobsPerContainer(3);
+            assertNull(next(scheduler, waiting, submitted, 5000));
+            submitted.remove(a[0]);
+            assertSame(a[3], next(scheduler, waiting, submitted, 5000));
+
+            // Only one single-threaded job at a time
+            PipelineJob single1 = new ScheduledTestJob(containerB, 0, false);
+            PipelineJob single2 = new ScheduledTestJob(containerC, 5, false);
+            waiting.put(single1, 6000L);
+            waiting.put(single2, 6000L);
+            assertSame(single2, next(scheduler, waiting, submitted, 6000));
+            assertNull(next(scheduler, waiting, submitted, 6000));
+            submitted.remove(single2);
+            assertSame(single1, next(scheduler, waiting, submitted, 6000));
+            assertTrue(waiting.isEmpty());
+        }
+
+        @Test
+        public void testConfiguredPriority()
+        {
+            Container root = ContainerManager.createFakeContainer(null, null);
+            Container containerA = ContainerManager.createFakeContainer("A", root);
+            Container containerB = ContainerManager.createFakeContainer("B", root);
+
+            FairShareJobScheduler scheduler = new FairShareJobScheduler();
+            scheduler.setAgingMillis(1000);
+
+            // Without an active task, a job gets the default priority
+            PipelineJob plain = new TestJob(containerA, new AtomicInteger());
+            PipelineJob scheduled = new ScheduledTestJob(containerB, 1, true);
+            assertEquals(0, plain.getPriority());
+            assertEquals(0, scheduler.getPriority(plain));
+            assertEquals(1, scheduler.getPriority(scheduled));
+
+            Map<PipelineJob, Long> waiting = new LinkedHashMap<>();
+            Set<PipelineJob> submitted = new HashSet<>();
+            waiting.put(scheduled, 0L);
+            waiting.put(plain, 0L);
+
+            // Configured by class, overriding the job's own priority
+            scheduler.setJobPriorities(Map.of(TestJob.class.getName(), 3, ScheduledTestJob.class.getName(), -1));
+            assertEquals(3, scheduler.getPriority(plain));
+            assertEquals(-1, scheduler.getPriority(scheduled));
+            assertSame(plain, next(scheduler, waiting, submitted, 0));
+            assertSame(scheduled, next(scheduler, waiting, submitted, 0));
+        }
+
+        private PipelineJob next(PipelineJobScheduler scheduler, Map<PipelineJob, Long> waiting, Set<PipelineJob> submitted, long now)
+        {
+            PipelineJob job = scheduler.next(waiting, submitted, now);
+            if (null != job)
+            {
+                waiting.remove(job);
+                submitted.add(job);
+            }
+            return job;
         }
     }
 }
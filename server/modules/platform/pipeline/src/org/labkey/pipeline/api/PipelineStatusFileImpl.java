@@ -98,6 +98,12 @@ public class PipelineStatusFileImpl extends Entity implements Serializable, Pipe
     }
 
     public PipelineStatusFileImpl(PipelineJob job, String status, String info)
+    {
+        this(job, status, info, true);
+    }
+
+    /** @param checkpoint false to skip serializing the job into JobStore, when the caller stores it separately */
+    PipelineStatusFileImpl(PipelineJob job, String status, String info, boolean checkpoint)
     {
         assert(job.getLogFilePath() != null) : "Must have a status file to set status.";
 
@@ -128,7 +134,8 @@ public class PipelineStatusFileImpl extends Entity implements Serializable, Pipe
             // The taskId is not really valid for the joined job at this point,
             // so avoid asking the TaskFactory about it.
             setActiveTaskId(job.getActiveTaskId().toString());
-            setJobStore(PipelineJob.serializeJob(job, true));
+            if (checkpoint)
+                setJobStore(PipelineJob.serializeJobState(job));
         }
         // If there is an active task and this is waiting state, then checkpoint the
         // job to the database for retry.
@@ -138,7 +145,8 @@ public class PipelineStatusFileImpl extends Entity implements Serializable, Pipe
         {
             if (job.getActiveTaskFactory() != null)
                 setActiveTaskId(job.getActiveTaskFactory().getActiveId(job).toString());
-            setJobStore(PipelineJob.serializeJob(job, true));
+            if (checkpoint)
+                setJobStore(PipelineJob.serializeJobState(job));
         }
     }
 
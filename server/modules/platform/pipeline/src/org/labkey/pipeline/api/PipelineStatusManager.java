@@ -19,11 +19,13 @@ package org.labkey.pipeline.api;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
 import org.labkey.api.collections.CaseInsensitiveHashSet;
+import org.labkey.api.data.ColumnInfo;
 import org.labkey.api.data.CompareType;
 import org.labkey.api.data.Container;
 import org.labkey.api.data.ContainerFilter;
 import org.labkey.api.data.DbScope;
 import org.labkey.api.data.Filter;
+import org.labkey.api.data.RuntimeSQLException;
 import org.labkey.api.data.SQLFragment;
 import org.labkey.api.data.SimpleFilter;
 import org.labkey.api.data.SqlExecutor;
@@ -53,12 +55,15 @@ import org.labkey.api.view.ViewBackgroundInfo;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -151,6 +156,14 @@ public class PipelineStatusManager
         return new TableSelector(_schema.getTableInfoStatusFiles(), filter, null).getObject(PipelineStatusFileImpl.class);
     }
 
+    // All columns but JobStore, which can be large and which setStatusFile() overwrites without needing its old value
+    private static PipelineStatusFileImpl getStatusFileWithoutJobStore(Filter filter)
+    {
+        List<ColumnInfo> columns = new ArrayList<>(getTableInfo().getColumns());
+        columns.removeIf(col -> "JobStore".equalsIgnoreCase(col.getName()));
+        return new TableSelector(getTableInfo(), columns, filter, null).getObject(PipelineStatusFileImpl.class);
+    }
+
     public static boolean setStatusFile(PipelineJob job, User user, PipelineJob.TaskStatus status, @Nullable String info, boolean allowInsert)
     {
         return setStatusFile(job, user, status.toString(), info, allowInsert);
@@ -158,11 +171,13 @@ public class PipelineStatusManager
 
     public static boolean setStatusFile(PipelineJob job, User user, String status, @Nullable String info, boolean allowInsert)
     {
-        PipelineStatusFileImpl sfExist = getJobStatusFile(job.getJobGUID());
+        PipelineStatusFileImpl sfExist = null == job.getJobGUID() ? null :
+                getStatusFileWithoutJobStore(new SimpleFilter(FieldKey.fromParts("Job"), job.getJobGUID()));
         if (sfExist == null && null != job.getLogFile())
         {
             // Then try based on file path
-            sfExist = getStatusFile(job.getContainer(), job.getLogFilePath());
+            sfExist = getStatusFileWithoutJobStore(new SimpleFilter(FieldKey.fromParts("FilePath"),
+                    PipelineJobService.statusPathOf(FileUtil.getAbsolutePath(job.getContainer(), job.getLogFilePath().toUri()))));
         }
         PipelineStatusFileImpl sfSet = new PipelineStatusFileImpl(job, status, info);
 
@@ -196,6 +211,8 @@ public class PipelineStatusManager
                 sfSet.setStatus(PipelineJob.TaskStatus.cancelled.toString());
                 cancelled = true;
             }
+            // The existing row was read without JobStore, but the update still writes it: a new checkpoint, or NULL on
+            // any other transition, so a running, failed or cancelled job is never requeued from a stale checkpoint
             sfSet.beforeUpdate(user, sfExist);
             updateStatusFile(sfSet);
             if (cancelled)
@@ -343,6 +360,55 @@ public class PipelineStatusManager
         }
     }
 
+    /**
+     * Insert waiting status rows for the jobs created by a split in JDBC batches, rather than one round-trip per job as
+     * each is queued. Jobs that already have a status row, e.g., when a split is retried, are left alone. The rows don't
+     * include the job checkpoint; that's stored when each job is queued.
+     */
+    public static void insertSplitStatusFiles(User user, List<PipelineJob> jobs)
+    {
+        Map<String, PipelineStatusFileImpl> toInsert = new LinkedHashMap<>();
+        for (PipelineJob job : jobs)
+        {
+            if (job.getLogFilePath() == null)
+                continue;
+            PipelineStatusFileImpl sf = new PipelineStatusFileImpl(job, PipelineJob.TaskStatus.waiting.toString(), null, false);
+            sf.beforeInsert(user, job.getContainerId());
+            toInsert.put(sf.getFilePath(), sf);
+        }
+
+        // Stay well under SQL Server's limit of 2100 parameters per statement
+        List<String> paths = new ArrayList<>(toInsert.keySet());
+        for (int i = 0; i < paths.size(); i += 1000)
+        {
+            SimpleFilter filter = new SimpleFilter(new SimpleFilter.InClause(FieldKey.fromParts("FilePath"), paths.subList(i, Math.min(paths.size(), i + 1000))));
+            toInsert.keySet().removeAll(new TableSelector(getTableInfo().getColumn("FilePath"), filter, null).getArrayList(String.class));
+        }
+
+        if (toInsert.isEmpty())
+            return;
+
+        String sql = "INSERT INTO " + getTableInfo() +
+                " (Container, EntityId, Created, CreatedBy, Modified, ModifiedBy, Job, JobParent, Provider, Email, Description, FilePath, Status, Info, ActiveTaskId)" +
+                " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        List<List<?>> params = new ArrayList<>(toInsert.size());
+        for (PipelineStatusFileImpl sf : toInsert.values())
+        {
+            params.add(Arrays.asList(sf.getContainerId(), sf.getEntityId(), sf.getCreated(), sf.getCreatedBy(), sf.getModified(), sf.getModifiedBy(),
+                    sf.getJob(), sf.getJobParent(), sf.getProvider(), sf.getEmail(), sf.getDescription(), sf.getFilePath(), sf.getStatus(), sf.getInfo(), sf.getActiveTaskId()));
+        }
+
+        try (DbScope.Transaction transaction = getTableInfo().getSchema().getScope().ensureTransaction(PipelineStatusManager.TRANSACTION_KIND))
+        {
+            Table.batchExecute(_schema.getSchema(), sql, params);
+            transaction.commit();
+        }
+        catch (SQLException e)
+        {
+            throw new RuntimeSQLException(e);
+        }
+    }
+
     public static String retrieveJob(int rowId)
     {
         PipelineStatusFileImpl sfExist = getStatusFile(rowId);
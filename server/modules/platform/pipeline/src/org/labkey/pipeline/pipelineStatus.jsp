@@ -26,6 +26,7 @@
 <%@ page import="org.labkey.api.view.JspView" %>
 <%@ page import="org.labkey.pipeline.PipelineController" %>
 <%@ page import="org.labkey.pipeline.status.StatusController" %>
+<%@ page import="java.util.Map" %>
 <%@ page extends="org.labkey.api.jsp.JspBase" %>
 <%!
 private Object outputJob(String status, PipelineJob job,
@@ -99,5 +100,16 @@ private Object outputJob(String status, PipelineJob job,
             <%=outputJob("pending", job, isAllContainers, canCancel)%><%
         } %>
         </table><%
+    }
+
+    if (!bean.getWaitStats().isEmpty())
+    { %>
+        <br/>
+        <table><%
+        for (Map.Entry<String, Object> e : bean.getWaitStats().entrySet())
+        { %>
+            <tr><td><%=h(e.getKey())%>:</td><td><%=h(e.getValue())%></td></tr><%
+        } %>
+        </table><%
     } %>
     <%= button("Grid").href(StatusController.urlShowList(ContainerManager.getRoot(), false)) %>
@@ -98,6 +98,7 @@ import org.labkey.query.controllers.QueryController;
 import org.labkey.query.controllers.SqlController;
 import org.labkey.query.jdbc.QueryDriver;
 import org.labkey.query.olap.MemberSet;
+import org.labkey.query.olap.PersistentMemberSetCache;
 import org.labkey.query.olap.ServerManager;
 import org.labkey.query.olap.metadata.MetadataElementBase;
 import org.labkey.query.olap.rolap.RolapReader;
@@ -119,6 +120,7 @@ import org.labkey.query.reports.getdata.AggregateQueryDataTransform;
 import org.labkey.query.reports.getdata.FilterClauseBuilder;
 import org.labkey.query.reports.view.ReportAndDatasetChangeDigestEmailTemplate;
 import org.labkey.query.reports.view.ReportUIProvider;
+import org.labkey.query.sql.ParsedQueryCache;
 import org.labkey.query.sql.QNode;
 import org.labkey.query.sql.Query;
 import org.labkey.query.sql.SqlParser;
@@ -374,6 +376,8 @@ public class QueryModule extends DefaultModule
             JdbcType.TestCase.class,
             MemberSet.TestCase.class,
             MetadataElementBase.TestCase.class,
+            ParsedQueryCache.TestCase.class,
+            PersistentMemberSetCache.TestCase.class,
             QNode.TestCase.class,
             ReportsController.SerializationTest.class,
             SqlParser.SqlParserTestCase.class,
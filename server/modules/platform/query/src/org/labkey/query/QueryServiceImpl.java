@@ -3087,6 +3087,12 @@ public class QueryServiceImpl implements QueryService
         ServerManager.cubeDataChanged(c);
     }
 
+    @Override
+    public void cubeMemberSetsChanged(Container c, String schemaName)
+    {
+        ServerManager.cubeMemberSetsChanged(c, schemaName);
+    }
+
     @Override
     public String warmCube(User user, Container container, String schemaName, String configId, String cubeName)
     {
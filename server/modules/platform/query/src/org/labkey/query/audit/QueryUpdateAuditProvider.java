@@ -108,6 +108,13 @@ public class QueryUpdateAuditProvider extends AbstractAuditTypeProvider implemen
         return legacyMap;
     }
 
+    // DetailedAuditLogDataIterator adds an event per imported row; batch them into the import's transaction
+    @Override
+    public WriteMode getWriteMode()
+    {
+        return WriteMode.TRANSACTIONAL;
+    }
+
     @Override
     public <K extends AuditTypeEvent> Class<K> getEventClass()
     {
@@ -301,6 +308,13 @@ public class QueryUpdateAuditProvider extends AbstractAuditTypeProvider implemen
             return NAMESPACE_PREFIX;
         }
 
+        // Detailed auditing logs an event per inserted or updated row
+        @Override
+        public boolean isTimePartitioned()
+        {
+            return true;
+        }
+
         @Override
         public String getKindName()
         {
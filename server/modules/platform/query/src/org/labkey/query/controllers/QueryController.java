@@ -2665,6 +2665,8 @@ public class QueryController extends SpringActionController
         private boolean _includeDisplayValues = false;
         private boolean _minimalColumns = true;
         private boolean _includeMetadata = true;
+        private boolean _keyset = false;
+        private String _cursor;
 
         public Integer getStart()
         {
@@ -2756,6 +2758,28 @@ public class QueryController extends SpringActionController
             _includeMetadata = includeMetadata;
         }
 
+        public boolean isKeyset()
+        {
+            return _keyset;
+        }
+
+        /** Page by seeking on the sort columns instead of OFFSET; the response includes a nextCursor token */
+        public void setKeyset(boolean keyset)
+        {
+            _keyset = keyset;
+        }
+
+        public String getCursor()
+        {
+            return _cursor;
+        }
+
+        /** The nextCursor token from the previous keyset page; implies keyset */
+        public void setCursor(String cursor)
+        {
+            _cursor = StringUtils.trimToNull(cursor);
+        }
+
         @Override
         protected QuerySettings createQuerySettings(UserSchema schema)
         {
@@ -2773,8 +2797,13 @@ public class QueryController extends SpringActionController
                 results.setShowRows(ShowRows.PAGINATED);
                 results.setMaxRows(getLimit());
             }
-            if (getStart() != null)
+            if (getStart() != null && getCursor() == null)
                 results.setOffset(getStart());
+            if (isKeyset() || getCursor() != null)
+            {
+                results.setKeysetPagination(true);
+                results.setCursor(getCursor());
+            }
 
             return results;
         }
@@ -5285,6 +5314,60 @@ public class QueryController extends SpringActionController
         }
     }
 
+    public static class RowCountForm
+    {
+        private String _token;
+
+        public String getToken()
+        {
+            return _token;
+        }
+
+        public void setToken(String token)
+        {
+            _token = token;
+        }
+    }
+
+    /** Fetch a grid row count being computed in the background; see DataRegion's rowCountToken. Doesn't wait for it. */
+    @RequiresPermission(ReadPermission.class)
+    public static class GetRowCountAction extends ReadOnlyApiAction<RowCountForm>
+    {
+        @Override
+        public void validateForm(RowCountForm form, Errors errors)
+        {
+            if (StringUtils.isBlank(form.getToken()))
+                errors.reject(ERROR_MSG, "token is required");
+        }
+
+        @Override
+        public ApiResponse execute(RowCountForm form, BindException errors)
+        {
+            AsyncRowCounter.RowCount rowCount = AsyncRowCounter.getRowCount(getUser(), form.getToken());
+
+            ApiSimpleResponse response = new ApiSimpleResponse();
+            response.put("status", null == rowCount ? AsyncRowCounter.Status.UNAVAILABLE.name() : rowCount.getStatus().name());
+            response.put("rowCount", null == rowCount ? null : rowCount.getRowCount());
+            return response;
+        }
+    }
+
+    /**
+     * Stop waiting for a background row count, e.g. when the user navigates away from the grid. Posted with
+     * navigator.sendBeacon(), so the CSRF token comes as a form parameter rather than a header.
+     */
+    @RequiresPermission(ReadPermission.class)
+    public static class CancelRowCountAction extends MutatingApiAction<RowCountForm>
+    {
+        @Override
+        public ApiResponse execute(RowCountForm form, BindException errors)
+        {
+            if (StringUtils.isNotBlank(form.getToken()))
+                AsyncRowCounter.cancel(getUser(), form.getToken());
+            return new ApiSimpleResponse("success", true);
+        }
+    }
+
     @ActionNames("setSelected, setCheck")
     @RequiresPermission(ReadPermission.class)
     public static class SetCheckAction extends MutatingApiAction<SetCheckForm>
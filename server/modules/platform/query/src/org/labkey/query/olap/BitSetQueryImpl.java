@@ -23,7 +23,9 @@ import org.labkey.api.cache.Cache;
 import org.labkey.api.cache.CacheManager;
 import org.labkey.api.collections.CaseInsensitiveHashMap;
 import org.labkey.api.collections.CaseInsensitiveHashSet;
+import org.labkey.api.collections.RoaringBitSet;
 import org.labkey.api.data.Container;
+import org.labkey.api.data.DbScope;
 import org.labkey.api.data.dialect.SqlDialect;
 import org.labkey.api.query.DefaultSchema;
 import org.labkey.api.query.QueryParseException;
@@ -70,6 +72,11 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.TimeUnit;
 
 import static org.labkey.query.olap.QubeQuery.OP;
@@ -100,6 +107,7 @@ public class BitSetQueryImpl
     private MeasureDef measure;
     private OlapConnection connection;
     private final String cachePrefix;
+    private final boolean persistCache;       // see PersistentMemberSetCache
     private SqlDialect dialect = null;
     private final User serviceUser;
     private final User user;
@@ -107,6 +115,14 @@ public class BitSetQueryImpl
 
     private MemberSet containerMembers = null;  // null == all
 
+    // worker threads are daemons, so this doesn't need to be shut down
+    private static final ForkJoinPool _evaluationPool = new ForkJoinPool(Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())), pool -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("OlapEvaluation-" + t.getPoolIndex());
+        t.setContextClassLoader(BitSetQueryImpl.class.getClassLoader());
+        return t;
+    }, null, false);
+
     public BitSetQueryImpl(Container c, User user, OlapSchemaDescriptor sd, Cube cube, OlapConnection connection, QubeQuery qq) throws SQLException
     {
         this.serviceUser = olapServiceUser;
@@ -136,6 +152,7 @@ public class BitSetQueryImpl
         String cubeId = cube.getUniqueName() +
                 ((cube instanceof CachedCube)?"@" + ((CachedCube)cube).getLongHashCode() : "");
         this.cachePrefix = "" + c.getRowId() + "/" + sd.getId() + "/" + cubeId + "/";
+        this.persistCache = cube instanceof CachedCube;
 
         initCube();
         initDistinctMeasure();
@@ -1183,49 +1200,140 @@ public class BitSetQueryImpl
         if (list.isEmpty())
             return null;   // unfiltered
 
-        MemberSet filteredSet = null;
+        // each part of the filter may need its own members query, so evaluate them concurrently
+        List<Callable<Collection<Member>>> evaluations = new ArrayList<>(list.size());
         for (Result result : list)
+            evaluations.add(() -> filterMembers(measureLevel, result));
+
+        MemberSet filteredSet = null;
+        for (Collection<Member> members : evaluateAll(evaluations))
         {
-            Level resultLevel = result.getLevel();
-            Hierarchy resultHierarchy = result.getHierarchy();
+            if (null == filteredSet)
+                filteredSet = new MemberSet(members);
+            else
+                filteredSet.retainAll(members);
+        }
+        return filteredSet;
+    }
 
-            /* NOTE: some CDS queries filter on the subject hierarchy instead of the subject level
-             * for backward compatibility, unwind that here
-             */
-            if (result instanceof MemberSetResult && null == resultLevel && null != resultHierarchy &&
-                    same(resultHierarchy, measureLevel.getHierarchy()))
+
+    /* return the members of measureLevel selected by one part of a filter */
+    Collection<Member> filterMembers(Level measureLevel, Result result) throws SQLException
+    {
+        Level resultLevel = result.getLevel();
+        Hierarchy resultHierarchy = result.getHierarchy();
+
+        /* NOTE: some CDS queries filter on the subject hierarchy instead of the subject level
+         * for backward compatibility, unwind that here
+         */
+        if (result instanceof MemberSetResult && null == resultLevel && null != resultHierarchy &&
+                same(resultHierarchy, measureLevel.getHierarchy()))
+        {
+            // extract only the measure level (e.g. [Subject].[Subject]
+            if (((MemberSetResult)result).hierarchy != null)
             {
-                // extract only the measure level (e.g. [Subject].[Subject]
-                if (((MemberSetResult)result).hierarchy != null)
+                result = new MemberSetResult(measureLevel);
+            }
+            else if (null != ((MemberSetResult)result).members)
+            {
+                result = new MemberSetResult(((MemberSetResult)result).members.onlyFor(measureLevel));
+            }
+            resultLevel = measureLevel;
+        }
+
+        Result intersectSet;
+        if (null != resultLevel && same(measureLevel,resultLevel))
+        {
+            intersectSet = result;
+        }
+        else
+        {
+            // because we only support COUNT DISTINCT, we can treat this filter like
+            // NON EMPTY distinctLevel.members WHERE <filter>,
+            // for SUM() or COUNT() this wouldn't work
+            MemberSet set = _dataSourceHelper.membersQuery(new MemberSetResult(measureLevel), (MemberSetResult)result);
+            intersectSet = new MemberSetResult(set);
+        }
+        return intersectSet.getCollection();
+    }
+
+
+    /*
+     * Evaluate independent parts of a query (e.g. the members of a CROSSJOIN filter or a UNION) concurrently,
+     * returning the results in order.  Nested calls from a worker thread run sequentially, so we can't deadlock
+     * the pool.
+     */
+    <T> List<T> evaluateAll(List<Callable<T>> evaluations) throws SQLException
+    {
+        List<T> results = new ArrayList<>(evaluations.size());
+        if (evaluations.size() < 2 || ForkJoinTask.inForkJoinPool() || !(_dataSourceHelper instanceof SqlDataSourceHelper))
+        {
+            for (Callable<T> evaluation : evaluations)
+                results.add(call(evaluation));
+            return results;
+        }
+
+        QueryService qs = QueryService.get();
+        Object environment = qs.cloneEnvironment();
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(evaluations.size());
+        for (Callable<T> evaluation : evaluations)
+        {
+            tasks.add(_evaluationPool.submit(() -> {
+                qs.copyEnvironment(environment);
+                try
                 {
-                    result = new MemberSetResult(measureLevel);
+                    return evaluation.call();
                 }
-                else if (null != ((MemberSetResult)result).members)
+                finally
                 {
-                    result = new MemberSetResult(((MemberSetResult)result).members.onlyFor(measureLevel));
+                    qs.clearEnvironment();
+                    DbScope.finishedWithThread();
                 }
-                resultLevel = measureLevel;
-            }
+            }));
+        }
 
-            Result intersectSet;
-            if (null != resultLevel && same(measureLevel,resultLevel))
-            {
-                intersectSet = result;
-            }
-            else
-            {
-                // because we only support COUNT DISTINCT, we can treat this filter like
-                // NON EMPTY distinctLevel.members WHERE <filter>,
-                // for SUM() or COUNT() this wouldn't work
-                MemberSet set = _dataSourceHelper.membersQuery(new MemberSetResult(measureLevel), (MemberSetResult)result);
-                intersectSet = new MemberSetResult(set);
-            }
-            if (null == filteredSet)
-                filteredSet = new MemberSet(intersectSet.getCollection());
-            else
-                filteredSet.retainAll(intersectSet.getCollection());
+        try
+        {
+            for (ForkJoinTask<T> task : tasks)
+                results.add(task.get());
+            return results;
+        }
+        catch (InterruptedException x)
+        {
+            tasks.forEach(task -> task.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(x);
+        }
+        catch (ExecutionException x)
+        {
+            tasks.forEach(task -> task.cancel(true));
+            throw unwrap(x.getCause());
         }
-        return filteredSet;
+    }
+
+
+    private static <T> T call(Callable<T> evaluation) throws SQLException
+    {
+        try
+        {
+            return evaluation.call();
+        }
+        catch (Exception x)
+        {
+            throw unwrap(x);
+        }
+    }
+
+
+    private static SQLException unwrap(Throwable x)
+    {
+        if (x instanceof SQLException)
+            return (SQLException)x;
+        if (x instanceof RuntimeException)
+            throw (RuntimeException)x;
+        if (x instanceof Error)
+            throw (Error)x;
+        throw new RuntimeException(x);
     }
 
 
@@ -1385,6 +1493,16 @@ public class BitSetQueryImpl
     {
         String key = cachePrefix + query;
         MemberSet m = _resultsCache.get(key);
+        if (null == m && persistCache)
+        {
+            Map<String,RoaringBitSet> sets = PersistentMemberSetCache.get(container, cachePrefix, query);
+            if (null != sets)
+            {
+                m = MemberSet.fromLevelBitSets(sets, levelMap);
+                if (null != m)
+                    _resultsCache.put(key, m.detach());
+            }
+        }
         if (null == m)
             return null;
         return m.attach(levelMap);
@@ -1394,6 +1512,8 @@ public class BitSetQueryImpl
     {
         String key = cachePrefix + query;
         _resultsCache.put(key, m.detach());
+        if (persistCache)
+            PersistentMemberSetCache.put(container, cachePrefix, query, m.getLevelBitSets());
         if (_log.isTraceEnabled())
         {
             long size = m.getMemorySizeInBytes();
@@ -2231,8 +2351,11 @@ public class BitSetQueryImpl
             // the union components
             if (inner instanceof UnionResult)
             {
+                // each component is a separate crossjoin query, so run them concurrently
+                List<Callable<Void>> evaluations = new ArrayList<>();
                 for (Result r : ((UnionResult) inner).results)
-                    populateCache(outerLevel, r);
+                    evaluations.add(() -> { populateCache(outerLevel, r); return null; });
+                evaluateAll(evaluations);
                 return;
             }
             else
@@ -2557,10 +2680,18 @@ public class BitSetQueryImpl
     static public void invalidateCache(OlapSchemaDescriptor sd)
     {
         _resultsCache.clear();
+        PersistentMemberSetCache.invalidateAll();
     }
     static public void invalidateCache()
     {
         _resultsCache.clear();
+        PersistentMemberSetCache.invalidateAll();
+    }
+    // The in-memory entries are also dropped when a Mondrian server is closed, but the persisted ones are only
+    // dropped when the data actually changes
+    static public void invalidatePersistentCache(Container c)
+    {
+        PersistentMemberSetCache.invalidate(c);
     }
 
 
@@ -20,7 +20,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.junit.Assert;
 import org.junit.Test;
-import org.labkey.api.collections.SparseBitSet;
+import org.labkey.api.collections.CaseInsensitiveHashMap;
+import org.labkey.api.collections.RoaringBitSet;
 import org.olap4j.OlapException;
 import org.olap4j.metadata.Hierarchy;
 import org.olap4j.metadata.Level;
@@ -34,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -50,7 +52,8 @@ import java.util.Set;
 
 public class MemberSet extends AbstractSet<Member>
 {
-    Map<String,LevelMemberSet> levelMap = new HashMap<>();
+    // keyed by level unique name, which (like member names, see CachedCube._NamedList) is matched case-insensitively
+    Map<String,LevelMemberSet> levelMap = new CaseInsensitiveHashMap<>();
 
 
     public MemberSet()
@@ -138,6 +141,33 @@ public class MemberSet extends AbstractSet<Member>
     }
 
 
+    /** The sealed bits of each level, keyed by level unique name, e.g. for persisting this set outside the cube */
+    Map<String,RoaringBitSet> getLevelBitSets()
+    {
+        seal();
+        Map<String,RoaringBitSet> ret = new HashMap<>();
+        for (Map.Entry<String,LevelMemberSet> entry : levelMap.entrySet())
+            ret.put(entry.getKey(), entry.getValue()._set);
+        return ret;
+    }
+
+
+    /** Inverse of getLevelBitSets(); returns null if any of the levels isn't in levelNameMap */
+    @Nullable
+    static MemberSet fromLevelBitSets(Map<String,RoaringBitSet> sets, Map<String,Level> levelNameMap)
+    {
+        MemberSet ret = new MemberSet();
+        for (Map.Entry<String,RoaringBitSet> entry : sets.entrySet())
+        {
+            Level l = levelNameMap.get(entry.getKey());
+            if (null == l)
+                return null;
+            ret.levelMap.put(entry.getKey(), ret.new LevelMemberSet(l, entry.getValue()));
+        }
+        return ret;
+    }
+
+
     public MemberSet onlyFor(Level l)
     {
         LevelMemberSet s = levelMap.get(l.getUniqueName());
@@ -204,7 +234,7 @@ public class MemberSet extends AbstractSet<Member>
             return memberSets[0].size();
         String levelName = null;
 
-        ArrayList<SparseBitSet> sets = new ArrayList<>();
+        ArrayList<RoaringBitSet> sets = new ArrayList<>();
         for (MemberSet m : memberSets)
         {
             if (m.isEmpty())
@@ -223,39 +253,14 @@ public class MemberSet extends AbstractSet<Member>
             return sets.get(0).cardinality();
 
         if (sets.size() == 2)
-            return countIntersect(sets.get(0), sets.get(1));
+            return RoaringBitSet.andCardinality(sets.get(0), sets.get(1));
 
-        SparseBitSet intersection = sets.get(0).clone();
-        for (int s=1 ; s<sets.size() ; s++)
+        // intersect the smaller sets first, so the intermediate results stay small
+        sets.sort(Comparator.comparingInt(RoaringBitSet::cardinality));
+        RoaringBitSet intersection = sets.get(0).clone();
+        for (int s=1 ; s<sets.size()-1 ; s++)
             intersection.and(sets.get(s));
-        return intersection.cardinality();
-    }
-
-
-    public static int countIntersect(SparseBitSet A, SparseBitSet B)
-    {
-        int count = 0;
-        int a = A.nextSetBit(0);
-        int b = B.nextSetBit(0);
-
-        while (a != -1 && b != -1)
-        {
-            if (a == b)
-            {
-                count++;
-                a = A.nextSetBit(a+1);
-                b = B.nextSetBit(b+1);
-            }
-            else if (a < b)
-            {
-                a = A.nextSetBit(b);
-            }
-            else
-            {
-                b = B.nextSetBit(a);
-            }
-        }
-        return count;
+        return RoaringBitSet.andCardinality(intersection, sets.get(sets.size()-1));
     }
 
 
@@ -305,7 +310,7 @@ public class MemberSet extends AbstractSet<Member>
         {
             if (h == null)
                 h = l._level.getHierarchy();
-            else if (!l._level.getHierarchy().getUniqueName().equals(h.getUniqueName()))
+            else if (!l._level.getHierarchy().getUniqueName().equalsIgnoreCase(h.getUniqueName()))
                     return null;
         }
         return h;
@@ -481,21 +486,24 @@ public class MemberSet extends AbstractSet<Member>
 
 
 
-    /** inner implmentation for a members of a single level, with natural ordering/ordinality */
+    /**
+     * inner implmentation for a members of a single level, with natural ordering/ordinality
+     * members are stored by ordinal in a compressed RoaringBitSet
+     */
 
     private class LevelMemberSet implements Set<Member>
     {
         Level _level;
-        final SparseBitSet _set;
+        final RoaringBitSet _set;
 
         private LevelMemberSet(Level level)
         {
             _level = level;
-            _set = new SparseBitSet();
+            _set = new RoaringBitSet();
         }
 
 
-        private LevelMemberSet(Level level, SparseBitSet s)
+        private LevelMemberSet(Level level, RoaringBitSet s)
         {
             _level = level;
             _set = s;
@@ -505,10 +513,10 @@ public class MemberSet extends AbstractSet<Member>
         LevelMemberSet(Level level, Collection<Member> members)
         {
             _level = level;
-            _set = new SparseBitSet(members.size());
+            _set = new RoaringBitSet();
             for (Member m : members)
             {
-                if (!m.getLevel().getUniqueName().equals(_level.getUniqueName()))
+                if (!sameLevel(m.getLevel()))
                     throw new IllegalStateException();
                 _set.set(m.getOrdinal());
             }
@@ -525,11 +533,18 @@ public class MemberSet extends AbstractSet<Member>
             _set.seal();
         }
 
+        /* Members may come from a different instance of the level, e.g. one resolved through MDX, or from a name that
+         * differs only in case; ordinals are the same as long as the unique names match */
+        boolean sameLevel(Level l)
+        {
+            return l == _level || l.getUniqueName().equalsIgnoreCase(_level.getUniqueName());
+        }
+
         void addMembers(List<Member> c)
         {
             for (Member m : c)
             {
-                if (m.getLevel() != _level)
+                if (!sameLevel(m.getLevel()))
                     throw new IllegalArgumentException();
                 _set.set(m.getOrdinal());
             }
@@ -537,7 +552,7 @@ public class MemberSet extends AbstractSet<Member>
 
         List<Member> getMembers() throws OlapException
         {
-            SparseBitSet s = _set;
+            RoaringBitSet s = _set;
             ArrayList<Member> list = new ArrayList<>(s.cardinality());
             List<Member> members = _level.getMembers();
             for( int i = s.nextSetBit(0); i >= 0; i = s.nextSetBit(i+1) )
@@ -568,7 +583,7 @@ public class MemberSet extends AbstractSet<Member>
             if (!(o instanceof Member))
                 return false;
             Member m = (Member)o;
-            if (m.getLevel() != _level)
+            if (!sameLevel(m.getLevel()))
                 return false;
             return _set.get(m.getOrdinal());
         }
@@ -597,11 +612,8 @@ public class MemberSet extends AbstractSet<Member>
         @Override
         public boolean add(Member member)
         {
-            if (member.getLevel() != _level)
-            {
-                if (!member.getLevel().getUniqueName().equals(_level.getUniqueName()))
-                    throw new IllegalArgumentException();
-            }
+            if (!sameLevel(member.getLevel()))
+                throw new IllegalArgumentException();
             assert member.getOrdinal() >= 0;
             boolean ret = !_set.get(member.getOrdinal());
             _set.set(member.getOrdinal());
@@ -614,7 +626,7 @@ public class MemberSet extends AbstractSet<Member>
             if (!(o instanceof Member))
                 return false;
             Member m = (Member)o;
-            if (m.getLevel() != _level)
+            if (!sameLevel(m.getLevel()))
                 return false;
             boolean ret = _set.get(m.getOrdinal());
             _set.clear(m.getOrdinal());
@@ -630,6 +642,11 @@ public class MemberSet extends AbstractSet<Member>
         @Override
         public boolean addAll(Collection<? extends Member> c)
         {
+            if (c instanceof LevelMemberSet && sameLevel(((LevelMemberSet)c)._level))
+            {
+                _set.or(((LevelMemberSet)c)._set);
+                return true;
+            }
             for (Member m : c)
                 add(m);
             return true;
@@ -844,11 +861,11 @@ public class MemberSet extends AbstractSet<Member>
     public static class TestCase extends Assert
     {
         @Test
-        public void testSparseBitSet()
+        public void testBitSet()
         {
-            SparseBitSet empty = new SparseBitSet();
+            RoaringBitSet empty = new RoaringBitSet();
             empty.seal();
-            SparseBitSet fib = new SparseBitSet();
+            RoaringBitSet fib = new RoaringBitSet();
             for (int f : Arrays.asList(
                 /* 1 */ 1, 1, 2, 3, 5, 8, 13, 21, 34, 55,
                 /* 11 */ 89, 144, 233, 377, 610, 987, 1597, 2584, 4181, 6765,
@@ -856,7 +873,7 @@ public class MemberSet extends AbstractSet<Member>
                 /* 31 */ 1346269, 2178309, 3524578, 5702887, 9227465, 14930352, 24157817, 39088169, 63245986, 102_334_155))
                 fib.set(f);
             fib.seal();
-            SparseBitSet twosAndThrees = new SparseBitSet();
+            RoaringBitSet twosAndThrees = new RoaringBitSet();
             for (int i=0 ; i<=6 ; i++)
             {
                 twosAndThrees.set((int)Math.pow(2,i) * 1);
@@ -864,8 +881,8 @@ public class MemberSet extends AbstractSet<Member>
                 twosAndThrees.set((int)Math.pow(2,i) * 9);
             }
             twosAndThrees.seal();
-            SparseBitSet even = new SparseBitSet();
-            SparseBitSet odd = new SparseBitSet();
+            RoaringBitSet even = new RoaringBitSet();
+            RoaringBitSet odd = new RoaringBitSet();
             for (int i=0 ; i<50 ; i++)
             {
                 even.set(i * 2);
@@ -877,18 +894,18 @@ public class MemberSet extends AbstractSet<Member>
             assertEquals(21, twosAndThrees.cardinality());
             assertEquals(50, even.cardinality());
             assertEquals(50, odd.cardinality());
-            SparseBitSet t = new SparseBitSet();
+            RoaringBitSet t = new RoaringBitSet();
             t.or(fib);
             t.and(odd);
             assertEquals(7,t.cardinality());
-            assertEquals(7,countIntersect(fib,odd));
+            assertEquals(7,RoaringBitSet.andCardinality(fib,odd));
 
-            t = new SparseBitSet();
+            t = new RoaringBitSet();
             t.or(fib);
             t.and(twosAndThrees);
             // 1,2,3,8,144
             assertEquals(5,t.cardinality());
-            assertEquals(5,countIntersect(fib,twosAndThrees));
+            assertEquals(5,RoaringBitSet.andCardinality(fib,twosAndThrees));
         }
 
         @Test
@@ -897,6 +914,25 @@ public class MemberSet extends AbstractSet<Member>
 
         }
 
+        @Test
+        public void testCaseInsensitiveLevels() throws OlapException
+        {
+            // the same level, resolved with different case
+            Level upper = (Level)Proxy.newProxyInstance(MemberSet.class.getClassLoader(), new Class<?>[]{Level.class}, new MockLevelProxy(h,"LASTNAME",1,l1_members));
+
+            MemberSet set = new MemberSet(l1, l1.getMembers());
+            MemberSet other = new MemberSet(upper, upper.getMembers());
+            assertTrue(set.contains(upper.getMembers().get(0)));
+            assertEquals(2, countIntersect(set, other));
+
+            MemberSet jones = new MemberSet();
+            jones.add(upper.getMembers().get(1));
+            set.retainAll(jones);
+            assertEquals(1, set.size());
+            assertTrue(set.contains(l1.getMembers().get(1)));
+            assertFalse(set.contains(l1.getMembers().get(0)));
+        }
+
         @Test
         public void testMemberSet() throws OlapException
         {
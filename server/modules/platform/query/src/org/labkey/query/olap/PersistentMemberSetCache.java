@@ -0,0 +1,539 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.query.olap;
+
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.cache.CacheManager;
+import org.labkey.api.collections.RoaringBitSet;
+import org.labkey.api.data.Container;
+import org.labkey.api.security.Crypt;
+import org.labkey.api.settings.AppProps;
+import org.labkey.api.util.FileUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Disk copy of the member sets that BitSetQueryImpl caches in memory (see resultsCachePut()), so that data finder
+ * queries stay fast right after a restart instead of rebuilding every member-to-fact set from SQL.
+ *
+ * Each cube in each container gets an append-only file of (query, level bitsets) records under the server's temp
+ * directory. Opening the file just indexes the record offsets; records are read and decoded on demand. Reads go
+ * through the channel rather than a memory mapping, so a closed file can always be deleted, even on Windows. Only
+ * CachedCubes are persisted, since the cube's hash (part of the cache prefix) pins the member ordinals that the bitsets
+ * refer to.
+ *
+ * The hash doesn't cover the facts, so files are deleted along with the in-memory entries when a container's cube data
+ * or definitions change (see QueryService.cubeDataChanged() and cubeMemberSetsChanged()), which leaves every other container's cache warm. Like the
+ * in-memory entries, a file's sets expire a day after it was started, which also bounds how long a change that wasn't
+ * reported can be served, including across restarts. Expired files are deleted as other cubes are opened, and only the
+ * most recently used files are kept open.
+ */
+public class PersistentMemberSetCache
+{
+    private static final Logger LOG = Logger.getLogger(PersistentMemberSetCache.class);
+
+    private static final String DIR_NAME = "labkey_olap_cache";
+    private static final String EXTENSION = ".bits";
+    private static final int MAGIC = 0x4C4B4F43;     // "LKOC"
+    private static final int VERSION = 2;
+    /** Keeps offsets within an int and bounds the disk used by a runaway cube */
+    static final int MAX_FILE_SIZE = 256 * 1024 * 1024;
+    /** Same lifetime as BitSetQueryImpl's in-memory results cache */
+    static final long MAX_AGE = CacheManager.DAY;
+    private static final int MAX_OPEN_STORES = 100;
+
+    // Most recently used last; the eldest is closed, leaving its file to be reopened or expire
+    private static final Map<String, Store> STORES = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Store> eldest)
+        {
+            if (size() <= MAX_OPEN_STORES)
+                return false;
+            eldest.getValue().close();
+            return true;
+        }
+    };
+
+    private PersistentMemberSetCache()
+    {
+    }
+
+    /** @return the persisted bitsets, keyed by level unique name, or null if they aren't persisted */
+    static @Nullable Map<String, RoaringBitSet> get(@NotNull Container c, @NotNull String prefix, @NotNull String query)
+    {
+        return getStore(c, prefix).get(query);
+    }
+
+    static void put(@NotNull Container c, @NotNull String prefix, @NotNull String query, @NotNull Map<String, RoaringBitSet> sets)
+    {
+        getStore(c, prefix).put(query, sets);
+    }
+
+    /** Drop every persisted cube for the container */
+    static void invalidate(@NotNull Container c)
+    {
+        String filePrefix = c.getRowId() + "_";
+        synchronized (STORES)
+        {
+            STORES.entrySet().removeIf(e -> {
+                if (!e.getKey().startsWith(c.getRowId() + "/"))
+                    return false;
+                e.getValue().close();
+                return true;
+            });
+            deleteFiles(filePrefix, 0);
+        }
+    }
+
+    static void invalidateAll()
+    {
+        synchronized (STORES)
+        {
+            STORES.values().forEach(Store::close);
+            STORES.clear();
+            deleteFiles("", 0);
+        }
+    }
+
+    private static Store getStore(Container c, String prefix)
+    {
+        synchronized (STORES)
+        {
+            Store store = STORES.get(prefix);
+            if (null == store)
+            {
+                // A file that hasn't been written to for longer than MAX_AGE was started even earlier, so it's expired
+                deleteFiles("", System.currentTimeMillis() - MAX_AGE);
+                store = new Store(getFile(c, prefix), prefix, MAX_AGE);
+                STORES.put(prefix, store);
+            }
+            return store;
+        }
+    }
+
+    private static File getDirectory()
+    {
+        // A fresh database gets a new server GUID, which keeps us from reading sets that belong to reused container ids
+        return new File(new File(FileUtil.getTempDirectory(), DIR_NAME), AppProps.getInstance().getServerGUID());
+    }
+
+    private static File getFile(Container c, String prefix)
+    {
+        return new File(getDirectory(), c.getRowId() + "_" + Crypt.MD5.digest(prefix) + EXTENSION);
+    }
+
+    /** Delete the closed files whose names start with filePrefix, if they were last modified before modifiedBefore (0 for all) */
+    private static void deleteFiles(String filePrefix, long modifiedBefore)
+    {
+        File[] files = getDirectory().listFiles((dir, name) -> name.startsWith(filePrefix) && name.endsWith(EXTENSION));
+        if (null == files)
+            return;
+        for (File file : files)
+        {
+            if (0 != modifiedBefore && (file.lastModified() >= modifiedBefore || STORES.values().stream().anyMatch(s -> s._file.equals(file))))
+                continue;
+            try
+            {
+                Files.deleteIfExists(file.toPath());
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Could not delete persisted OLAP cache " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf)
+    {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining())
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /** Location of a record (query, level count, level bitsets) in the file, after its length */
+    private static class Extent
+    {
+        private final int _offset;
+        private final int _length;
+
+        private Extent(int offset, int length)
+        {
+            _offset = offset;
+            _length = length;
+        }
+    }
+
+
+    /** The file for one cache prefix, i.e. one cube definition in one container */
+    private static class Store
+    {
+        private final File _file;
+        private final String _prefix;
+        private final long _maxAge;
+        private final Map<String, Extent> _records = new HashMap<>();
+        private FileChannel _channel;       // null if the file couldn't be opened, or has been invalidated
+        private long _created;
+        private int _length;
+
+        private Store(File file, String prefix, long maxAge)
+        {
+            _file = file;
+            _prefix = prefix;
+            _maxAge = maxAge;
+            open();
+        }
+
+        private void open()
+        {
+            try
+            {
+                Files.createDirectories(_file.getParentFile().toPath());
+                _channel = FileChannel.open(_file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (!load())
+                    reset();
+                else if (!_records.isEmpty())
+                    LOG.debug("Loaded " + _records.size() + " persisted member sets for " + _prefix);
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Could not open persisted OLAP cache " + _file + ": " + e.getMessage());
+                close();
+            }
+        }
+
+        /** Empty, expired, a different format, or a hash collision; start over */
+        private void reset() throws IOException
+        {
+            _records.clear();
+            _channel.truncate(0);
+            _length = 0;
+            _created = System.currentTimeMillis();
+            append(header());
+        }
+
+        private boolean isExpired()
+        {
+            return System.currentTimeMillis() - _created > _maxAge;
+        }
+
+        private byte[] header() throws IOException
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(RoaringBitSet.FORMAT_VERSION);
+            out.writeLong(_created);
+            writeString(out, _prefix);
+            return bytes.toByteArray();
+        }
+
+        /** Index the records in the file; returns false if it isn't an unexpired cache for this prefix in the current format */
+        private boolean load() throws IOException
+        {
+            long size = _channel.size();
+            if (0 == size || size > MAX_FILE_SIZE)
+                return false;
+            _length = (int)size;
+
+            try
+            {
+                ByteBuffer buf = read(0, 24);
+                if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getInt() != RoaringBitSet.FORMAT_VERSION)
+                    return false;
+                _created = buf.getLong();
+                if (isExpired())
+                    return false;
+                int prefixLength = buf.getInt();
+                if (prefixLength < 0 || 24 + prefixLength > _length)
+                    return false;
+                byte[] prefix = new byte[prefixLength];
+                read(24, prefixLength).get(prefix);
+                if (!_prefix.equals(new String(prefix, StandardCharsets.UTF_8)))
+                    return false;
+
+                int end = 24 + prefixLength;
+                while (_length - end >= 8)
+                {
+                    buf = read(end, 8);
+                    int length = buf.getInt();
+                    int queryLength = buf.getInt();
+                    if (length <= 0 || length > _length - end - 4 || queryLength < 0 || queryLength > length - 4)
+                        break;
+                    byte[] query = new byte[queryLength];
+                    read(end + 8, queryLength).get(query);
+                    _records.put(new String(query, StandardCharsets.UTF_8), new Extent(end + 4, length));
+                    end += 4 + length;
+                }
+
+                if (end < _length)
+                {
+                    // The server went down in the middle of an append; drop the partial record
+                    _channel.truncate(end);
+                    _length = end;
+                }
+                return true;
+            }
+            catch (BufferUnderflowException | IllegalArgumentException e)
+            {
+                return false;
+            }
+        }
+
+        /** Read a region of the file into a heap buffer, which doesn't hold the file open the way a mapping does */
+        private ByteBuffer read(int position, int length) throws IOException
+        {
+            if (length > _length - position)
+                throw new IllegalArgumentException("Read past the end of " + _file);
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            while (buf.hasRemaining())
+            {
+                if (_channel.read(buf, position + buf.position()) < 0)
+                    throw new IllegalArgumentException("Unexpected end of " + _file);
+            }
+            buf.flip();
+            return buf;
+        }
+
+        private void append(byte[] bytes) throws IOException
+        {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining())
+                _length += _channel.write(buf, _length);
+        }
+
+        @Nullable Map<String, RoaringBitSet> get(String query)
+        {
+            ByteBuffer buf;
+            synchronized (this)
+            {
+                Extent extent = _records.get(query);
+                if (null == extent || null == _channel || isExpired())
+                    return null;
+                try
+                {
+                    buf = read(extent._offset, extent._length);
+                }
+                catch (IOException | IllegalArgumentException e)
+                {
+                    LOG.warn("Could not read persisted OLAP cache " + _file + ": " + e.getMessage());
+                    return null;
+                }
+            }
+
+            try
+            {
+                readString(buf);
+                int levels = buf.getInt();
+                Map<String, RoaringBitSet> sets = new HashMap<>();
+                for (int i = 0; i < levels; i++)
+                {
+                    String level = readString(buf);
+                    sets.put(level, RoaringBitSet.readFrom(buf));
+                }
+                return sets;
+            }
+            catch (BufferUnderflowException | IllegalArgumentException e)
+            {
+                LOG.warn("Corrupt record in persisted OLAP cache " + _file + "; ignoring it");
+                synchronized (this)
+                {
+                    _records.remove(query);
+                }
+                return null;
+            }
+        }
+
+        synchronized void put(String query, Map<String, RoaringBitSet> sets)
+        {
+            if (null == _channel)
+                return;
+
+            try
+            {
+                if (isExpired())
+                    reset();
+                else if (_records.containsKey(query))
+                    return;
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(0);        // record length, filled in below
+                writeString(out, query);
+                out.writeInt(sets.size());
+                for (Map.Entry<String, RoaringBitSet> entry : sets.entrySet())
+                {
+                    writeString(out, entry.getKey());
+                    entry.getValue().writeTo(out);
+                }
+                byte[] record = bytes.toByteArray();
+                if ((long)_length + record.length > MAX_FILE_SIZE)
+                    return;
+                ByteBuffer.wrap(record).putInt(record.length - 4);
+
+                int start = _length;
+                append(record);
+                _records.put(query, new Extent(start + 4, record.length - 4));
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Could not write persisted OLAP cache " + _file + ": " + e.getMessage());
+                close();
+            }
+        }
+
+        synchronized void close()
+        {
+            _records.clear();
+            if (null != _channel)
+            {
+                try
+                {
+                    _channel.close();
+                }
+                catch (IOException e)
+                {
+                    LOG.debug("Could not close persisted OLAP cache " + _file, e);
+                }
+                _channel = null;
+            }
+        }
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        private static RoaringBitSet create(int... values)
+        {
+            RoaringBitSet set = new RoaringBitSet();
+            for (int v : values)
+                set.set(v);
+            set.seal();
+            return set;
+        }
+
+        @Test
+        public void testStore() throws IOException
+        {
+            File file = File.createTempFile("PersistentMemberSetCache", EXTENSION);
+            try
+            {
+                Files.delete(file.toPath());
+                Store store = new Store(file, "1/junit/[Cube]@42/", MAX_AGE);
+                assertNull(store.get("q1"));
+                store.put("q1", Map.of("[Level].[Level]", create(1, 5, 100_000)));
+                store.put("q2", Map.of("[Level].[Level]", create(2), "[Other].[Other]", create()));
+                assertEquals(3, store.get("q1").get("[Level].[Level]").cardinality());
+                store.close();
+
+                // Simulate a crash in the middle of an append
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND))
+                {
+                    channel.write(ByteBuffer.wrap(new byte[]{0, 0, 1, 0, 0, 0}));
+                }
+
+                store = new Store(file, "1/junit/[Cube]@42/", MAX_AGE);
+                Map<String, RoaringBitSet> q1 = store.get("q1");
+                assertNotNull(q1);
+                assertTrue(q1.get("[Level].[Level]").get(100_000));
+                assertTrue(q1.get("[Level].[Level]").isSealed());
+                Map<String, RoaringBitSet> q2 = store.get("q2");
+                assertEquals(2, q2.size());
+                assertTrue(q2.get("[Other].[Other]").isEmpty());
+
+                // Appended after the file was indexed
+                store.put("q3", Map.of("[Level].[Level]", create(7)));
+                assertTrue(store.get("q3").get("[Level].[Level]").get(7));
+                store.close();
+
+                // A different cube definition must not see these sets
+                store = new Store(file, "1/junit/[Cube]@43/", MAX_AGE);
+                assertNull(store.get("q1"));
+                store.close();
+
+                // Nothing holds the file open once it's closed, so invalidation can delete it on every platform
+                Files.delete(file.toPath());
+            }
+            finally
+            {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+
+        @Test
+        public void testExpiration() throws IOException, InterruptedException
+        {
+            File file = File.createTempFile("PersistentMemberSetCache", EXTENSION);
+            try
+            {
+                Files.delete(file.toPath());
+                Store store = new Store(file, "1/junit/[Cube]@42/", 50);
+                store.put("q1", Map.of("[Level].[Level]", create(1)));
+                assertNotNull(store.get("q1"));
+                store.close();
+
+                Thread.sleep(100);
+
+                // Expired sets aren't served from an open file, nor loaded after a restart
+                store = new Store(file, "1/junit/[Cube]@42/", 50);
+                assertNull(store.get("q1"));
+                store.put("q2", Map.of("[Level].[Level]", create(2)));
+                assertNotNull(store.get("q2"));
+                Thread.sleep(100);
+                assertNull(store.get("q2"));
+
+                // Writing to an expired file starts it over
+                store.put("q3", Map.of("[Level].[Level]", create(3)));
+                assertNotNull(store.get("q3"));
+                assertNull(store.get("q2"));
+                store.close();
+            }
+            finally
+            {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+}
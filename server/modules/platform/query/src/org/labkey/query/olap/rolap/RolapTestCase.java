@@ -15,6 +15,7 @@
  */
 package org.labkey.query.olap.rolap;
 
+import org.apache.log4j.Logger;
 import org.json.JSONObject;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -61,6 +62,8 @@ import java.util.Map;
  */
 public class RolapTestCase extends Assert
 {
+    private static final Logger LOG = Logger.getLogger(RolapTestCase.class);
+
     private User getUser()
     {
         return TestContext.get().getUser();
@@ -954,6 +957,47 @@ public class RolapTestCase extends Assert
         }
     }
 
+    // Times a mix of queries over the junit cube: cold (after clearing the cube and results caches), warm, and as if
+    // after a restart (in-memory results dropped, but the persisted member sets are still on disk).
+    // Timings are logged rather than asserted, since they depend on the server; results must match across runs.
+    @Test
+    public void testBenchmark() throws Exception
+    {
+        String[] queries = {
+            // one axis, no filter
+            "{\"onRows\":{\"level\":\"[Study.Type].[Type]\"}, \"countDistinctLevel\":\"[Participant].[Participant]\", \"showEmpty\":true}",
+            // one axis, filter on a different hierarchy
+            "{\"onRows\":{\"level\":\"[Participant.Species].[Species]\"}, \"countDistinctLevel\":\"[Participant].[Participant]\", \"showEmpty\":true, " +
+                "\"countFilter\":[{\"level\":\"[Participant].[Participant]\", \"membersQuery\":{\"level\":\"[Participant.Gender].[Gender]\", \"members\":[\"[Participant.Gender].[Female]\"]}}]}",
+            // crossjoin filter over two hierarchies, evaluated concurrently
+            "{\"onRows\":{\"level\":\"[Assay].[Name]\"}, \"countDistinctLevel\":\"[Participant].[Participant]\", \"showEmpty\":true, " +
+                "\"countFilter\":[{\"level\":\"[Participant].[Participant]\", \"membersQuery\":{\"level\":\"[Participant.Species].[Species]\", \"members\":[\"[Participant.Species].[Monkey]\"]}}, " +
+                "{\"level\":\"[Participant].[Participant]\", \"membersQuery\":{\"level\":\"[Participant.Gender].[Gender]\", \"members\":[\"[Participant.Gender].[Male]\"]}}]}",
+        };
+        final int iterations = 20;
+
+        for (String query : queries)
+        {
+            reset();
+            long start = System.nanoTime();
+            Map<String,Integer> expected = oneAxisQuery(query);
+            long coldNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                assertEquals(expected, oneAxisQuery(query));
+            long warmNanos = (System.nanoTime() - start) / iterations;
+
+            BitSetQueryImpl.invalidateCache(getContainer());
+            start = System.nanoTime();
+            assertEquals(expected, oneAxisQuery(query));
+            long persistedNanos = System.nanoTime() - start;
+
+            LOG.info("Cube query: cold " + coldNanos / 1_000_000 + "ms, warm " + warmNanos / 1_000 + "us, persisted " + persistedNanos / 1_000_000 + "ms: " + query);
+        }
+    }
+
+
     @Test
     public void mdxQueries()
     {
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.query.sql;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.cache.Cache;
+import org.labkey.api.cache.CacheManager;
+import org.labkey.api.data.Container;
+import org.labkey.api.data.dialect.SqlDialect;
+import org.labkey.api.query.QueryParseException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shares the parse trees of LabKey SQL across requests, so repeated executions of the same saved or ad hoc query skip
+ * the parser. A parse depends only on the SQL text and the dialect, which decides the functions and statements that are
+ * allowed. Binding the tree to a schema, which resolves tables, columns and lookups and checks permissions, still
+ * happens for every Query, so nothing here depends on the user, container or security policies.
+ *
+ * Binding attaches state to the nodes, so each caller gets its own copy of the cached tree. Parses that report errors
+ * or warnings aren't cached, nor are parses that substitute a module property, since those depend on the container.
+ */
+public class ParsedQueryCache
+{
+    private static final Cache<String, Parsed> CACHE = CacheManager.getStringKeyCache(1000, CacheManager.HOUR, "Parsed LabKey SQL");
+
+    static class Parsed
+    {
+        private final QNode _root;
+        private final List<QParameter> _parameters;
+
+        private Parsed(QNode root, List<QParameter> parameters)
+        {
+            _root = root;
+            _parameters = parameters;
+        }
+
+        QNode getRoot()
+        {
+            return _root;
+        }
+
+        ArrayList<QParameter> getParameters()
+        {
+            return new ArrayList<>(_parameters);
+        }
+
+        private Parsed copy()
+        {
+            return new Parsed(_root.copyTree(), _parameters);
+        }
+    }
+
+    private ParsedQueryCache()
+    {
+    }
+
+    /**
+     * Parse the SQL, or copy the tree from an earlier parse of the same SQL.
+     * @return null if the SQL doesn't parse, in which case errors has been added to
+     */
+    static @Nullable Parsed parse(@Nullable SqlDialect dialect, @Nullable Container c, @NotNull String sql, @NotNull List<? super QueryParseException> errors, @NotNull List<QueryParseException> warnings)
+    {
+        String key = (null == dialect ? "" : dialect.getClass().getName()) + "\u0000" + sql;
+        Parsed cached = CACHE.get(key);
+        if (null != cached)
+            return cached.copy();
+
+        int errorCount = errors.size();
+        int warningCount = warnings.size();
+        SqlParser parser = new SqlParser(dialect, c);
+        parser.parseQuery(sql, errors, warnings);
+        if (errors.size() > errorCount || null == parser.getRoot())
+            return null;
+
+        Parsed parsed = new Parsed(parser.getRoot(), parser.getParameters());
+
+        // Keep an untouched copy; the caller is about to bind this one
+        if (warnings.size() == warningCount && !parser.isContainerDependent())
+            CACHE.put(key, parsed.copy());
+
+        return parsed;
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testCopies()
+        {
+            String sql = "PARAMETERS (X INTEGER) SELECT a, b FROM t WHERE a = X -- " + System.nanoTime();
+
+            Parsed first = parse(null, null, sql, new ArrayList<>(), new ArrayList<>());
+            Parsed second = parse(null, null, sql, new ArrayList<>(), new ArrayList<>());
+            assertNotNull(first);
+            assertNotNull(second);
+
+            // Same tree, but each caller can bind its own
+            assertNotSame(first.getRoot(), second.getRoot());
+            assertEquals(first.getRoot().getSourceText(), second.getRoot().getSourceText());
+            assertNotSame(first.getRoot().getFirstChild(), second.getRoot().getFirstChild());
+
+            // Query adds to its parameter list, which mustn't change the cached one
+            first.getParameters().clear();
+            assertEquals(1, second.getParameters().size());
+            assertEquals(1, parse(null, null, sql, new ArrayList<>(), new ArrayList<>()).getParameters().size());
+        }
+
+        @Test
+        public void testErrors()
+        {
+            String sql = "SELECT FROM WHERE -- " + System.nanoTime();
+
+            for (int i = 0; i < 2; i++)
+            {
+                List<QueryParseException> errors = new ArrayList<>();
+                assertNull(parse(null, null, sql, errors, new ArrayList<>()));
+                assertFalse("Errors must be reported on every parse", errors.isEmpty());
+            }
+        }
+    }
+}
@@ -52,6 +52,8 @@ import org.labkey.api.exp.property.Domain;
 import org.labkey.api.exp.property.DomainProperty;
 import org.labkey.api.exp.property.Lookup;
 import org.labkey.api.iterator.CloseableIterator;
+import org.labkey.api.miniprofiler.MiniProfiler;
+import org.labkey.api.miniprofiler.Timing;
 import org.labkey.api.query.AliasManager;
 import org.labkey.api.query.DefaultSchema;
 import org.labkey.api.query.FieldKey;
@@ -249,7 +251,10 @@ public class Query
             throw new IllegalStateException("SQL has not been specified");
 
         Logger.getLogger(Query.class).debug("Query.parse()\n" + _querySource);
-        _parse(_querySource, skipSuggestedColumns);
+        try (Timing ignored = MiniProfiler.trace("query compile" + (null != _debugName ? " " + _debugName : "")))
+        {
+            _parse(_querySource, skipSuggestedColumns);
+        }
         
         for (QueryException e : _parseErrors)
         {
@@ -289,13 +294,12 @@ public class Query
                 parseError(_parseErrors, "Schema is not available, check configuration: " + getSchema().getName(), null);
                 return;
             }
-            SqlParser parser = new SqlParser(getSchema().getDbSchema().getSqlDialect(), getSchema().getContainer());
-            parser.parseQuery(queryText, _parseErrors, _parseWarnings);
-            if (!_parseErrors.isEmpty())
+            ParsedQueryCache.Parsed parsed = ParsedQueryCache.parse(getSchema().getDbSchema().getSqlDialect(), getSchema().getContainer(), queryText, _parseErrors, _parseWarnings);
+            if (!_parseErrors.isEmpty() || null == parsed)
                 return;
-            _parameters = parser.getParameters();
+            _parameters = parsed.getParameters();
 
-			QNode root = parser.getRoot();
+			QNode root = parsed.getRoot();
             QueryRelation relation = createQueryRelation(this, root, false, skipSuggestedColumns);
 
             if (relation == null)
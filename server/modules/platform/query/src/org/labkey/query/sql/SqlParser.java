@@ -96,6 +96,7 @@ public class SqlParser
     ArrayList<QParameter> _parameters;
     final SqlDialect _dialect;
     Container _container = null;
+    boolean _containerDependent = false;
 
     //
     // PUBLIC
@@ -276,6 +277,13 @@ public class SqlParser
         return null==_parameters ? new ArrayList<QParameter>(0) : _parameters;
     }
 
+
+    /** @return true if the last parse substituted a module property, so its result is specific to the container */
+    public boolean isContainerDependent()
+    {
+        return _containerDependent;
+    }
+
 	
     public QExpr parseExpr(String str, List<? super QueryParseException> errors)
     {
@@ -1191,6 +1199,7 @@ public class SqlParser
 
     private QFieldKey substituteModuleProperty(String moduleName, String propertyName)
     {
+        _containerDependent = true;
         if (StringUtils.isEmpty(moduleName) || StringUtils.isEmpty(propertyName))
         {
             _parseErrors.add(new QueryParseException("Expected two strings arguments to escape function: moduleProperty()", null, -1, -1));
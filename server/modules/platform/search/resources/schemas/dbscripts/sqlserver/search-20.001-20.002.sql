@@ -0,0 +1 @@
+ALTER TABLE search.CrawlCollections ADD Checksum BIGINT NULL;  -- fingerprint of the directory listing at last crawl, NULL forces a full listing
@@ -129,7 +129,7 @@ public class SearchController extends SpringActionController
 
     public static class AdminForm
     {
-        public String[] _messages = {"", "Index deleted", "Index path changed", "Directory type changed", "File size limit changed"};
+        public String[] _messages = {"", "Index deleted", "Index path changed", "Directory type changed", "File size limit changed", "Index writer settings changed", "Text extraction settings changed"};
         private int msg = 0;
         private boolean pause;
         private boolean start;
@@ -139,6 +139,18 @@ public class SearchController extends SpringActionController
         private boolean limit;
         private int fileLimitMB;
 
+        private boolean writer;
+        private int refreshIntervalMs;
+        private int commitIntervalSeconds;
+        private int ramBufferSizeMB;
+        private int maxMergedSegmentMB;
+        private int segmentsPerTier;
+
+        private boolean extraction;
+        private int maxExtractedChars;
+        private int extractionTimeoutSeconds;
+        private int textCacheSizeMB;
+
         private boolean _path;
 
         private boolean _directory;
@@ -243,6 +255,106 @@ public class SearchController extends SpringActionController
         {
             return this.fileLimitMB = fileLimitMB;
         }
+
+        public boolean isWriter()
+        {
+            return writer;
+        }
+
+        public void setWriter(boolean writer)
+        {
+            this.writer = writer;
+        }
+
+        public int getRefreshIntervalMs()
+        {
+            return refreshIntervalMs;
+        }
+
+        public void setRefreshIntervalMs(int refreshIntervalMs)
+        {
+            this.refreshIntervalMs = refreshIntervalMs;
+        }
+
+        public int getCommitIntervalSeconds()
+        {
+            return commitIntervalSeconds;
+        }
+
+        public void setCommitIntervalSeconds(int commitIntervalSeconds)
+        {
+            this.commitIntervalSeconds = commitIntervalSeconds;
+        }
+
+        public int getRamBufferSizeMB()
+        {
+            return ramBufferSizeMB;
+        }
+
+        public void setRamBufferSizeMB(int ramBufferSizeMB)
+        {
+            this.ramBufferSizeMB = ramBufferSizeMB;
+        }
+
+        public int getMaxMergedSegmentMB()
+        {
+            return maxMergedSegmentMB;
+        }
+
+        public void setMaxMergedSegmentMB(int maxMergedSegmentMB)
+        {
+            this.maxMergedSegmentMB = maxMergedSegmentMB;
+        }
+
+        public int getSegmentsPerTier()
+        {
+            return segmentsPerTier;
+        }
+
+        public void setSegmentsPerTier(int segmentsPerTier)
+        {
+            this.segmentsPerTier = segmentsPerTier;
+        }
+
+        public boolean isExtraction()
+        {
+            return extraction;
+        }
+
+        public void setExtraction(boolean extraction)
+        {
+            this.extraction = extraction;
+        }
+
+        public int getMaxExtractedChars()
+        {
+            return maxExtractedChars;
+        }
+
+        public void setMaxExtractedChars(int maxExtractedChars)
+        {
+            this.maxExtractedChars = maxExtractedChars;
+        }
+
+        public int getExtractionTimeoutSeconds()
+        {
+            return extractionTimeoutSeconds;
+        }
+
+        public void setExtractionTimeoutSeconds(int extractionTimeoutSeconds)
+        {
+            this.extractionTimeoutSeconds = extractionTimeoutSeconds;
+        }
+
+        public int getTextCacheSizeMB()
+        {
+            return textCacheSizeMB;
+        }
+
+        public void setTextCacheSizeMB(int textCacheSizeMB)
+        {
+            this.textCacheSizeMB = textCacheSizeMB;
+        }
     }
     
 
@@ -261,8 +373,20 @@ public class SearchController extends SpringActionController
 
         private int _msgid = 0;
         
-        public void validateCommand(AdminForm target, Errors errors)
+        public void validateCommand(AdminForm form, Errors errors)
         {
+            if (form.isWriter())
+            {
+                if (form.getRefreshIntervalMs() <= 0 || form.getCommitIntervalSeconds() <= 0 || form.getRamBufferSizeMB() <= 0 || form.getMaxMergedSegmentMB() <= 0)
+                    errors.reject(ERROR_MSG, "Intervals and sizes must be positive integers");
+                if (form.getSegmentsPerTier() < 2)
+                    errors.reject(ERROR_MSG, "Segments per tier must be at least 2");
+            }
+            else if (form.isExtraction())
+            {
+                if (form.getMaxExtractedChars() <= 0 || form.getExtractionTimeoutSeconds() <= 0 || form.getTextCacheSizeMB() < 0)
+                    errors.reject(ERROR_MSG, "Character limit and timeout must be positive integers; cache size can't be negative");
+            }
         }
 
         public ModelAndView getView(AdminForm form, boolean reshow, BindException errors)
@@ -357,6 +481,23 @@ public class SearchController extends SpringActionController
                 _msgid = 4;
                 audit(getUser(), null, "(admin action)", String.format("File size limit set to %1$s MB", limit));
             }
+            else if (form.isWriter())
+            {
+                SearchPropertyManager.setIndexWriterSettings(form.getRefreshIntervalMs(), form.getCommitIntervalSeconds(),
+                    form.getRamBufferSizeMB(), form.getMaxMergedSegmentMB(), form.getSegmentsPerTier());
+                ss.resetIndex();
+                _msgid = 5;
+                audit(getUser(), null, "(admin action)", String.format("Index writer settings set: refresh interval %1$s ms, commit interval %2$s seconds, RAM buffer %3$s MB, maximum merged segment %4$s MB, %5$s segments per tier",
+                    form.getRefreshIntervalMs(), form.getCommitIntervalSeconds(), form.getRamBufferSizeMB(), form.getMaxMergedSegmentMB(), form.getSegmentsPerTier()));
+            }
+            else if (form.isExtraction())
+            {
+                SearchPropertyManager.setExtractionSettings(form.getMaxExtractedChars(), form.getExtractionTimeoutSeconds(), form.getTextCacheSizeMB());
+                ss.resetIndex();
+                _msgid = 6;
+                audit(getUser(), null, "(admin action)", String.format("Text extraction settings set: %1$s character limit, %2$s second timeout, %3$s MB text cache",
+                    form.getMaxExtractedChars(), form.getExtractionTimeoutSeconds(), form.getTextCacheSizeMB()));
+            }
 
             return true;
         }
@@ -26,6 +26,8 @@ import org.labkey.api.data.DbSchema;
 import org.labkey.api.module.DefaultModule;
 import org.labkey.api.module.ModuleContext;
 import org.labkey.api.search.SearchService;
+import org.labkey.api.security.SecurityManager;
+import org.labkey.api.security.SecurityPolicyManager;
 import org.labkey.api.security.User;
 import org.labkey.api.settings.AdminConsole;
 import org.labkey.api.util.ContextListener;
@@ -41,7 +43,9 @@ import org.labkey.search.audit.SearchAuditProvider;
 import org.labkey.search.model.AbstractSearchService;
 import org.labkey.search.model.DavCrawler;
 import org.labkey.search.model.DocumentConversionServiceImpl;
+import org.labkey.search.model.ExtractedTextCache;
 import org.labkey.search.model.LuceneSearchServiceImpl;
+import org.labkey.search.model.SecurityFilterCache;
 import org.labkey.search.umls.UmlsController;
 import org.labkey.search.view.SearchWebPartFactory;
 
@@ -65,7 +69,7 @@ public class SearchModule extends DefaultModule
     @Override
     public Double getSchemaVersion()
     {
-        return 20.001;
+        return 20.002;
     }
 
     @Override
@@ -146,6 +150,10 @@ public class SearchModule extends DefaultModule
         // add a container listener so we'll know when containers are deleted
         ContainerManager.addContainerListener(new SearchContainerListener());
 
+        // Cached search security filters are stale once role assignments or group memberships change
+        SecurityPolicyManager.addPolicyListener(objectID -> SecurityFilterCache.invalidate());
+        SecurityManager.addGroupListener(new SecurityFilterCache.GroupListener());
+
         FolderManagement.addTab(FolderManagement.TYPE.FolderManagement, "Search", "fullTextSearch", FolderManagement.NOT_ROOT, SearchController.SearchSettingsAction.class);
     }
 
@@ -186,6 +194,18 @@ public class SearchModule extends DefaultModule
         ContextListener.addStartupListener(l);
     }
 
+    @NotNull
+    @Override
+    public Set<Class> getUnitTests()
+    {
+        return Set.of
+        (
+            DavCrawler.TestCase.class,
+            ExtractedTextCache.TestCase.class,
+            SecurityFilterCache.TestCase.class
+        );
+    }
+
     @NotNull
     @Override
     public Set<Class> getIntegrationTests()
@@ -52,6 +52,7 @@ import org.labkey.api.webdav.WebdavResource;
 import org.labkey.api.webdav.WebdavService;
 import org.labkey.search.view.DefaultSearchResultTemplate;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -226,6 +227,7 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
         PRIORITY _pri;
 
         int _preprocessAttempts = 0;
+        int _indexAttempts = 0;
 
         long _modified = 0; // used by setLastIndexed
         long _start = 0;    // used by setLastIndexed
@@ -345,6 +347,8 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
             {
                 if (_idleWaiting)
                 {
+                    // Waiters expect to find what was just indexed, so don't make them wait for the periodic refresh
+                    refreshIndex();
                     _idleEvent.notifyAll();
                     _idleWaiting = false;
                 }
@@ -760,8 +764,9 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
 
     protected int getCountIndexingThreads()
     {
+        // Parsing happens on a separate extraction pool, so indexing threads spend much of their time waiting on it
         int cpu = Runtime.getRuntime().availableProcessors();
-        return Math.max(1,cpu/4);
+        return Math.max(2,cpu/2);
     }
 
     protected void startThreads()
@@ -910,7 +915,7 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
 
     final Object _commitLock = new Object(){ public String toString() { return "COMMIT LOCK"; } };
     int _countIndexedSinceCommit = 0;
-    long _lastIndexedTime = 0;
+    long _lastCommitTime = HeartBeat.currentTimeMillis();
 
 
     public final void commit()
@@ -919,6 +924,7 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
         {
             commitIndex();
             _countIndexedSinceCommit = 0;
+            _lastCommitTime = HeartBeat.currentTimeMillis();
         }
     }
 
@@ -951,9 +957,9 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
     {
         synchronized (_commitLock)
         {
-            // TODO: Add a check that allows commit in the case where we've been continuously pounding the indexer for a long time...
-            // either an oldest non-committed document check or a simple _countIndexedSinceCommit > n check.
-            if (_countIndexedSinceCommit > 0 && _lastIndexedTime + 2000 < ms && _runQueue.isEmpty())
+            // Searches see new documents via near-real-time refresh, so commits are needed only for durability. Commit on
+            // a fixed interval, whether or not the indexer is busy; each commit fsyncs and is costly on large indexes.
+            if (_countIndexedSinceCommit > 0 && _lastCommitTime + SearchPropertyManager.getCommitIntervalSeconds() * 1000L <= ms)
             {
                 commit();
             }
@@ -997,6 +1003,15 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
 
             success = processAndIndex(i._id, i._res, out);
 
+            if (out[0] instanceof RetryableIndexingException && ++i._indexAttempts < MAX_INDEX_ATTEMPTS)
+            {
+                // Neither indexed nor failed; queue it again and leave it incomplete
+                _log.debug("requeueing " + i._id);
+                _itemQueue.put(i);
+                i = null;
+                return;
+            }
+
             if (null != out[0])
             {
                 _IndexTask t = (_IndexTask)i._task;
@@ -1012,10 +1027,8 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
                     String category = (String)i.getResource().getProperties().get(PROPERTY.categories.toString());
                     incrementIndexStat(ms, category);
                     _countIndexedSinceCommit++;
-                    _lastIndexedTime = ms;
-                    if (_countIndexedSinceCommit > 10000)
-                        commit();
                 }
+                commitCheck(ms);
             }
             else
                 _log.debug("skipping " + i._id);
@@ -1103,6 +1116,7 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
 
 
     protected abstract void commitIndex();
+    protected abstract void refreshIndex();
     protected abstract void deleteDocument(String id);
     protected abstract void deleteDocumentsForPrefix(String prefix);
     protected abstract void deleteIndexedContainer(String id);
@@ -1113,6 +1127,22 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
         return false;
     }
 
+    // After this many retryable failures, a document is marked as failed like any other
+    private static final int MAX_INDEX_ATTEMPTS = 3;
+
+    /**
+     * Reported by processAndIndex() when a document couldn't be processed for a reason that may not recur, e.g., text
+     * extraction timed out while the server was busy. The document is queued again instead of being marked as indexed
+     * or failed.
+     */
+    static class RetryableIndexingException extends IOException
+    {
+        RetryableIndexingException(String message)
+        {
+            super(message);
+        }
+    }
+
     protected final List<DocumentProvider> _documentProviders = new CopyOnWriteArrayList<>();
 
     @Override
@@ -1253,6 +1283,8 @@ public abstract class AbstractSearchService implements SearchService, ShutdownLi
         sb.append("</table>");
         map.put("Indexing history added/updated", sb.toString());
         map.put("Maximum allowed document size", getFileSizeLimit());
+        map.put("Search refresh interval", SearchPropertyManager.getRefreshIntervalMs() + " ms");
+        map.put("Commit interval", SearchPropertyManager.getCommitIntervalSeconds() + " seconds");
 
         return map;
     }
@@ -158,6 +158,7 @@ public class CrawlerTest extends Assert
     {
         Map<Path, Pair<Date,Date>> collections = new HashMap<>();
         Map<Path, DavCrawler.ResourceInfo> files = new HashMap<>();
+        Map<Path, Long> checksums = new HashMap<>();
 
         public boolean insertPath(Path path, Date nextCrawl)
         {
@@ -178,13 +179,27 @@ public class CrawlerTest extends Assert
             for (Map.Entry<Path,Pair<Date,Date>> e : collections.entrySet())
             {
                 if (e.getKey().startsWith(path))
+                {
                     updatePath(e.getKey(), e.getValue().first, nextCrawl, false);
+                    checksums.remove(e.getKey());
+                }
             }
         }
 
         public synchronized void deletePath(Path path)
         {
             collections.remove(path);
+            checksums.remove(path);
+        }
+
+        public synchronized Long getChecksum(Path path)
+        {
+            return checksums.get(path);
+        }
+
+        public synchronized void updateChecksum(Path path, Long checksum)
+        {
+            checksums.put(path, checksum);
         }
 
         public synchronized Map<Path, Pair<Date,Date>> getPaths(int limit)
@@ -18,6 +18,9 @@ package org.labkey.search.model;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
 import org.labkey.api.cache.Cache;
 import org.labkey.api.cache.CacheManager;
 import org.labkey.api.data.Container;
@@ -46,7 +49,12 @@ import org.labkey.api.webdav.WebdavResource;
 import org.labkey.api.webdav.WebdavService;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Date;
@@ -55,7 +63,12 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * User: matthewb
@@ -74,6 +87,12 @@ import java.util.concurrent.TimeUnit;
  *
  * The SearchService also has its own thread pool we use when we find files to index, but the
  * background crawling is pretty different and needs its own scheduling behavior.
+ *
+ * Each directory is scheduled, and skipped when unchanged, on its own; there's no notion of an unchanged subtree. A
+ * directory watched by the DirectoryWatcher with no events since its last crawl isn't read at all. Any other directory
+ * (network file systems, or past the watch limit) is checked against the fingerprint in the journal, which still
+ * reads the attributes of each child on every crawl; a match saves only the per-file database lookups and indexing.
+ * A fingerprint covering a whole subtree would have to read every descendant to be checked, so it wouldn't save I/O.
  */
 public class DavCrawler implements ShutdownListener
 {
@@ -111,6 +130,11 @@ public class DavCrawler implements ShutdownListener
 
     static private Cache<Path,ResourceInfo> errors = CacheManager.getCache(1000,TimeUnit.DAYS.toMillis(7),"crawler indexing errors");
 
+    // Directories reported changed by the watcher, waiting to be rescheduled for an immediate crawl
+    final Set<Path> _changedPaths = ConcurrentHashMap.newKeySet();
+    final DirectoryWatcher _watcher = new DirectoryWatcher(this::directoryChanged);
+    final AtomicLong _skippedDirectories = new AtomicLong();
+
 
     // to make testing easier, break out the interface for persisting crawl state
     // This is an awkward factoring.  Break out the "FileQueue" function instead
@@ -130,6 +154,10 @@ public class DavCrawler implements ShutdownListener
         void updatePrefix(Path path, Date next, boolean forceIndex);
         void deletePath(Path path);
 
+        /** Fingerprint of the directory listing at the last complete crawl, or null if it must be listed in full */
+        @Nullable Long getChecksum(Path path);
+        void updateChecksum(Path path, @Nullable Long checksum);
+
         /** <lastCrawl, nextCrawl> */
         Map<Path, Pair<Date,Date>> getPaths(int limit);
         Date getNextCrawl();
@@ -165,7 +193,10 @@ public class DavCrawler implements ShutdownListener
     public void start()
     {
         if (!_shuttingDown && !_crawlerThread.isAlive())
+        {
+            _watcher.start();
             _crawlerThread.start();
+        }
     }
 
 
@@ -178,6 +209,7 @@ public class DavCrawler implements ShutdownListener
     public void shutdownPre()
     {
         _shuttingDown = true;
+        _watcher.close();
         if (null != _crawlerThread)
             _crawlerThread.interrupt();
     }
@@ -234,6 +266,14 @@ public class DavCrawler implements ShutdownListener
     }
 
 
+    // Called on the watcher thread; the crawler thread does the database work
+    private void directoryChanged(Path path)
+    {
+        _changedPaths.add(path);
+        pingCrawler();
+    }
+
+
     private final LinkedList<Pair<String, Date>> _recent = new LinkedList<>();
 
     
@@ -246,6 +286,7 @@ public class DavCrawler implements ShutdownListener
         Date _lastCrawl=null;
         Date _nextCrawl=null;
         Date _indexTime = null;
+        Long _checksum = null;
         
         IndexDirectoryJob(Path path, Date last, Date next)
         {
@@ -261,6 +302,7 @@ public class DavCrawler implements ShutdownListener
         public void success()
         {
             _paths.updatePath(_path, _indexTime, _nextCrawl, true);
+            _paths.updateChecksum(_path, _checksum);
             addRecent(_directory);
         }
 
@@ -293,11 +335,44 @@ public class DavCrawler implements ShutdownListener
                 return;
             }
 
+            // Watch before listing (and before taking the index time) so no change can fall between this crawl and the next
+            boolean fileBacked = !(_directory instanceof WebdavResolver.WebFolder) && null != _directory.getFile();
+            if (fileBacked)
+                _watcher.watch(_path, _directory.getFile().toPath());
+
             _indexTime = new Date(System.currentTimeMillis());
             long changeInterval = (_directory instanceof WebdavResolver.WebFolder) ? CacheManager.DAY / 2 : CacheManager.DAY;
             long nextCrawl = _indexTime.getTime() + (long)(changeInterval * (0.5 + 0.5 * Math.random()));
             _nextCrawl = new Date(nextCrawl);
 
+            // Skip the listing if nothing in this directory has changed since the last complete crawl, either because
+            // the watcher has seen no events or because the listing fingerprint matches the journal
+            if (fileBacked)
+            {
+                Long saved = _full ? null : _paths.getChecksum(_path);
+
+                if (null != saved && _watcher.isUnchangedSince(_path, _lastCrawl))
+                {
+                    skip(saved);
+                    return;
+                }
+
+                try
+                {
+                    _checksum = fingerprint(_directory.getFile().toPath());
+                }
+                catch (IOException e)
+                {
+                    _log.debug("Unable to fingerprint " + _directory.getFile() + ": " + e.getMessage());
+                }
+
+                if (null != saved && saved.equals(_checksum))
+                {
+                    skip(saved);
+                    return;
+                }
+            }
+
             // if this is a web folder, call enumerate documents
             if (_directory instanceof WebdavResolver.WebFolder)
             {
@@ -432,6 +507,68 @@ public class DavCrawler implements ShutdownListener
 
             _task.setReady();
         }
+
+        private void skip(Long checksum)
+        {
+            _log.debug("IndexDirectoryJob.run(" + _path + ") unchanged");
+            _checksum = checksum;
+            _skippedDirectories.incrementAndGet();
+            _task.setReady();
+        }
+    }
+
+
+    /**
+     * Fingerprint of a directory's immediate children: their names, and for files, their sizes and modified times.
+     * Subdirectories contribute only their names; changes inside them are picked up when they're crawled. The sum of
+     * per-entry hashes doesn't depend on listing order. Computing it reads every child's attributes, so on file systems
+     * that can't be watched an unchanged directory still costs one attribute read per child per crawl.
+     */
+    static long fingerprint(java.nio.file.Path dir) throws IOException
+    {
+        long sum = 0;
+
+        try (DirectoryStream<java.nio.file.Path> stream = Files.newDirectoryStream(dir))
+        {
+            for (java.nio.file.Path child : stream)
+            {
+                BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                long h = fnv1a(0xcbf29ce484222325L, child.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                h = mix(h, attrs.isDirectory() ? 1 : 0);
+
+                if (!attrs.isDirectory())
+                {
+                    h = mix(h, attrs.size());
+                    h = mix(h, attrs.lastModifiedTime().toMillis());
+                }
+
+                sum += h;
+            }
+        }
+
+        return sum;
+    }
+
+
+    private static long fnv1a(long h, byte[] bytes)
+    {
+        for (byte b : bytes)
+        {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+
+    private static long mix(long h, long value)
+    {
+        for (int i = 0; i < 8; i++)
+        {
+            h ^= (value >>> (i * 8)) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
     }
 
 
@@ -546,6 +683,14 @@ public class DavCrawler implements ShutdownListener
     {
         if (_shuttingDown)
             return null;
+
+        // Reschedule directories that changed for an immediate crawl
+        for (Path path : _changedPaths)
+        {
+            _changedPaths.remove(path);
+            _paths.updatePath(path, null, new Date(System.currentTimeMillis()), false);
+        }
+
         if (crawlQueue.isEmpty())
         {
             _log.debug("findSomeWork()");
@@ -670,6 +815,8 @@ public class DavCrawler implements ShutdownListener
 
         m.put("Directory limiter", Math.round(_listingRateLimiter.getTarget().getRate(TimeUnit.SECONDS)) + "/sec");
         m.put("File I/O limiter", (_fileIORateLimiter.getTarget().getRate(TimeUnit.SECONDS)/1000000) + " MB/sec");
+        m.put("Directories watched for changes", _watcher.getCount());
+        m.put("Directories skipped as unchanged", _skippedDirectories.get());
 
         String activity = getActivityHtml();
         m.put("Recent crawler activity", activity);
@@ -725,4 +872,93 @@ public class DavCrawler implements ShutdownListener
     {
         _paths.clearFailedDocuments();
     }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testFingerprint() throws IOException
+        {
+            File dir = Files.createTempDirectory("davCrawler").toFile();
+
+            try
+            {
+                long empty = fingerprint(dir.toPath());
+                File a = new File(dir, "a.txt");
+                Files.write(a.toPath(), "one".getBytes(StandardCharsets.UTF_8));
+                assertTrue(a.setLastModified(1_000_000_000_000L));
+                long one = fingerprint(dir.toPath());
+                assertNotEquals(empty, one);
+                assertEquals(one, fingerprint(dir.toPath()));
+
+                // Size and modified time both count
+                Files.write(a.toPath(), "two!".getBytes(StandardCharsets.UTF_8));
+                assertTrue(a.setLastModified(1_000_000_000_000L));
+                long resized = fingerprint(dir.toPath());
+                assertNotEquals(one, resized);
+                assertTrue(a.setLastModified(1_000_000_060_000L));
+                long touched = fingerprint(dir.toPath());
+                assertNotEquals(resized, touched);
+
+                // Renames count, but changes inside a subdirectory don't
+                File b = new File(dir, "b.txt");
+                assertTrue(a.renameTo(b));
+                long renamed = fingerprint(dir.toPath());
+                assertNotEquals(touched, renamed);
+
+                File sub = new File(dir, "sub");
+                assertTrue(sub.mkdir());
+                long withSub = fingerprint(dir.toPath());
+                assertNotEquals(renamed, withSub);
+                Files.write(new File(sub, "c.txt").toPath(), "three".getBytes(StandardCharsets.UTF_8));
+                assertEquals(withSub, fingerprint(dir.toPath()));
+            }
+            finally
+            {
+                FileUtil.deleteDir(dir);
+            }
+        }
+
+        @Test
+        public void testWatcherSkip() throws Exception
+        {
+            File dir = Files.createTempDirectory("davCrawler").toFile();
+            BlockingQueue<Path> changes = new LinkedBlockingQueue<>();
+            DirectoryWatcher watcher = new DirectoryWatcher(changes::add);
+            Path path = Path.parse("/_webdav/DavCrawlerTest/@files/");
+
+            try
+            {
+                watcher.start();
+                watcher.watch(path, dir.toPath());
+                Assume.assumeTrue("File system change notifications aren't available", watcher.getCount() > 0);
+
+                // Never crawled, or crawled before the watch started: must be listed
+                assertFalse(watcher.isUnchangedSince(path, null));
+                assertFalse(watcher.isUnchangedSince(path, new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1))));
+
+                Date crawled = new Date(System.currentTimeMillis());
+                assertTrue("No events since the crawl, so the listing can be skipped", watcher.isUnchangedSince(path, crawled));
+
+                Files.write(new File(dir, "a.txt").toPath(), "one".getBytes(StandardCharsets.UTF_8));
+                assertEquals("The change should reschedule the directory", path, changes.poll(30, TimeUnit.SECONDS));
+                assertFalse("Changed since the crawl, so it must be listed", watcher.isUnchangedSince(path, crawled));
+
+                // Once the events settle, a new crawl makes it skippable again
+                while (null != changes.poll(1, TimeUnit.SECONDS))
+                    ;
+                Thread.sleep(2);
+                assertTrue(watcher.isUnchangedSince(path, new Date(System.currentTimeMillis())));
+
+                // After close() nothing can be trusted, so every directory must be listed
+                watcher.close();
+                assertFalse(watcher.isUnchangedSince(path, new Date(System.currentTimeMillis())));
+            }
+            finally
+            {
+                watcher.close();
+                FileUtil.deleteDir(dir);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.search.model;
+
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.labkey.api.util.Path;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches the file system directories the crawler has listed, so it can re-crawl a directory soon after it changes and
+ * skip listing a directory that hasn't changed at all. Only local file systems are watched; change notifications on
+ * network file systems (NFS, SMB, etc.) miss changes made by other hosts, so those directories rely on the crawl journal.
+ * Each watch covers one directory and reports changes to its immediate children only, matching the crawler, which
+ * schedules every directory separately.
+ */
+class DirectoryWatcher
+{
+    private static final Logger _log = Logger.getLogger(DirectoryWatcher.class);
+
+    // Stay well under typical per-user limits (e.g., fs.inotify.max_user_watches is 8192 on many Linux systems)
+    private static final int MAX_WATCHES = 4096;
+    private static final Set<String> UNRELIABLE_FILE_STORE_TYPES = Set.of("nfs", "nfs4", "cifs", "smbfs", "smb2", "smb3", "afs", "9p", "fuse", "fuseblk", "fuse.sshfs", "vboxsf");
+
+    private final Consumer<Path> _onChange;
+    private final Map<WatchKey, Path> _keys = new ConcurrentHashMap<>();
+    private final Map<Path, Long> _watchedSince = new ConcurrentHashMap<>();
+    private final Map<Path, Long> _lastChange = new ConcurrentHashMap<>();
+
+    private volatile @Nullable WatchService _watchService = null;
+    private volatile boolean _limitReached = false;
+
+    /** @param onChange called on the watcher thread with the crawler path of each directory that changes */
+    DirectoryWatcher(Consumer<Path> onChange)
+    {
+        _onChange = onChange;
+    }
+
+    void start()
+    {
+        try
+        {
+            _watchService = FileSystems.getDefault().newWatchService();
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            _log.info("File system change notifications are not available; the crawler will rely on its journal: " + e.getMessage());
+            return;
+        }
+
+        Thread t = new Thread(this::watch, "DavCrawler:watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    void close()
+    {
+        WatchService ws = _watchService;
+        _watchService = null;
+
+        if (null != ws)
+        {
+            try
+            {
+                ws.close();
+            }
+            catch (IOException e)
+            {
+                // Shutting down anyway
+            }
+        }
+    }
+
+    /**
+     * Start watching a directory; no-op if it's already watched or can't be watched. Call this before listing the
+     * directory, so no change can slip in between the listing and the registration.
+     */
+    void watch(Path path, java.nio.file.Path dir)
+    {
+        WatchService ws = _watchService;
+
+        if (null == ws || _limitReached || _watchedSince.containsKey(path))
+            return;
+
+        if (_keys.size() >= MAX_WATCHES)
+        {
+            _limitReached = true;
+            _log.info("Watching the maximum of " + MAX_WATCHES + " directories; other directories will rely on the crawler journal");
+            return;
+        }
+
+        try
+        {
+            if (UNRELIABLE_FILE_STORE_TYPES.contains(Files.getFileStore(dir).type().toLowerCase()))
+                return;
+
+            // Hold the lock so the watcher thread can't see an event for the key before we've mapped it
+            synchronized (_keys)
+            {
+                _watchedSince.put(path, System.currentTimeMillis());
+                _keys.put(dir.register(ws, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+            }
+        }
+        catch (IOException e)
+        {
+            // Typically the OS limit on watches; don't keep trying
+            _watchedSince.remove(path);
+            _limitReached = true;
+            _log.info("Unable to watch " + dir + "; other directories will rely on the crawler journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if the directory has been watched continuously since before the given time and no change has been
+     * reported since, meaning the crawler can skip listing it
+     */
+    boolean isUnchangedSince(Path path, @Nullable Date since)
+    {
+        if (null == since || null == _watchService)
+            return false;
+
+        Long watchedSince = _watchedSince.get(path);
+        Long lastChange = _lastChange.get(path);
+
+        return null != watchedSince && watchedSince <= since.getTime() && (null == lastChange || lastChange < since.getTime());
+    }
+
+    int getCount()
+    {
+        return _keys.size();
+    }
+
+    private void watch()
+    {
+        while (true)
+        {
+            WatchService ws = _watchService;
+
+            if (null == ws)
+                return;
+
+            WatchKey key;
+
+            try
+            {
+                key = ws.take();
+            }
+            catch (InterruptedException | ClosedWatchServiceException e)
+            {
+                return;
+            }
+
+            Path path;
+
+            synchronized (_keys)
+            {
+                path = _keys.get(key);
+            }
+
+            // Every event, including OVERFLOW, just means "re-crawl this directory"; the crawl itself sorts out what changed
+            key.pollEvents();
+
+            if (null != path)
+            {
+                _lastChange.put(path, System.currentTimeMillis());
+                _onChange.accept(path);
+            }
+
+            // Directory deleted or otherwise inaccessible
+            if (!key.reset())
+            {
+                _keys.remove(key);
+
+                if (null != path)
+                    _watchedSince.remove(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.search.model;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.util.FileUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Small on-disk cache of text extracted from documents, keyed by a hash of the document's id, modified time, and size
+ * (plus anything else that affects extraction, e.g., the parser version and character cap). Re-indexing an unchanged
+ * file, e.g., after an upgrade deletes the index, reads the compressed text back instead of reading and parsing the
+ * document again. When the cache grows past its limit, the least recently used entries are deleted.
+ */
+public class ExtractedTextCache
+{
+    private static final Logger _log = Logger.getLogger(ExtractedTextCache.class);
+    private static final String SUFFIX = ".txt.gz";
+
+    private final File _dir;
+    private final long _maxBytes;
+    private final Object _sizeLock = new Object();
+    private long _size = -1;   // Computed lazily, since walking the directory can take a while
+
+    static class Entry
+    {
+        private final @Nullable String _title;
+        private final String _keywords;
+        private final String _body;
+
+        Entry(@Nullable String title, String keywords, String body)
+        {
+            _title = title;
+            _keywords = keywords;
+            _body = body;
+        }
+
+        @Nullable String getTitle()
+        {
+            return _title;
+        }
+
+        String getKeywords()
+        {
+            return _keywords;
+        }
+
+        String getBody()
+        {
+            return _body;
+        }
+    }
+
+    ExtractedTextCache(File dir, long maxBytes)
+    {
+        _dir = dir;
+        _maxBytes = maxBytes;
+    }
+
+    private File getFile(String hash)
+    {
+        // Two-level layout keeps directories a manageable size
+        return new File(new File(_dir, hash.substring(0, 2)), hash + SUFFIX);
+    }
+
+    @Nullable Entry get(@NotNull String hash)
+    {
+        File file = getFile(hash);
+
+        if (!file.isFile())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))))
+        {
+            Entry entry = new Entry(readString(in), readString(in), readString(in));
+
+            // Track recency via the modified time, so trimming evicts the least recently used entries
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+
+            return entry;
+        }
+        catch (IOException e)
+        {
+            // Truncated or corrupt, e.g., disk filled up while writing; treat as a miss and let put() replace it
+            _log.debug("Ignoring unreadable extracted text " + file, e);
+            return null;
+        }
+    }
+
+    void put(@NotNull String hash, Entry entry)
+    {
+        File file = getFile(hash);
+
+        try
+        {
+            Files.createDirectories(file.getParentFile().toPath());
+
+            // Write to a temp file and move it into place, so readers never see a partial entry
+            File temp = File.createTempFile(hash, ".tmp", file.getParentFile());
+
+            try
+            {
+                try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))))
+                {
+                    writeString(out, entry.getTitle());
+                    writeString(out, entry.getKeywords());
+                    writeString(out, entry.getBody());
+                }
+
+                long length = temp.length();
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                added(length);
+            }
+            finally
+            {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        }
+        catch (IOException e)
+        {
+            // The cache is an optimization; indexing proceeds without it
+            _log.warn("Unable to cache extracted text in " + _dir + ": " + e.getMessage());
+        }
+    }
+
+    private void added(long length)
+    {
+        synchronized (_sizeLock)
+        {
+            if (_size < 0)
+                _size = listEntries().stream().mapToLong(File::length).sum();
+            else
+                _size += length;
+
+            if (_size > _maxBytes)
+                trim();
+        }
+    }
+
+    // Delete least recently used entries until the cache is at 80% of its limit, so we don't trim on every put
+    private void trim()
+    {
+        assert Thread.holdsLock(_sizeLock);
+
+        List<File> files = listEntries();
+        files.sort(Comparator.comparingLong(File::lastModified));
+        long target = _maxBytes * 4 / 5;
+        long size = files.stream().mapToLong(File::length).sum();
+
+        for (File file : files)
+        {
+            if (size <= target)
+                break;
+
+            long length = file.length();
+
+            if (file.delete())
+                size -= length;
+        }
+
+        _size = size;
+    }
+
+    private List<File> listEntries()
+    {
+        List<File> entries = new ArrayList<>();
+        File[] subdirs = _dir.listFiles(File::isDirectory);
+
+        if (null != subdirs)
+        {
+            for (File subdir : subdirs)
+            {
+                File[] files = subdir.listFiles((dir, name) -> name.endsWith(SUFFIX));
+
+                if (null != files)
+                    entries.addAll(List.of(files));
+            }
+        }
+
+        return entries;
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String s) throws IOException
+    {
+        if (null == s)
+        {
+            out.writeInt(-1);
+        }
+        else
+        {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static @Nullable String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+
+        if (length < 0)
+            return null;
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testCache() throws IOException
+        {
+            File dir = Files.createTempDirectory("extractedTextCache").toFile();
+
+            try
+            {
+                String body = StringUtils.repeat("Extracted body text \u00e9\u00e8 ", 1000);
+                ExtractedTextCache cache = new ExtractedTextCache(dir, 1_000_000);
+                assertNull(cache.get("0123456789abcdef"));
+
+                cache.put("0123456789abcdef", new Entry(null, " keywords", body));
+                Entry entry = cache.get("0123456789abcdef");
+                assertNotNull(entry);
+                assertNull(entry.getTitle());
+                assertEquals(" keywords", entry.getKeywords());
+                assertEquals(body, entry.getBody());
+
+                // Exceeding the limit evicts the least recently used entries
+                ExtractedTextCache small = new ExtractedTextCache(dir, 1);
+                small.put("fedcba9876543210", new Entry("Title", "", body));
+                assertNull(small.get("0123456789abcdef"));
+                assertNull(small.get("fedcba9876543210"));
+            }
+            finally
+            {
+                FileUtil.deleteDir(dir);
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.labkey.search.model;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections4.iterators.ArrayIterator;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -50,6 +51,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.util.BytesRef;
+import org.apache.tika.Tika;
 import org.apache.tika.config.LoadErrorHandler;
 import org.apache.tika.config.ServiceLoader;
 import org.apache.tika.config.TikaConfig;
@@ -62,6 +64,7 @@ import org.apache.tika.metadata.Property;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.junit.Assert;
@@ -97,6 +100,7 @@ import org.labkey.api.util.PageFlowUtil;
 import org.labkey.api.util.Pair;
 import org.labkey.api.util.Path;
 import org.labkey.api.util.TestContext;
+import org.labkey.api.util.UnexpectedException;
 import org.labkey.api.view.ActionURL;
 import org.labkey.api.view.UnauthorizedException;
 import org.labkey.api.view.WebPartView;
@@ -114,6 +118,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.FileSystemException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -126,6 +131,14 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
@@ -150,6 +163,12 @@ public class LuceneSearchServiceImpl extends AbstractSearchService
     private final MultiPhaseCPUTimer<SEARCH_PHASE> TIMER = new MultiPhaseCPUTimer<>(SEARCH_PHASE.class, SEARCH_PHASE.values());
     private final Analyzer _standardAnalyzer = LuceneAnalyzer.LabKeyAnalyzer.getAnalyzer();
     private final AutoDetectParser _autoDetectParser;
+    // Documents are parsed on this pool so a huge or pathological document costs an indexing thread at most the
+    // extraction timeout. Sized to the cores, since parsing is CPU-bound. A permit is taken before submitting and held
+    // until the parse finishes, so tasks never wait in the pool's queue.
+    private final ThreadPoolExecutor _extractionPool;
+    private final Semaphore _extractionPermits;
+    private volatile @Nullable ExtractedTextCache _textCache = null;
     // We track this to avoid clearing last indexed multiple times in certain cases (delete index, upgrade), see #39330
     private final AtomicLong _countIndexedSinceClearLastIndexed = new AtomicLong(1);
 
@@ -208,6 +227,16 @@ public class LuceneSearchServiceImpl extends AbstractSearchService
         }
 
         _autoDetectParser = new AutoDetectParser(config);
+
+        int extractionThreads = Runtime.getRuntime().availableProcessors();
+        _extractionPool = new ThreadPoolExecutor(extractionThreads, extractionThreads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "SearchService:extract");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY + 1);
+            return t;
+        });
+        _extractionPool.allowCoreThreadTimeOut(true);
+        _extractionPermits = new Semaphore(extractionThreads);
     }
 
     /**
@@ -249,6 +278,11 @@ public class LuceneSearchServiceImpl extends AbstractSearchService
         File indexDir = SearchPropertyManager.getIndexDirectory();
         _indexManager = WritableIndexManagerImpl.get(indexDir.toPath(), getAnalyzer());
         setConfigurationError(null);  // Clear out any previous error
+
+        // Lives next to the index, not in it, so it survives deleting the index (e.g., after every upgrade)
+        File textCacheDir = new File(indexDir.getAbsoluteFile().getParentFile(), indexDir.getName() + "_extracted_text");
+        int textCacheSizeMB = SearchPropertyManager.getTextCacheSizeMB();
+        _textCache = textCacheSizeMB > 0 ? new ExtractedTextCache(textCacheDir, textCacheSizeMB * 1024L * 1024L) : null;
     }
 
     @Override
@@ -551,19 +585,14 @@ public class LuceneSearchServiceImpl extends AbstractSearchService
                 }
                 else
                 {
-                    Metadata metadata = new Metadata();
-                    metadata.add(Metadata.RESOURCE_NAME_KEY, PageFlowUtil.encode(r.getName()));
-                    metadata.add(Metadata.CONTENT_TYPE, r.getContentType());
-                    ContentHandler handler = new BodyContentHandler(-1);     // no write limit on the handler -- rely on file size check to limit content
-
-                    parse(r, fs, is, handler, metadata);
+                    ExtractedTextCache.Entry extracted = extractText(r, fs, is);
 
-                    body = handler.toString();
+                    body = extracted.getBody();
 
                     if (StringUtils.isBlank(title))
-                        title = metadata.get(TikaCoreProperties.TITLE);
+                        title = extracted.getTitle();
 
-                    keywordsMed.append(getInterestingMetadataProperties(metadata));
+                    keywordsMed.append(extracted.getKeywords());
                 }
 
                 fs.closeInputStream();
@@ -931,6 +960,139 @@ public class LuceneSearchServiceImpl extends AbstractSearchService
     }
 
 
+    /**
+     * Extract the text of a document that needs a parser. If the extracted text cache has this version of the document,
+     * it isn't read at all. Otherwise, it's parsed on the extraction pool, subject to the extraction timeout and
+     * character cap, and the result is cached. A document that can't be parsed in time is queued to be tried again.
+     */
+    private ExtractedTextCache.Entry extractText(WebdavResource r, FileStream fs, InputStream is) throws IOException, SAXException, TikaException
+    {
+        int maxChars = SearchPropertyManager.getMaxExtractedChars();
+        ExtractedTextCache cache = _textCache;
+        String key = null != cache ? getTextCacheKey(r, fs, maxChars) : null;
+        ExtractedTextCache.Entry entry = null != key ? cache.get(key) : null;
+
+        if (null != entry)
+            return entry;
+
+        int timeout = SearchPropertyManager.getExtractionTimeoutSeconds();
+
+        // Wait for an extraction thread before starting the clock, so the timeout covers only the parse
+        try
+        {
+            if (!_extractionPermits.tryAcquire(timeout, TimeUnit.SECONDS))
+                throw new RetryableIndexingException("No text extraction thread was free for " + timeout + " seconds");
+        }
+        catch (InterruptedException e)
+        {
+            throw new InterruptedIOException("Interrupted while waiting to extract text");
+        }
+
+        Future<ExtractedTextCache.Entry> future;
+
+        try
+        {
+            future = _extractionPool.submit(() -> {
+                try
+                {
+                    return parse(r, fs, is, maxChars);
+                }
+                finally
+                {
+                    // Released only once the parser is done, so threads stuck in a parser can't pile up
+                    _extractionPermits.release();
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            _extractionPermits.release();
+            throw e;
+        }
+
+        try
+        {
+            entry = future.get(timeout, TimeUnit.SECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            // Parsers generally ignore interrupts, but most fail on their next read once the stream is closed, which
+            // returns the thread to the pool. Don't index the document without its text or cache anything; the parse
+            // may just have been slowed by load, so it gets another try.
+            future.cancel(true);
+            IOUtils.closeQuietly(is);
+            throw new RetryableIndexingException("Text extraction took longer than " + timeout + " seconds");
+        }
+        catch (InterruptedException e)
+        {
+            future.cancel(true);
+            IOUtils.closeQuietly(is);
+            throw new InterruptedIOException("Interrupted while extracting text");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof SAXException)
+                throw (SAXException)cause;
+            if (cause instanceof TikaException)
+                throw (TikaException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw UnexpectedException.wrap(cause);
+        }
+
+        if (null != key)
+            cache.put(key, entry);
+
+        return entry;
+    }
+
+
+    /**
+     * Identifies this version of the document by its id, modified time, and size, so a cache hit doesn't need to read
+     * it. Anything else that affects extraction is included too. Documents without a modified time can't be told apart
+     * from earlier versions, so they aren't cached.
+     */
+    private static @Nullable String getTextCacheKey(WebdavResource r, FileStream fs, int maxChars) throws IOException
+    {
+        long modified = r.getLastModified();
+
+        if (modified <= 0 || null == r.getDocumentId())
+            return null;
+
+        return DigestUtils.sha256Hex(r.getDocumentId() + "|" + modified + "|" + fs.getSize() + "|" + Tika.getString() + "|" + maxChars);
+    }
+
+
+    // Runs on the extraction pool
+    private ExtractedTextCache.Entry parse(WebdavResource r, FileStream fs, InputStream is, int maxChars) throws IOException, SAXException, TikaException
+    {
+        Metadata metadata = new Metadata();
+        metadata.add(Metadata.RESOURCE_NAME_KEY, PageFlowUtil.encode(r.getName()));
+        metadata.add(Metadata.CONTENT_TYPE, r.getContentType());
+
+        // Text streams into a bounded buffer; once the cap is reached, the parser stops and we index what we have
+        WriteOutContentHandler out = new WriteOutContentHandler(maxChars);
+
+        try
+        {
+            parse(r, fs, is, new BodyContentHandler(out), metadata);
+        }
+        catch (SAXException e)
+        {
+            if (!out.isWriteLimitReached(e))
+                throw e;
+
+            _log.debug("Indexing the first " + maxChars + " characters of " + r.getName());
+        }
+
+        return new ExtractedTextCache.Entry(metadata.get(TikaCoreProperties.TITLE), getInterestingMetadataProperties(metadata), out.toString());
+    }
+
+
     // parse the document of the resource, not that parse() and accept() should agree on what is parsable
     private void parse(WebdavResource r, FileStream fs, InputStream is, ContentHandler handler, Metadata metadata) throws IOException, SAXException, TikaException
     {
@@ -1285,6 +1447,20 @@ public class LuceneSearchServiceImpl extends AbstractSearchService
     }
 
 
+    @Override
+    protected void refreshIndex()
+    {
+        try
+        {
+            _indexManager.refresh();
+        }
+        catch (IOException e)
+        {
+            _log.warn("Error refreshing search index", e);
+        }
+    }
+
+
     @Override
     @Nullable
     public SearchHit find(String id) throws IOException
@@ -1588,6 +1764,7 @@ public class LuceneSearchServiceImpl extends AbstractSearchService
     @Override
     protected void shutDown()
     {
+        _extractionPool.shutdownNow();
         closeIndex();
         _standardAnalyzer.close();
     }
@@ -78,6 +78,11 @@ public class NoopWritableIndex implements WritableIndexManager
     {
     }
 
+    @Override
+    public void refresh()
+    {
+    }
+
     @Override
     public void close()
     {
@@ -286,9 +286,10 @@ public class SavePaths implements DavCrawler.SavePaths
                     toPathString(path) + "%");
         }
 
+        // Clearing the checksum forces a full listing of each directory, rather than trusting the journal
         executor.execute(
                 "UPDATE search.CrawlCollections " +
-                "SET LastCrawled=NULL, NextCrawl=? " +
+                "SET LastCrawled=NULL, NextCrawl=?, Checksum=NULL " +
                 "WHERE Path LIKE ?",
                 // UNDONE LIKE ESCAPE
                 next, toPathString(path) + "%");
@@ -298,6 +299,10 @@ public class SavePaths implements DavCrawler.SavePaths
     public void clearFailedDocuments()
     {
         assert failDate.getTime() < oldDate.getTime();
+        // Directories with failed documents must be listed again for those documents to be retried
+        new SqlExecutor(getSearchSchema()).execute(
+                "UPDATE search.CrawlCollections SET Checksum=NULL WHERE id IN (SELECT Parent FROM search.CrawlResources WHERE LastIndexed<?)",
+                oldDate);
         new SqlExecutor(getSearchSchema()).execute(
                 "UPDATE search.CrawlResources SET LastIndexed=NULL WHERE LastIndexed<?",
                 oldDate);
@@ -383,6 +388,22 @@ public class SavePaths implements DavCrawler.SavePaths
     }
 
 
+    public @Nullable Long getChecksum(Path path)
+    {
+        SQLFragment f = new SQLFragment("SELECT Checksum FROM search.CrawlCollections WHERE ");
+        f.append(pathFilter(getSearchSchema().getTable("CrawlCollections"), toPathString(path)));
+        return new SqlSelector(getSearchSchema(), f).getObject(Long.class);
+    }
+
+
+    public void updateChecksum(Path path, @Nullable Long checksum)
+    {
+        SQLFragment upd = new SQLFragment("UPDATE search.CrawlCollections SET Checksum=? WHERE ", checksum);
+        upd.append(pathFilter(getSearchSchema().getTable("CrawlCollections"), toPathString(path)));
+        new SqlExecutor(getSearchSchema()).execute(upd);
+    }
+
+
     //
     // FILES/RESOURCES
     //
@@ -37,6 +37,23 @@ public class SearchPropertyManager
     private static final String INDEX_PATH = "primaryIndexPath";  // Note: don't change this legacy name
     private static final String DIRECTORY_TYPE = "directoryType";
     private static final String FILE_SIZE_LIMIT = "fileSizeLimitMB";
+    private static final String REFRESH_INTERVAL = "refreshIntervalMs";
+    private static final String COMMIT_INTERVAL = "commitIntervalSeconds";
+    private static final String RAM_BUFFER_SIZE = "ramBufferSizeMB";
+    private static final String MAX_MERGED_SEGMENT = "maxMergedSegmentMB";
+    private static final String SEGMENTS_PER_TIER = "segmentsPerTier";
+    private static final String MAX_EXTRACTED_CHARS = "maxExtractedChars";
+    private static final String EXTRACTION_TIMEOUT = "extractionTimeoutSeconds";
+    private static final String TEXT_CACHE_SIZE = "textCacheSizeMB";
+
+    public static final int DEFAULT_REFRESH_INTERVAL_MS = 1000;
+    public static final int DEFAULT_COMMIT_INTERVAL_SECONDS = 60;
+    public static final int DEFAULT_RAM_BUFFER_SIZE_MB = 64;
+    public static final int DEFAULT_MAX_MERGED_SEGMENT_MB = 5 * 1024;
+    public static final int DEFAULT_SEGMENTS_PER_TIER = 10;
+    public static final int DEFAULT_MAX_EXTRACTED_CHARS = 5_000_000;
+    public static final int DEFAULT_EXTRACTION_TIMEOUT_SECONDS = 300;
+    public static final int DEFAULT_TEXT_CACHE_SIZE_MB = 1024;
 
 
     public static boolean getCrawlerRunningState()
@@ -89,6 +106,76 @@ public class SearchPropertyManager
         setProperty(DIRECTORY_TYPE, directoryType);
     }
 
+    /** @return maximum time, in milliseconds, before newly indexed documents become visible to searches */
+    public static int getRefreshIntervalMs()
+    {
+        return getIntProperty(REFRESH_INTERVAL, DEFAULT_REFRESH_INTERVAL_MS);
+    }
+
+    /** @return maximum time, in seconds, that indexed documents can go without a durable commit */
+    public static int getCommitIntervalSeconds()
+    {
+        return getIntProperty(COMMIT_INTERVAL, DEFAULT_COMMIT_INTERVAL_SECONDS);
+    }
+
+    public static int getRamBufferSizeMB()
+    {
+        return getIntProperty(RAM_BUFFER_SIZE, DEFAULT_RAM_BUFFER_SIZE_MB);
+    }
+
+    public static int getMaxMergedSegmentMB()
+    {
+        return getIntProperty(MAX_MERGED_SEGMENT, DEFAULT_MAX_MERGED_SEGMENT_MB);
+    }
+
+    public static int getSegmentsPerTier()
+    {
+        return getIntProperty(SEGMENTS_PER_TIER, DEFAULT_SEGMENTS_PER_TIER);
+    }
+
+    public static void setIndexWriterSettings(int refreshIntervalMs, int commitIntervalSeconds, int ramBufferSizeMB, int maxMergedSegmentMB, int segmentsPerTier)
+    {
+        PropertyManager.PropertyMap m = PropertyManager.getWritableProperties(CATEGORY, true);
+        m.put(REFRESH_INTERVAL, String.valueOf(refreshIntervalMs));
+        m.put(COMMIT_INTERVAL, String.valueOf(commitIntervalSeconds));
+        m.put(RAM_BUFFER_SIZE, String.valueOf(ramBufferSizeMB));
+        m.put(MAX_MERGED_SEGMENT, String.valueOf(maxMergedSegmentMB));
+        m.put(SEGMENTS_PER_TIER, String.valueOf(segmentsPerTier));
+        m.save();
+    }
+
+    /** @return maximum number of characters of text to index from a single document; the rest is ignored */
+    public static int getMaxExtractedChars()
+    {
+        return getIntProperty(MAX_EXTRACTED_CHARS, DEFAULT_MAX_EXTRACTED_CHARS);
+    }
+
+    /** @return maximum time to spend extracting text from a single document before trying it again later */
+    public static int getExtractionTimeoutSeconds()
+    {
+        return getIntProperty(EXTRACTION_TIMEOUT, DEFAULT_EXTRACTION_TIMEOUT_SECONDS);
+    }
+
+    public static int getTextCacheSizeMB()
+    {
+        return getIntProperty(TEXT_CACHE_SIZE, DEFAULT_TEXT_CACHE_SIZE_MB);
+    }
+
+    public static void setExtractionSettings(int maxExtractedChars, int extractionTimeoutSeconds, int textCacheSizeMB)
+    {
+        PropertyManager.PropertyMap m = PropertyManager.getWritableProperties(CATEGORY, true);
+        m.put(MAX_EXTRACTED_CHARS, String.valueOf(maxExtractedChars));
+        m.put(EXTRACTION_TIMEOUT, String.valueOf(extractionTimeoutSeconds));
+        m.put(TEXT_CACHE_SIZE, String.valueOf(textCacheSizeMB));
+        m.save();
+    }
+
+    private static int getIntProperty(String key, int defaultValue)
+    {
+        String value = getProperty(key);
+        return StringUtils.isNotBlank(value) ? Integer.parseInt(value) : defaultValue;
+    }
+
     private static String getProperty(String key)
     {
         Map<String, String> m = PropertyManager.getProperties(CATEGORY);
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2019 LabKey Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.labkey.search.model;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RoaringDocIdSet;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.labkey.api.cache.Cache;
+import org.labkey.api.cache.CacheManager;
+import org.labkey.api.security.Group;
+import org.labkey.api.security.SecurityManager;
+import org.labkey.api.security.UserPrincipal;
+
+import java.beans.PropertyChangeEvent;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the per-segment bit sets that SecurityQuery builds, so repeated searches by the same user over the same
+ * containers skip the scan of every document's security context. Entries are keyed by the segment's core cache key
+ * (which survives deletes but not merges), the user, the set of readable containers, and a generation that's bumped on
+ * every policy or group membership change. Entries for a segment are dropped when that segment is closed.
+ *
+ * The sets are stored as {@link RoaringDocIdSet}s rather than bit sets sized to the segment. A user typically can read
+ * either a few containers or nearly all of them, so most sets are very sparse or very dense; roaring sets store both
+ * compactly, where a bit set would cost maxDoc / 8 bytes per entry however few documents it held.
+ */
+public class SecurityFilterCache
+{
+    private static final Cache<Key, RoaringDocIdSet> CACHE = CacheManager.getCache(1000, CacheManager.HOUR, "Search security filters");
+    private static final Set<IndexReader.CacheKey> TRACKED_SEGMENTS = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    /** Capture before computing anything permission-related, so a concurrent change can't be cached under the new generation */
+    static long getGeneration()
+    {
+        return GENERATION.get();
+    }
+
+    public static void invalidate()
+    {
+        GENERATION.incrementAndGet();
+        CACHE.clear();
+    }
+
+    /** @return the cache key for this segment, or null if the segment doesn't support caching */
+    static @Nullable Key getKey(LeafReader reader, int userId, long generation, Set<String> containerIds)
+    {
+        IndexReader.CacheHelper helper = reader.getCoreCacheHelper();
+
+        if (null == helper)
+            return null;
+
+        IndexReader.CacheKey coreKey = helper.getKey();
+
+        if (TRACKED_SEGMENTS.add(coreKey))
+        {
+            helper.addClosedListener(key -> {
+                TRACKED_SEGMENTS.remove(key);
+                CACHE.removeUsingFilter(k -> k._coreKey == key);
+            });
+        }
+
+        return new Key(coreKey, userId, generation, containerIds);
+    }
+
+    static @Nullable RoaringDocIdSet get(Key key)
+    {
+        return CACHE.get(key);
+    }
+
+    static void put(Key key, RoaringDocIdSet docs)
+    {
+        CACHE.put(key, docs);
+    }
+
+    static class Key
+    {
+        private final IndexReader.CacheKey _coreKey;
+        private final int _userId;
+        private final long _generation;
+        private final Set<String> _containerIds;
+        private final int _hashCode;
+
+        private Key(IndexReader.CacheKey coreKey, int userId, long generation, Set<String> containerIds)
+        {
+            _coreKey = coreKey;
+            _userId = userId;
+            _generation = generation;
+            _containerIds = containerIds;
+
+            int result = System.identityHashCode(coreKey);
+            result = 31 * result + userId;
+            result = 31 * result + Long.hashCode(generation);
+            result = 31 * result + containerIds.hashCode();
+            _hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+
+            return _coreKey == that._coreKey && _userId == that._userId && _generation == that._generation &&
+                _hashCode == that._hashCode && _containerIds.equals(that._containerIds);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _hashCode;
+        }
+    }
+
+    // Group membership determines which resources a user can read
+    public static class GroupListener implements SecurityManager.GroupListener
+    {
+        @Override
+        public void principalAddedToGroup(Group group, UserPrincipal principal)
+        {
+            invalidate();
+        }
+
+        @Override
+        public void principalDeletedFromGroup(Group group, UserPrincipal principal)
+        {
+            invalidate();
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent evt)
+        {
+        }
+    }
+
+
+    public static class TestCase extends Assert
+    {
+        @Test
+        public void testInvalidation() throws IOException
+        {
+            try (Directory directory = new ByteBuffersDirectory())
+            {
+                try (IndexWriter iw = new IndexWriter(directory, new IndexWriterConfig()))
+                {
+                    Document doc = new Document();
+                    doc.add(new SortedDocValuesField(LuceneSearchServiceImpl.FIELD_NAME.securityContext.name(), new BytesRef("container")));
+                    iw.addDocument(doc);
+                }
+
+                Set<String> containerIds = Set.of("container");
+                RoaringDocIdSet docs = new RoaringDocIdSet.Builder(1).add(0).build();
+                Key key;
+
+                try (DirectoryReader reader = DirectoryReader.open(directory))
+                {
+                    LeafReader leaf = reader.leaves().get(0).reader();
+                    key = getKey(leaf, 1001, getGeneration(), containerIds);
+                    assertNotNull(key);
+                    put(key, docs);
+                    assertSame(docs, get(getKey(leaf, 1001, getGeneration(), Set.of("container"))));
+                    assertNull(get(getKey(leaf, 1002, getGeneration(), containerIds)));
+                    assertNull(get(getKey(leaf, 1001, getGeneration(), Set.of("container", "other"))));
+
+                    // A permission change invalidates everything
+                    invalidate();
+                    assertNull(get(key));
+                    assertNull(get(getKey(leaf, 1001, getGeneration(), containerIds)));
+
+                    key = getKey(leaf, 1001, getGeneration(), containerIds);
+                    put(key, docs);
+                    assertSame(docs, get(key));
+                }
+
+                // Closing the segment (e.g., after a merge) drops its entries
+                assertNull(get(key));
+            }
+        }
+
+        @Test
+        public void testSize() throws IOException
+        {
+            int maxDoc = 1_000_000;
+            long bitSetBytes = maxDoc / 8;
+
+            // Readable documents that are nearly all, or very few, of a segment's are stored in a small fraction of a bit set
+            RoaringDocIdSet.Builder dense = new RoaringDocIdSet.Builder(maxDoc);
+            RoaringDocIdSet.Builder sparse = new RoaringDocIdSet.Builder(maxDoc);
+
+            for (int doc = 0; doc < maxDoc; doc++)
+            {
+                if (doc % 1000 != 0)
+                    dense.add(doc);
+                else
+                    sparse.add(doc);
+            }
+
+            RoaringDocIdSet denseDocs = dense.build();
+            assertEquals(maxDoc - maxDoc / 1000, denseDocs.cardinality());
+            assertTrue(denseDocs.ramBytesUsed() < bitSetBytes / 4);
+            assertTrue(sparse.build().ramBytesUsed() < bitSetBytes / 4);
+        }
+    }
+}
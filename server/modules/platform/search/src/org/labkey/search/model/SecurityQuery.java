@@ -22,14 +22,14 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.search.ConstantScoreScorer;
 import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
-import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.BytesRef;
-import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RoaringDocIdSet;
 import org.jetbrains.annotations.NotNull;
 import org.labkey.api.data.Container;
 import org.labkey.api.data.ContainerManager;
@@ -64,6 +64,7 @@ class SecurityQuery extends Query
     private final HashMap<String, Container> _containerIds;
     private final HashMap<String, Boolean> _securableResourceIds = new HashMap<>();
     private final InvocationTimer<SearchService.SEARCH_PHASE> _iTimer;
+    private final long _generation;
 
     SecurityQuery(User user, Container searchRoot, Container currentContainer, boolean recursive, InvocationTimer<SearchService.SEARCH_PHASE> iTimer)
     {
@@ -75,10 +76,12 @@ class SecurityQuery extends Query
         _recursive = recursive;
 
         _iTimer = iTimer;
+        _generation = SecurityFilterCache.getGeneration();
 
         if (recursive)
         {
-            // Returns root plus all children (including workbooks & tabs) where user has read permissions
+            // Returns root plus all children (including workbooks & tabs) where user has read permissions. Answered from
+            // EffectivePermissionCache, so a tree of thousands of inheriting folders costs one policy evaluation per user.
             List<Container> containers = ContainerManager.getAllChildren(searchRoot, user);
             _containerIds = new HashMap<>(containers.size() * 2);
 
@@ -96,7 +99,7 @@ class SecurityQuery extends Query
         {
             _containerIds = new HashMap<>();
 
-            if (searchRoot.hasPermission(user, ReadPermission.class))
+            if (EffectivePermissionCache.hasPermission(searchRoot, user, ReadPermission.class))
                 _containerIds.put(searchRoot.getId(), searchRoot);
         }
     }
@@ -123,13 +126,20 @@ class SecurityQuery extends Query
                 _iTimer.setPhase(SearchService.SEARCH_PHASE.applySecurityFilter);
 
                 LeafReader reader = context.reader();
-                int maxDoc = reader.maxDoc();
-                FixedBitSet bits = new FixedBitSet(maxDoc);
 
-                SortedDocValues securityContextDocValues = reader.getSortedDocValues(FIELD_NAME.securityContext.name());
+                // Impersonation changes a user's groups and roles without changing the user ID, so don't cache those bit sets
+                SecurityFilterCache.Key key = _user.isImpersonated() ? null : SecurityFilterCache.getKey(reader, _user.getUserId(), _generation, _containerIds.keySet());
+                RoaringDocIdSet docs = null != key ? SecurityFilterCache.get(key) : null;
 
                 try
                 {
+                    if (null != docs)
+                        return new ConstantScoreScorer(this, score(), scoreMode, iterator(docs));
+
+                    // Doc values are visited in order, which is what the builder requires
+                    RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(reader.maxDoc());
+
+                    SortedDocValues securityContextDocValues = reader.getSortedDocValues(FIELD_NAME.securityContext.name());
                     int doc;
 
                     // Can be null, if no documents (e.g., shortly after bootstrap or clear index)
@@ -157,11 +167,16 @@ class SecurityQuery extends Query
 
                             // Must have read permission on the container (always). Must also have read permissions on resource ID, if non-null.
                             if (_containerIds.containsKey(containerId) && (null == resourceId || canReadResource(resourceId, containerId)))
-                                bits.set(doc);
+                                builder.add(doc);
                         }
                     }
 
-                    return new ConstantScoreScorer(this, score(), scoreMode, new BitSetIterator(bits, bits.approximateCardinality()));
+                    docs = builder.build();
+
+                    if (null != key)
+                        SecurityFilterCache.put(key, docs);
+
+                    return new ConstantScoreScorer(this, score(), scoreMode, iterator(docs));
                 }
                 finally
                 {
@@ -171,6 +186,13 @@ class SecurityQuery extends Query
         };
     }
 
+    private static DocIdSetIterator iterator(RoaringDocIdSet docs) throws IOException
+    {
+        // Null when the set is empty
+        DocIdSetIterator iterator = docs.iterator();
+        return null != iterator ? iterator : DocIdSetIterator.empty();
+    }
+
     private boolean canReadResource(String resourceId, String containerId)
     {
         assert !resourceId.equals(containerId);
@@ -43,6 +43,12 @@ public interface WritableIndexManager
 
     void commit();
 
+    /**
+     * Make everything indexed so far visible to searches now, instead of waiting for the periodic near-real-time
+     * refresh
+     */
+    void refresh() throws IOException;
+
     void close() throws IOException;
 
     Map<String, String> getIndexFormatProperties();
@@ -24,6 +24,8 @@ import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.SearcherFactory;
@@ -52,6 +54,7 @@ class WritableIndexManagerImpl extends IndexManager implements WritableIndexMana
 
     private final Object _writerLock = new Object();
     private final IndexWriter _iw;
+    private final ControlledRealTimeReopenThread<IndexSearcher> _reopenThread;
 
     private boolean _closed = false;
 
@@ -79,7 +82,15 @@ class WritableIndexManagerImpl extends IndexManager implements WritableIndexMana
         try
         {
             // Consider: wrap analyzer with LimitTokenCountAnalyzer to limit indexed content?
-            iw = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+            TieredMergePolicy mergePolicy = new TieredMergePolicy();
+            mergePolicy.setMaxMergedSegmentMB(SearchPropertyManager.getMaxMergedSegmentMB());
+            mergePolicy.setSegmentsPerTier(SearchPropertyManager.getSegmentsPerTier());
+
+            IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                .setRAMBufferSizeMB(SearchPropertyManager.getRamBufferSizeMB())
+                .setMergePolicy(mergePolicy);
+
+            iw = new IndexWriter(directory, config);
         }
         finally
         {
@@ -109,6 +120,14 @@ class WritableIndexManagerImpl extends IndexManager implements WritableIndexMana
     {
         super(new SearcherManager(iw, factory), directory);
         _iw = iw;
+
+        // Near-real-time searching: reopen the searcher from the writer's in-memory segments on a fixed schedule, so
+        // new documents become visible within the refresh interval without a commit or a refresh per document, #39330
+        double maxStaleSec = SearchPropertyManager.getRefreshIntervalMs() / 1000.0;
+        _reopenThread = new ControlledRealTimeReopenThread<>(iw, _manager, maxStaleSec, 0);
+        _reopenThread.setName("Search index refresh");
+        _reopenThread.setDaemon(true);
+        _reopenThread.start();
     }
 
 
@@ -129,9 +148,8 @@ class WritableIndexManagerImpl extends IndexManager implements WritableIndexMana
     {
         synchronized (_writerLock)
         {
-            deleteDocument(id);
-            getIndexWriter().addDocument(doc);
-            _manager.maybeRefresh(); // Make this document immediately available for searching (i.e., near-real-time searching), see #39330
+            // Atomic delete-then-add; the reopen thread makes the document visible to searches shortly
+            getIndexWriter().updateDocument(new Term(LuceneSearchServiceImpl.FIELD_NAME.uniqueId.toString(), id), doc);
         }
     }
 
@@ -145,7 +163,6 @@ class WritableIndexManagerImpl extends IndexManager implements WritableIndexMana
             {
                 IndexWriter iw = getIndexWriter();
                 iw.deleteDocuments(new Term(LuceneSearchServiceImpl.FIELD_NAME.uniqueId.toString(), id));
-                _manager.maybeRefresh();
             }
         }
         catch (IndexManagerClosedException x)
@@ -180,7 +197,6 @@ class WritableIndexManagerImpl extends IndexManager implements WritableIndexMana
             {
                 IndexWriter w = getIndexWriter();
                 w.deleteDocuments(query);
-                _manager.maybeRefresh();
             }
         }
         catch (AlreadyClosedException e)
@@ -201,6 +217,9 @@ class WritableIndexManagerImpl extends IndexManager implements WritableIndexMana
     @Override
     public void close() throws IOException
     {
+        // Stop refreshing before closing the writer and manager it refreshes from
+        _reopenThread.close();
+
         synchronized (_writerLock)
         {
             _closed = true;
@@ -277,6 +296,16 @@ class WritableIndexManagerImpl extends IndexManager implements WritableIndexMana
     }
 
 
+    @Override
+    public void refresh() throws IOException
+    {
+        if (_closed)
+            return;
+
+        _manager.maybeRefreshBlocking();
+    }
+
+
     @Override
     public Map<String, String> getIndexFormatProperties()
     {
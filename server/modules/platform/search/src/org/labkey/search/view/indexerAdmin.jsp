@@ -155,6 +155,42 @@ else
             }
         %>
         </table>
+    </labkey:form></p>
+    <p><labkey:form method="POST" action="<%=buildURL(SearchController.AdminAction.class)%>">
+        <table>
+            <tr><td colspan="2" width="800">New documents become searchable within the refresh interval; the index is committed to disk on the
+                commit interval. Larger RAM buffers and merged segments speed up bulk indexing at the cost of memory and disk. Changes take
+                effect when the index is reopened.<br><br></td></tr>
+            <tr><td>Refresh interval:</td><td><input type="number" name="refreshIntervalMs" min="1" value="<%=SearchPropertyManager.getRefreshIntervalMs()%>" /> ms</td></tr>
+            <tr><td>Commit interval:</td><td><input type="number" name="commitIntervalSeconds" min="1" value="<%=SearchPropertyManager.getCommitIntervalSeconds()%>" /> seconds</td></tr>
+            <tr><td>RAM buffer size:</td><td><input type="number" name="ramBufferSizeMB" min="1" value="<%=SearchPropertyManager.getRamBufferSizeMB()%>" /> MB</td></tr>
+            <tr><td>Maximum merged segment size:</td><td><input type="number" name="maxMergedSegmentMB" min="1" value="<%=SearchPropertyManager.getMaxMergedSegmentMB()%>" /> MB</td></tr>
+            <tr><td>Segments per tier:</td><td><input type="number" name="segmentsPerTier" min="2" value="<%=SearchPropertyManager.getSegmentsPerTier()%>" /></td></tr><%
+            if (hasAdminOpsPerms)
+            {
+        %>
+            <tr><td><input type="hidden" name="writer" value="1"></td></tr>
+            <tr><td><%= button("Set").submit(true) %></td></tr><%
+            }
+        %>
+        </table>
+    </labkey:form></p>
+    <p><labkey:form method="POST" action="<%=buildURL(SearchController.AdminAction.class)%>">
+        <table>
+            <tr><td colspan="2" width="800">Text is extracted from documents in parallel, up to the character limit; documents that take longer than
+                the timeout are tried again later, and marked as failed after three tries. Extracted text is cached next to the index, so re-indexing skips unchanged
+                documents. Set the cache size to 0 to disable the cache.<br><br></td></tr>
+            <tr><td>Character limit per document:</td><td><input type="number" name="maxExtractedChars" min="1" value="<%=SearchPropertyManager.getMaxExtractedChars()%>" /></td></tr>
+            <tr><td>Extraction timeout:</td><td><input type="number" name="extractionTimeoutSeconds" min="1" value="<%=SearchPropertyManager.getExtractionTimeoutSeconds()%>" /> seconds</td></tr>
+            <tr><td>Extracted text cache size:</td><td><input type="number" name="textCacheSizeMB" min="0" value="<%=SearchPropertyManager.getTextCacheSizeMB()%>" /> MB</td></tr><%
+            if (hasAdminOpsPerms)
+            {
+        %>
+            <tr><td><input type="hidden" name="extraction" value="1"></td></tr>
+            <tr><td><%= button("Set").submit(true) %></td></tr><%
+            }
+        %>
+        </table>
     </labkey:form></p><%
 }
 %>
\ No newline at end of file
@@ -30,6 +30,7 @@ import org.labkey.api.collections.CaseInsensitiveHashSet;
 import org.labkey.api.data.*;
 import org.labkey.api.data.Selector.ForEachBatchBlock;
 import org.labkey.api.data.dialect.SqlDialect;
+import org.labkey.api.dataiterator.AsyncDataIterator;
 import org.labkey.api.dataiterator.DataIterator;
 import org.labkey.api.dataiterator.DataIteratorBuilder;
 import org.labkey.api.dataiterator.DataIteratorContext;
@@ -55,6 +56,7 @@ import org.labkey.api.query.QueryUpdateService;
 import org.labkey.api.query.ValidationException;
 import org.labkey.api.reader.ColumnDescriptor;
 import org.labkey.api.reader.DataLoader;
+import org.labkey.api.reader.TabLoader;
 import org.labkey.api.security.User;
 import org.labkey.api.study.Location;
 import org.labkey.api.study.SpecimenImportStrategy;
@@ -2914,6 +2916,7 @@ public class SpecimenImporter
 
             DataIteratorContext dix = new DataIteratorContext();
             dix.setInsertOption(QueryUpdateService.InsertOption.IMPORT);
+            dix.setAllowBulkCopy(true);
             DataLoader tsv = loadTsv(file);
             tsvColumns = tsv.getColumns();
 
@@ -2934,9 +2937,10 @@ public class SpecimenImporter
 */
             // CONSIDER turn off data conversion
             //for (ColumnDescriptor cd : tsvColumns) cd.clazz = String.class;
-            // CONSIDER sue AsyncDataIterator
-            //DataIteratorBuilder asyncIn = new AsyncDataIterator.Builder(tsv);
-            DataIteratorBuilder asyncIn = tsv;
+            // Parse and convert the TSV on its own thread, while this thread validates and inserts. Specimen loaders
+            // read files or in-memory rows, never the database, so the import's transaction doesn't need to reach them.
+            AsyncDataIterator.Builder asyncIn = new AsyncDataIterator.Builder(tsv, "SpecimenImporter: parse " + file.getTableType().getName())
+                    .setTransactionIndependent(true);
             DataIteratorBuilder specimenWrapped = new SpecimenImportBuilder(target, asyncIn, file.getTableType().getColumns(), computedColumns);
             DataIteratorBuilder standardEtl = StandardDataIteratorBuilder.forInsert(target, specimenWrapped, _container, getUser(), dix);
             DataIteratorBuilder persist = ((UpdateableTableInfo)target).persistRows(standardEtl, dix);
@@ -2974,6 +2978,7 @@ public class SpecimenImporter
             rowCount = pump.getRowCount();
 
             info(tableName + ": Replaced all data with " + rowCount + " new rows.");
+            info(tableName + ": Parsing " + asyncIn.getMetrics());
 
         }
         finally
@@ -3126,6 +3131,10 @@ public class SpecimenImporter
 
         DataLoader loader = importFile.getDataLoader();
 
+        // Specimen files can run to millions of rows, and the columns use only the standard converters
+        if (loader instanceof TabLoader)
+            ((TabLoader) loader).setParallelParsing(true);
+
         for (ColumnDescriptor column : loader.getColumns())
         {
             ColumnDescriptor expectedColumnDescriptor = expectedColumns.get(column.name.toLowerCase());
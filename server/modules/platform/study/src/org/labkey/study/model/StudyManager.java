@@ -4314,6 +4314,9 @@ public class StudyManager
         public void run()
         {
             DatasetDefinition.updateModified(_def, new Date());
+            // Cubes over study data cache member sets, in memory and on disk, that this change may have made stale. Only
+            // those are dropped; tearing down the Mondrian server on every row edit would throw away warmed cubes.
+            QueryService.get().cubeMemberSetsChanged(getContainer(), StudyQuerySchema.SCHEMA_NAME);
             if (_fireNotification)
                 fireDatasetChanged(_def);
         }